@@ -0,0 +1,48 @@
+package org.databunker.benchmarks;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+
+import java.io.IOException;
+
+/**
+ * HTTP client that answers every request with the same body without touching the network,
+ * so that benchmarks measure only the client's own work. The request entity is read in full,
+ * as a real transport would.
+ */
+public class CannedHttpClient extends CloseableHttpClient {
+    private final byte[] responseBody;
+
+    public CannedHttpClient(byte[] responseBody) {
+        this.responseBody = responseBody;
+    }
+
+    @Override
+    protected CloseableHttpResponse doExecute(HttpHost target, ClassicHttpRequest request, HttpContext context)
+            throws IOException {
+        HttpEntity requestEntity = request.getEntity();
+        if (requestEntity != null) {
+            EntityUtils.consume(requestEntity);
+        }
+        BasicClassicHttpResponse response = new BasicClassicHttpResponse(200);
+        response.setEntity(new ByteArrayEntity(responseBody, ContentType.APPLICATION_JSON));
+        return CloseableHttpResponse.adapt(response);
+    }
+
+    @Override
+    public void close(CloseMode closeMode) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
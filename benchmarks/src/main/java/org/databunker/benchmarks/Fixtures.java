@@ -0,0 +1,94 @@
+package org.databunker.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Request and response payloads shaped like real DatabunkerPro traffic
+ */
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    static Map<String, Object> profile(int i) {
+        Map<String, Object> profile = new HashMap<>();
+        profile.put("email", "user" + i + "@example.com");
+        profile.put("login", "user" + i);
+        profile.put("phone", "+1415555" + String.format("%04d", i % 10000));
+        profile.put("name", "Test User " + i);
+        profile.put("address", i + " Market Street, San Francisco, CA 94105");
+        profile.put("birthdate", "1985-04-12");
+        return profile;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object>[] records(int count) {
+        Map<String, Object>[] records = new Map[count];
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> record = new HashMap<>();
+            record.put("profile", profile(i));
+            records[i] = record;
+        }
+        return records;
+    }
+
+    /**
+     * A bulkListAllUsers page with the given number of rows
+     */
+    static byte[] userListPage(int rows) throws Exception {
+        List<Map<String, Object>> list = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("token", new UUID(i, i * 31L).toString());
+            row.put("profile", profile(i));
+            row.put("created", 1700000000 + i);
+            row.put("slidingtime", 0);
+            row.put("finaltime", 0);
+            list.add(row);
+        }
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("status", "ok");
+        page.put("total", rows * 10);
+        page.put("rows", list);
+        return new ObjectMapper().writeValueAsBytes(page);
+    }
+
+    /**
+     * A /metrics payload with a mix of counters, gauges and labelled histograms
+     */
+    static String metrics() {
+        StringBuilder text = new StringBuilder();
+        text.append("# HELP go_goroutines Number of goroutines that currently exist.\n");
+        text.append("# TYPE go_goroutines gauge\n");
+        text.append("go_goroutines 42\n");
+        text.append("# HELP go_memstats_alloc_bytes Number of bytes allocated and still in use.\n");
+        text.append("# TYPE go_memstats_alloc_bytes gauge\n");
+        text.append("go_memstats_alloc_bytes 12345678\n");
+        String[] endpoints = {"UserCreate", "UserGet", "UserUpdate", "UserDelete", "TokenCreate", "TokenGet",
+            "SessionUpsert", "SessionGet", "AgreementAccept", "BulkListUsers"};
+        String[] buckets = {"0.005", "0.01", "0.025", "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10"};
+        text.append("# HELP databunker_request_duration_seconds Request latency.\n");
+        text.append("# TYPE databunker_request_duration_seconds histogram\n");
+        for (String endpoint : endpoints) {
+            long count = 0;
+            for (String bucket : buckets) {
+                count += 17;
+                text.append("databunker_request_duration_seconds_bucket{endpoint=\"").append(endpoint)
+                    .append("\",le=\"").append(bucket).append("\"} ").append(count).append('\n');
+            }
+            text.append("databunker_request_duration_seconds_sum{endpoint=\"").append(endpoint).append("\"} ")
+                .append(count * 0.042).append('\n');
+            text.append("databunker_request_duration_seconds_count{endpoint=\"").append(endpoint).append("\"} ")
+                .append(count).append('\n');
+            text.append("databunker_requests_total{endpoint=\"").append(endpoint).append("\",status=\"ok\"} ")
+                .append(count * 3).append('\n');
+        }
+        return text.toString();
+    }
+}
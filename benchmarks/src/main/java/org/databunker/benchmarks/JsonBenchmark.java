@@ -0,0 +1,77 @@
+package org.databunker.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.databunker.DatabunkerproApi;
+import org.databunker.options.ClientOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the JSON work done per call: serializing request bodies the way makeRequest does,
+ * and deserializing bulkListAllUsers pages on their own and through the client
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+    @Param({"100", "1000"})
+    public int pageSize;
+
+    private ObjectMapper objectMapper;
+    private Map<String, Object> userCreateBody;
+    private String page;
+    private DatabunkerproApi api;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = new ObjectMapper();
+        userCreateBody = new HashMap<>();
+        userCreateBody.put("profile", Fixtures.profile(1));
+        userCreateBody.put("groupname", "customers");
+        userCreateBody.put("slidingtime", "1d");
+        byte[] pageBytes = Fixtures.userListPage(pageSize);
+        page = new String(pageBytes, StandardCharsets.UTF_8);
+        api = new DatabunkerproApi("http://localhost:3000", "benchmark-token", "benchmark",
+            ClientOptions.builder().httpClient(new CannedHttpClient(pageBytes)).build());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        api.close();
+    }
+
+    @Benchmark
+    public String serializeRequestBody() throws IOException {
+        return objectMapper.writeValueAsString(userCreateBody);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> deserializeUserListPage() throws IOException {
+        return objectMapper.readValue(page, Map.class);
+    }
+
+    @Benchmark
+    public Map<String, Object> bulkListAllUsers() throws IOException {
+        return api.bulkListAllUsers("8f2a6c41-5d3e-4b7a-9c1f-0e6d2b8a4f73", 0, pageSize, null);
+    }
+}
@@ -0,0 +1,55 @@
+package org.databunker.benchmarks;
+
+import org.databunker.options.OptionsConverter;
+import org.databunker.options.TokenOptions;
+import org.databunker.options.UserOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning typed options into request maps
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OptionsConverterBenchmark {
+    private UserOptions userOptions;
+    private UserOptions numericUserOptions;
+    private TokenOptions tokenOptions;
+
+    @Setup
+    public void setUp() {
+        userOptions = UserOptions.builder().groupname("customers").rolename("reader").slidingtime("1d").build();
+        numericUserOptions = UserOptions.builder().groupname("12").rolename("3").finaltime("1y").build();
+        tokenOptions = TokenOptions.builder().unique(true).slidingtime("1d").finaltime("30d").build();
+    }
+
+    @Benchmark
+    public Map<String, Object> userOptions() {
+        return OptionsConverter.toMap(userOptions);
+    }
+
+    @Benchmark
+    public Map<String, Object> numericUserOptions() {
+        return OptionsConverter.toMap(numericUserOptions);
+    }
+
+    @Benchmark
+    public Map<String, Object> tokenOptions() {
+        return OptionsConverter.toMap(tokenOptions);
+    }
+}
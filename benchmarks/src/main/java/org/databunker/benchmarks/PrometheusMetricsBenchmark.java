@@ -0,0 +1,48 @@
+package org.databunker.benchmarks;
+
+import org.databunker.DatabunkerproApi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of parsing a /metrics payload
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrometheusMetricsBenchmark {
+    private DatabunkerproApi api;
+    private String metrics;
+
+    @Setup
+    public void setUp() {
+        api = new DatabunkerproApi("http://localhost:3000", "benchmark-token", "benchmark");
+        metrics = Fixtures.metrics();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        api.close();
+    }
+
+    @Benchmark
+    public Map<String, Object> parsePrometheusMetrics() throws IOException {
+        return api.parsePrometheusMetrics(metrics);
+    }
+}
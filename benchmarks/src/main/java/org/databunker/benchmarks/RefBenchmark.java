@@ -0,0 +1,86 @@
+package org.databunker.benchmarks;
+
+import org.databunker.DatabunkerproApi;
+import org.databunker.Ref;
+import org.databunker.options.ClientOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of deciding between the ID and the name field of a group or role reference, on its own
+ * and as part of group- and role-heavy calls, compared with {@code String.matches("\\d+")}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RefBenchmark {
+    @Param({"12", "customers"})
+    public String ref;
+
+    private DatabunkerproApi api;
+
+    @Setup
+    public void setUp() {
+        byte[] answer = "{\"status\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+        api = new DatabunkerproApi("http://localhost:3000", "benchmark-token", "benchmark",
+            ClientOptions.builder().httpClient(new CannedHttpClient(answer)).build());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        api.close();
+    }
+
+    @Benchmark
+    public Map<String, Object> regex() {
+        // The classification the client used before Ref
+        Map<String, Object> data = new HashMap<>();
+        if (ref.matches("\\d+")) {
+            data.put("groupid", Integer.parseInt(ref));
+        } else {
+            data.put("groupname", ref);
+        }
+        return data;
+    }
+
+    @Benchmark
+    public Map<String, Object> ref() {
+        Map<String, Object> data = new HashMap<>();
+        Ref.put(data, "groupid", "groupname", ref);
+        return data;
+    }
+
+    @Benchmark
+    public Map<String, Object> addUserToGroup() throws IOException {
+        return api.addUserToGroup("email", "user@example.com", ref, ref, null);
+    }
+
+    @Benchmark
+    public Map<String, Object> linkPolicy() throws IOException {
+        return api.linkPolicy(ref, ref, null);
+    }
+
+    @Benchmark
+    public Map<String, Object> createRoleXToken() throws IOException {
+        return api.createRoleXToken(ref, null, null);
+    }
+}
@@ -0,0 +1,79 @@
+package org.databunker.benchmarks;
+
+import org.databunker.DatabunkerproApi;
+import org.databunker.options.BasicOptions;
+import org.databunker.options.ClientOptions;
+import org.databunker.options.TokenOptions;
+import org.databunker.options.UserOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building, serializing and sending a request and parsing its answer, with a
+ * transport that answers instantly from memory
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestBenchmark {
+    @Param({"100", "1000"})
+    public int bulkSize;
+
+    private DatabunkerproApi api;
+    private Map<String, Object> profile;
+    private Map<String, Object>[] records;
+    private UserOptions userOptions;
+    private TokenOptions tokenOptions;
+    private BasicOptions bulkOptions;
+
+    @Setup
+    public void setUp() {
+        byte[] answer = "{\"status\":\"ok\",\"token\":\"a4d5e1b2-8c3f-4e7a-9b1d-2f6c8e0a7b35\"}"
+            .getBytes(StandardCharsets.UTF_8);
+        api = new DatabunkerproApi("http://localhost:3000", "benchmark-token", "benchmark",
+            ClientOptions.builder().httpClient(new CannedHttpClient(answer)).build());
+        profile = Fixtures.profile(1);
+        records = Fixtures.records(bulkSize);
+        userOptions = UserOptions.builder().groupname("customers").rolename("reader").slidingtime("1d").build();
+        tokenOptions = TokenOptions.builder().unique(true).slidingtime("1d").finaltime("30d").build();
+        bulkOptions = BasicOptions.builder().finaltime("1y").build();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        api.close();
+    }
+
+    @Benchmark
+    public Map<String, Object> createUser() throws IOException {
+        return api.createUser(profile, userOptions, null);
+    }
+
+    @Benchmark
+    public Map<String, Object> createToken() throws IOException {
+        return api.createToken("creditcard", "4111111111111111", tokenOptions, null);
+    }
+
+    @Benchmark
+    public Map<String, Object> createUsersBulk() throws IOException {
+        return api.createUsersBulk(records, bulkOptions, null);
+    }
+}
@@ -0,0 +1,398 @@
+package org.databunker.loadgen;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.databunker.DatabunkerproApi;
+import org.databunker.options.ClientOptions;
+import org.databunker.resilience.Bulkhead;
+import org.databunker.stub.StubServer;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives DatabunkerproApi with a configurable mix of calls and reports throughput and latency
+ * percentiles.
+ * <p>
+ * In open-loop mode requests are scheduled at a fixed rate regardless of how fast earlier ones
+ * complete, and latency is measured from each request's scheduled start. A stalled server
+ * therefore shows up in the percentiles instead of silently lowering the request rate
+ * (coordinated omission). In closed-loop mode every worker sends its next request as soon as
+ * the previous one completes, optionally paced to a target rate.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar org.databunker.loadgen.LoadGenerator --stub --rate 2000 --duration 30s
+ * java -cp target/benchmarks.jar org.databunker.loadgen.LoadGenerator --url https://db.example.com \
+ *     --token $TOKEN --tenant loadtest --mode closed --concurrency 64 --mix getUser=80,createUser=20
+ * </pre>
+ */
+public class LoadGenerator {
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final Settings settings;
+    private final Map<Operation, ConcurrentHistogram> latency = new EnumMap<>(Operation.class);
+    private final Map<Operation, ConcurrentHistogram> serviceTime = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final LongAdder completed = new LongAdder();
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+
+    LoadGenerator(Settings settings) {
+        this.settings = settings;
+        this.operations = settings.mix.keySet().toArray(new Operation[0]);
+        this.cumulativeWeights = new int[operations.length];
+        int total = 0;
+        for (int i = 0; i < operations.length; i++) {
+            total += settings.mix.get(operations[i]);
+            cumulativeWeights[i] = total;
+            latency.put(operations[i], new ConcurrentHistogram(HIGHEST_MICROS, 3));
+            serviceTime.put(operations[i], new ConcurrentHistogram(HIGHEST_MICROS, 3));
+            errors.put(operations[i], new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings;
+        try {
+            settings = Settings.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(Settings.USAGE);
+            System.exit(2);
+            return;
+        }
+        StubServer stub = null;
+        if (settings.stub) {
+            StubServer.enableTcpNoDelay();
+            stub = StubServer.builder()
+                .latency(settings.stubMinLatency, settings.stubMaxLatency)
+                .start();
+            settings.urls = List.of(stub.getBaseURL());
+            System.out.println("Started stub server at " + stub.getBaseURL());
+        }
+        try {
+            new LoadGenerator(settings).run();
+        } finally {
+            if (stub != null) {
+                stub.close();
+            }
+        }
+    }
+
+    void run() throws Exception {
+        ClientOptions options = ClientOptions.builder()
+            .bulkhead(Bulkhead.builder().maxConcurrent(settings.concurrency).reservedInteractive(0).build())
+            .build();
+        try (DatabunkerproApi api = new DatabunkerproApi(settings.urls, settings.token, settings.tenant, options)) {
+            Operation.Context context = seed(api);
+            System.out.printf(Locale.ROOT, "Running %s loop: concurrency %d, %s, warmup %ds, duration %ds%n",
+                settings.open ? "open" : "closed", settings.concurrency,
+                settings.rate > 0 ? settings.rate + " ops/s target" : "unpaced",
+                settings.warmup.getSeconds(), settings.duration.getSeconds());
+
+            long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+            long measureStart = start + settings.warmup.toNanos();
+            long end = measureStart + settings.duration.toNanos();
+            AtomicLong ticket = new AtomicLong();
+            List<Thread> workers = new ArrayList<>();
+            for (int i = 0; i < settings.concurrency; i++) {
+                Thread worker = new Thread(() -> work(context, ticket, start, measureStart, end), "loadgen-" + i);
+                worker.setDaemon(true);
+                workers.add(worker);
+                worker.start();
+            }
+            reportProgress(measureStart, end);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            report(TimeUnit.NANOSECONDS.toMillis(end - measureStart) / 1000.0);
+        }
+    }
+
+    private Operation.Context seed(DatabunkerproApi api) throws IOException {
+        System.out.println("Seeding " + settings.seed + " users and tokens...");
+        String unlockuuid = null;
+        if (settings.mix.containsKey(Operation.BULK_LIST)) {
+            unlockuuid = (String) checkStatus("BulkListUnlock", api.bulkListUnlock(null)).get("unlockuuid");
+        }
+        Operation.Context context = new Operation.Context(api, new ArrayList<>(), new ArrayList<>(), unlockuuid);
+        for (int offset = 0; offset < settings.seed; offset += 100) {
+            int size = Math.min(100, settings.seed - offset);
+            @SuppressWarnings("unchecked")
+            Map<String, Object>[] users = new Map[size];
+            @SuppressWarnings("unchecked")
+            Map<String, Object>[] cards = new Map[size];
+            List<String> emails = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Map<String, Object> profile = context.nextProfile();
+                emails.add((String) profile.get("email"));
+                users[i] = new HashMap<>();
+                users[i].put("profile", profile);
+                cards[i] = new HashMap<>();
+                cards[i].put("tokentype", "creditcard");
+                cards[i].put("record", Operation.Context.cardNumber());
+            }
+            checkStatus("UserCreateBulk", api.createUsersBulk(users, null, null));
+            context.emails.addAll(emails);
+            Map<String, Object> created = checkStatus("TokenCreateBulk", api.createTokensBulk(cards, null));
+            for (Object row : (List<?>) created.get("created")) {
+                context.tokens.add((String) ((Map<?, ?>) row).get("tokenuuid"));
+            }
+        }
+        return context;
+    }
+
+    private static Map<String, Object> checkStatus(String endpoint, Map<String, Object> result) {
+        if (!"ok".equals(result.get("status"))) {
+            throw new IllegalStateException(endpoint + " failed while seeding: " + result.get("message"));
+        }
+        return result;
+    }
+
+    private void work(Operation.Context context, AtomicLong ticket, long start, long measureStart, long end) {
+        // Closed-loop workers pace themselves at their share of the target rate
+        long interval = settings.rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / settings.rate) : 0;
+        if (!settings.open) {
+            interval *= settings.concurrency;
+        }
+        long sequence = 0;
+        long next = start;
+        while (true) {
+            long intended;
+            if (settings.open) {
+                intended = start + ticket.getAndIncrement() * interval;
+            } else if (interval > 0) {
+                intended = start + sequence++ * interval;
+            } else {
+                intended = Math.max(next, System.nanoTime());
+            }
+            if (intended >= end) {
+                return;
+            }
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            Operation operation = nextOperation();
+            boolean failed;
+            try {
+                failed = !"ok".equals(operation.execute(context).get("status"));
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+            }
+            long done = System.nanoTime();
+            next = done;
+            if (intended >= measureStart) {
+                latency.get(operation).recordValue(Math.min(HIGHEST_MICROS, TimeUnit.NANOSECONDS.toMicros(done - intended)));
+                serviceTime.get(operation).recordValue(Math.min(HIGHEST_MICROS, TimeUnit.NANOSECONDS.toMicros(done - now)));
+                if (failed) {
+                    errors.get(operation).increment();
+                }
+                completed.increment();
+            }
+        }
+    }
+
+    private Operation nextOperation() {
+        int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private void reportProgress(long measureStart, long end) throws InterruptedException {
+        long last = 0;
+        long reportAt = measureStart + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            long wait = Math.min(reportAt, end) - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            if (System.nanoTime() >= end) {
+                return;
+            }
+            long total = completed.sum();
+            System.out.printf(Locale.ROOT, "  %6.0f ops/s%n", (total - last) / 5.0);
+            last = total;
+            reportAt += TimeUnit.SECONDS.toNanos(5);
+        }
+    }
+
+    private void report(double seconds) {
+        Histogram allLatency = new Histogram(HIGHEST_MICROS, 3);
+        Histogram allService = new Histogram(HIGHEST_MICROS, 3);
+        long allErrors = 0;
+        System.out.println();
+        System.out.printf(Locale.ROOT, "%-12s %9s %8s %9s %9s %9s %9s %9s %9s %11s%n", "operation", "count",
+            "errors", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "svc p99 ms");
+        for (Operation operation : operations) {
+            Histogram operationLatency = latency.get(operation);
+            Histogram operationService = serviceTime.get(operation);
+            long operationErrors = errors.get(operation).sum();
+            line(operation.name, operationLatency, operationService, operationErrors, seconds);
+            allLatency.add(operationLatency);
+            allService.add(operationService);
+            allErrors += operationErrors;
+        }
+        line("total", allLatency, allService, allErrors, seconds);
+        System.out.println();
+        System.out.println(settings.open
+            ? "Latency is measured from each request's scheduled start (corrected for coordinated omission);"
+            : "Latency is measured from each request's scheduled start;");
+        System.out.println("svc is the service time from the actual send to the response.");
+    }
+
+    private static void line(String name, Histogram latency, Histogram service, long errors, double seconds) {
+        System.out.printf(Locale.ROOT, "%-12s %9d %8d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f %11.2f%n", name,
+            latency.getTotalCount(), errors, latency.getTotalCount() / seconds,
+            millis(latency, 50), millis(latency, 90), millis(latency, 99), millis(latency, 99.9),
+            latency.getMaxValue() / 1000.0, millis(service, 99));
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * Command line settings of the load generator
+     */
+    static class Settings {
+        static final String USAGE = String.join("\n",
+            "Usage: LoadGenerator (--url URL[,URL...] --token TOKEN --tenant TENANT | --stub) [options]",
+            "  --stub                     run against an in-process stub server",
+            "  --stub-latency MIN,MAX     stub latency in milliseconds (default 1,5)",
+            "  --mix OP=W,...             operation weights; operations: getUser, createUser, createToken,",
+            "                             getToken, bulkList (default getUser=50,createUser=10,createToken=10,",
+            "                             getToken=25,bulkList=5)",
+            "  --mode open|closed         open loop (default when --rate is set) or closed loop",
+            "  --rate OPS                 target request rate, required for open loop",
+            "  --concurrency N            worker threads and connections (default 32)",
+            "  --duration TIME            measured duration, e.g. 30s or 2m (default 30s)",
+            "  --warmup TIME              unmeasured warmup (default 10s)",
+            "  --seed N                   users and tokens created before the run (default 1000)");
+
+        List<String> urls = new ArrayList<>();
+        String token = "";
+        String tenant;
+        boolean stub;
+        Duration stubMinLatency = Duration.ofMillis(1);
+        Duration stubMaxLatency = Duration.ofMillis(5);
+        Map<Operation, Integer> mix = new LinkedHashMap<>();
+        boolean open;
+        double rate;
+        int concurrency = 32;
+        Duration duration = Duration.ofSeconds(30);
+        Duration warmup = Duration.ofSeconds(10);
+        int seed = 1000;
+
+        static Settings parse(String[] args) {
+            Settings settings = new Settings();
+            String mode = null;
+            String mix = "getUser=50,createUser=10,createToken=10,getToken=25,bulkList=5";
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("--stub".equals(arg)) {
+                    settings.stub = true;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--url":
+                        settings.urls = Arrays.asList(value.split(","));
+                        break;
+                    case "--token":
+                        settings.token = value;
+                        break;
+                    case "--tenant":
+                        settings.tenant = value;
+                        break;
+                    case "--stub-latency":
+                        String[] range = value.split(",");
+                        settings.stubMinLatency = Duration.ofMillis(Long.parseLong(range[0].trim()));
+                        settings.stubMaxLatency = Duration.ofMillis(Long.parseLong(range[range.length - 1].trim()));
+                        break;
+                    case "--mix":
+                        mix = value;
+                        break;
+                    case "--mode":
+                        mode = value;
+                        break;
+                    case "--rate":
+                        settings.rate = Double.parseDouble(value);
+                        break;
+                    case "--concurrency":
+                        settings.concurrency = Integer.parseInt(value);
+                        break;
+                    case "--duration":
+                        settings.duration = parseDuration(value);
+                        break;
+                    case "--warmup":
+                        settings.warmup = parseDuration(value);
+                        break;
+                    case "--seed":
+                        settings.seed = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            for (String entry : mix.split(",")) {
+                String[] parts = entry.split("=");
+                int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+                if (weight > 0) {
+                    settings.mix.put(Operation.byName(parts[0].trim()), weight);
+                }
+            }
+            if (settings.mix.isEmpty()) {
+                throw new IllegalArgumentException("The mix must contain at least one operation");
+            }
+            settings.open = mode != null ? "open".equals(mode) : settings.rate > 0;
+            if (settings.open && settings.rate <= 0) {
+                throw new IllegalArgumentException("Open loop needs a --rate");
+            }
+            if (!settings.stub && settings.urls.isEmpty()) {
+                throw new IllegalArgumentException("Either --url or --stub is required");
+            }
+            if (settings.seed < 1 || settings.concurrency < 1) {
+                throw new IllegalArgumentException("--seed and --concurrency must be at least 1");
+            }
+            return settings;
+        }
+
+        static Duration parseDuration(String value) {
+            String number = value.replaceAll("[a-z]+$", "");
+            String unit = value.substring(number.length());
+            long amount = Long.parseLong(number);
+            switch (unit) {
+                case "ms":
+                    return Duration.ofMillis(amount);
+                case "":
+                case "s":
+                    return Duration.ofSeconds(amount);
+                case "m":
+                    return Duration.ofMinutes(amount);
+                default:
+                    throw new IllegalArgumentException("Unknown duration unit in " + value);
+            }
+        }
+    }
+}
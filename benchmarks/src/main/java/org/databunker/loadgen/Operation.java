@@ -0,0 +1,109 @@
+package org.databunker.loadgen;
+
+import org.databunker.DatabunkerproApi;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client calls the load generator can mix
+ */
+enum Operation {
+    GET_USER("getUser") {
+        @Override
+        Map<String, Object> execute(Context context) throws IOException {
+            return context.api.getUser("email", context.randomEmail(), null);
+        }
+    },
+    CREATE_USER("createUser") {
+        @Override
+        Map<String, Object> execute(Context context) throws IOException {
+            return context.api.createUser(context.nextProfile(), null, null);
+        }
+    },
+    CREATE_TOKEN("createToken") {
+        @Override
+        Map<String, Object> execute(Context context) throws IOException {
+            return context.api.createToken("creditcard", Context.cardNumber(), null);
+        }
+    },
+    GET_TOKEN("getToken") {
+        @Override
+        Map<String, Object> execute(Context context) throws IOException {
+            return context.api.getToken(context.randomToken(), null);
+        }
+    },
+    BULK_LIST("bulkList") {
+        @Override
+        Map<String, Object> execute(Context context) throws IOException {
+            int offset = ThreadLocalRandom.current().nextInt(Math.max(1, context.emails.size() - 100));
+            return context.api.bulkListAllUsers(context.unlockuuid, offset, 100, null);
+        }
+    };
+
+    final String name;
+
+    Operation(String name) {
+        this.name = name;
+    }
+
+    abstract Map<String, Object> execute(Context context) throws IOException;
+
+    static Operation byName(String name) {
+        for (Operation operation : values()) {
+            if (operation.name.equalsIgnoreCase(name)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation: " + name);
+    }
+
+    /**
+     * Client and seeded data shared by all workers
+     */
+    static class Context {
+        final DatabunkerproApi api;
+        final List<String> emails;
+        final List<String> tokens;
+        final String unlockuuid;
+        private final AtomicLong sequence = new AtomicLong();
+        private final String runId = Long.toString(System.currentTimeMillis(), 36);
+
+        Context(DatabunkerproApi api, List<String> emails, List<String> tokens, String unlockuuid) {
+            this.api = api;
+            this.emails = emails;
+            this.tokens = tokens;
+            this.unlockuuid = unlockuuid;
+        }
+
+        Map<String, Object> nextProfile() {
+            long n = sequence.incrementAndGet();
+            Map<String, Object> profile = new HashMap<>();
+            profile.put("email", "loadgen-" + runId + "-" + n + "@example.com");
+            profile.put("name", "Load Test User");
+            profile.put("phone", "+1" + (4150000000L + n));
+            return profile;
+        }
+
+        String randomEmail() {
+            return emails.get(ThreadLocalRandom.current().nextInt(emails.size()));
+        }
+
+        String randomToken() {
+            return tokens.get(ThreadLocalRandom.current().nextInt(tokens.size()));
+        }
+
+        static String cardNumber() {
+            StringBuilder number = new StringBuilder("4");
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < 15; i++) {
+                number.append((char) ('0' + random.nextInt(10)));
+            }
+            return number.toString();
+        }
+    }
+}
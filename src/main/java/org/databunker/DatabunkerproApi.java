@@ -11,6 +11,11 @@ import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.util.Timeout;
 import org.databunker.options.BasicOptions;
 import org.databunker.options.UserOptions;
 import org.databunker.options.SharedRecordOptions;
@@ -25,23 +30,66 @@ import org.databunker.options.RoleOptions;
 import org.databunker.options.TokenOptions;
 import org.databunker.options.PolicyOptions;
 import org.databunker.options.PatchOperation;
+import org.databunker.options.PatchDiff;
 import org.databunker.options.FileOptions;
 import org.databunker.options.OptionsConverter;
+import org.databunker.options.ClientOptions;
+import org.databunker.bulk.PagePublisher;
+import org.databunker.bulk.UnlockProvider;
+import org.databunker.cluster.LoadBalancingPolicy;
+import org.databunker.cluster.Node;
+import org.databunker.cluster.NodePool;
+import org.databunker.resilience.Bulkhead;
+import org.databunker.resilience.Deadline;
+import org.databunker.resilience.DeadlineExceededException;
+import org.databunker.resilience.EndpointClass;
+import org.databunker.resilience.HedgingPolicy;
+import org.databunker.resilience.IdempotencyPolicy;
+import org.databunker.resilience.Priority;
+import org.databunker.resilience.RateLimiterRegistry;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Java client for DatabunkerPro API
  */
 public class DatabunkerproApi implements AutoCloseable {
-    private final String baseURL;
+    private final NodePool nodes;
     private final String xBunkerToken;
     private final String xBunkerTenant;
     private final ObjectMapper objectMapper;
-    private final CloseableHttpClient httpClient;
+    private final RateLimiterRegistry rateLimiters;
+    private final Bulkhead bulkhead;
+    private final Duration connectionRequestTimeout;
+    private final Duration responseTimeout;
+    private final Duration requestTimeout;
+    private final Deadline deadline;
+    private final Priority priority;
+    private final HedgingPolicy hedging;
+    private final IdempotencyPolicy idempotency;
+    private final ExecutorService attemptExecutor;
+    private final ExecutorService listingExecutor;
+    private final UnlockProvider unlockProvider;
+    private final List<MutationListener> mutationListeners;
+    private final boolean ownsHttpClient;
 
     /**
      * Creates a new instance of DatabunkerproApi
@@ -51,11 +99,221 @@ public class DatabunkerproApi implements AutoCloseable {
      * @param xBunkerTenant The X-Bunker-Tenant for multi-tenancy
      */
     public DatabunkerproApi(String baseURL, String xBunkerToken, String xBunkerTenant) {
-        this.baseURL = baseURL;
+        this(baseURL, xBunkerToken, xBunkerTenant, null);
+    }
+
+    /**
+     * Creates a new instance of DatabunkerproApi with client-wide options
+     *
+     * @param baseURL       The base URL of the DatabunkerPro API
+     * @param xBunkerToken  The X-Bunker-Token for authentication
+     * @param xBunkerTenant The X-Bunker-Tenant for multi-tenancy
+     * @param options       Client options such as rate limits and timeouts (can be null)
+     */
+    public DatabunkerproApi(String baseURL, String xBunkerToken, String xBunkerTenant, ClientOptions options) {
+        this(Collections.singletonList(baseURL), xBunkerToken, xBunkerTenant, options);
+    }
+
+    /**
+     * Creates a new instance of DatabunkerproApi that balances requests across several nodes
+     *
+     * @param baseURLs      The base URLs of the DatabunkerPro nodes
+     * @param xBunkerToken  The X-Bunker-Token for authentication
+     * @param xBunkerTenant The X-Bunker-Tenant for multi-tenancy
+     */
+    public DatabunkerproApi(List<String> baseURLs, String xBunkerToken, String xBunkerTenant) {
+        this(baseURLs, xBunkerToken, xBunkerTenant, null);
+    }
+
+    /**
+     * Creates a new instance of DatabunkerproApi that balances requests across several nodes.
+     * Every node gets its own connection pool; balancing, ejection and health checks are set
+     * with {@link ClientOptions.Builder#loadBalancing(LoadBalancingPolicy)}.
+     *
+     * @param baseURLs      The base URLs of the DatabunkerPro nodes
+     * @param xBunkerToken  The X-Bunker-Token for authentication
+     * @param xBunkerTenant The X-Bunker-Tenant for multi-tenancy
+     * @param options       Client options such as rate limits and timeouts (can be null)
+     */
+    public DatabunkerproApi(List<String> baseURLs, String xBunkerToken, String xBunkerTenant, ClientOptions options) {
+        if (options == null) {
+            options = ClientOptions.builder().build();
+        }
         this.xBunkerToken = xBunkerToken;
         this.xBunkerTenant = xBunkerTenant;
         this.objectMapper = new ObjectMapper();
-        this.httpClient = HttpClients.createDefault();
+        this.rateLimiters = options.getRateLimiters();
+        this.bulkhead = options.getBulkhead();
+        this.connectionRequestTimeout = options.getConnectionRequestTimeout();
+        this.responseTimeout = options.getResponseTimeout();
+        this.requestTimeout = options.getRequestTimeout();
+
+        LoadBalancingPolicy loadBalancing = options.getLoadBalancing() != null
+            ? options.getLoadBalancing() : LoadBalancingPolicy.builder().build();
+        List<Node> nodeList = new ArrayList<>(baseURLs.size());
+        for (String baseURL : baseURLs) {
+            CloseableHttpClient httpClient = options.getHttpClient() != null
+                ? options.getHttpClient() : createHttpClient(options);
+            nodeList.add(new Node(baseURL, httpClient, loadBalancing));
+        }
+        this.nodes = new NodePool(nodeList, loadBalancing);
+        this.hedging = options.getHedging();
+        this.idempotency = options.getIdempotency();
+        this.attemptExecutor = hedging != null
+            ? VirtualThreads.newThreadPerTaskExecutor("databunkerpro-attempt", options.isVirtualThreads()) : null;
+        this.listingExecutor = VirtualThreads.newThreadPerTaskExecutor("databunkerpro-listing", options.isVirtualThreads());
+        this.unlockProvider = UnlockProvider.builder(this).build();
+        this.mutationListeners = new CopyOnWriteArrayList<>();
+        this.deadline = null;
+        this.priority = null;
+        this.ownsHttpClient = true;
+    }
+
+    private static CloseableHttpClient createHttpClient(ClientOptions options) {
+        PoolingHttpClientConnectionManagerBuilder connectionManager = PoolingHttpClientConnectionManagerBuilder.create();
+        if (options.getConnectTimeout() != null) {
+            connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(toTimeout(options.getConnectTimeout().toNanos()))
+                .build());
+        }
+        if (options.getBulkhead() != null) {
+            // Every request admitted by the bulkhead must be able to get a connection
+            connectionManager.setMaxConnTotal(options.getBulkhead().getMaxConcurrent());
+            connectionManager.setMaxConnPerRoute(options.getBulkhead().getMaxConcurrent());
+        }
+        RequestConfig.Builder requestConfig = RequestConfig.custom();
+        if (options.getConnectionRequestTimeout() != null) {
+            requestConfig.setConnectionRequestTimeout(toTimeout(options.getConnectionRequestTimeout().toNanos()));
+        }
+        if (options.getResponseTimeout() != null) {
+            requestConfig.setResponseTimeout(toTimeout(options.getResponseTimeout().toNanos()));
+        }
+        return HttpClients.custom()
+            .setConnectionManager(connectionManager.build())
+            .setDefaultRequestConfig(requestConfig.build())
+            .build();
+    }
+
+    /**
+     * Creates a view of another client that shares its connection pool and limits
+     */
+    private DatabunkerproApi(DatabunkerproApi parent, Priority priority, Duration requestTimeout, Deadline deadline) {
+        this(parent, parent.xBunkerToken, parent.xBunkerTenant, parent.unlockProvider, priority, requestTimeout, deadline);
+    }
+
+    /**
+     * Creates a view of another client for a different tenant; a null unlock provider gives the
+     * view its own, because unlock UUIDs are issued per tenant
+     */
+    private DatabunkerproApi(DatabunkerproApi parent, String xBunkerToken, String xBunkerTenant,
+                             UnlockProvider unlockProvider, Priority priority, Duration requestTimeout,
+                             Deadline deadline) {
+        this.nodes = parent.nodes;
+        this.xBunkerToken = xBunkerToken;
+        this.xBunkerTenant = xBunkerTenant;
+        this.objectMapper = parent.objectMapper;
+        this.rateLimiters = parent.rateLimiters;
+        this.bulkhead = parent.bulkhead;
+        this.connectionRequestTimeout = parent.connectionRequestTimeout;
+        this.responseTimeout = parent.responseTimeout;
+        this.requestTimeout = requestTimeout;
+        this.hedging = parent.hedging;
+        this.idempotency = parent.idempotency;
+        this.attemptExecutor = parent.attemptExecutor;
+        this.listingExecutor = parent.listingExecutor;
+        this.unlockProvider = unlockProvider != null ? unlockProvider : UnlockProvider.builder(this).build();
+        this.mutationListeners = parent.mutationListeners;
+        this.deadline = deadline;
+        this.priority = priority;
+        this.ownsHttpClient = false;
+    }
+
+    /**
+     * Returns a view of this client that sends every request with the given priority class.
+     * The view shares this client's connection pool, bulkhead and rate limiters, and closing
+     * it has no effect. Without a fixed priority, bulk endpoints run as BATCH and all other
+     * endpoints as INTERACTIVE.
+     *
+     * @param priority Priority class for all requests made through the view
+     * @return A client view with a fixed priority
+     */
+    public DatabunkerproApi withPriority(Priority priority) {
+        return new DatabunkerproApi(this, priority, requestTimeout, deadline);
+    }
+
+    /**
+     * Returns a view of this client that gives each call the given time budget. When a call
+     * runs out of budget its HTTP exchange is cancelled and a DeadlineExceededException is thrown.
+     *
+     * @param requestTimeout Time budget of each call made through the view
+     * @return A client view with a per-call timeout
+     */
+    public DatabunkerproApi withTimeout(Duration requestTimeout) {
+        return new DatabunkerproApi(this, priority, requestTimeout, deadline);
+    }
+
+    /**
+     * Returns a view of this client whose calls must all complete before a fixed deadline.
+     * Use one view for all attempts of a logical operation, e.g. a retry loop on another
+     * thread, so that later attempts only get the budget that is left.
+     *
+     * @param deadline Deadline shared by all calls made through the view
+     * @return A client view bound to the deadline
+     */
+    public DatabunkerproApi withDeadline(Deadline deadline) {
+        return new DatabunkerproApi(this, priority, requestTimeout, deadline);
+    }
+
+    /**
+     * Returns a view of this client that acts as another tenant. The view shares this client's
+     * nodes, connection pools, bulkhead, rate limiters, hedging and ObjectMapper, and sends the
+     * tenant's headers with each request, so serving many tenants costs no extra sockets.
+     * Closing the view has no effect.
+     *
+     * @param xBunkerTenant The X-Bunker-Tenant of the tenant
+     * @param xBunkerToken  The X-Bunker-Token to use for the tenant
+     * @return A client view for the tenant
+     */
+    public DatabunkerproApi forTenant(String xBunkerTenant, String xBunkerToken) {
+        return new DatabunkerproApi(this, xBunkerToken, xBunkerTenant, null, priority, requestTimeout, deadline);
+    }
+
+    /**
+     * Returns a view of this client that acts as another tenant with this client's token, e.g.
+     * an admin token that is valid for all tenants
+     *
+     * @param xBunkerTenant The X-Bunker-Tenant of the tenant
+     * @return A client view for the tenant
+     * @see #forTenant(String, String)
+     */
+    public DatabunkerproApi forTenant(String xBunkerTenant) {
+        return forTenant(xBunkerTenant, xBunkerToken);
+    }
+
+    /**
+     * Registers a listener that is notified after every request that can change data. The
+     * listener is shared with all views of this client, including views for other tenants.
+     *
+     * @param listener The listener
+     */
+    public void addMutationListener(MutationListener listener) {
+        mutationListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener registered with {@link #addMutationListener}
+     *
+     * @param listener The listener
+     */
+    public void removeMutationListener(MutationListener listener) {
+        mutationListeners.remove(listener);
+    }
+
+    /**
+     * @return The X-Bunker-Tenant this client sends, or null
+     */
+    public String getTenantName() {
+        return xBunkerTenant;
     }
 
     /**
@@ -68,7 +326,263 @@ public class DatabunkerproApi implements AutoCloseable {
      * @throws IOException If an I/O error occurs
      */
     private Map<String, Object> makeRequest(String endpoint, Map<String, Object> data, Map<String, Object> requestMetadata) throws IOException {
-        String url = baseURL + "/v2/" + endpoint;
+        Deadline callDeadline = deadline;
+        if (requestTimeout != null) {
+            callDeadline = Deadline.after(requestTimeout).min(deadline);
+        }
+
+        // Serialize once, so that hedged attempts share the same body
+        String body = null;
+        if (data != null || requestMetadata != null) {
+            Map<String, Object> bodyData = data != null ? data : new HashMap<>();
+            if (requestMetadata != null) {
+                bodyData.put("request_metadata", requestMetadata);
+            }
+            body = objectMapper.writeValueAsString(bodyData);
+        }
+
+        Map<String, Object> result;
+        try {
+            result = idempotency != null && idempotency.isIdempotent(endpoint)
+                ? executeIdempotent(endpoint, data, requestMetadata, body, callDeadline)
+                : send(endpoint, body, callDeadline, null);
+        } catch (IOException | RuntimeException e) {
+            // A request that timed out or lost its response may still have been applied
+            notifyMutation(endpoint, data, null);
+            throw e;
+        }
+        notifyMutation(endpoint, data, result);
+        return result;
+    }
+
+    private void notifyMutation(String endpoint, Map<String, Object> data, Map<String, Object> result) {
+        if (!mutationListeners.isEmpty() && EndpointClass.isMutation(endpoint)) {
+            for (MutationListener listener : mutationListeners) {
+                try {
+                    listener.onMutation(xBunkerTenant, endpoint, data, result);
+                } catch (RuntimeException e) {
+                    // A faulty listener must not fail a request that has already been carried out
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends a create call with an idempotency key, retrying transport failures with the same key.
+     * A call that already succeeded within the dedupe window is answered without sending it.
+     */
+    private Map<String, Object> executeIdempotent(String endpoint, Map<String, Object> data,
+                                                  Map<String, Object> requestMetadata, String body,
+                                                  Deadline callDeadline) throws IOException {
+        IdempotencyPolicy.Call call = idempotency.begin(xBunkerTenant, endpoint, body);
+        if (call.getCompletedResponse() != null) {
+            return call.getCompletedResponse();
+        }
+        // A key the caller chose, e.g. an outbox entry ID, is kept so that it stays the same across restarts
+        Object suppliedKey = requestMetadata != null ? requestMetadata.get(IdempotencyPolicy.METADATA_FIELD) : null;
+        String key = suppliedKey instanceof String ? (String) suppliedKey : call.getKey();
+        // The key goes into a copy, as callers often reuse one metadata map for many calls
+        Map<String, Object> keyedMetadata = requestMetadata != null ? new HashMap<>(requestMetadata) : new HashMap<>();
+        keyedMetadata.put(IdempotencyPolicy.METADATA_FIELD, key);
+        Map<String, Object> bodyData = data != null ? data : new HashMap<>();
+        bodyData.put("request_metadata", keyedMetadata);
+        String keyedBody = objectMapper.writeValueAsString(bodyData);
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Map<String, Object> result = send(endpoint, keyedBody, callDeadline, key);
+                idempotency.complete(call, result);
+                return result;
+            } catch (IOException e) {
+                // Deadline expiry and interruption are final; response timeouts are retried
+                if (e instanceof DeadlineExceededException || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                long backoff = idempotency.backoffNanos(attempt);
+                if (attempt >= idempotency.getMaxAttempts()
+                    || (callDeadline != null && callDeadline.remainingNanos() <= backoff)) {
+                    throw e;
+                }
+                idempotency.onRetry();
+                try {
+                    TimeUnit.NANOSECONDS.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while retrying " + endpoint);
+                }
+            }
+        }
+    }
+
+    private Map<String, Object> send(String endpoint, String body, Deadline callDeadline,
+                                     String idempotencyKey) throws IOException {
+        if (rateLimiters != null) {
+            rateLimiters.acquire(xBunkerTenant, endpoint, callDeadline);
+        }
+        Priority requestPriority = priority != null ? priority : Priority.of(endpoint);
+        if (bulkhead != null) {
+            bulkhead.acquire(requestPriority, callDeadline);
+        }
+        try {
+            if (hedging != null && hedging.isHedged(endpoint)) {
+                return executeHedged(endpoint, body, callDeadline, requestPriority, idempotencyKey);
+            }
+            return executeRequest(nodes.select(null), endpoint, body, callDeadline, null, idempotencyKey);
+        } finally {
+            if (bulkhead != null) {
+                bulkhead.release(requestPriority);
+            }
+        }
+    }
+
+    /**
+     * Sends a request and, if it has not answered within the hedging delay, an identical second
+     * request to another node where there is one. The first successful answer wins. A losing
+     * hedge is cancelled; a losing primary is left to finish, so that the hedging delay follows
+     * the primary's own latency rather than that of the faster attempt.
+     */
+    private Map<String, Object> executeHedged(String endpoint, String body, Deadline callDeadline,
+                                              Priority requestPriority, String idempotencyKey) throws IOException {
+        hedging.onRequest();
+        long start = System.nanoTime();
+        AtomicReference<Cancellable> primaryExchange = new AtomicReference<>();
+        Node primaryNode = nodes.select(null);
+        CompletableFuture<Map<String, Object>> primary = submitAttempt(primaryNode, endpoint, body, callDeadline, primaryExchange,
+            idempotencyKey);
+        primary.whenComplete((result, error) -> {
+            if (error == null) {
+                hedging.recordLatency(endpoint, System.nanoTime() - start);
+            }
+        });
+        try {
+            return primary.get(hedging.delayNanos(endpoint), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Fall through and hedge
+        } catch (ExecutionException e) {
+            throw attemptFailure(e);
+        } catch (InterruptedException e) {
+            cancelExchange(primaryExchange);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + endpoint);
+        }
+
+        if (!acquireHedgeCapacity(endpoint, requestPriority)) {
+            return awaitAttempt(primary, endpoint, primaryExchange, null);
+        }
+        AtomicReference<Cancellable> hedgeExchange = new AtomicReference<>();
+        CompletableFuture<Map<String, Object>> hedge = submitAttempt(nodes.select(primaryNode), endpoint, body,
+            callDeadline, hedgeExchange, idempotencyKey);
+        if (bulkhead != null) {
+            hedge.whenComplete((result, error) -> bulkhead.release(requestPriority));
+        }
+
+        CompletableFuture<Map<String, Object>> first = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicReference<Map<String, Object>> errorResponse = new AtomicReference<>();
+        primary.whenComplete((result, error) -> completeFirst(first, result, error, failures, errorResponse, false));
+        hedge.whenComplete((result, error) -> completeFirst(first, result, error, failures, errorResponse, true));
+        return awaitAttempt(first, endpoint, primaryExchange, hedgeExchange);
+    }
+
+    private boolean acquireHedgeCapacity(String endpoint, Priority requestPriority) {
+        // Whatever was taken is given back if a later step refuses, as no hedge is sent then
+        if (!hedging.tryAcquireHedge()) {
+            return false;
+        }
+        if (rateLimiters != null && !rateLimiters.tryAcquire(xBunkerTenant, endpoint)) {
+            hedging.releaseHedge();
+            return false;
+        }
+        if (bulkhead != null && !bulkhead.tryAcquire(requestPriority)) {
+            if (rateLimiters != null) {
+                rateLimiters.release(xBunkerTenant, endpoint);
+            }
+            hedging.releaseHedge();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Completes the race with the first "ok" answer. If neither attempt answers "ok", the race
+     * completes with the last one to finish, an error response before an exception.
+     */
+    private void completeFirst(CompletableFuture<Map<String, Object>> first, Map<String, Object> result,
+                               Throwable error, AtomicInteger failures, AtomicReference<Map<String, Object>> errorResponse,
+                               boolean isHedge) {
+        if (error != null || !"ok".equals(result.get("status"))) {
+            if (error == null) {
+                errorResponse.set(result);
+            }
+            if (failures.incrementAndGet() == 2) {
+                Map<String, Object> response = errorResponse.get();
+                if (response != null) {
+                    first.complete(response);
+                } else {
+                    first.completeExceptionally(error);
+                }
+            }
+            return;
+        }
+        // Claim the win before completing, so the counter is set when the caller wakes up
+        if (failures.getAndSet(Integer.MIN_VALUE) >= 0) {
+            if (isHedge) {
+                hedging.onHedgeWon();
+            }
+            first.complete(result);
+        }
+    }
+
+    private Map<String, Object> awaitAttempt(CompletableFuture<Map<String, Object>> attempt, String endpoint,
+                                             AtomicReference<Cancellable> primaryExchange,
+                                             AtomicReference<Cancellable> hedgeExchange) throws IOException {
+        try {
+            return attempt.get();
+        } catch (ExecutionException e) {
+            throw attemptFailure(e);
+        } catch (InterruptedException e) {
+            cancelExchange(primaryExchange);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + endpoint);
+        } finally {
+            cancelExchange(hedgeExchange);
+        }
+    }
+
+    private CompletableFuture<Map<String, Object>> submitAttempt(Node node, String endpoint, String body,
+                                                                 Deadline callDeadline,
+                                                                 AtomicReference<Cancellable> exchange,
+                                                                 String idempotencyKey) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return executeRequest(node, endpoint, body, callDeadline, exchange, idempotencyKey);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, attemptExecutor);
+    }
+
+    private static IOException attemptFailure(ExecutionException e) {
+        Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException("API request failed", cause);
+    }
+
+    private static void cancelExchange(AtomicReference<Cancellable> exchange) {
+        if (exchange != null) {
+            Cancellable cancellable = exchange.get();
+            if (cancellable != null) {
+                cancellable.cancel();
+            }
+        }
+    }
+
+    private Map<String, Object> executeRequest(Node node, String endpoint, String body, Deadline callDeadline,
+                                               AtomicReference<Cancellable> exchange,
+                                               String idempotencyKey) throws IOException {
+        String url = node.getBaseURL() + "/v2/" + endpoint;
         HttpPost request = new HttpPost(url);
 
         // Set headers
@@ -79,25 +593,35 @@ public class DatabunkerproApi implements AutoCloseable {
         if (xBunkerTenant != null && !xBunkerTenant.isEmpty()) {
             request.setHeader("X-Bunker-Tenant", xBunkerTenant);
         }
+        if (idempotencyKey != null) {
+            request.setHeader(IdempotencyPolicy.HEADER, idempotencyKey);
+        }
 
         // Set request body if needed
-        if (data != null || requestMetadata != null) {
-            Map<String, Object> bodyData = data != null ? data : new HashMap<>();
-            if (requestMetadata != null) {
-                bodyData.put("request_metadata", requestMetadata);
-            }
-            StringEntity entity = new StringEntity(objectMapper.writeValueAsString(bodyData), ContentType.APPLICATION_JSON);
-            request.setEntity(entity);
+        if (body != null) {
+            request.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+        }
+        if (exchange != null) {
+            exchange.set(request);
         }
 
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
+        ScheduledFuture<?> cancelTimer = null;
+        if (callDeadline != null) {
+            request.setConfig(deadlineRequestConfig(endpoint, callDeadline));
+            cancelTimer = callDeadline.onExpiry(request::cancel);
+        }
+
+        int status = -1;
+        node.onRequestStart();
+        try (CloseableHttpResponse response = node.getHttpClient().execute(request)) {
+            status = response.getCode();
             HttpEntity entity = response.getEntity();
             String responseString = EntityUtils.toString(entity);
             Map<String, Object> result = objectMapper.readValue(responseString, Map.class);
 
             if (response.getCode() < 200 || response.getCode() >= 300) {
                 if (result.containsKey("status")) {
-                    return result;
+                    return new ErrorResponse(result, response.getCode());
                 } else {
                     throw new IOException(result.containsKey("message") ? 
                         (String) result.get("message") : "API request failed");
@@ -106,11 +630,49 @@ public class DatabunkerproApi implements AutoCloseable {
 
             return result;
         } catch (Exception error) {
-            System.err.println("Error making request: " + error.getMessage());
+            if (callDeadline != null && callDeadline.isExpired()) {
+                throw new DeadlineExceededException("Deadline exceeded for " + endpoint, error);
+            }
+            if (!request.isCancelled()) {
+                System.err.println("Error making request: " + error.getMessage());
+            }
             throw new IOException("API request failed", error);
+        } finally {
+            if (cancelTimer != null) {
+                cancelTimer.cancel(false);
+            }
+            if (status >= 500) {
+                node.onFailure();
+            } else if (status >= 0) {
+                node.onSuccess();
+            } else if (request.isCancelled() || (callDeadline != null && callDeadline.isExpired())) {
+                node.onAbandoned();
+            } else {
+                node.onFailure();
+            }
         }
     }
 
+    /**
+     * Clamps the lease and response timeouts of a request to the time left before its deadline
+     */
+    private RequestConfig deadlineRequestConfig(String endpoint, Deadline callDeadline) throws IOException {
+        long remaining = callDeadline.remainingNanos();
+        if (remaining <= 0) {
+            throw new DeadlineExceededException("Deadline exceeded for " + endpoint);
+        }
+        long lease = connectionRequestTimeout != null ? Math.min(connectionRequestTimeout.toNanos(), remaining) : remaining;
+        long read = responseTimeout != null ? Math.min(responseTimeout.toNanos(), remaining) : remaining;
+        return RequestConfig.custom()
+            .setConnectionRequestTimeout(toTimeout(lease))
+            .setResponseTimeout(toTimeout(read))
+            .build();
+    }
+
+    private static Timeout toTimeout(long nanos) {
+        return Timeout.ofMilliseconds(Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos)));
+    }
+
     /**
      * Makes a raw request to the DatabunkerPro API and returns the response as a byte array
      *
@@ -121,7 +683,8 @@ public class DatabunkerproApi implements AutoCloseable {
      * @throws IOException If an I/O error occurs
      */
     private byte[] rawRequest(String endpoint, Map<String, Object> data, Map<String, Object> requestMetadata) throws IOException {
-        String url = baseURL + "/v2/" + endpoint;
+        Node node = nodes.select(null);
+        String url = node.getBaseURL() + "/v2/" + endpoint;
         HttpPost request = new HttpPost(url);
 
         // Set headers
@@ -140,7 +703,7 @@ public class DatabunkerproApi implements AutoCloseable {
             request.setEntity(entity);
         }
 
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
+        try (CloseableHttpResponse response = node.getHttpClient().execute(request)) {
             HttpEntity entity = response.getEntity();
             return EntityUtils.toByteArray(entity);
         } catch (Exception error) {
@@ -164,26 +727,12 @@ public class DatabunkerproApi implements AutoCloseable {
         data.put("profile", profile);
         if (options != null) {
             if (options.getGroupname() != null) {
-                Object groupname = options.getGroupname();
-                if (groupname instanceof Number) {
-                    data.put("groupid", groupname);
-                } else if (groupname instanceof String && ((String) groupname).matches("\\d+")) {
-                    data.put("groupid", Integer.parseInt((String) groupname));
-                } else {
-                    data.put("groupname", groupname);
-                }
+                Ref.put(data, "groupid", "groupname", options.getGroupname());
             } else if (options.getGroupid() != null) {
                 data.put("groupid", options.getGroupid());
             }
             if (options.getRolename() != null) {
-                Object rolename = options.getRolename();
-                if (rolename instanceof Number) {
-                    data.put("roleid", rolename);
-                } else if (rolename instanceof String && ((String) rolename).matches("\\d+")) {
-                    data.put("roleid", Integer.parseInt((String) rolename));
-                } else {
-                    data.put("rolename", rolename);
-                }
+                Ref.put(data, "roleid", "rolename", options.getRolename());
             } else if (options.getRoleid() != null) {
                 data.put("roleid", options.getRoleid());
             }
@@ -290,6 +839,83 @@ public class DatabunkerproApi implements AutoCloseable {
         return makeRequest("UserPatchRequest", data, requestMetadata);
     }
 
+    /**
+     * HTTP status of an error response. Error responses are returned as results rather than
+     * thrown, so callers that need to tell a missing record (404) from an overloaded or
+     * unavailable server (429, 5xx) look at the status here.
+     *
+     * @param response A response returned by this client
+     * @return The HTTP status code, or -1 if the response was not an HTTP error
+     */
+    public static int httpStatus(Map<String, Object> response) {
+        return response instanceof ErrorResponse ? ((ErrorResponse) response).httpStatus : -1;
+    }
+
+    /**
+     * Body of a non-2xx response, which keeps the HTTP status for {@link #httpStatus(Map)}
+     */
+    private static final class ErrorResponse extends HashMap<String, Object> {
+        private static final long serialVersionUID = 1L;
+        private final int httpStatus;
+
+        ErrorResponse(Map<String, Object> body, int httpStatus) {
+            super(body);
+            this.httpStatus = httpStatus;
+        }
+    }
+
+    /**
+     * Updates a user from its current and desired profile, sending the smaller of a JSON Patch
+     * of the changes (UserPatch) and the full profile (UserUpdate); see {@link PatchDiff#plan}.
+     * Nothing is sent if the profiles are equal.
+     *
+     * @param mode            User identification mode
+     * @param identity        User's identifier
+     * @param current         The user's current profile
+     * @param profile         The desired profile
+     * @param requestMetadata Optional request metadata
+     * @return The update result, or {@code {"status":"ok"}} if nothing changed
+     * @throws IOException If an I/O error occurs
+     */
+    public Map<String, Object> updateUserDiff(String mode, String identity, Map<String, Object> current, Map<String, Object> profile, Map<String, Object> requestMetadata) throws IOException {
+        PatchDiff.Plan plan = PatchDiff.plan(current, profile);
+        if (plan.isEmpty()) {
+            return unchanged();
+        }
+        return plan.isPatch()
+            ? patchUser(mode, identity, plan.getPatch(), requestMetadata)
+            : updateUser(mode, identity, profile, requestMetadata);
+    }
+
+    /**
+     * Requests a user update from its current and desired profile, sending the smaller of a
+     * JSON Patch of the changes (UserPatchRequest) and the full profile (UserUpdateRequest).
+     * Nothing is sent if the profiles are equal.
+     *
+     * @param mode            User identification mode
+     * @param identity        User's identifier
+     * @param current         The user's current profile
+     * @param profile         The desired profile
+     * @param requestMetadata Optional request metadata
+     * @return The request result, or {@code {"status":"ok"}} if nothing changed
+     * @throws IOException If an I/O error occurs
+     */
+    public Map<String, Object> requestUserUpdateDiff(String mode, String identity, Map<String, Object> current, Map<String, Object> profile, Map<String, Object> requestMetadata) throws IOException {
+        PatchDiff.Plan plan = PatchDiff.plan(current, profile);
+        if (plan.isEmpty()) {
+            return unchanged();
+        }
+        return plan.isPatch()
+            ? requestUserPatch(mode, identity, plan.getPatch(), requestMetadata)
+            : requestUserUpdate(mode, identity, profile, requestMetadata);
+    }
+
+    private static Map<String, Object> unchanged() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("status", "ok");
+        return result;
+    }
+
     public Map<String, Object> deleteUser(String mode, String identity, Map<String, Object> requestMetadata) throws IOException {
         Map<String, Object> data = new HashMap<>();
         data.put("mode", mode);
@@ -386,11 +1012,7 @@ public class DatabunkerproApi implements AutoCloseable {
         if (options != null) {
             data.putAll(OptionsConverter.toMap(options));
         }
-        if (roleref.matches("\\d+")) {
-            data.put("roleid", Integer.parseInt(roleref));
-        } else {
-            data.put("rolename", roleref);
-        }
+        Ref.put(data, "roleid", "rolename", roleref);
         return makeRequest("XTokenCreateForRole", data, requestMetadata);
     }
 
@@ -926,11 +1548,7 @@ public class DatabunkerproApi implements AutoCloseable {
 
     public Map<String, Object> getGroup(String groupref, Map<String, Object> requestMetadata) throws IOException {
         Map<String, Object> data = new HashMap<>();
-        if (groupref.matches("\\d+")) {
-            data.put("groupid", Integer.parseInt(groupref));
-        } else {
-            data.put("groupname", groupref);
-        }
+        Ref.put(data, "groupid", "groupname", groupref);
         return makeRequest("GroupGet", data, requestMetadata);
     }
 
@@ -965,11 +1583,7 @@ public class DatabunkerproApi implements AutoCloseable {
 
     public Map<String, Object> deleteGroup(String groupref, Map<String, Object> requestMetadata) throws IOException {
         Map<String, Object> data = new HashMap<>();
-        if (groupref.matches("\\d+")) {
-            data.put("groupid", Integer.parseInt(groupref));
-        } else {
-            data.put("groupname", groupref);
-        }
+        Ref.put(data, "groupid", "groupname", groupref);
         return makeRequest("GroupDelete", data, requestMetadata);
     }
 
@@ -977,11 +1591,7 @@ public class DatabunkerproApi implements AutoCloseable {
         Map<String, Object> data = new HashMap<>();
         data.put("mode", mode);
         data.put("identity", identity);
-        if (groupref.matches("\\d+")) {
-            data.put("groupid", Integer.parseInt(groupref));
-        } else {
-            data.put("groupname", groupref);
-        }
+        Ref.put(data, "groupid", "groupname", groupref);
         return makeRequest("GroupDeleteUser", data, requestMetadata);
     }
 
@@ -989,17 +1599,9 @@ public class DatabunkerproApi implements AutoCloseable {
         Map<String, Object> data = new HashMap<>();
         data.put("mode", mode);
         data.put("identity", identity);
-        if (groupref.matches("\\d+")) {
-            data.put("groupid", Integer.parseInt(groupref));
-        } else {
-            data.put("groupname", groupref);
-        }
+        Ref.put(data, "groupid", "groupname", groupref);
         if (roleref != null) {
-            if (roleref.matches("\\d+")) {
-                data.put("roleid", Integer.parseInt(roleref));
-            } else {
-                data.put("rolename", roleref);
-            }
+            Ref.put(data, "roleid", "rolename", roleref);
         }
         return makeRequest("GroupAddUser", data, requestMetadata);
     }
@@ -1228,16 +1830,8 @@ public class DatabunkerproApi implements AutoCloseable {
 
     public Map<String, Object> linkPolicy(String roleref, String policyref, Map<String, Object> requestMetadata) throws IOException {
         Map<String, Object> data = new HashMap<>();
-        if (roleref.matches("\\d+")) {
-            data.put("roleid", Integer.parseInt(roleref));
-        } else {
-            data.put("rolename", roleref);
-        }
-        if (policyref.matches("\\d+")) {
-            data.put("policyid", Integer.parseInt(policyref));
-        } else {
-            data.put("policyname", policyref);
-        }
+        Ref.put(data, "roleid", "rolename", roleref);
+        Ref.put(data, "policyid", "policyname", policyref);
         return makeRequest("RoleLinkPolicy", data, requestMetadata);
     }
 
@@ -1281,11 +1875,7 @@ public class DatabunkerproApi implements AutoCloseable {
     public Map<String, Object> getPolicy(String policyref, Map<String, Object> requestMetadata) throws IOException {
         Map<String, Object> data = new HashMap<>();
         if (policyref != null) {
-            if (policyref.matches("\\d+")) {
-                data.put("policyid", Integer.parseInt(policyref));
-            } else {
-                data.put("policyname", policyref);
-            }
+            Ref.put(data, "policyid", "policyname", policyref);
         }
         return makeRequest("PolicyGet", data, requestMetadata);
     }
@@ -1295,6 +1885,18 @@ public class DatabunkerproApi implements AutoCloseable {
     }
 
     // Bulk Operations
+
+    /**
+     * Returns the unlock provider shared by this client and its views. Bulk helpers such as
+     * {@code TokenLoader} and {@code ErasureEngine} use it by default, so that one unlock UUID
+     * serves all jobs instead of each job fetching its own.
+     *
+     * @return The shared unlock provider
+     */
+    public UnlockProvider getUnlockProvider() {
+        return unlockProvider;
+    }
+
     public Map<String, Object> bulkListUnlock(Map<String, Object> requestMetadata) throws IOException {
         return makeRequest("BulkListUnlock", null, requestMetadata);
     }
@@ -1365,11 +1967,7 @@ public class DatabunkerproApi implements AutoCloseable {
     public Map<String, Object> bulkListGroupUsers(String unlockuuid, String groupref, int offset, int limit, Map<String, Object> requestMetadata) throws IOException {
         Map<String, Object> data = new HashMap<>();
         data.put("unlockuuid", unlockuuid);
-        if (groupref.matches("\\d+")) {
-            data.put("groupid", Integer.parseInt(groupref));
-        } else {
-            data.put("groupname", groupref);
-        }
+        Ref.put(data, "groupid", "groupname", groupref);
         data.put("offset", offset);
         data.put("limit", limit);
         return makeRequest("BulkListGroupUsers", data, requestMetadata);
@@ -1472,6 +2070,73 @@ public class DatabunkerproApi implements AutoCloseable {
         return bulkListFilesByTag(unlockuuid, tag, 0, 10, requestMetadata);
     }
 
+    /**
+     * Streams all users of the tenant, fetching the next page only on subscriber demand
+     *
+     * @param unlockuuid      UUID from bulk list unlock
+     * @param pageSize        Rows fetched per request
+     * @param requestMetadata Optional request metadata
+     * @return A publisher of user records; every subscription lists from the start
+     */
+    public Flow.Publisher<Map<String, Object>> bulkListAllUsersPublisher(String unlockuuid, int pageSize, Map<String, Object> requestMetadata) {
+        return new PagePublisher((offset, limit) -> bulkListAllUsers(unlockuuid, offset, limit, requestMetadata),
+            pageSize, listingExecutor);
+    }
+
+    /**
+     * Streams the users of a group, fetching the next page only on subscriber demand
+     *
+     * @param unlockuuid      UUID from bulk list unlock
+     * @param groupref        Group reference (ID or name)
+     * @param pageSize        Rows fetched per request
+     * @param requestMetadata Optional request metadata
+     * @return A publisher of user records; every subscription lists from the start
+     */
+    public Flow.Publisher<Map<String, Object>> bulkListGroupUsersPublisher(String unlockuuid, String groupref, int pageSize, Map<String, Object> requestMetadata) {
+        return new PagePublisher((offset, limit) -> bulkListGroupUsers(unlockuuid, groupref, offset, limit, requestMetadata),
+            pageSize, listingExecutor);
+    }
+
+    /**
+     * Streams all user requests, fetching the next page only on subscriber demand
+     *
+     * @param unlockuuid      UUID from bulk list unlock
+     * @param pageSize        Rows fetched per request
+     * @param requestMetadata Optional request metadata
+     * @return A publisher of user requests; every subscription lists from the start
+     */
+    public Flow.Publisher<Map<String, Object>> bulkListAllUserRequestsPublisher(String unlockuuid, int pageSize, Map<String, Object> requestMetadata) {
+        return new PagePublisher((offset, limit) -> bulkListAllUserRequests(unlockuuid, offset, limit, requestMetadata),
+            pageSize, listingExecutor);
+    }
+
+    /**
+     * Streams all audit events, fetching the next page only on subscriber demand
+     *
+     * @param unlockuuid      UUID from bulk list unlock
+     * @param pageSize        Rows fetched per request
+     * @param requestMetadata Optional request metadata
+     * @return A publisher of audit events; every subscription lists from the start
+     */
+    public Flow.Publisher<Map<String, Object>> bulkListAllAuditEventsPublisher(String unlockuuid, int pageSize, Map<String, Object> requestMetadata) {
+        return new PagePublisher((offset, limit) -> bulkListAllAuditEvents(unlockuuid, offset, limit, requestMetadata),
+            pageSize, listingExecutor);
+    }
+
+    /**
+     * Streams the files carrying a tag, fetching the next page only on subscriber demand
+     *
+     * @param unlockuuid      UUID from bulk list unlock
+     * @param tag             The tag to filter on. A single tag only.
+     * @param pageSize        Rows fetched per request
+     * @param requestMetadata Optional request metadata
+     * @return A publisher of file records; every subscription lists from the start
+     */
+    public Flow.Publisher<Map<String, Object>> bulkListFilesByTagPublisher(String unlockuuid, String tag, int pageSize, Map<String, Object> requestMetadata) {
+        return new PagePublisher((offset, limit) -> bulkListFilesByTag(unlockuuid, tag, offset, limit, requestMetadata),
+            pageSize, listingExecutor);
+    }
+
     public Map<String, Object> bulkListTokens(String unlockuuid, String[] tokens, Map<String, Object> requestMetadata) throws IOException {
         Map<String, Object> data = new HashMap<>();
         data.put("unlockuuid", unlockuuid);
@@ -1595,11 +2260,7 @@ public class DatabunkerproApi implements AutoCloseable {
         data.put("identity", identity);
         data.put("unlockuuid", unlockuuid);
         if (tenantref != null) {
-            if (tenantref.matches("\\d+")) {
-                data.put("tenantid", Integer.parseInt(tenantref));
-            } else {
-                data.put("tenantname", tenantref);
-            }
+            Ref.put(data, "tenantid", "tenantname", tenantref);
         }
         return makeRequest("SystemDeleteUserProfiles", data, requestMetadata);
     }
@@ -1618,11 +2279,7 @@ public class DatabunkerproApi implements AutoCloseable {
         Map<String, Object> data = new HashMap<>();
         data.put("token", token);
         data.put("unlockuuid", unlockuuid);
-        if (tenantref.matches("\\d+")) {
-            data.put("tenantid", Integer.parseInt(tenantref));
-        } else {
-            data.put("tenantname", tenantref);
-        }
+        Ref.put(data, "tenantid", "tenantname", tenantref);
         return makeRequest("SystemRestoreUserProfile", data, requestMetadata);
     }
 
@@ -1683,7 +2340,8 @@ public class DatabunkerproApi implements AutoCloseable {
     }
 
     public Map<String, Object> getSystemMetrics(Map<String, Object> requestMetadata) throws IOException {
-        String url = baseURL + "/metrics";
+        Node node = nodes.select(null);
+        String url = node.getBaseURL() + "/metrics";
         HttpGet request = new HttpGet(url);
 
         // Set headers
@@ -1694,7 +2352,7 @@ public class DatabunkerproApi implements AutoCloseable {
             request.setHeader("X-Bunker-Tenant", xBunkerTenant);
         }
 
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
+        try (CloseableHttpResponse response = node.getHttpClient().execute(request)) {
             HttpEntity entity = response.getEntity();
             String metricsText = EntityUtils.toString(entity);
             return parsePrometheusMetrics(metricsText);
@@ -1756,12 +2414,64 @@ public class DatabunkerproApi implements AutoCloseable {
     }
 
     /**
-     * Closes the HTTP client
+     * Client-side rate limiters shared by this client, for inspecting throttle counters
+     *
+     * @return The rate limiter registry, or null if requests are not rate limited
+     */
+    public RateLimiterRegistry getRateLimiters() {
+        return rateLimiters;
+    }
+
+    /**
+     * Concurrency bulkhead shared by this client, for inspecting in-flight and rejection counters
+     *
+     * @return The bulkhead, or null if concurrency is not limited
+     */
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * Hedging policy shared by this client, for inspecting latency histograms and hedge counters
+     *
+     * @return The hedging policy, or null if requests are never hedged
+     */
+    public HedgingPolicy getHedging() {
+        return hedging;
+    }
+
+    /**
+     * Idempotency policy shared by this client, for inspecting retry and suppression counters
+     *
+     * @return The idempotency policy, or null if create calls are sent once without a key
+     */
+    public IdempotencyPolicy getIdempotency() {
+        return idempotency;
+    }
+
+    /**
+     * DatabunkerPro nodes this client balances across, for inspecting load and ejection counters
+     *
+     * @return The nodes
+     */
+    public List<Node> getNodes() {
+        return nodes.getNodes();
+    }
+
+    /**
+     * Closes the HTTP clients of all nodes. Views returned by {@code withPriority}, {@code withTimeout},
+     * {@code withDeadline} and {@code forTenant} share the clients of their parent and leave them open.
      *
      * @throws IOException If an I/O error occurs
      */
     @Override
     public void close() throws IOException {
-        httpClient.close();
+        if (ownsHttpClient) {
+            if (attemptExecutor != null) {
+                attemptExecutor.shutdownNow();
+            }
+            listingExecutor.shutdownNow();
+            nodes.close();
+        }
     }
 } 
\ No newline at end of file
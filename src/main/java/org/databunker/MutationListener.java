@@ -0,0 +1,23 @@
+package org.databunker;
+
+import java.util.Map;
+
+/**
+ * Notified after the client sent a request that can change data, e.g. to invalidate a cache.
+ * Listeners are registered with {@link DatabunkerproApi#addMutationListener} and are shared by
+ * the client and all of its views.
+ */
+@FunctionalInterface
+public interface MutationListener {
+    /**
+     * Called on the requesting thread once the server has answered, whatever the answer was,
+     * and also when the request failed without an answer, since it may still have been applied.
+     * Listeners must be fast and must not throw.
+     *
+     * @param tenant   The X-Bunker-Tenant the request was sent for, or null
+     * @param endpoint API endpoint name (e.g. "AgreementAccept")
+     * @param request  The request fields, or null if the request had none
+     * @param response The server's response, or null if the request failed without one
+     */
+    void onMutation(String tenant, String endpoint, Map<String, Object> request, Map<String, Object> response);
+}
@@ -0,0 +1,170 @@
+package org.databunker;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reference to a group, role, policy or tenant by numeric ID or by name.
+ * <p>
+ * Many endpoints accept either {@code groupid} or {@code groupname} (and likewise for roles,
+ * policies and tenants); a reference made of ASCII digits only that fits in an int is sent as
+ * the ID, anything else as the name. Classification scans the characters once and allocates
+ * nothing, unlike {@code String.matches("\\d+")}, which compiles a regular expression on every
+ * call.
+ */
+public final class Ref {
+    private final int id;
+    private final String name;
+
+    private Ref(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    /**
+     * Classifies a reference
+     *
+     * @param ref The ID or name
+     * @return The reference
+     */
+    public static Ref of(String ref) {
+        Objects.requireNonNull(ref, "ref");
+        int id = parseId(ref);
+        return id >= 0 ? new Ref(id, null) : new Ref(-1, ref);
+    }
+
+    /**
+     * @param id The numeric ID
+     * @return A reference by ID
+     */
+    public static Ref ofId(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("id must not be negative");
+        }
+        return new Ref(id, null);
+    }
+
+    /**
+     * @param name The name, sent as such even if it is numeric
+     * @return A reference by name
+     */
+    public static Ref ofName(String name) {
+        return new Ref(-1, Objects.requireNonNull(name, "name"));
+    }
+
+    /**
+     * @return true if this reference is an ID
+     */
+    public boolean isId() {
+        return name == null;
+    }
+
+    /**
+     * @return The ID, or -1 for a reference by name
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return The name, or null for a reference by ID
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Adds this reference to a request as {@code idField} or {@code nameField}
+     *
+     * @param data      The request fields
+     * @param idField   Field for an ID (e.g. "groupid")
+     * @param nameField Field for a name (e.g. "groupname")
+     */
+    public void putInto(Map<String, Object> data, String idField, String nameField) {
+        if (name == null) {
+            data.put(idField, id);
+        } else {
+            data.put(nameField, name);
+        }
+    }
+
+    /**
+     * Adds a reference given as a string to a request as {@code idField} or {@code nameField},
+     * without creating a Ref
+     *
+     * @param data      The request fields
+     * @param idField   Field for an ID (e.g. "groupid")
+     * @param nameField Field for a name (e.g. "groupname")
+     * @param ref       The ID or name
+     */
+    public static void put(Map<String, Object> data, String idField, String nameField, String ref) {
+        int id = parseId(ref);
+        if (id >= 0) {
+            data.put(idField, id);
+        } else {
+            data.put(nameField, ref);
+        }
+    }
+
+    /**
+     * Adds a reference given as a number or string to a request; numbers are sent as IDs
+     * unchanged
+     *
+     * @param data      The request fields
+     * @param idField   Field for an ID (e.g. "roleid")
+     * @param nameField Field for a name (e.g. "rolename")
+     * @param ref       The ID or name
+     */
+    public static void put(Map<String, Object> data, String idField, String nameField, Object ref) {
+        if (ref instanceof Number) {
+            data.put(idField, ref);
+        } else if (ref instanceof String) {
+            put(data, idField, nameField, (String) ref);
+        } else {
+            data.put(nameField, ref);
+        }
+    }
+
+    /**
+     * Parses a reference that consists of ASCII digits only
+     *
+     * @param ref The reference
+     * @return The ID, or -1 if the reference is empty, has other characters or exceeds an int
+     */
+    public static int parseId(CharSequence ref) {
+        int length = ref.length();
+        if (length == 0) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = ref.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            if (value <= Integer.MAX_VALUE) {
+                value = value * 10 + (c - '0');
+            }
+        }
+        return value <= Integer.MAX_VALUE ? (int) value : -1;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Ref)) {
+            return false;
+        }
+        Ref ref = (Ref) other;
+        return id == ref.id && Objects.equals(name, ref.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name != null ? name.hashCode() : id;
+    }
+
+    @Override
+    public String toString() {
+        return name != null ? name : Integer.toString(id);
+    }
+}
@@ -0,0 +1,38 @@
+package org.databunker;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the client's internal threads.
+ * <p>
+ * This is the Java 11 version; the multi-release jar replaces it on Java 21 and later with
+ * one that can run tasks on virtual threads (see src/main/java21).
+ */
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    /**
+     * Whether this runtime supports virtual threads
+     * @return Always false before Java 21
+     */
+    static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Creates an executor that runs every task on its own thread
+     *
+     * @param name    Thread name
+     * @param virtual Whether to use virtual threads; ignored before Java 21
+     * @return A new executor
+     */
+    static ExecutorService newThreadPerTaskExecutor(String name, boolean virtual) {
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
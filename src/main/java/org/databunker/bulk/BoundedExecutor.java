@@ -0,0 +1,95 @@
+package org.databunker.bulk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs batch tasks on a fixed number of threads. Submitting blocks while all threads are busy,
+ * so a producer reading a large input never gets more than one batch ahead.
+ */
+final class BoundedExecutor implements AutoCloseable {
+    interface Task {
+        void run() throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final Semaphore slots;
+    private final int concurrency;
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+    BoundedExecutor(String name, int concurrency) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.slots = new Semaphore(concurrency);
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Runs the task once a thread is free
+     *
+     * @param task The task
+     * @throws IOException The first failure of an earlier task, or if interrupted while waiting
+     */
+    void submit(Task task) throws IOException {
+        acquire(1);
+        if (failure.get() != null) {
+            slots.release();
+            throw failure.get();
+        }
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                failure.compareAndSet(null, e);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, new IOException("Batch failed: " + e, e));
+            } finally {
+                slots.release();
+            }
+        });
+    }
+
+    /**
+     * Whether a task has failed; later submissions will throw its exception
+     * @return True after the first failure
+     */
+    boolean hasFailed() {
+        return failure.get() != null;
+    }
+
+    /**
+     * Waits for all submitted tasks
+     *
+     * @throws IOException The first failure of a task, or if interrupted while waiting
+     */
+    void awaitAll() throws IOException {
+        acquire(concurrency);
+        slots.release(concurrency);
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private void acquire(int permits) throws InterruptedIOException {
+        try {
+            slots.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for batches");
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,411 @@
+package org.databunker.bulk;
+
+import org.databunker.DatabunkerproApi;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Erases users in bulk and records the outcome for every identity in an {@link ErasureLedger}.
+ * <p>
+ * Subjects are read from an iterator and grouped into UserDeleteBulk requests of
+ * {@code batchSize} users, with at most {@code concurrency} requests in flight. In cross-tenant
+ * mode every subject is erased from all tenants (or from one named tenant) with
+ * SystemDeleteUserProfiles, which requires the main tenant's admin token; the unlock UUID comes
+ * from an {@link UnlockProvider}, by default the one shared by the client.
+ *
+ * <pre>
+ * ErasureEngine.Result result = ErasureEngine.builder(api)
+ *     .batchSize(500)
+ *     .concurrency(4)
+ *     .ledger(Paths.get("erasure-ledger.ndjson"))
+ *     .build()
+ *     .erase(subjects.iterator());
+ * </pre>
+ */
+public class ErasureEngine {
+    private final DatabunkerproApi api;
+    private final int batchSize;
+    private final int concurrency;
+    private final boolean crossTenant;
+    private final String tenantref;
+    private final Path ledgerFile;
+    private final byte[] ledgerKey;
+    private final UnlockProvider unlockProvider;
+
+    private ErasureEngine(Builder builder) {
+        this.api = builder.api;
+        this.batchSize = builder.batchSize;
+        this.concurrency = builder.concurrency;
+        this.crossTenant = builder.crossTenant;
+        this.tenantref = builder.tenantref;
+        this.ledgerFile = builder.ledgerFile;
+        this.ledgerKey = builder.ledgerKey;
+        this.unlockProvider = builder.unlockProvider != null ? builder.unlockProvider : api.getUnlockProvider();
+    }
+
+    /**
+     * Erases all subjects. Failed subjects are counted and recorded in the ledger; the call
+     * only throws if the ledger cannot be written or the bulk unlock fails.
+     *
+     * @param subjects The users to erase; each is consumed once
+     * @return Erasure counters
+     * @throws IOException If the ledger cannot be written or the unlock UUID cannot be obtained
+     */
+    public Result erase(Iterator<Subject> subjects) throws IOException {
+        long start = System.nanoTime();
+        Counters counters = new Counters();
+        String ledgerHead = null;
+        if (crossTenant) {
+            // Fail before any work if the unlock UUID cannot be obtained
+            unlockProvider.get();
+        }
+        try (ErasureLedger ledger = ledgerFile != null ? new ErasureLedger(ledgerFile, ledgerKey) : null;
+             BoundedExecutor executor = new BoundedExecutor("databunkerpro-erasure", concurrency)) {
+            List<Subject> batch = new ArrayList<>(batchSize);
+            while (!executor.hasFailed() && subjects.hasNext()) {
+                batch.add(Objects.requireNonNull(subjects.next(), "subject"));
+                if (batch.size() == batchSize) {
+                    submit(executor, batch, ledger, counters);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                submit(executor, batch, ledger, counters);
+            }
+            executor.awaitAll();
+            if (ledger != null) {
+                ledgerHead = ledger.flush();
+            }
+        }
+        return new Result(counters, ledgerHead, System.nanoTime() - start);
+    }
+
+    private void submit(BoundedExecutor executor, List<Subject> batch, ErasureLedger ledger, Counters counters)
+        throws IOException {
+        executor.submit(() -> {
+            if (crossTenant) {
+                eraseAcrossTenants(batch, ledger, counters);
+            } else {
+                eraseBatch(batch, ledger, counters);
+            }
+            // The erasures are done on the server, so their records must survive a crash
+            if (ledger != null) {
+                ledger.flush();
+            }
+        });
+    }
+
+    private void eraseBatch(List<Subject> batch, ErasureLedger ledger, Counters counters) throws IOException {
+        @SuppressWarnings("unchecked")
+        Map<String, Object>[] users = (Map<String, Object>[]) new Map<?, ?>[batch.size()];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = new HashMap<>();
+            users[i].put("mode", batch.get(i).mode);
+            users[i].put("identity", batch.get(i).identity);
+        }
+        Map<String, Object> response;
+        try {
+            response = api.deleteUsersBulk(users, null);
+        } catch (IOException e) {
+            for (Subject subject : batch) {
+                record(ledger, counters, subject, "failed", e.getMessage(), null);
+            }
+            return;
+        }
+        if (!"ok".equals(response.get("status"))) {
+            String message = response.get("message") != null ? response.get("message").toString() : "UserDeleteBulk failed";
+            for (Subject subject : batch) {
+                record(ledger, counters, subject, "failed", message, null);
+            }
+            return;
+        }
+        Object results = response.get("results");
+        List<?> rows = results instanceof List && ((List<?>) results).size() == batch.size() ? (List<?>) results : null;
+        for (int i = 0; i < batch.size(); i++) {
+            Map<?, ?> row = rows != null && rows.get(i) instanceof Map ? (Map<?, ?>) rows.get(i) : null;
+            Object status = row != null ? row.get("status") : null;
+            if ("ok".equals(status)) {
+                record(ledger, counters, batch.get(i), "erased", null, null);
+            } else if ("error".equals(status)) {
+                String message = row.get("message") != null ? row.get("message").toString() : "not deleted";
+                record(ledger, counters, batch.get(i), isNotFound(message) ? "not_found" : "failed", message, null);
+            } else {
+                // The request succeeded, but the server did not say what happened to this subject
+                record(ledger, counters, batch.get(i), "unconfirmed", "no per-user result", null);
+            }
+        }
+    }
+
+    private void eraseAcrossTenants(List<Subject> batch, ErasureLedger ledger, Counters counters) throws IOException {
+        for (Subject subject : batch) {
+            Map<String, Object> response;
+            try {
+                response = unlockProvider.execute(uuid ->
+                    api.deleteUserProfiles(subject.mode, subject.identity, uuid, tenantref, null));
+            } catch (IOException e) {
+                record(ledger, counters, subject, "failed", e.getMessage(), null);
+                continue;
+            }
+            String message = response.get("message") != null ? response.get("message").toString() : null;
+            Integer deleted = response.get("deleted") instanceof Number ? ((Number) response.get("deleted")).intValue() : null;
+            if (!"ok".equals(response.get("status"))) {
+                record(ledger, counters, subject, message != null && isNotFound(message) ? "not_found" : "failed",
+                    message != null ? message : "SystemDeleteUserProfiles failed", null);
+            } else if (deleted != null && deleted == 0) {
+                record(ledger, counters, subject, "not_found", null, 0);
+            } else {
+                record(ledger, counters, subject, "erased", null, deleted);
+            }
+        }
+    }
+
+    private static boolean isNotFound(String message) {
+        return message.toLowerCase(Locale.ROOT).contains("not found");
+    }
+
+    private static void record(ErasureLedger ledger, Counters counters, Subject subject, String status,
+                               String message, Integer deleted) throws IOException {
+        switch (status) {
+            case "erased":
+                counters.erased.increment();
+                break;
+            case "not_found":
+                counters.notFound.increment();
+                break;
+            case "unconfirmed":
+                counters.unconfirmed.increment();
+                break;
+            default:
+                counters.failed.increment();
+        }
+        if (ledger != null) {
+            ledger.record(subject.mode, subject.identity, status, message, deleted);
+        }
+    }
+
+    /**
+     * A user to erase
+     */
+    public static final class Subject {
+        private final String mode;
+        private final String identity;
+
+        private Subject(String mode, String identity) {
+            this.mode = Objects.requireNonNull(mode, "mode");
+            this.identity = Objects.requireNonNull(identity, "identity");
+        }
+
+        /**
+         * @param mode     Identity mode: "token", "email", "phone", "login" or "custom"
+         * @param identity The identity
+         * @return A new subject
+         */
+        public static Subject of(String mode, String identity) {
+            return new Subject(mode, identity);
+        }
+
+        public String getMode() {
+            return mode;
+        }
+
+        public String getIdentity() {
+            return identity;
+        }
+    }
+
+    /**
+     * Counters of a finished erasure run
+     */
+    public static class Result {
+        private final long erased;
+        private final long notFound;
+        private final long failed;
+        private final long unconfirmed;
+        private final String ledgerHead;
+        private final long elapsedNanos;
+
+        private Result(Counters counters, String ledgerHead, long elapsedNanos) {
+            this.erased = counters.erased.sum();
+            this.notFound = counters.notFound.sum();
+            this.failed = counters.failed.sum();
+            this.unconfirmed = counters.unconfirmed.sum();
+            this.ledgerHead = ledgerHead;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Hash of the last ledger entry. Kept outside the ledger, it lets
+         * {@link ErasureLedger#verify(Path, String)} detect entries removed from the end.
+         *
+         * @return The head hash, or null without a ledger
+         */
+        public String getLedgerHead() {
+            return ledgerHead;
+        }
+
+        /**
+         * @return Subjects whose profiles were deleted
+         */
+        public long getErased() {
+            return erased;
+        }
+
+        /**
+         * @return Subjects that did not exist
+         */
+        public long getNotFound() {
+            return notFound;
+        }
+
+        /**
+         * @return Subjects that could not be erased and need to be retried
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return Subjects in accepted requests without a per-user result; look them up before
+         * treating them as erased
+         */
+        public long getUnconfirmed() {
+            return unconfirmed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "erased=%d notFound=%d failed=%d unconfirmed=%d (%.1fs)",
+                erased, notFound, failed, unconfirmed, elapsedNanos / 1e9);
+        }
+    }
+
+    private static class Counters {
+        final LongAdder erased = new LongAdder();
+        final LongAdder notFound = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder unconfirmed = new LongAdder();
+    }
+
+    /**
+     * Builder class for ErasureEngine
+     */
+    public static class Builder {
+        private final DatabunkerproApi api;
+        private int batchSize = 500;
+        private int concurrency = 4;
+        private boolean crossTenant;
+        private String tenantref;
+        private Path ledgerFile;
+        private byte[] ledgerKey;
+        private UnlockProvider unlockProvider;
+
+        private Builder(DatabunkerproApi api) {
+            this.api = api;
+        }
+
+        /**
+         * Subjects per UserDeleteBulk request, or per task in cross-tenant mode
+         *
+         * @param batchSize The subject count (default 500)
+         * @return This builder
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Maximum number of batches in flight
+         *
+         * @param concurrency The batch count (default 4)
+         * @return This builder
+         */
+        public Builder concurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * Erases every subject from all tenants with SystemDeleteUserProfiles
+         *
+         * @param crossTenant True for cross-tenant erasure (default false)
+         * @return This builder
+         */
+        public Builder crossTenant(boolean crossTenant) {
+            this.crossTenant = crossTenant;
+            return this;
+        }
+
+        /**
+         * Limits cross-tenant erasure to one tenant
+         *
+         * @param tenantref Tenant reference (ID or name), or null for all tenants
+         * @return This builder
+         */
+        public Builder tenant(String tenantref) {
+            this.tenantref = tenantref;
+            return this;
+        }
+
+        /**
+         * Ledger file that receives the outcome of every subject; an existing ledger is verified
+         * and extended
+         *
+         * @param ledgerFile The ledger file, or null to only count outcomes
+         * @return This builder
+         */
+        public Builder ledger(Path ledgerFile) {
+            this.ledgerFile = ledgerFile;
+            return this;
+        }
+
+        /**
+         * Key for HMAC-SHA256 subject hashes in the ledger, so that the hashes of guessable
+         * identities such as emails cannot be reversed by trying candidates
+         *
+         * @param ledgerKey The key, or null for plain SHA-256
+         * @return This builder
+         */
+        public Builder ledgerKey(byte[] ledgerKey) {
+            this.ledgerKey = ledgerKey != null ? ledgerKey.clone() : null;
+            return this;
+        }
+
+        /**
+         * Source of the unlock UUID for cross-tenant erasure
+         *
+         * @param unlockProvider The provider, or null for the client's shared provider
+         * @return This builder
+         */
+        public Builder unlockProvider(UnlockProvider unlockProvider) {
+            this.unlockProvider = unlockProvider;
+            return this;
+        }
+
+        public ErasureEngine build() {
+            if (batchSize <= 0 || concurrency <= 0) {
+                throw new IllegalArgumentException("batchSize and concurrency must be positive");
+            }
+            return new ErasureEngine(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for ErasureEngine
+     *
+     * @param api The client used to send the deletions
+     * @return A new builder instance
+     */
+    public static Builder builder(DatabunkerproApi api) {
+        return new Builder(api);
+    }
+}
@@ -0,0 +1,270 @@
+package org.databunker.bulk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only, hash-chained NDJSON log of erasure outcomes.
+ * <p>
+ * Every line holds one subject's outcome and the SHA-256 hash of the previous line, and is
+ * itself hashed, so removing, reordering or editing a line breaks the chain and is reported by
+ * {@link #verify(Path)}. Removing entries from the end leaves a valid chain; to detect that,
+ * keep the head hash of each run ({@link ErasureEngine.Result#getLedgerHead()}) outside the
+ * ledger and check it with {@link #verify(Path, String)}. Identities are not stored in clear
+ * text: the "subject" field is the SHA-256 (or, with a key, the HMAC-SHA256) of
+ * {@code mode + ":" + identity}, which an auditor can recompute with
+ * {@link #subjectHash(String, String, byte[])}.
+ * <p>
+ * Entries are flushed and synced to disk by {@link #flush()} after every batch. If the process
+ * dies while writing, the incomplete last line is dropped when the ledger is opened again.
+ */
+public final class ErasureLedger implements Closeable {
+    private static final String GENESIS = "0000000000000000000000000000000000000000000000000000000000000000";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final FileChannel channel;
+    private final BufferedWriter writer;
+    private final byte[] key;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long sequence;
+    private String previous;
+
+    /**
+     * Opens a ledger, continuing the chain of an existing file
+     *
+     * @param file The ledger file
+     * @param key  HMAC key for subject hashes, or null for plain SHA-256
+     * @throws IOException If the file cannot be opened or an existing chain is broken
+     */
+    ErasureLedger(Path file, byte[] key) throws IOException {
+        this.key = key;
+        this.previous = GENESIS;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // A line without its newline was torn by a crash; its subjects were not confirmed
+            long complete = completeLength(channel);
+            if (complete < channel.size()) {
+                channel.truncate(complete);
+                channel.force(true);
+            }
+            Chain chain = scan(file, null);
+            this.sequence = chain.entries;
+            this.previous = chain.last;
+            channel.position(complete);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends the outcome for one subject
+     *
+     * @param mode     Identity mode, e.g. "email"
+     * @param identity The identity
+     * @param status   "erased", "not_found", "failed" or "unconfirmed"
+     * @param message  Error message (can be null)
+     * @param deleted  Number of profiles deleted across tenants (can be null)
+     * @throws IOException If the ledger cannot be written
+     */
+    void record(String mode, String identity, String status, String message, Integer deleted) throws IOException {
+        String subject = subjectHash(mode, identity, key);
+        lock.lock();
+        try {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("seq", ++sequence);
+            entry.put("time", Instant.now().toString());
+            entry.put("mode", mode);
+            entry.put("subject", subject);
+            entry.put("status", status);
+            if (message != null) {
+                entry.put("message", message);
+            }
+            if (deleted != null) {
+                entry.put("deleted", deleted);
+            }
+            entry.put("prev", previous);
+            previous = sha256(MAPPER.writeValueAsString(entry));
+            entry.put("hash", previous);
+            writer.write(MAPPER.writeValueAsString(entry));
+            writer.newLine();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes the ledger and syncs it to disk
+     *
+     * @return The hash of the last entry, the head of the chain
+     * @throws IOException If the ledger cannot be written
+     */
+    String flush() throws IOException {
+        lock.lock();
+        try {
+            writer.flush();
+            channel.force(false);
+            return previous;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            writer.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks the hash chain of a ledger file
+     *
+     * @param file The ledger file
+     * @return The number of entries
+     * @throws IOException If the file cannot be read or an entry does not match the chain
+     */
+    public static long verify(Path file) throws IOException {
+        return scan(file, null).entries;
+    }
+
+    /**
+     * Checks the hash chain of a ledger file and that it still contains an entry whose hash was
+     * kept elsewhere, which detects entries removed from the end
+     *
+     * @param file   The ledger file
+     * @param anchor A head hash returned by an earlier run
+     * @return The number of entries
+     * @throws IOException If the file cannot be read, an entry does not match the chain or no
+     *                     entry has the anchored hash
+     */
+    public static long verify(Path file, String anchor) throws IOException {
+        return scan(file, Objects.requireNonNull(anchor, "anchor")).entries;
+    }
+
+    /**
+     * Hash that identifies a subject in the ledger
+     *
+     * @param mode     Identity mode, e.g. "email"
+     * @param identity The identity
+     * @param key      The ledger's HMAC key, or null if it has none
+     * @return Hex encoded SHA-256 or HMAC-SHA256
+     */
+    public static String subjectHash(String mode, String identity, byte[] key) {
+        byte[] input = (mode + ":" + identity).getBytes(StandardCharsets.UTF_8);
+        try {
+            if (key == null) {
+                return hex(MessageDigest.getInstance("SHA-256").digest(input));
+            }
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return hex(mac.doFinal(input));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static class Chain {
+        long entries;
+        String last = GENESIS;
+    }
+
+    private static long completeLength(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long end = channel.size();
+        while (end > 0) {
+            long start = Math.max(0, end - buffer.capacity());
+            buffer.clear().limit((int) (end - start));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) >= 0) {
+                // Read the whole block
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Chain scan(Path file, String anchor) throws IOException {
+        Chain chain = new Chain();
+        boolean anchored = anchor == null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (completeLength(channel) < channel.size()) {
+                throw new IOException("Ledger ends with an incomplete entry");
+            }
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                long expected = chain.entries + 1;
+                Map<String, Object> entry = MAPPER.readValue(line, LinkedHashMap.class);
+                Object hash = entry.remove("hash");
+                if (!(entry.get("seq") instanceof Number) || ((Number) entry.get("seq")).longValue() != expected) {
+                    throw new IOException("Ledger entry " + expected + " is out of sequence");
+                }
+                if (!chain.last.equals(entry.get("prev"))) {
+                    throw new IOException("Ledger entry " + expected + " does not follow the previous entry");
+                }
+                String actual = sha256(MAPPER.writeValueAsString(entry));
+                if (!actual.equals(hash)) {
+                    throw new IOException("Ledger entry " + expected + " does not match its hash");
+                }
+                chain.entries = expected;
+                chain.last = actual;
+                anchored |= actual.equals(anchor);
+            }
+        }
+        if (!anchored) {
+            throw new IOException("Ledger has no entry with the anchored hash; entries were removed");
+        }
+        return chain;
+    }
+
+    private static String sha256(String text) {
+        try {
+            return hex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder text = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            text.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,175 @@
+package org.databunker.bulk;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the rows of a paginated bulk listing, fetching the next page only when the
+ * subscriber has requested more rows than are buffered.
+ * <p>
+ * At most one page is held in memory per subscription, so a slow subscriber slows down the
+ * listing instead of making the client buffer it. Pages are fetched and rows delivered on the
+ * given executor. Every subscription starts a new listing from offset 0.
+ */
+public final class PagePublisher implements Flow.Publisher<Map<String, Object>> {
+    /**
+     * Fetches one page of a bulk listing
+     */
+    @FunctionalInterface
+    public interface PageFetcher {
+        /**
+         * @param offset Offset of the first row
+         * @param limit  Maximum number of rows
+         * @return The API response with the page in its "rows" field
+         * @throws IOException If the request fails
+         */
+        Map<String, Object> fetch(int offset, int limit) throws IOException;
+    }
+
+    private final PageFetcher fetcher;
+    private final int pageSize;
+    private final Executor executor;
+
+    /**
+     * @param fetcher  Fetches a page
+     * @param pageSize Rows per page
+     * @param executor Executor that fetches pages and signals the subscriber
+     */
+    public PagePublisher(PageFetcher fetcher, int pageSize, Executor executor) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        this.fetcher = Objects.requireNonNull(fetcher, "fetcher");
+        this.pageSize = pageSize;
+        this.executor = Objects.requireNonNull(executor, "executor");
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Map<String, Object>> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        PageSubscription subscription = new PageSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private final class PageSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super Map<String, Object>> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+
+        // Only touched by the drain loop, which never runs concurrently with itself
+        private final ArrayDeque<Map<String, Object>> buffer = new ArrayDeque<>();
+        private int offset;
+        private boolean lastPage;
+        private boolean terminated;
+
+        PageSubscription(Flow.Subscriber<? super Map<String, Object>> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested " + n + " rows, must be positive");
+            } else {
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    cancelled = true;
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            while (!terminated) {
+                if (cancelled) {
+                    terminated = true;
+                    buffer.clear();
+                    return;
+                }
+                if (invalidRequest != null) {
+                    terminate();
+                    subscriber.onError(invalidRequest);
+                    return;
+                }
+                if (buffer.isEmpty()) {
+                    if (lastPage) {
+                        terminate();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    if (demand.get() == 0) {
+                        return;
+                    }
+                    try {
+                        fetchPage();
+                    } catch (IOException | RuntimeException e) {
+                        terminate();
+                        subscriber.onError(e);
+                        return;
+                    }
+                    continue;
+                }
+                if (demand.get() == 0) {
+                    return;
+                }
+                demand.decrementAndGet();
+                subscriber.onNext(buffer.poll());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void fetchPage() throws IOException {
+            Map<String, Object> page = fetcher.fetch(offset, pageSize);
+            if (page == null || !"ok".equals(page.get("status"))) {
+                throw new IOException(page != null && page.get("message") != null
+                    ? "Bulk listing failed: " + page.get("message") : "Bulk listing failed");
+            }
+            List<Map<String, Object>> rows = (List<Map<String, Object>>) page.get("rows");
+            if (rows != null) {
+                buffer.addAll(rows);
+                offset += rows.size();
+            }
+            Object total = page.get("total");
+            lastPage = rows == null || rows.size() < pageSize
+                || (total instanceof Number && offset >= ((Number) total).longValue());
+        }
+
+        private void terminate() {
+            terminated = true;
+            cancelled = true;
+            buffer.clear();
+        }
+    }
+}
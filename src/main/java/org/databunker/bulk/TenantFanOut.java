@@ -0,0 +1,312 @@
+package org.databunker.bulk;
+
+import org.databunker.DatabunkerproApi;
+import org.databunker.resilience.Deadline;
+import org.databunker.resilience.DeadlineExceededException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs an operation against many tenants in parallel.
+ * <p>
+ * Each tenant gets a {@link DatabunkerproApi#forTenant(String) tenant view} of the admin client,
+ * bounded by a deadline of {@code tenantTimeout} for the whole operation, and at most
+ * {@code concurrency} tenants are queried at once. A tenant whose operation is still running
+ * when its time is up, e.g. blocked outside the client, fails with a DeadlineExceededException
+ * and is interrupted. Failures and timeouts are collected per
+ * tenant instead of aborting the run. Without an explicit tenant list, all tenants are read
+ * with TenantListTenants page by page.
+ *
+ * <pre>
+ * TenantFanOut fanOut = TenantFanOut.builder(adminApi).concurrency(32).build();
+ * TenantFanOut.Result&lt;Map&lt;String, Object&gt;&gt; found =
+ *     fanOut.run(tenant -&gt; tenant.getUser("email", "user@example.com", null));
+ * found.getResults().forEach((tenant, user) -&gt; {
+ *     if ("ok".equals(user.get("status"))) System.out.println(tenant);
+ * });
+ * </pre>
+ */
+public class TenantFanOut {
+    private final DatabunkerproApi api;
+    private final int concurrency;
+    private final Duration tenantTimeout;
+    private final int pageSize;
+    private final Map<String, Object> requestMetadata;
+
+    private TenantFanOut(Builder builder) {
+        this.api = builder.api;
+        this.concurrency = builder.concurrency;
+        this.tenantTimeout = builder.tenantTimeout;
+        this.pageSize = builder.pageSize;
+        this.requestMetadata = builder.requestMetadata;
+    }
+
+    /**
+     * An operation to run for one tenant
+     *
+     * @param <T> The operation's result type
+     */
+    @FunctionalInterface
+    public interface TenantOperation<T> {
+        /**
+         * @param tenant A client view for the tenant
+         * @return The result for the tenant
+         * @throws IOException If the operation fails
+         */
+        T apply(DatabunkerproApi tenant) throws IOException;
+    }
+
+    /**
+     * Lists the names of all tenants
+     *
+     * @return The tenant names in the order returned by the server
+     * @throws IOException If TenantListTenants fails
+     */
+    public List<String> listTenantNames() throws IOException {
+        List<String> names = new ArrayList<>();
+        int offset = 0;
+        while (true) {
+            Map<String, Object> page = api.listTenants(offset, pageSize, requestMetadata);
+            if (!"ok".equals(page.get("status"))) {
+                throw new IOException("TenantListTenants failed: " + page.get("message"));
+            }
+            List<?> rows = page.get("rows") instanceof List ? (List<?>) page.get("rows") : Collections.emptyList();
+            for (Object row : rows) {
+                Object name = row instanceof Map ? ((Map<?, ?>) row).get("tenantname") : null;
+                if (name != null) {
+                    names.add(name.toString());
+                }
+            }
+            offset += rows.size();
+            Object total = page.get("total");
+            if (rows.size() < pageSize || (total instanceof Number && offset >= ((Number) total).intValue())) {
+                return names;
+            }
+        }
+    }
+
+    /**
+     * Runs an operation against all tenants
+     *
+     * @param operation The operation
+     * @param <T>       The operation's result type
+     * @return The results and failures by tenant
+     * @throws IOException If the tenants cannot be listed or the run is interrupted
+     */
+    public <T> Result<T> run(TenantOperation<T> operation) throws IOException {
+        return run(listTenantNames(), operation);
+    }
+
+    /**
+     * Runs an operation against the given tenants
+     *
+     * @param tenants   The tenant names
+     * @param operation The operation
+     * @param <T>       The operation's result type
+     * @return The results and failures by tenant
+     * @throws InterruptedIOException If interrupted while waiting for the tenants
+     */
+    public <T> Result<T> run(Collection<String> tenants, TenantOperation<T> operation) throws InterruptedIOException {
+        long start = System.nanoTime();
+        Map<String, CompletableFuture<T>> futures = new LinkedHashMap<>();
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threads = runnable -> {
+            Thread thread = new Thread(runnable, "databunkerpro-fan-out-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        // A tenant's slot is freed when its result is settled, also by a timeout, so an operation
+        // that ignores interrupts cannot hold up the tenants behind it
+        Semaphore slots = new Semaphore(Math.max(1, concurrency));
+        ExecutorService executor = Executors.newCachedThreadPool(threads);
+        ScheduledExecutorService timer = tenantTimeout != null ? Executors.newSingleThreadScheduledExecutor(threads) : null;
+        try {
+            for (String tenant : tenants) {
+                slots.acquire();
+                CompletableFuture<T> result = new CompletableFuture<>();
+                result.whenComplete((value, error) -> slots.release());
+                futures.put(tenant, result);
+                // The deadline starts when the tenant's turn comes, not when it is queued
+                Future<?> task = executor.submit(() -> {
+                    try {
+                        DatabunkerproApi view = api.forTenant(tenant);
+                        result.complete(operation.apply(tenantTimeout != null ? view.withDeadline(Deadline.after(tenantTimeout)) : view));
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+                if (timer != null) {
+                    // Bounds work the view's deadline does not cover, e.g. code outside the client
+                    ScheduledFuture<?> timeout = timer.schedule(() -> {
+                        if (result.completeExceptionally(new DeadlineExceededException(
+                                "Operation for tenant " + tenant + " exceeded " + tenantTimeout))) {
+                            task.cancel(true);
+                        }
+                    }, tenantTimeout.toNanos(), TimeUnit.NANOSECONDS);
+                    result.whenComplete((value, error) -> timeout.cancel(false));
+                }
+            }
+            Map<String, T> results = new LinkedHashMap<>();
+            Map<String, IOException> failures = new LinkedHashMap<>();
+            for (Map.Entry<String, CompletableFuture<T>> entry : futures.entrySet()) {
+                try {
+                    results.put(entry.getKey(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    failures.put(entry.getKey(), cause instanceof IOException
+                        ? (IOException) cause : new IOException("Operation failed for tenant " + entry.getKey(), cause));
+                }
+            }
+            return new Result<>(results, failures, System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the tenants");
+        } finally {
+            executor.shutdownNow();
+            if (timer != null) {
+                timer.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Results of a fan-out run
+     *
+     * @param <T> The operation's result type
+     */
+    public static class Result<T> {
+        private final Map<String, T> results;
+        private final Map<String, IOException> failures;
+        private final long elapsedNanos;
+
+        private Result(Map<String, T> results, Map<String, IOException> failures, long elapsedNanos) {
+            this.results = Collections.unmodifiableMap(results);
+            this.failures = Collections.unmodifiableMap(failures);
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return Results of the tenants whose operation completed, in tenant order
+         */
+        public Map<String, T> getResults() {
+            return results;
+        }
+
+        /**
+         * @return Errors of the tenants whose operation failed or ran out of time; timeouts are
+         *     DeadlineExceededExceptions
+         */
+        public Map<String, IOException> getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return Wall-clock time of the run in milliseconds
+         */
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "succeeded=%d failed=%d (%.1fs)",
+                results.size(), failures.size(), elapsedNanos / 1e9);
+        }
+    }
+
+    /**
+     * Builder class for TenantFanOut
+     */
+    public static class Builder {
+        private final DatabunkerproApi api;
+        private int concurrency = 16;
+        private Duration tenantTimeout = Duration.ofSeconds(10);
+        private int pageSize = 100;
+        private Map<String, Object> requestMetadata;
+
+        private Builder(DatabunkerproApi api) {
+            this.api = api;
+        }
+
+        /**
+         * Maximum number of tenants queried at once
+         *
+         * @param concurrency The tenant count (default 16)
+         * @return This builder
+         */
+        public Builder concurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * Time budget of the operation for each tenant, covering all of its requests
+         *
+         * @param tenantTimeout The budget (default 10 seconds), or null for none
+         * @return This builder
+         */
+        public Builder tenantTimeout(Duration tenantTimeout) {
+            this.tenantTimeout = tenantTimeout;
+            return this;
+        }
+
+        /**
+         * Tenants per TenantListTenants request
+         *
+         * @param pageSize The tenant count (default 100)
+         * @return This builder
+         */
+        public Builder pageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * Request metadata sent with TenantListTenants
+         *
+         * @param requestMetadata The metadata (can be null)
+         * @return This builder
+         */
+        public Builder requestMetadata(Map<String, Object> requestMetadata) {
+            this.requestMetadata = requestMetadata;
+            return this;
+        }
+
+        public TenantFanOut build() {
+            if (concurrency <= 0 || pageSize <= 0) {
+                throw new IllegalArgumentException("concurrency and pageSize must be positive");
+            }
+            return new TenantFanOut(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for TenantFanOut
+     *
+     * @param api An admin client whose token is valid for all tenants
+     * @return A new builder instance
+     */
+    public static Builder builder(DatabunkerproApi api) {
+        return new Builder(api);
+    }
+}
@@ -0,0 +1,398 @@
+package org.databunker.bulk;
+
+import org.databunker.DatabunkerproApi;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects single token deletions into BulkDeleteTokens requests.
+ * <p>
+ * A batch is sent when it reaches {@code maxBatchSize} tokens or when its oldest token has
+ * waited {@code maxDelay}. The unlock UUID required by the bulk endpoint comes from an
+ * {@link UnlockProvider}, by default the one shared by the client. Every {@link #delete(String)} returns
+ * a future that completes once the token no longer exists, including tokens that were already
+ * gone, or completes exceptionally with an IOException.
+ *
+ * <pre>
+ * try (TokenDeleteBatcher batcher = TokenDeleteBatcher.builder(api).build()) {
+ *     for (String token : expiredTokens) {
+ *         batcher.delete(token).exceptionally(e -&gt; { log.warn("Not deleted: " + token, e); return null; });
+ *     }
+ * }
+ * </pre>
+ */
+public class TokenDeleteBatcher implements AutoCloseable {
+    private final DatabunkerproApi api;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final Map<String, Object> requestMetadata;
+    private final UnlockProvider unlockProvider;
+    private final Semaphore capacity;
+    private final ExecutorService senders;
+    private final ScheduledExecutorService timer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder deleted = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private List<Pending> pending = new ArrayList<>();
+    private ScheduledFuture<?> flushTimer;
+    private volatile boolean closed;
+
+    private TokenDeleteBatcher(Builder builder) {
+        this.api = builder.api;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.maxDelayNanos = builder.maxDelay.toNanos();
+        this.requestMetadata = builder.requestMetadata;
+        this.unlockProvider = builder.unlockProvider != null ? builder.unlockProvider : api.getUnlockProvider();
+        this.capacity = new Semaphore(builder.maxPending);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(builder.concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "databunkerpro-token-delete-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "databunkerpro-token-delete-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static class Pending {
+        final String token;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        Pending(String token) {
+            this.token = token;
+        }
+    }
+
+    /**
+     * Queues a token for deletion. Blocks while {@code maxPending} tokens are queued or in flight.
+     *
+     * @param token The token UUID or token value
+     * @return A future that completes when the token no longer exists; it fails at once if the
+     * batcher is closed
+     * @throws InterruptedIOException If interrupted while waiting for capacity
+     */
+    public CompletableFuture<Void> delete(String token) throws InterruptedIOException {
+        Pending entry = new Pending(token);
+        if (closed) {
+            entry.result.completeExceptionally(new IOException("TokenDeleteBatcher is closed"));
+            return entry.result;
+        }
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to queue a token deletion");
+        }
+        lock.lock();
+        try {
+            // Checked under the lock, so close() cannot shut the senders down between check and dispatch
+            if (closed) {
+                capacity.release();
+                entry.result.completeExceptionally(new IOException("TokenDeleteBatcher is closed"));
+                return entry.result;
+            }
+            pending.add(entry);
+            if (pending.size() >= maxBatchSize) {
+                dispatch(takePending());
+            } else if (pending.size() == 1) {
+                flushTimer = timer.schedule(this::flush, maxDelayNanos, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return entry.result;
+    }
+
+    /**
+     * Sends the queued tokens now instead of waiting for the batch to fill up
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            List<Pending> batch = takePending();
+            if (!batch.isEmpty()) {
+                dispatch(batch);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<Pending> takePending() {
+        List<Pending> batch = pending;
+        pending = new ArrayList<>();
+        if (flushTimer != null) {
+            flushTimer.cancel(false);
+            flushTimer = null;
+        }
+        return batch;
+    }
+
+    private void dispatch(List<Pending> batch) {
+        senders.execute(() -> {
+            try {
+                send(batch);
+            } catch (RuntimeException e) {
+                IOException error = new IOException("BulkDeleteTokens failed: " + e, e);
+                for (Pending entry : batch) {
+                    if (!entry.result.isDone()) {
+                        fail(entry, error);
+                    }
+                }
+            } finally {
+                capacity.release(batch.size());
+            }
+        });
+    }
+
+    private void send(List<Pending> batch) {
+        batches.increment();
+        String[] tokens = new String[batch.size()];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = batch.get(i).token;
+        }
+        Map<String, Object> response;
+        try {
+            response = bulkDelete(tokens);
+        } catch (IOException e) {
+            for (Pending entry : batch) {
+                fail(entry, e);
+            }
+            return;
+        }
+        if (!"ok".equals(response.get("status"))) {
+            IOException error = new IOException("BulkDeleteTokens failed: " + response.get("message"));
+            for (Pending entry : batch) {
+                fail(entry, error);
+            }
+            return;
+        }
+        Object count = response.get("deleted");
+        if (!(count instanceof Number) || ((Number) count).intValue() >= batch.size()) {
+            for (Pending entry : batch) {
+                complete(entry);
+            }
+            return;
+        }
+        // The response only has a count; find out which tokens are left and delete them one by one
+        for (Pending entry : batch) {
+            resolve(entry);
+        }
+    }
+
+    private Map<String, Object> bulkDelete(String[] tokens) throws IOException {
+        return unlockProvider.execute(uuid -> api.bulkDeleteTokens(uuid, tokens, requestMetadata));
+    }
+
+    private void resolve(Pending entry) {
+        try {
+            Map<String, Object> token = api.getToken(entry.token, requestMetadata);
+            if (!"ok".equals(token.get("status"))) {
+                // Only a missing token is gone; a throttled or failing server says nothing about it
+                if (isNotFound(token)) {
+                    complete(entry);
+                } else {
+                    fail(entry, new IOException("TokenGet failed: " + token.get("message")));
+                }
+                return;
+            }
+            Map<String, Object> response = api.deleteToken(entry.token, requestMetadata);
+            if ("ok".equals(response.get("status"))) {
+                complete(entry);
+            } else {
+                fail(entry, new IOException("TokenDelete failed: " + response.get("message")));
+            }
+        } catch (IOException e) {
+            fail(entry, e);
+        }
+    }
+
+    private static boolean isNotFound(Map<String, Object> response) {
+        int status = DatabunkerproApi.httpStatus(response);
+        if (status >= 0) {
+            return status == 404;
+        }
+        Object message = response.get("message");
+        return message != null && message.toString().toLowerCase(Locale.ROOT).contains("not found");
+    }
+
+    private void complete(Pending entry) {
+        deleted.increment();
+        entry.result.complete(null);
+    }
+
+    private void fail(Pending entry, IOException error) {
+        failed.increment();
+        entry.result.completeExceptionally(error);
+    }
+
+    /**
+     * @return Tokens confirmed gone
+     */
+    public long getDeletedCount() {
+        return deleted.sum();
+    }
+
+    /**
+     * @return Tokens whose deletion failed
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * @return BulkDeleteTokens requests sent
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * Sends the queued tokens and waits for all outstanding deletions
+     *
+     * @throws InterruptedIOException If interrupted while waiting
+     */
+    @Override
+    public void close() throws InterruptedIOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flush();
+        } finally {
+            lock.unlock();
+        }
+        senders.shutdown();
+        timer.shutdownNow();
+        try {
+            // Each batch is bounded by the client's timeouts
+            senders.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            senders.shutdownNow();
+            throw new InterruptedIOException("Interrupted while waiting for token deletions");
+        }
+    }
+
+    /**
+     * Builder class for TokenDeleteBatcher
+     */
+    public static class Builder {
+        private final DatabunkerproApi api;
+        private int maxBatchSize = 500;
+        private Duration maxDelay = Duration.ofMillis(200);
+        private int concurrency = 2;
+        private int maxPending = 10000;
+        private Map<String, Object> requestMetadata;
+        private UnlockProvider unlockProvider;
+
+        private Builder(DatabunkerproApi api) {
+            this.api = api;
+        }
+
+        /**
+         * Tokens per BulkDeleteTokens request
+         *
+         * @param maxBatchSize The token count (default 500)
+         * @return This builder
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Longest time a queued token waits for its batch to fill up
+         *
+         * @param maxDelay The delay (default 200 ms)
+         * @return This builder
+         */
+        public Builder maxDelay(Duration maxDelay) {
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * Maximum number of batches in flight
+         *
+         * @param concurrency The batch count (default 2)
+         * @return This builder
+         */
+        public Builder concurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * Maximum number of queued and in-flight tokens before {@code delete} blocks
+         *
+         * @param maxPending The token count (default 10000)
+         * @return This builder
+         */
+        public Builder maxPending(int maxPending) {
+            this.maxPending = maxPending;
+            return this;
+        }
+
+        /**
+         * Request metadata sent with every request
+         *
+         * @param requestMetadata The metadata (can be null)
+         * @return This builder
+         */
+        public Builder requestMetadata(Map<String, Object> requestMetadata) {
+            this.requestMetadata = requestMetadata;
+            return this;
+        }
+
+        /**
+         * Source of the unlock UUID
+         *
+         * @param unlockProvider The provider, or null for the client's shared provider
+         * @return This builder
+         */
+        public Builder unlockProvider(UnlockProvider unlockProvider) {
+            this.unlockProvider = unlockProvider;
+            return this;
+        }
+
+        public TokenDeleteBatcher build() {
+            if (maxBatchSize <= 0 || concurrency <= 0 || maxPending < maxBatchSize) {
+                throw new IllegalArgumentException("maxBatchSize and concurrency must be positive and maxPending at least maxBatchSize");
+            }
+            return new TokenDeleteBatcher(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for TokenDeleteBatcher
+     *
+     * @param api The client used to send the deletions
+     * @return A new builder instance
+     */
+    public static Builder builder(DatabunkerproApi api) {
+        return new Builder(api);
+    }
+}
@@ -0,0 +1,348 @@
+package org.databunker.bulk;
+
+import org.databunker.DatabunkerproApi;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Detokenizes tokens in batches, in the style of DataLoader.
+ * <p>
+ * {@link #load(String)} returns a future instead of calling TokenGet. Loads issued within
+ * {@code window} of the first one, or until {@code maxBatchSize} tokens are queued, are
+ * dispatched together as one BulkListTokens request and the returned records are matched back
+ * to their tokens. Results are cached for the lifetime of the loader, so create one loader per
+ * page render or request.
+ *
+ * <pre>
+ * TokenLoader loader = TokenLoader.builder(api).build();
+ * CompletableFuture&lt;Map&lt;String, Object&gt;&gt; card = loader.load(cardToken);
+ * CompletableFuture&lt;Map&lt;String, Object&gt;&gt; iban = loader.load(ibanToken);
+ * String cardNumber = (String) card.join().get("record");   // one request for both tokens
+ * </pre>
+ */
+public class TokenLoader {
+    private static final ScheduledThreadPoolExecutor TIMER = createTimer();
+    private static final Executor DISPATCHER = createDispatcher();
+
+    private final DatabunkerproApi api;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final boolean caching;
+    private final Executor executor;
+    private final Map<String, Object> requestMetadata;
+    private final UnlockProvider unlockProvider;
+    private final Map<String, CompletableFuture<Map<String, Object>>> cache = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private Map<String, CompletableFuture<Map<String, Object>>> queue = new LinkedHashMap<>();
+    private ScheduledFuture<?> windowTimer;
+
+    private TokenLoader(Builder builder) {
+        this.api = builder.api;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.windowNanos = builder.window.toNanos();
+        this.caching = builder.caching;
+        this.executor = builder.executor != null ? builder.executor : DISPATCHER;
+        this.requestMetadata = builder.requestMetadata;
+        this.unlockProvider = builder.unlockProvider != null ? builder.unlockProvider : api.getUnlockProvider();
+    }
+
+    /**
+     * Queues a token for detokenization
+     *
+     * @param token The token UUID or token value
+     * @return A future with the token record as returned by BulkListTokens, or null if the token
+     *     does not exist; completes exceptionally with an IOException if the request fails
+     */
+    public CompletableFuture<Map<String, Object>> load(String token) {
+        loads.increment();
+        if (caching) {
+            CompletableFuture<Map<String, Object>> cached = cache.get(token);
+            if (cached != null) {
+                cacheHits.increment();
+                return cached;
+            }
+        }
+        Map<String, CompletableFuture<Map<String, Object>>> batch = null;
+        CompletableFuture<Map<String, Object>> result;
+        lock.lock();
+        try {
+            result = queue.get(token);
+            if (result != null) {
+                cacheHits.increment();
+                return result;
+            }
+            result = new CompletableFuture<>();
+            queue.put(token, result);
+            if (caching) {
+                cache.put(token, result);
+            }
+            if (queue.size() >= maxBatchSize) {
+                batch = takeQueue();
+            } else if (queue.size() == 1) {
+                windowTimer = TIMER.schedule(this::dispatch, windowNanos, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (batch != null) {
+            send(batch);
+        }
+        return result;
+    }
+
+    /**
+     * Queues several tokens
+     *
+     * @param tokens The token UUIDs or token values
+     * @return A future with the records by token; tokens that do not exist map to null
+     */
+    public CompletableFuture<Map<String, Map<String, Object>>> loadMany(Collection<String> tokens) {
+        Map<String, CompletableFuture<Map<String, Object>>> results = new LinkedHashMap<>();
+        for (String token : tokens) {
+            results.put(token, load(token));
+        }
+        return CompletableFuture.allOf(results.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Map<String, Map<String, Object>> records = new LinkedHashMap<>();
+            results.forEach((token, result) -> records.put(token, result.join()));
+            return records;
+        });
+    }
+
+    /**
+     * Sends the queued tokens now instead of waiting for the window to close
+     */
+    public void dispatch() {
+        Map<String, CompletableFuture<Map<String, Object>>> batch;
+        lock.lock();
+        try {
+            batch = takeQueue();
+        } finally {
+            lock.unlock();
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    /**
+     * Forgets cached results, so that the next load of a token fetches it again
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    private Map<String, CompletableFuture<Map<String, Object>>> takeQueue() {
+        Map<String, CompletableFuture<Map<String, Object>>> batch = queue;
+        queue = new LinkedHashMap<>();
+        if (windowTimer != null) {
+            windowTimer.cancel(false);
+            windowTimer = null;
+        }
+        return batch;
+    }
+
+    private void send(Map<String, CompletableFuture<Map<String, Object>>> batch) {
+        executor.execute(() -> {
+            try {
+                load(batch);
+            } catch (IOException | RuntimeException e) {
+                for (Map.Entry<String, CompletableFuture<Map<String, Object>>> entry : batch.entrySet()) {
+                    cache.remove(entry.getKey(), entry.getValue());
+                    entry.getValue().completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load(Map<String, CompletableFuture<Map<String, Object>>> batch) throws IOException {
+        batches.increment();
+        String[] tokens = batch.keySet().toArray(new String[0]);
+        Map<String, Object> response = unlockProvider.execute(uuid -> api.bulkListTokens(uuid, tokens, requestMetadata));
+        if (!"ok".equals(response.get("status"))) {
+            throw new IOException("BulkListTokens failed: " + response.get("message"));
+        }
+        Object rows = response.get("rows");
+        if (rows instanceof List) {
+            for (Object row : (List<?>) rows) {
+                if (!(row instanceof Map)) {
+                    continue;
+                }
+                Map<String, Object> record = (Map<String, Object>) row;
+                complete(batch, record.get("tokenuuid"), record);
+                complete(batch, record.get("tokenbase"), record);
+            }
+        }
+        for (CompletableFuture<Map<String, Object>> result : batch.values()) {
+            result.complete(null);
+        }
+    }
+
+    private static void complete(Map<String, CompletableFuture<Map<String, Object>>> batch, Object token,
+                                 Map<String, Object> record) {
+        if (token != null) {
+            CompletableFuture<Map<String, Object>> result = batch.get(token.toString());
+            if (result != null) {
+                result.complete(record);
+            }
+        }
+    }
+
+    /**
+     * @return Calls to load, including cache hits
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * @return Loads answered from the cache or joined to a queued load of the same token
+     */
+    public long getCacheHitCount() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * @return BulkListTokens requests sent
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "databunkerpro-token-loader-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    private static Executor createDispatcher() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "databunkerpro-token-loader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Builder class for TokenLoader
+     */
+    public static class Builder {
+        private final DatabunkerproApi api;
+        private int maxBatchSize = 100;
+        private Duration window = Duration.ofMillis(2);
+        private boolean caching = true;
+        private Executor executor;
+        private Map<String, Object> requestMetadata;
+        private UnlockProvider unlockProvider;
+
+        private Builder(DatabunkerproApi api) {
+            this.api = api;
+        }
+
+        /**
+         * Tokens per BulkListTokens request
+         *
+         * @param maxBatchSize The token count (default 100)
+         * @return This builder
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * How long the first queued token waits for others before the batch is sent
+         *
+         * @param window The collection window (default 2 ms)
+         * @return This builder
+         */
+        public Builder window(Duration window) {
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * Whether results are cached for the lifetime of the loader
+         *
+         * @param caching True to cache (default true)
+         * @return This builder
+         */
+        public Builder caching(boolean caching) {
+            this.caching = caching;
+            return this;
+        }
+
+        /**
+         * Executor that sends the batches
+         *
+         * @param executor The executor, or null for a shared pool of daemon threads
+         * @return This builder
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Request metadata sent with every request
+         *
+         * @param requestMetadata The metadata (can be null)
+         * @return This builder
+         */
+        public Builder requestMetadata(Map<String, Object> requestMetadata) {
+            this.requestMetadata = requestMetadata;
+            return this;
+        }
+
+        /**
+         * Source of the unlock UUID
+         *
+         * @param unlockProvider The provider, or null for the client's shared provider
+         * @return This builder
+         */
+        public Builder unlockProvider(UnlockProvider unlockProvider) {
+            this.unlockProvider = unlockProvider;
+            return this;
+        }
+
+        public TokenLoader build() {
+            if (maxBatchSize <= 0) {
+                throw new IllegalArgumentException("maxBatchSize must be positive");
+            }
+            return new TokenLoader(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for TokenLoader
+     *
+     * @param api The client used to send the requests
+     * @return A new builder instance
+     */
+    public static Builder builder(DatabunkerproApi api) {
+        return new Builder(api);
+    }
+}
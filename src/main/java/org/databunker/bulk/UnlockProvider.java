@@ -0,0 +1,255 @@
+package org.databunker.bulk;
+
+import org.databunker.DatabunkerproApi;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Obtains and caches the unlock UUID that bulk and system endpoints require.
+ * <p>
+ * The UUID is fetched with BulkListUnlock on first use and shared by all threads. Once it is
+ * older than {@code refreshAfter} the next caller triggers a refresh in the background and keeps
+ * using the current UUID; once it is older than {@code expireAfter} callers wait for a new one.
+ * {@link #execute(UnlockedRequest)} also fetches a new UUID and repeats the request once when
+ * the server rejects the current one. Every client has a shared provider, see
+ * {@link DatabunkerproApi#getUnlockProvider()}.
+ *
+ * <pre>
+ * UnlockProvider unlock = api.getUnlockProvider();
+ * Map&lt;String, Object&gt; page = unlock.execute(uuid -&gt; api.bulkListAllUsers(uuid, 0, 100, null));
+ * </pre>
+ */
+public class UnlockProvider {
+    private static final Executor REFRESHER = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "databunkerpro-unlock-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DatabunkerproApi api;
+    private final long refreshAfterNanos;
+    private final long expireAfterNanos;
+    private final Map<String, Object> requestMetadata;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private volatile Unlock current;
+
+    private UnlockProvider(Builder builder) {
+        this.api = builder.api;
+        this.refreshAfterNanos = builder.refreshAfter.toNanos();
+        this.expireAfterNanos = builder.expireAfter.toNanos();
+        this.requestMetadata = builder.requestMetadata;
+    }
+
+    private static final class Unlock {
+        final String uuid;
+        final long fetchedAt;
+
+        Unlock(String uuid, long fetchedAt) {
+            this.uuid = uuid;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    /**
+     * A request that needs an unlock UUID
+     */
+    @FunctionalInterface
+    public interface UnlockedRequest {
+        /**
+         * @param unlockuuid The unlock UUID to send
+         * @return The API response
+         * @throws IOException If an I/O error occurs
+         */
+        Map<String, Object> send(String unlockuuid) throws IOException;
+    }
+
+    /**
+     * Returns the current unlock UUID, fetching a new one if there is none or it has expired
+     *
+     * @return The unlock UUID
+     * @throws IOException If BulkListUnlock fails
+     */
+    public String get() throws IOException {
+        Unlock unlock = current;
+        if (unlock == null) {
+            return fetch(null);
+        }
+        long age = System.nanoTime() - unlock.fetchedAt;
+        if (age >= expireAfterNanos) {
+            return fetch(unlock.uuid);
+        }
+        if (age >= refreshAfterNanos && refreshing.compareAndSet(false, true)) {
+            REFRESHER.execute(() -> {
+                try {
+                    fetch(unlock.uuid);
+                } catch (IOException | RuntimeException e) {
+                    // The current UUID stays in use; the next caller past refreshAfter tries again
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        }
+        return unlock.uuid;
+    }
+
+    /**
+     * Sends a request with the current unlock UUID. If the server rejects the UUID, a new one
+     * is fetched and the request is sent once more.
+     *
+     * @param request The request to send
+     * @return The API response
+     * @throws IOException If the request or BulkListUnlock fails
+     */
+    public Map<String, Object> execute(UnlockedRequest request) throws IOException {
+        String uuid = get();
+        Map<String, Object> response = request.send(uuid);
+        if (isRejected(response)) {
+            rejections.increment();
+            response = request.send(fetch(uuid));
+        }
+        return response;
+    }
+
+    /**
+     * Drops a UUID the server has rejected, so that the next call fetches a new one. UUIDs that
+     * have already been replaced are ignored.
+     *
+     * @param unlockuuid The rejected unlock UUID
+     */
+    public void invalidate(String unlockuuid) {
+        lock.lock();
+        try {
+            Unlock unlock = current;
+            if (unlock != null && unlock.uuid.equals(unlockuuid)) {
+                current = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tells whether a response is the server refusing the unlock UUID
+     *
+     * @param response The API response
+     * @return True if the request failed because bulk operations are locked
+     */
+    public static boolean isRejected(Map<String, Object> response) {
+        if ("ok".equals(response.get("status"))) {
+            return false;
+        }
+        Object message = response.get("message");
+        return message != null && message.toString().toLowerCase(Locale.ROOT).contains("lock");
+    }
+
+    private String fetch(String stale) throws IOException {
+        lock.lock();
+        try {
+            Unlock unlock = current;
+            if (unlock != null && !unlock.uuid.equals(stale)
+                && System.nanoTime() - unlock.fetchedAt < expireAfterNanos) {
+                // Another thread replaced the stale UUID while this one waited
+                return unlock.uuid;
+            }
+            fetches.increment();
+            Map<String, Object> response = api.bulkListUnlock(requestMetadata);
+            if (!"ok".equals(response.get("status")) || response.get("unlockuuid") == null) {
+                throw new IOException("BulkListUnlock failed: " + response.get("message"));
+            }
+            unlock = new Unlock((String) response.get("unlockuuid"), System.nanoTime());
+            current = unlock;
+            return unlock.uuid;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return BulkListUnlock requests sent
+     */
+    public long getFetchCount() {
+        return fetches.sum();
+    }
+
+    /**
+     * @return Requests the server rejected because of a stale unlock UUID
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
+    }
+
+    /**
+     * Builder class for UnlockProvider
+     */
+    public static class Builder {
+        private final DatabunkerproApi api;
+        private Duration refreshAfter = Duration.ofMinutes(4);
+        private Duration expireAfter = Duration.ofMinutes(5);
+        private Map<String, Object> requestMetadata;
+
+        private Builder(DatabunkerproApi api) {
+            this.api = api;
+        }
+
+        /**
+         * Age after which the UUID is refreshed in the background while still being handed out
+         *
+         * @param refreshAfter The age (default 4 minutes)
+         * @return This builder
+         */
+        public Builder refreshAfter(Duration refreshAfter) {
+            this.refreshAfter = refreshAfter;
+            return this;
+        }
+
+        /**
+         * Age after which the UUID is no longer handed out and callers wait for a new one
+         *
+         * @param expireAfter The age (default 5 minutes)
+         * @return This builder
+         */
+        public Builder expireAfter(Duration expireAfter) {
+            this.expireAfter = expireAfter;
+            return this;
+        }
+
+        /**
+         * Request metadata sent with BulkListUnlock
+         *
+         * @param requestMetadata The metadata (can be null)
+         * @return This builder
+         */
+        public Builder requestMetadata(Map<String, Object> requestMetadata) {
+            this.requestMetadata = requestMetadata;
+            return this;
+        }
+
+        public UnlockProvider build() {
+            if (refreshAfter.compareTo(expireAfter) > 0) {
+                throw new IllegalArgumentException("refreshAfter must not exceed expireAfter");
+            }
+            return new UnlockProvider(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for UnlockProvider
+     *
+     * @param api The client used to send BulkListUnlock
+     * @return A new builder instance
+     */
+    public static Builder builder(DatabunkerproApi api) {
+        return new Builder(api);
+    }
+}
@@ -0,0 +1,572 @@
+package org.databunker.bulk;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.databunker.DatabunkerproApi;
+import org.databunker.options.BasicOptions;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Imports user profiles from a CSV or NDJSON file with concurrent UserCreateBulk requests.
+ * <p>
+ * Records are streamed from the input and grouped into batches limited by record count and
+ * serialized size. At most {@code concurrency} batches are in flight and one more is being
+ * filled, so memory use does not depend on the size of the input. Records the server rejects
+ * are appended to the reject file as {@code {"line": n, "error": "...", "record": {...}}}, and
+ * input that cannot be parsed as {@code {"line": n, "error": "...", "raw": "..."}}. A reject
+ * file can be passed to {@link #importNdjson(Path)} to retry it, after fixing the raw lines.
+ *
+ * <pre>
+ * UserImportPipeline pipeline = UserImportPipeline.builder(api)
+ *     .batchSize(1000)
+ *     .concurrency(4)
+ *     .rejectFile(Paths.get("rejects.ndjson"))
+ *     .build();
+ * UserImportPipeline.Result result = pipeline.importCsv(Paths.get("users.csv"));
+ * </pre>
+ */
+public class UserImportPipeline {
+    private final DatabunkerproApi api;
+    private final int batchSize;
+    private final int maxBatchBytes;
+    private final int concurrency;
+    private final Path rejectFile;
+    private final BasicOptions options;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private UserImportPipeline(Builder builder) {
+        this.api = builder.api;
+        this.batchSize = builder.batchSize;
+        this.maxBatchBytes = builder.maxBatchBytes;
+        this.concurrency = builder.concurrency;
+        this.rejectFile = builder.rejectFile;
+        this.options = builder.options;
+    }
+
+    /**
+     * Imports a CSV file with a header row. Every column becomes a profile field of the same
+     * name; empty cells are left out.
+     *
+     * @param file The CSV file, UTF-8 encoded
+     * @return Import counters
+     * @throws IOException If the input or the reject file cannot be read or written
+     */
+    public Result importCsv(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return run(new CsvSource(reader));
+        }
+    }
+
+    /**
+     * Imports a file with one JSON object per line. An object is either the profile itself,
+     * a UserCreateBulk record with a "profile" field, or a line of a reject file.
+     *
+     * @param file The NDJSON file, UTF-8 encoded
+     * @return Import counters
+     * @throws IOException If the input or the reject file cannot be read or written
+     */
+    public Result importNdjson(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return run(new NdjsonSource(reader));
+        }
+    }
+
+    /**
+     * Imports profiles or UserCreateBulk records from an iterator, e.g. a database cursor
+     *
+     * @param records The records; each is consumed once
+     * @return Import counters
+     * @throws IOException If the reject file cannot be written
+     */
+    public Result importRecords(Iterator<Map<String, Object>> records) throws IOException {
+        AtomicInteger position = new AtomicInteger();
+        return run(() -> records.hasNext() ? new Entry(position.incrementAndGet(), records.next()) : null);
+    }
+
+    private Result run(Source source) throws IOException {
+        long start = System.nanoTime();
+        Counters counters = new Counters();
+        try (RejectWriter rejects = new RejectWriter(rejectFile, counters);
+             BoundedExecutor executor = new BoundedExecutor("databunkerpro-import", concurrency)) {
+            Batch batch = new Batch();
+            Entry entry;
+            while (!executor.hasFailed() && (entry = source.next()) != null) {
+                counters.read.increment();
+                if (entry.error != null) {
+                    rejects.writeRaw(entry.line, entry.raw, entry.error);
+                    continue;
+                }
+                Map<String, Object> record = toBulkRecord(entry.record);
+                int size = objectMapper.writeValueAsBytes(record).length;
+                if (!batch.lines.isEmpty() && (batch.lines.size() >= batchSize || batch.bytes + size > maxBatchBytes)) {
+                    Batch full = batch;
+                    executor.submit(() -> send(full, rejects, counters));
+                    batch = new Batch();
+                }
+                batch.add(entry.line, record, size);
+            }
+            if (!batch.lines.isEmpty()) {
+                Batch last = batch;
+                executor.submit(() -> send(last, rejects, counters));
+            }
+            executor.awaitAll();
+        }
+        return new Result(counters, System.nanoTime() - start);
+    }
+
+    private void send(Batch batch, RejectWriter rejects, Counters counters) throws IOException {
+        counters.batches.increment();
+        @SuppressWarnings("unchecked")
+        Map<String, Object>[] records = batch.records.toArray((Map<String, Object>[]) new Map<?, ?>[0]);
+        Map<String, Object> response;
+        try {
+            response = api.createUsersBulk(records, options, null);
+        } catch (IOException e) {
+            rejectBatch(batch, rejects, e.getMessage());
+            return;
+        }
+        if (!"ok".equals(response.get("status"))) {
+            rejectBatch(batch, rejects, response.get("message") != null
+                ? response.get("message").toString() : "UserCreateBulk failed");
+            return;
+        }
+        Object created = response.get("created");
+        if (!(created instanceof List) || ((List<?>) created).size() != batch.records.size()) {
+            // No per-record results to match up; the request as a whole succeeded
+            counters.imported.add(batch.records.size());
+            return;
+        }
+        List<?> rows = (List<?>) created;
+        for (int i = 0; i < rows.size(); i++) {
+            Object row = rows.get(i);
+            if (row instanceof Map && "error".equals(((Map<?, ?>) row).get("status"))) {
+                Object message = ((Map<?, ?>) row).get("message");
+                rejects.write(batch.lines.get(i), batch.records.get(i), message != null ? message.toString() : "rejected");
+            } else {
+                counters.imported.increment();
+            }
+        }
+    }
+
+    private static void rejectBatch(Batch batch, RejectWriter rejects, String error) throws IOException {
+        for (int i = 0; i < batch.records.size(); i++) {
+            rejects.write(batch.lines.get(i), batch.records.get(i), error);
+        }
+    }
+
+    private static Map<String, Object> toBulkRecord(Map<String, Object> record) {
+        if (record.get("profile") instanceof Map) {
+            return record;
+        }
+        Map<String, Object> bulkRecord = new LinkedHashMap<>();
+        bulkRecord.put("profile", record);
+        return bulkRecord;
+    }
+
+    /**
+     * Counters of a finished import
+     */
+    public static class Result {
+        private final long read;
+        private final long imported;
+        private final long rejected;
+        private final long batches;
+        private final long elapsedNanos;
+
+        private Result(Counters counters, long elapsedNanos) {
+            this.read = counters.read.sum();
+            this.imported = counters.imported.sum();
+            this.rejected = counters.rejected.sum();
+            this.batches = counters.batches.sum();
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return Records read from the input, including unparseable ones
+         */
+        public long getRead() {
+            return read;
+        }
+
+        /**
+         * @return Records created on the server
+         */
+        public long getImported() {
+            return imported;
+        }
+
+        /**
+         * @return Records written to the reject file
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return UserCreateBulk requests sent
+         */
+        public long getBatches() {
+            return batches;
+        }
+
+        /**
+         * @return Imported records per second
+         */
+        public double getRecordsPerSecond() {
+            return elapsedNanos > 0 ? imported * 1e9 / elapsedNanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "read=%d imported=%d rejected=%d batches=%d (%.0f records/s)",
+                read, imported, rejected, batches, getRecordsPerSecond());
+        }
+    }
+
+    private static class Counters {
+        final LongAdder read = new LongAdder();
+        final LongAdder imported = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder batches = new LongAdder();
+    }
+
+    private static class Batch {
+        final List<Integer> lines = new ArrayList<>();
+        final List<Map<String, Object>> records = new ArrayList<>();
+        int bytes;
+
+        void add(int line, Map<String, Object> record, int size) {
+            lines.add(line);
+            records.add(record);
+            bytes += size;
+        }
+    }
+
+    private static class Entry {
+        final int line;
+        final Map<String, Object> record;
+        final String raw;
+        final String error;
+
+        Entry(int line, Map<String, Object> record) {
+            this(line, record, null, null);
+        }
+
+        Entry(int line, Map<String, Object> record, String raw, String error) {
+            this.line = line;
+            this.record = record;
+            this.raw = raw;
+            this.error = error;
+        }
+    }
+
+    private interface Source {
+        /**
+         * @return The next record, or null at the end of the input
+         */
+        Entry next() throws IOException;
+    }
+
+    private class NdjsonSource implements Source {
+        private final BufferedReader reader;
+        private int line;
+
+        NdjsonSource(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry next() throws IOException {
+            String text;
+            do {
+                text = reader.readLine();
+                line++;
+                if (text == null) {
+                    return null;
+                }
+            } while (text.trim().isEmpty());
+            try {
+                Object value = objectMapper.readValue(text, Object.class);
+                if (!(value instanceof Map)) {
+                    return new Entry(line, null, text, "not a JSON object");
+                }
+                Map<String, Object> record = (Map<String, Object>) value;
+                if (isRejectLine(record)) {
+                    if (record.get("record") instanceof Map) {
+                        return new Entry(line, (Map<String, Object>) record.get("record"));
+                    }
+                    text = (String) record.get("raw");
+                    value = objectMapper.readValue(text, Object.class);
+                    if (!(value instanceof Map)) {
+                        return new Entry(line, null, text, "not a JSON object");
+                    }
+                    return new Entry(line, (Map<String, Object>) value);
+                }
+                return new Entry(line, record);
+            } catch (JsonProcessingException e) {
+                return new Entry(line, null, text, "invalid JSON: " + e.getOriginalMessage());
+            }
+        }
+
+        /**
+         * A line of a reject file has exactly "line", "error" and either a "record" object or a
+         * "raw" string, so a profile that happens to have "line" and "error" fields is not taken
+         * for one
+         */
+        private boolean isRejectLine(Map<String, Object> record) {
+            return record.size() == 3
+                && record.get("line") instanceof Number
+                && record.containsKey("error")
+                && (record.get("record") instanceof Map || record.get("raw") instanceof String);
+        }
+    }
+
+    private static class CsvSource implements Source {
+        private final BufferedReader reader;
+        private final StringBuilder rawRow = new StringBuilder();
+        private List<String> header;
+        private int line;
+
+        CsvSource(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Entry next() throws IOException {
+            if (header == null) {
+                header = readRow();
+                if (header == null) {
+                    return null;
+                }
+                if (!header.isEmpty() && header.get(0).startsWith("\uFEFF")) {
+                    header.set(0, header.get(0).substring(1));
+                }
+            }
+            List<String> row;
+            int start;
+            do {
+                start = line + 1;
+                row = readRow();
+                if (row == null) {
+                    return null;
+                }
+            } while (row.size() == 1 && row.get(0).isEmpty());
+            if (row.size() != header.size()) {
+                return new Entry(start, null, rawRow.toString(),
+                    "expected " + header.size() + " columns, found " + row.size());
+            }
+            Map<String, Object> profile = new LinkedHashMap<>();
+            for (int i = 0; i < row.size(); i++) {
+                if (!row.get(i).isEmpty()) {
+                    profile.put(header.get(i), row.get(i));
+                }
+            }
+            return new Entry(start, profile);
+        }
+
+        /**
+         * Reads one RFC 4180 row, which spans several lines if a quoted field contains line breaks
+         */
+        private List<String> readRow() throws IOException {
+            String text = reader.readLine();
+            if (text == null) {
+                return null;
+            }
+            line++;
+            rawRow.setLength(0);
+            rawRow.append(text);
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            int i = 0;
+            while (true) {
+                if (i == text.length()) {
+                    if (!quoted) {
+                        break;
+                    }
+                    String next = reader.readLine();
+                    if (next == null) {
+                        break;
+                    }
+                    line++;
+                    rawRow.append('\n').append(next);
+                    field.append('\n');
+                    text = next;
+                    i = 0;
+                    continue;
+                }
+                char c = text.charAt(i++);
+                if (quoted) {
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < text.length() && text.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+
+    private class RejectWriter implements Closeable {
+        private final BufferedWriter writer;
+        private final Counters counters;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        RejectWriter(Path file, Counters counters) throws IOException {
+            this.writer = file != null ? Files.newBufferedWriter(file, StandardCharsets.UTF_8) : null;
+            this.counters = counters;
+        }
+
+        void write(int line, Map<String, Object> record, String error) throws IOException {
+            write(line, "record", record, error);
+        }
+
+        void writeRaw(int line, String raw, String error) throws IOException {
+            write(line, "raw", raw, error);
+        }
+
+        private void write(int line, String field, Object value, String error) throws IOException {
+            counters.rejected.increment();
+            if (writer == null) {
+                return;
+            }
+            Map<String, Object> reject = new LinkedHashMap<>();
+            reject.put("line", line);
+            reject.put("error", error);
+            reject.put(field, value);
+            String json = objectMapper.writeValueAsString(reject);
+            lock.lock();
+            try {
+                writer.write(json);
+                writer.newLine();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Builder class for UserImportPipeline
+     */
+    public static class Builder {
+        private final DatabunkerproApi api;
+        private int batchSize = 1000;
+        private int maxBatchBytes = 4 * 1024 * 1024;
+        private int concurrency = 4;
+        private Path rejectFile;
+        private BasicOptions options;
+
+        private Builder(DatabunkerproApi api) {
+            this.api = api;
+        }
+
+        /**
+         * Maximum records per UserCreateBulk request
+         *
+         * @param batchSize The record count (default 1000)
+         * @return This builder
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Maximum serialized size of the records in one request; a batch is sent early when the
+         * next record would exceed it
+         *
+         * @param maxBatchBytes The size in bytes (default 4 MiB)
+         * @return This builder
+         */
+        public Builder maxBatchBytes(int maxBatchBytes) {
+            this.maxBatchBytes = maxBatchBytes;
+            return this;
+        }
+
+        /**
+         * Maximum number of batches in flight
+         *
+         * @param concurrency The batch count (default 4)
+         * @return This builder
+         */
+        public Builder concurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * File that receives rejected records as NDJSON; it is overwritten by every import
+         *
+         * @param rejectFile The reject file, or null to only count rejects
+         * @return This builder
+         */
+        public Builder rejectFile(Path rejectFile) {
+            this.rejectFile = rejectFile;
+            return this;
+        }
+
+        /**
+         * Options sent with every UserCreateBulk request
+         *
+         * @param options The options (can be null)
+         * @return This builder
+         */
+        public Builder options(BasicOptions options) {
+            this.options = options;
+            return this;
+        }
+
+        public UserImportPipeline build() {
+            if (batchSize <= 0 || maxBatchBytes <= 0 || concurrency <= 0) {
+                throw new IllegalArgumentException("batchSize, maxBatchBytes and concurrency must be positive");
+            }
+            return new UserImportPipeline(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for UserImportPipeline
+     *
+     * @param api The client used to send the batches
+     * @return A new builder instance
+     */
+    public static Builder builder(DatabunkerproApi api) {
+        return new Builder(api);
+    }
+}
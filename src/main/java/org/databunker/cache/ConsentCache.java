@@ -0,0 +1,367 @@
+package org.databunker.cache;
+
+import org.databunker.DatabunkerproApi;
+import org.databunker.MutationListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches consent checks made with AgreementGet.
+ * <p>
+ * Agreements are keyed by (mode, identity, brief) and cached for {@code ttl}; a missing
+ * agreement is cached as well, for {@code negativeTtl}. The cache listens to its client, so
+ * acceptAgreement and cancelAgreement drop the entry of that user and brief, and
+ * revokeAllAgreements drops every entry of the brief, as soon as they return. Changes made
+ * through other clients, or through another identification mode of the same user, become visible
+ * when the entry expires. {@link #prefetch} loads all agreements of a user with one
+ * AgreementListUserAgreements request.
+ *
+ * <pre>
+ * ConsentCache consents = ConsentCache.builder(api).ttl(Duration.ofSeconds(30)).build();
+ * if (consents.isGranted("email", "user@example.com", "marketing")) {
+ *     sendNewsletter();
+ * }
+ * </pre>
+ */
+public class ConsentCache implements Closeable {
+    private static final String GRANTED = "yes";
+
+    private final DatabunkerproApi api;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final int maxEntries;
+    private final Map<String, Object> requestMetadata;
+    private final MutationListener listener = this::onMutation;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    // Bumped on every invalidation, so that a lookup that raced with one does not cache its result
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private ConsentCache(Builder builder) {
+        this.api = builder.api;
+        this.ttlNanos = builder.ttl.toNanos();
+        this.negativeTtlNanos = builder.negativeTtl.toNanos();
+        this.maxEntries = builder.maxEntries;
+        this.requestMetadata = builder.requestMetadata;
+        api.addMutationListener(listener);
+    }
+
+    private static final class Key {
+        final String mode;
+        final String identity;
+        final String brief;
+
+        Key(String mode, String identity, String brief) {
+            this.mode = mode;
+            this.identity = identity;
+            this.brief = brief;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return mode.equals(key.mode) && identity.equals(key.identity) && brief.equals(key.brief);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * mode.hashCode() + identity.hashCode()) * 31 + brief.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        final Map<String, Object> agreement;
+        final long expiresAt;
+
+        Entry(Map<String, Object> agreement, long expiresAt) {
+            this.agreement = agreement;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Whether a user has accepted an agreement
+     *
+     * @param mode     User identification mode (e.g., 'email', 'phone', 'token')
+     * @param identity User's identifier corresponding to the mode
+     * @param brief    The agreement's brief
+     * @return true if the agreement exists and its status is "yes"
+     * @throws IOException If the agreement cannot be read
+     */
+    public boolean isGranted(String mode, String identity, String brief) throws IOException {
+        Map<String, Object> agreement = getAgreement(mode, identity, brief);
+        return agreement != null && GRANTED.equals(agreement.get("status"));
+    }
+
+    /**
+     * Returns a user's agreement, from the cache or with AgreementGet
+     *
+     * @param mode     User identification mode (e.g., 'email', 'phone', 'token')
+     * @param identity User's identifier corresponding to the mode
+     * @param brief    The agreement's brief
+     * @return The agreement, or null if the user has none for the brief
+     * @throws IOException If the agreement cannot be read
+     */
+    public Map<String, Object> getAgreement(String mode, String identity, String brief) throws IOException {
+        Key key = new Key(Objects.requireNonNull(mode, "mode"), Objects.requireNonNull(identity, "identity"),
+            Objects.requireNonNull(brief, "brief"));
+        Entry entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.expiresAt < 0) {
+            hits.increment();
+            return entry.agreement;
+        }
+        misses.increment();
+        long observed = generation.get();
+        Map<String, Object> response = api.getUserAgreement(mode, identity, brief, requestMetadata);
+        Map<String, Object> agreement;
+        if ("ok".equals(response.get("status"))) {
+            agreement = response.get("data") instanceof Map ? asAgreement((Map<?, ?>) response.get("data")) : Collections.emptyMap();
+            store(key, agreement, ttlNanos, observed);
+        } else if (isNotFound(response)) {
+            agreement = null;
+            store(key, null, negativeTtlNanos, observed);
+        } else {
+            throw new IOException("AgreementGet failed: " + response.get("message"));
+        }
+        return agreement;
+    }
+
+    /**
+     * Loads all agreements of a user into the cache with one request
+     *
+     * @param mode     User identification mode (e.g., 'email', 'phone', 'token')
+     * @param identity User's identifier corresponding to the mode
+     * @return Number of agreements cached
+     * @throws IOException If the agreements cannot be listed
+     */
+    public int prefetch(String mode, String identity) throws IOException {
+        long observed = generation.get();
+        Map<String, Object> response = api.listUserAgreements(mode, identity, requestMetadata);
+        if (!"ok".equals(response.get("status"))) {
+            throw new IOException("AgreementListUserAgreements failed: " + response.get("message"));
+        }
+        List<?> rows = response.get("rows") instanceof List ? (List<?>) response.get("rows") : Collections.emptyList();
+        int cached = 0;
+        for (Object row : rows) {
+            if (row instanceof Map && ((Map<?, ?>) row).get("brief") != null) {
+                Map<String, Object> agreement = asAgreement((Map<?, ?>) row);
+                store(new Key(mode, identity, agreement.get("brief").toString()), agreement, ttlNanos, observed);
+                cached++;
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Drops the cached agreement of a user
+     *
+     * @param mode     User identification mode
+     * @param identity User's identifier corresponding to the mode
+     * @param brief    The agreement's brief
+     */
+    public void invalidate(String mode, String identity, String brief) {
+        generation.incrementAndGet();
+        invalidations.increment();
+        entries.remove(new Key(mode, identity, brief));
+    }
+
+    /**
+     * Drops every cached agreement with the given brief
+     *
+     * @param brief The agreement's brief
+     */
+    public void invalidateBrief(String brief) {
+        generation.incrementAndGet();
+        invalidations.increment();
+        entries.keySet().removeIf(key -> key.brief.equals(brief));
+    }
+
+    /**
+     * Drops all cached agreements
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        invalidations.increment();
+        entries.clear();
+    }
+
+    private void onMutation(String tenant, String endpoint, Map<String, Object> request, Map<String, Object> response) {
+        if (!Objects.equals(tenant, api.getTenantName()) || request == null || !endpoint.startsWith("Agreement")) {
+            return;
+        }
+        Object brief = request.get("brief");
+        Object mode = request.get("mode");
+        Object identity = request.get("identity");
+        if ("AgreementRevokeAll".equals(endpoint) && brief != null) {
+            invalidateBrief(brief.toString());
+        } else if (brief != null && mode != null && identity != null) {
+            invalidate(mode.toString(), identity.toString(), brief.toString());
+        }
+    }
+
+    private void store(Key key, Map<String, Object> agreement, long ttl, long observed) {
+        if (ttl <= 0) {
+            return;
+        }
+        if (entries.size() >= maxEntries) {
+            evict();
+        }
+        entries.put(key, new Entry(agreement, System.nanoTime() + ttl));
+        if (generation.get() != observed) {
+            // Invalidated while the request was in flight; the result may predate the change
+            entries.remove(key);
+        }
+    }
+
+    private void evict() {
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> now - entry.expiresAt >= 0);
+        Iterator<Key> iterator = entries.keySet().iterator();
+        while (entries.size() >= maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static boolean isNotFound(Map<String, Object> response) {
+        Object message = response.get("message");
+        return message != null && message.toString().toLowerCase(Locale.ROOT).contains("not found");
+    }
+
+    private static Map<String, Object> asAgreement(Map<?, ?> data) {
+        Map<String, Object> agreement = new HashMap<>();
+        for (Map.Entry<?, ?> field : data.entrySet()) {
+            agreement.put(String.valueOf(field.getKey()), field.getValue());
+        }
+        return Collections.unmodifiableMap(agreement);
+    }
+
+    /**
+     * @return Checks answered from the cache, including cached misses
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Checks that called AgreementGet
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Invalidations, from agreement changes made through the client or by the caller
+     */
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    /**
+     * @return Number of cached agreements, including cached misses
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Stops listening to the client's agreement changes
+     */
+    @Override
+    public void close() {
+        api.removeMutationListener(listener);
+    }
+
+    /**
+     * Builder class for ConsentCache
+     */
+    public static class Builder {
+        private final DatabunkerproApi api;
+        private Duration ttl = Duration.ofSeconds(30);
+        private Duration negativeTtl = Duration.ofSeconds(10);
+        private int maxEntries = 100000;
+        private Map<String, Object> requestMetadata;
+
+        private Builder(DatabunkerproApi api) {
+            this.api = api;
+        }
+
+        /**
+         * How long an agreement is cached
+         *
+         * @param ttl The time to live (default 30 seconds)
+         * @return This builder
+         */
+        public Builder ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        /**
+         * How long the absence of an agreement is cached
+         *
+         * @param negativeTtl The time to live (default 10 seconds), or zero to not cache misses
+         * @return This builder
+         */
+        public Builder negativeTtl(Duration negativeTtl) {
+            this.negativeTtl = negativeTtl;
+            return this;
+        }
+
+        /**
+         * Maximum number of cached agreements
+         *
+         * @param maxEntries The entry count (default 100000)
+         * @return This builder
+         */
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * Request metadata sent with every request
+         *
+         * @param requestMetadata The metadata (can be null)
+         * @return This builder
+         */
+        public Builder requestMetadata(Map<String, Object> requestMetadata) {
+            this.requestMetadata = requestMetadata;
+            return this;
+        }
+
+        public ConsentCache build() {
+            if (ttl == null || negativeTtl == null || maxEntries <= 0) {
+                throw new IllegalArgumentException("ttl and negativeTtl are required and maxEntries must be positive");
+            }
+            return new ConsentCache(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for ConsentCache
+     *
+     * @param api The client used to read agreements; changes made through it invalidate the cache
+     * @return A new builder instance
+     */
+    public static Builder builder(DatabunkerproApi api) {
+        return new Builder(api);
+    }
+}
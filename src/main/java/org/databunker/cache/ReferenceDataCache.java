@@ -0,0 +1,315 @@
+package org.databunker.cache;
+
+import org.databunker.DatabunkerproApi;
+import org.databunker.MutationListener;
+import org.databunker.Ref;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Near cache for slowly changing reference data: policies, groups, legal bases and processing
+ * activities.
+ * <p>
+ * Every configured set is loaded when the cache is built and reloaded in the background every
+ * {@code refreshInterval}. Each load replaces an immutable snapshot, so lookups by ID or name
+ * read a volatile reference and never block. Create, update and delete calls for a set made
+ * through the same client schedule an immediate reload of that set. A failed reload keeps the
+ * previous snapshot.
+ *
+ * <pre>
+ * ReferenceDataCache reference = ReferenceDataCache.builder(api)
+ *     .refreshInterval(Duration.ofMinutes(5))
+ *     .build();
+ * Map&lt;String, Object&gt; policy = reference.get(ReferenceDataCache.Type.POLICY, "read-only");
+ * </pre>
+ */
+public class ReferenceDataCache implements Closeable {
+    /**
+     * A set of reference data
+     */
+    public enum Type {
+        /** Policies, from PolicyListAllPolicies, by policyid or policyname */
+        POLICY("Policy", "policyid", "policyname", DatabunkerproApi::listPolicies),
+        /** Groups, from GroupListAllGroups, by groupid or groupname */
+        GROUP("Group", "groupid", "groupname", DatabunkerproApi::listAllGroups),
+        /** Legal bases, from LegalBasisListAgreements, by brief */
+        LEGAL_BASIS("LegalBasis", null, "brief", DatabunkerproApi::listAgreements),
+        /** Processing activities, from ProcessingActivityListActivities, by activity */
+        PROCESSING_ACTIVITY("ProcessingActivity", null, "activity", DatabunkerproApi::listProcessingActivities);
+
+        private final String endpointPrefix;
+        private final String idField;
+        private final String nameField;
+        private final Loader loader;
+
+        Type(String endpointPrefix, String idField, String nameField, Loader loader) {
+            this.endpointPrefix = endpointPrefix;
+            this.idField = idField;
+            this.nameField = nameField;
+            this.loader = loader;
+        }
+
+        /**
+         * Whether a call to an endpoint can change this set; membership changes of groups do not
+         */
+        boolean isChangedBy(String endpoint) {
+            return endpoint.startsWith(endpointPrefix)
+                && !endpoint.contains("List") && !endpoint.contains("Get")
+                && !endpoint.equals("GroupAddUser") && !endpoint.equals("GroupDeleteUser");
+        }
+    }
+
+    @FunctionalInterface
+    private interface Loader {
+        Map<String, Object> load(DatabunkerproApi api, Map<String, Object> requestMetadata) throws IOException;
+    }
+
+    private static final class Snapshot {
+        final List<Map<String, Object>> rows;
+        final Map<String, Map<String, Object>> byId;
+        final Map<String, Map<String, Object>> byName;
+
+        Snapshot(List<Map<String, Object>> rows, Map<String, Map<String, Object>> byId,
+                 Map<String, Map<String, Object>> byName) {
+            this.rows = rows;
+            this.byId = byId;
+            this.byName = byName;
+        }
+    }
+
+    private static final Snapshot EMPTY = new Snapshot(Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap());
+
+    private final DatabunkerproApi api;
+    private final Set<Type> types;
+    private final Map<String, Object> requestMetadata;
+    private final AtomicReferenceArray<Snapshot> snapshots = new AtomicReferenceArray<>(Type.values().length);
+    private final ScheduledExecutorService refresher;
+    private final MutationListener listener = this::onMutation;
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+
+    private ReferenceDataCache(Builder builder) throws IOException {
+        this.api = builder.api;
+        this.types = Collections.unmodifiableSet(EnumSet.copyOf(builder.types));
+        this.requestMetadata = builder.requestMetadata;
+        for (Type type : Type.values()) {
+            snapshots.set(type.ordinal(), EMPTY);
+        }
+        for (Type type : types) {
+            refresh(type);
+        }
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "databunkerpro-reference-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = builder.refreshInterval.toNanos();
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, interval, interval, TimeUnit.NANOSECONDS);
+        api.addMutationListener(listener);
+    }
+
+    /**
+     * Looks up an entry by ID or name; a numeric reference is looked up as an ID first
+     *
+     * @param type The set to look in
+     * @param ref  The entry's ID or name
+     * @return The entry, or null if the set has no such entry
+     */
+    public Map<String, Object> get(Type type, String ref) {
+        Snapshot snapshot = snapshots.get(type.ordinal());
+        if (type.idField != null && Ref.parseId(ref) >= 0) {
+            Map<String, Object> entry = snapshot.byId.get(ref);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return snapshot.byName.get(ref);
+    }
+
+    /**
+     * @param type The set
+     * @return All entries of the set, in the order the server listed them
+     */
+    public List<Map<String, Object>> list(Type type) {
+        return snapshots.get(type.ordinal()).rows;
+    }
+
+    /**
+     * Reloads a set now
+     *
+     * @param type The set
+     * @throws IOException If the set cannot be loaded; the previous snapshot stays in place
+     */
+    public void refresh(Type type) throws IOException {
+        Map<String, Object> response;
+        try {
+            response = type.loader.load(api, requestMetadata);
+        } catch (IOException e) {
+            loadFailures.increment();
+            throw e;
+        }
+        if (!"ok".equals(response.get("status"))) {
+            loadFailures.increment();
+            throw new IOException("Loading " + type + " failed: " + response.get("message"));
+        }
+        List<?> rawRows = response.get("rows") instanceof List ? (List<?>) response.get("rows") : Collections.emptyList();
+        List<Map<String, Object>> rows = new ArrayList<>(rawRows.size());
+        Map<String, Map<String, Object>> byId = new HashMap<>();
+        Map<String, Map<String, Object>> byName = new HashMap<>();
+        for (Object rawRow : rawRows) {
+            if (!(rawRow instanceof Map)) {
+                continue;
+            }
+            Map<String, Object> row = new HashMap<>();
+            for (Map.Entry<?, ?> field : ((Map<?, ?>) rawRow).entrySet()) {
+                row.put(String.valueOf(field.getKey()), field.getValue());
+            }
+            row = Collections.unmodifiableMap(row);
+            rows.add(row);
+            if (type.idField != null && row.get(type.idField) != null) {
+                byId.put(row.get(type.idField).toString(), row);
+            }
+            if (row.get(type.nameField) != null) {
+                byName.put(row.get(type.nameField).toString(), row);
+            }
+        }
+        snapshots.set(type.ordinal(), new Snapshot(Collections.unmodifiableList(rows), byId, byName));
+        loads.increment();
+    }
+
+    private void refreshQuietly() {
+        for (Type type : types) {
+            try {
+                refresh(type);
+            } catch (IOException | RuntimeException e) {
+                // Counted; the previous snapshot is served until the next refresh succeeds
+            }
+        }
+    }
+
+    private void onMutation(String tenant, String endpoint, Map<String, Object> request, Map<String, Object> response) {
+        if (!Objects.equals(tenant, api.getTenantName())) {
+            return;
+        }
+        for (Type type : types) {
+            if (type.isChangedBy(endpoint)) {
+                refresher.execute(() -> {
+                    try {
+                        refresh(type);
+                    } catch (IOException | RuntimeException e) {
+                        // Counted; the periodic refresh tries again
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * @return Successful loads of a set, at startup, periodic and after changes
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * @return Loads that failed and left the previous snapshot in place
+     */
+    public long getLoadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    /**
+     * Stops the background refresh and stops listening to the client's changes
+     */
+    @Override
+    public void close() {
+        api.removeMutationListener(listener);
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Builder class for ReferenceDataCache
+     */
+    public static class Builder {
+        private final DatabunkerproApi api;
+        private Set<Type> types = EnumSet.allOf(Type.class);
+        private Duration refreshInterval = Duration.ofMinutes(5);
+        private Map<String, Object> requestMetadata;
+
+        private Builder(DatabunkerproApi api) {
+            this.api = api;
+        }
+
+        /**
+         * Sets to load and keep fresh
+         *
+         * @param types The sets (default all)
+         * @return This builder
+         */
+        public Builder types(Set<Type> types) {
+            this.types = types;
+            return this;
+        }
+
+        /**
+         * Interval between background reloads of all sets
+         *
+         * @param refreshInterval The interval (default 5 minutes)
+         * @return This builder
+         */
+        public Builder refreshInterval(Duration refreshInterval) {
+            this.refreshInterval = refreshInterval;
+            return this;
+        }
+
+        /**
+         * Request metadata sent with every request
+         *
+         * @param requestMetadata The metadata (can be null)
+         * @return This builder
+         */
+        public Builder requestMetadata(Map<String, Object> requestMetadata) {
+            this.requestMetadata = requestMetadata;
+            return this;
+        }
+
+        /**
+         * Builds the cache and loads all sets
+         *
+         * @return The cache
+         * @throws IOException If a set cannot be loaded
+         */
+        public ReferenceDataCache build() throws IOException {
+            if (types == null || types.isEmpty() || refreshInterval == null
+                || refreshInterval.isZero() || refreshInterval.isNegative()) {
+                throw new IllegalArgumentException("types must not be empty and refreshInterval must be positive");
+            }
+            return new ReferenceDataCache(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for ReferenceDataCache
+     *
+     * @param api The client used to load the sets; changes made through it trigger reloads
+     * @return A new builder instance
+     */
+    public static Builder builder(DatabunkerproApi api) {
+        return new Builder(api);
+    }
+}
@@ -0,0 +1,508 @@
+package org.databunker.cache;
+
+import org.databunker.DatabunkerproApi;
+import org.databunker.options.BasicOptions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Session store with a local cache and write-behind to SessionUpsert.
+ * <p>
+ * Sessions read with {@link #get} are cached, and {@link #put} only updates the cached copy and
+ * marks it dirty. A background flush writes each dirty session once per {@code flushInterval},
+ * however often it changed in between. The {@code slidingtime} and {@code finaltime} of
+ * {@code sessionOptions} are sent with every upsert. A session created with {@code put} expires
+ * locally by them; a session read with SessionGet was created earlier, so it is only served from
+ * the cache for {@code cacheTtl} after it was read or written, which is kept below
+ * {@code slidingtime}, and then read again. Reads of a cached session are passed on to the server:
+ * with a {@code slidingtime}, the next flush upserts a session that was read since its last write,
+ * which slides its expiry on the server as well. The cache holds at most {@code maxSessions}
+ * sessions; the least recently used clean ones are dropped first, and dirty ones are never dropped
+ * before they are written.
+ * <p>
+ * {@link #delete} drops the pending write and deletes on the server right away, and
+ * {@link #listUserSessions} flushes first, so both agree with what the store returned. The
+ * store assumes that a session is only changed through one store, e.g. with sticky sessions.
+ *
+ * <pre>
+ * SessionStore sessions = SessionStore.builder(api)
+ *     .sessionOptions(BasicOptions.builder().slidingtime("30m").build())
+ *     .build();
+ * Map&lt;String, Object&gt; data = sessions.get(sessionuuid);
+ * data.put("cart", cart);
+ * sessions.put(sessionuuid, data);
+ * </pre>
+ */
+public class SessionStore implements Closeable {
+    private final DatabunkerproApi api;
+    private final BasicOptions sessionOptions;
+    private final long finalNanos;
+    private final long slidingNanos;
+    private final long cacheTtlNanos;
+    private final int maxSessions;
+    private final Map<String, Object> requestMetadata;
+    private final ScheduledExecutorService flusher;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Held while writing to the server, so that a delete cannot be overtaken by a flush
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder writeFailures = new LongAdder();
+
+    private SessionStore(Builder builder) {
+        this.api = builder.api;
+        this.sessionOptions = builder.sessionOptions;
+        this.finalNanos = sessionOptions != null ? XTokenProvider.parseTime(sessionOptions.getFinaltime()) : Long.MAX_VALUE;
+        this.slidingNanos = sessionOptions != null ? XTokenProvider.parseTime(sessionOptions.getSlidingtime()) : Long.MAX_VALUE;
+        // A clean copy must be read again well before the server could have let the session slide out
+        this.cacheTtlNanos = Math.min(builder.cacheTtl.toNanos(), slidingNanos / 2);
+        this.maxSessions = builder.maxSessions;
+        this.requestMetadata = builder.requestMetadata;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "databunkerpro-session-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = builder.flushInterval.toNanos();
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (IOException | RuntimeException e) {
+                // Failed sessions stay dirty; the next run tries again
+            }
+        }, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    private static final class Session {
+        Map<String, Object> data;
+        // Local bound of finaltime; unknown for sessions created before they were read
+        final long finalAt;
+        long accessedAt;
+        // End of cacheTtl for the clean copy
+        long validUntil;
+        // Read since the last write, so the server has not seen the access yet
+        boolean touched;
+        long version;
+        long writtenVersion;
+
+        Session(Map<String, Object> data, long now, boolean dirty, long finalAt, long validUntil) {
+            this.data = data;
+            this.finalAt = finalAt;
+            this.accessedAt = now;
+            this.validUntil = validUntil;
+            this.version = dirty ? 1 : 0;
+        }
+
+        boolean isDirty() {
+            return version != writtenVersion;
+        }
+    }
+
+    /**
+     * Returns a session's data, from the cache or with SessionGet
+     *
+     * @param sessionuuid Session UUID
+     * @return A copy of the session data, or null if there is no such session
+     * @throws IOException If the session cannot be read
+     */
+    public Map<String, Object> get(String sessionuuid) throws IOException {
+        lock.lock();
+        try {
+            Session session = live(sessionuuid, System.nanoTime());
+            if (session != null) {
+                hits.increment();
+                session.touched = true;
+                return new HashMap<>(session.data);
+            }
+        } finally {
+            lock.unlock();
+        }
+        misses.increment();
+        Map<String, Object> response = api.getSession(sessionuuid, requestMetadata);
+        if (!"ok".equals(response.get("status"))) {
+            return null;
+        }
+        Map<String, Object> data = new HashMap<>();
+        if (response.get("sessiondata") instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) response.get("sessiondata")).entrySet()) {
+                data.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+        }
+        lock.lock();
+        try {
+            // A put that raced with the read wins
+            Session session = live(sessionuuid, System.nanoTime());
+            if (session != null) {
+                return new HashMap<>(session.data);
+            }
+            long now = System.nanoTime();
+            sessions.put(sessionuuid, new Session(new HashMap<>(data), now, false, Long.MAX_VALUE, plus(now, cacheTtlNanos)));
+            evict();
+        } finally {
+            lock.unlock();
+        }
+        return data;
+    }
+
+    /**
+     * Stores a session's data; it is written to the server by the next flush
+     *
+     * @param sessionuuid Session UUID
+     * @param sessiondata The complete session data
+     */
+    public void put(String sessionuuid, Map<String, Object> sessiondata) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            Session session = live(sessionuuid, now);
+            if (session == null) {
+                // The server creates the session with the first upsert, after this, so finaltime
+                // runs out there later than here
+                sessions.put(sessionuuid, new Session(new HashMap<>(sessiondata), now, true, plus(now, finalNanos), now));
+                evict();
+            } else {
+                if (session.isDirty()) {
+                    coalesced.increment();
+                }
+                session.data = new HashMap<>(sessiondata);
+                session.version++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes a session locally and on the server, discarding a pending write
+     *
+     * @param sessionuuid Session UUID
+     * @return The response of SessionDelete
+     * @throws IOException If the session cannot be deleted on the server
+     */
+    public Map<String, Object> delete(String sessionuuid) throws IOException {
+        writeLock.lock();
+        try {
+            lock.lock();
+            try {
+                sessions.remove(sessionuuid);
+            } finally {
+                lock.unlock();
+            }
+            return api.deleteSession(sessionuuid, requestMetadata);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Lists a user's sessions after writing pending changes, so that sessions only stored
+     * locally so far are included
+     *
+     * @param mode     User identification mode (e.g., 'email', 'phone', 'token')
+     * @param identity User's identifier corresponding to the mode
+     * @return The response of SessionListUserSessions
+     * @throws IOException If a pending write or the listing fails
+     */
+    public Map<String, Object> listUserSessions(String mode, String identity) throws IOException {
+        flush();
+        return api.listUserSessions(mode, identity, requestMetadata);
+    }
+
+    /**
+     * Writes every dirty session with SessionUpsert, and with a {@code slidingtime} every
+     * session read since its last write. Sessions that fail stay dirty.
+     *
+     * @return Number of sessions written
+     * @throws IOException The first failure, after all sessions were tried
+     */
+    public int flush() throws IOException {
+        writeLock.lock();
+        try {
+            List<String> uuids = new ArrayList<>();
+            List<Map<String, Object>> data = new ArrayList<>();
+            List<Long> versions = new ArrayList<>();
+            lock.lock();
+            try {
+                expire(System.nanoTime());
+                for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+                    if (entry.getValue().isDirty() || (entry.getValue().touched && slidingNanos != Long.MAX_VALUE)) {
+                        uuids.add(entry.getKey());
+                        data.add(entry.getValue().data);
+                        versions.add(entry.getValue().version);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            IOException failure = null;
+            int written = 0;
+            for (int i = 0; i < uuids.size(); i++) {
+                try {
+                    Map<String, Object> response = api.upsertSession(uuids.get(i), data.get(i), sessionOptions, requestMetadata);
+                    if (!"ok".equals(response.get("status"))) {
+                        throw new IOException("SessionUpsert failed: " + response.get("message"));
+                    }
+                } catch (IOException e) {
+                    writeFailures.increment();
+                    if (failure == null) {
+                        failure = e;
+                    }
+                    continue;
+                }
+                writes.increment();
+                written++;
+                lock.lock();
+                try {
+                    Session session = sessions.get(uuids.get(i));
+                    if (session != null) {
+                        session.writtenVersion = Math.max(session.writtenVersion, versions.get(i));
+                        session.touched = false;
+                        session.validUntil = plus(System.nanoTime(), cacheTtlNanos);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            lock.lock();
+            try {
+                evict();
+            } finally {
+                lock.unlock();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return written;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the session if it is cached and has not expired, and touches it
+     */
+    private Session live(String sessionuuid, long now) {
+        Session session = sessions.get(sessionuuid);
+        if (session == null) {
+            return null;
+        }
+        if (isExpired(session, now)) {
+            sessions.remove(sessionuuid);
+            return null;
+        }
+        session.accessedAt = now;
+        return session;
+    }
+
+    private boolean isExpired(Session session, long now) {
+        if ((session.finalAt != Long.MAX_VALUE && now - session.finalAt >= 0) || now - session.accessedAt >= slidingNanos) {
+            return true;
+        }
+        // A clean copy is only trusted for cacheTtl; a dirty one is the newest data there is
+        return !session.isDirty() && now - session.validUntil >= 0;
+    }
+
+    /**
+     * Deadline {@code nanos} after {@code now}, or Long.MAX_VALUE for an unlimited period
+     */
+    private static long plus(long now, long nanos) {
+        return nanos == Long.MAX_VALUE ? Long.MAX_VALUE : now + nanos;
+    }
+
+    private void expire(long now) {
+        sessions.values().removeIf(session -> isExpired(session, now));
+    }
+
+    private void evict() {
+        Iterator<Session> iterator = sessions.values().iterator();
+        int excess = sessions.size() - maxSessions;
+        while (excess > 0 && iterator.hasNext()) {
+            if (!iterator.next().isDirty()) {
+                iterator.remove();
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * @return Number of cached sessions
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return sessions.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of sessions with changes that have not been written yet
+     */
+    public int getDirtyCount() {
+        lock.lock();
+        try {
+            int dirty = 0;
+            for (Session session : sessions.values()) {
+                if (session.isDirty()) {
+                    dirty++;
+                }
+            }
+            return dirty;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Reads answered from the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Reads that called SessionGet
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Sessions written with SessionUpsert
+     */
+    public long getWriteCount() {
+        return writes.sum();
+    }
+
+    /**
+     * @return Updates folded into a pending write instead of causing one of their own
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return Writes that failed and were left for the next flush
+     */
+    public long getWriteFailureCount() {
+        return writeFailures.sum();
+    }
+
+    /**
+     * Stops the background flush and writes pending changes
+     *
+     * @throws IOException If a pending write fails
+     */
+    @Override
+    public void close() throws IOException {
+        flusher.shutdownNow();
+        flush();
+    }
+
+    /**
+     * Builder class for SessionStore
+     */
+    public static class Builder {
+        private final DatabunkerproApi api;
+        private BasicOptions sessionOptions;
+        private Duration flushInterval = Duration.ofSeconds(1);
+        private Duration cacheTtl = Duration.ofSeconds(30);
+        private int maxSessions = 10000;
+        private Map<String, Object> requestMetadata;
+
+        private Builder(DatabunkerproApi api) {
+            this.api = api;
+        }
+
+        /**
+         * Expiry of the sessions, sent with every upsert and applied to the cached copies
+         *
+         * @param sessionOptions slidingtime and/or finaltime (can be null)
+         * @return This builder
+         */
+        public Builder sessionOptions(BasicOptions sessionOptions) {
+            this.sessionOptions = sessionOptions;
+            return this;
+        }
+
+        /**
+         * Interval between background flushes
+         *
+         * @param flushInterval The interval (default 1 second)
+         * @return This builder
+         */
+        public Builder flushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+            return this;
+        }
+
+        /**
+         * How long a clean copy of a session is served from the cache before it is read again.
+         * It is capped at half the {@code slidingtime}.
+         *
+         * @param cacheTtl The time (default 30 seconds)
+         * @return This builder
+         */
+        public Builder cacheTtl(Duration cacheTtl) {
+            this.cacheTtl = cacheTtl;
+            return this;
+        }
+
+        /**
+         * Maximum number of cached sessions; sessions with pending writes may exceed it
+         *
+         * @param maxSessions The session count (default 10000)
+         * @return This builder
+         */
+        public Builder maxSessions(int maxSessions) {
+            this.maxSessions = maxSessions;
+            return this;
+        }
+
+        /**
+         * Request metadata sent with every request
+         *
+         * @param requestMetadata The metadata (can be null)
+         * @return This builder
+         */
+        public Builder requestMetadata(Map<String, Object> requestMetadata) {
+            this.requestMetadata = requestMetadata;
+            return this;
+        }
+
+        public SessionStore build() {
+            if (maxSessions <= 0 || flushInterval == null || flushInterval.isZero() || flushInterval.isNegative()
+                || cacheTtl == null || cacheTtl.isZero() || cacheTtl.isNegative()) {
+                throw new IllegalArgumentException("maxSessions, flushInterval and cacheTtl must be positive");
+            }
+            return new SessionStore(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for SessionStore
+     *
+     * @param api The client used to read and write the sessions
+     * @return A new builder instance
+     */
+    public static Builder builder(DatabunkerproApi api) {
+        return new Builder(api);
+    }
+}
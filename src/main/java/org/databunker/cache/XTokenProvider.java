@@ -0,0 +1,391 @@
+package org.databunker.cache;
+
+import org.databunker.DatabunkerproApi;
+import org.databunker.options.BasicOptions;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches user and role access tokens created with XTokenCreateForUser and XTokenCreateForRole.
+ * <p>
+ * Tokens are keyed by (mode, identity) or by role reference. The lifetime of a token is the
+ * shorter of the {@code finaltime} and {@code slidingtime} it was created with; once
+ * {@code refreshAhead} of it has passed, the next lookup starts creating a replacement in the
+ * background and keeps returning the current token until the replacement arrives. Concurrent
+ * lookups of a key that is not cached yet share a single request.
+ *
+ * <pre>
+ * XTokenProvider xtokens = XTokenProvider.builder(api)
+ *     .tokenOptions(BasicOptions.builder().finaltime("1h").build())
+ *     .build();
+ * String xtoken = xtokens.getUserToken("email", "user@example.com");
+ * </pre>
+ */
+public class XTokenProvider {
+    private static final Executor REFRESHER = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "databunkerpro-xtoken-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DatabunkerproApi api;
+    private final BasicOptions tokenOptions;
+    private final long lifetimeNanos;
+    private final long refreshAfterNanos;
+    private final Executor executor;
+    private final Map<String, Object> requestMetadata;
+    private final Map<Key, CompletableFuture<XToken>> tokens = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+
+    private XTokenProvider(Builder builder) {
+        this.api = builder.api;
+        this.tokenOptions = builder.tokenOptions;
+        this.lifetimeNanos = lifetimeNanos(builder.tokenOptions);
+        this.refreshAfterNanos = (long) (lifetimeNanos * builder.refreshAhead);
+        this.executor = builder.executor != null ? builder.executor : REFRESHER;
+        this.requestMetadata = builder.requestMetadata;
+    }
+
+    private static final class Key {
+        final String mode;
+        final String identity;
+
+        Key(String mode, String identity) {
+            this.mode = mode;
+            this.identity = identity;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return mode.equals(key.mode) && identity.equals(key.identity);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mode.hashCode() + identity.hashCode();
+        }
+    }
+
+    private static final class XToken {
+        final String value;
+        final long createdAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        XToken(String value, long createdAt) {
+            this.value = value;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * Returns a cached access token for a user, creating one if needed
+     *
+     * @param mode     User identification mode (e.g., 'email', 'phone', 'token')
+     * @param identity User's identifier corresponding to the mode
+     * @return The access token
+     * @throws IOException If the token cannot be created
+     */
+    public String getUserToken(String mode, String identity) throws IOException {
+        return get(new Key(Objects.requireNonNull(mode, "mode"), Objects.requireNonNull(identity, "identity")));
+    }
+
+    /**
+     * Returns a cached access token for a role, creating one if needed
+     *
+     * @param roleref Role ID or name
+     * @return The access token
+     * @throws IOException If the token cannot be created
+     */
+    public String getRoleToken(String roleref) throws IOException {
+        return get(new Key("", Objects.requireNonNull(roleref, "roleref")));
+    }
+
+    /**
+     * Drops the cached token of a user, e.g. after the server rejected it
+     *
+     * @param mode     User identification mode
+     * @param identity User's identifier corresponding to the mode
+     */
+    public void invalidateUser(String mode, String identity) {
+        tokens.remove(new Key(mode, identity));
+    }
+
+    /**
+     * Drops the cached token of a role
+     *
+     * @param roleref Role ID or name
+     */
+    public void invalidateRole(String roleref) {
+        tokens.remove(new Key("", roleref));
+    }
+
+    private String get(Key key) throws IOException {
+        while (true) {
+            CompletableFuture<XToken> cached = tokens.get(key);
+            if (cached != null && cached.isDone() && !cached.isCompletedExceptionally()) {
+                XToken token = cached.join();
+                long age = System.nanoTime() - token.createdAt;
+                if (age < lifetimeNanos) {
+                    hits.increment();
+                    if (age >= refreshAfterNanos && token.refreshing.compareAndSet(false, true)) {
+                        refresh(key, cached);
+                    }
+                    return token.value;
+                }
+                // Expired; fall through and replace it unless another thread already has
+                CompletableFuture<XToken> created = new CompletableFuture<>();
+                if (tokens.replace(key, cached, created)) {
+                    misses.increment();
+                    return create(key, created).value;
+                }
+                continue;
+            }
+            if (cached == null) {
+                CompletableFuture<XToken> created = new CompletableFuture<>();
+                cached = tokens.putIfAbsent(key, created);
+                if (cached == null) {
+                    misses.increment();
+                    return create(key, created).value;
+                }
+            }
+            hits.increment();
+            return await(cached).value;
+        }
+    }
+
+    private XToken create(Key key, CompletableFuture<XToken> result) throws IOException {
+        try {
+            XToken token = request(key);
+            result.complete(token);
+            return token;
+        } catch (IOException | RuntimeException e) {
+            tokens.remove(key, result);
+            result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void refresh(Key key, CompletableFuture<XToken> current) {
+        executor.execute(() -> {
+            try {
+                XToken token = request(key);
+                refreshes.increment();
+                tokens.replace(key, current, CompletableFuture.completedFuture(token));
+            } catch (IOException | RuntimeException e) {
+                refreshFailures.increment();
+                // Let the next lookup past refreshAhead try again
+                current.join().refreshing.set(false);
+            }
+        });
+    }
+
+    private XToken request(Key key) throws IOException {
+        long createdAt = System.nanoTime();
+        Map<String, Object> response = key.mode.isEmpty()
+            ? api.createRoleXToken(key.identity, tokenOptions, requestMetadata)
+            : api.createUserXToken(key.mode, key.identity, tokenOptions, requestMetadata);
+        if (!"ok".equals(response.get("status")) || response.get("xtoken") == null) {
+            throw new IOException("XToken creation failed: " + response.get("message"));
+        }
+        return new XToken(response.get("xtoken").toString(), createdAt);
+    }
+
+    private static XToken await(CompletableFuture<XToken> pending) throws IOException {
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an access token");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("XToken creation failed", e.getCause());
+        }
+    }
+
+    /**
+     * @return Lookups answered from the cache, including lookups that waited for a concurrent
+     *     request of the same token
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Lookups that created a token because none was cached or it had expired
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Tokens replaced in the background before they expired
+     */
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    /**
+     * @return Background refreshes that failed
+     */
+    public long getRefreshFailureCount() {
+        return refreshFailures.sum();
+    }
+
+    /**
+     * @return Number of cached tokens
+     */
+    public int size() {
+        return tokens.size();
+    }
+
+    private static long lifetimeNanos(BasicOptions options) {
+        long finaltime = parseTime(options.getFinaltime());
+        long slidingtime = parseTime(options.getSlidingtime());
+        long lifetime = Math.min(finaltime, slidingtime);
+        if (lifetime == Long.MAX_VALUE) {
+            throw new IllegalArgumentException("tokenOptions must set finaltime or slidingtime");
+        }
+        return lifetime;
+    }
+
+    /**
+     * Parses a Databunker time period such as "30s", "15m", "1h" or "7d"
+     *
+     * @param value The period, or null
+     * @return The period in nanoseconds, or Long.MAX_VALUE for null
+     */
+    static long parseTime(String value) {
+        if (value == null) {
+            return Long.MAX_VALUE;
+        }
+        String trimmed = value.trim().toLowerCase(Locale.ROOT);
+        if (trimmed.length() < 2) {
+            throw new IllegalArgumentException("Invalid time period: " + value);
+        }
+        TimeUnit unit;
+        long multiplier = 1;
+        switch (trimmed.charAt(trimmed.length() - 1)) {
+            case 's':
+                unit = TimeUnit.SECONDS;
+                break;
+            case 'm':
+                unit = TimeUnit.MINUTES;
+                break;
+            case 'h':
+                unit = TimeUnit.HOURS;
+                break;
+            case 'd':
+                unit = TimeUnit.DAYS;
+                break;
+            case 'w':
+                unit = TimeUnit.DAYS;
+                multiplier = 7;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid time period: " + value);
+        }
+        try {
+            long amount = Long.parseLong(trimmed.substring(0, trimmed.length() - 1));
+            return unit.toNanos(Math.multiplyExact(amount, multiplier));
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid time period: " + value, e);
+        }
+    }
+
+    /**
+     * Builder class for XTokenProvider
+     */
+    public static class Builder {
+        private final DatabunkerproApi api;
+        private BasicOptions tokenOptions = BasicOptions.builder().finaltime("1h").build();
+        private double refreshAhead = 0.8;
+        private Executor executor;
+        private Map<String, Object> requestMetadata;
+
+        private Builder(DatabunkerproApi api) {
+            this.api = api;
+        }
+
+        /**
+         * Expiry of the created tokens; also determines how long they are cached
+         *
+         * @param tokenOptions finaltime and/or slidingtime (default finaltime "1h")
+         * @return This builder
+         */
+        public Builder tokenOptions(BasicOptions tokenOptions) {
+            this.tokenOptions = tokenOptions;
+            return this;
+        }
+
+        /**
+         * Fraction of a token's lifetime after which it is refreshed in the background
+         *
+         * @param refreshAhead A value between 0 and 1 (default 0.8)
+         * @return This builder
+         */
+        public Builder refreshAhead(double refreshAhead) {
+            this.refreshAhead = refreshAhead;
+            return this;
+        }
+
+        /**
+         * Executor for background refreshes
+         *
+         * @param executor The executor, or null for a shared pool of daemon threads
+         * @return This builder
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Request metadata sent with every request
+         *
+         * @param requestMetadata The metadata (can be null)
+         * @return This builder
+         */
+        public Builder requestMetadata(Map<String, Object> requestMetadata) {
+            this.requestMetadata = requestMetadata;
+            return this;
+        }
+
+        public XTokenProvider build() {
+            if (tokenOptions == null || !(refreshAhead >= 0 && refreshAhead <= 1)) {
+                throw new IllegalArgumentException("tokenOptions is required and refreshAhead must be between 0 and 1");
+            }
+            return new XTokenProvider(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for XTokenProvider
+     *
+     * @param api The client used to create the tokens
+     * @return A new builder instance
+     */
+    public static Builder builder(DatabunkerproApi api) {
+        return new Builder(api);
+    }
+}
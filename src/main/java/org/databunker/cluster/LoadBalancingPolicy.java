@@ -0,0 +1,151 @@
+package org.databunker.cluster;
+
+import java.time.Duration;
+
+/**
+ * Settings for balancing requests across several DatabunkerPro nodes
+ */
+public class LoadBalancingPolicy {
+    /**
+     * How a node is picked for each request
+     */
+    public enum Strategy {
+        /** Picks two random available nodes and sends to the one with fewer requests in flight */
+        POWER_OF_TWO_CHOICES,
+        /** Sends to the available node with the fewest requests in flight */
+        LEAST_OUTSTANDING
+    }
+
+    private final Strategy strategy;
+    private final int failureThreshold;
+    private final Duration ejectionTime;
+    private final Duration maxEjectionTime;
+    private final String healthCheckPath;
+    private final Duration healthCheckInterval;
+    private final Duration healthCheckTimeout;
+
+    private LoadBalancingPolicy(Builder builder) {
+        if (builder.failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be at least 1");
+        }
+        this.strategy = builder.strategy;
+        this.failureThreshold = builder.failureThreshold;
+        this.ejectionTime = builder.ejectionTime;
+        this.maxEjectionTime = builder.maxEjectionTime;
+        this.healthCheckPath = builder.healthCheckPath;
+        this.healthCheckInterval = builder.healthCheckInterval;
+        this.healthCheckTimeout = builder.healthCheckTimeout;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Consecutive failures after which a node is ejected
+     * @return The failure threshold (default 5)
+     */
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * Time a node stays ejected the first time; it doubles on every further ejection
+     * @return The base ejection time (default 10 seconds)
+     */
+    public Duration getEjectionTime() {
+        return ejectionTime;
+    }
+
+    /**
+     * Longest time a node stays ejected
+     * @return The maximum ejection time (default 5 minutes)
+     */
+    public Duration getMaxEjectionTime() {
+        return maxEjectionTime;
+    }
+
+    /**
+     * Path probed by active health checks. A node is healthy if it answers with a status below 500.
+     * @return The health check path (default "/status")
+     */
+    public String getHealthCheckPath() {
+        return healthCheckPath;
+    }
+
+    /**
+     * Interval between active health checks
+     * @return The interval, or null if only passive ejection is used
+     */
+    public Duration getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    /**
+     * Maximum time a health check may take
+     * @return The health check timeout (default 2 seconds)
+     */
+    public Duration getHealthCheckTimeout() {
+        return healthCheckTimeout;
+    }
+
+    /**
+     * Builder class for LoadBalancingPolicy
+     */
+    public static class Builder {
+        private Strategy strategy = Strategy.POWER_OF_TWO_CHOICES;
+        private int failureThreshold = 5;
+        private Duration ejectionTime = Duration.ofSeconds(10);
+        private Duration maxEjectionTime = Duration.ofMinutes(5);
+        private String healthCheckPath = "/status";
+        private Duration healthCheckInterval = Duration.ofSeconds(10);
+        private Duration healthCheckTimeout = Duration.ofSeconds(2);
+
+        public Builder strategy(Strategy strategy) {
+            this.strategy = strategy;
+            return this;
+        }
+
+        /**
+         * Passive ejection of failing nodes
+         *
+         * @param failureThreshold Consecutive failures after which a node is ejected
+         * @param ejectionTime     Time a node stays ejected the first time
+         * @param maxEjectionTime  Longest time a node stays ejected after repeated ejections
+         * @return This builder
+         */
+        public Builder ejection(int failureThreshold, Duration ejectionTime, Duration maxEjectionTime) {
+            this.failureThreshold = failureThreshold;
+            this.ejectionTime = ejectionTime;
+            this.maxEjectionTime = maxEjectionTime;
+            return this;
+        }
+
+        /**
+         * Active health checks that take failing nodes down and reinstate recovered ones
+         *
+         * @param path     Path to probe, e.g. "/status"
+         * @param interval Interval between checks, or null to disable active checks
+         * @param timeout  Maximum time a check may take
+         * @return This builder
+         */
+        public Builder healthCheck(String path, Duration interval, Duration timeout) {
+            this.healthCheckPath = path;
+            this.healthCheckInterval = interval;
+            this.healthCheckTimeout = timeout;
+            return this;
+        }
+
+        public LoadBalancingPolicy build() {
+            return new LoadBalancingPolicy(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for LoadBalancingPolicy
+     * @return A new builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+}
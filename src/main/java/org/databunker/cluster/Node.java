@@ -0,0 +1,182 @@
+package org.databunker.cluster;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One DatabunkerPro node with its own connection pool and health state.
+ * <p>
+ * A node is passively ejected after a run of consecutive failures and comes back once its
+ * ejection time has passed; repeated ejections double that time up to the policy's maximum.
+ * Active health checks can take a node down or reinstate it at any time.
+ */
+public class Node implements AutoCloseable {
+    private final String baseURL;
+    private final CloseableHttpClient httpClient;
+    private final LoadBalancingPolicy policy;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicInteger ejections = new AtomicInteger();
+    private volatile long ejectedUntil = System.nanoTime();
+    private volatile boolean down;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder ejectionCount = new LongAdder();
+
+    /**
+     * Creates a node
+     *
+     * @param baseURL    The base URL of the node
+     * @param httpClient HTTP client used only for this node
+     * @param policy     Ejection settings
+     */
+    public Node(String baseURL, CloseableHttpClient httpClient, LoadBalancingPolicy policy) {
+        this.baseURL = baseURL;
+        this.httpClient = httpClient;
+        this.policy = policy;
+    }
+
+    /**
+     * Base URL of the node
+     * @return The base URL
+     */
+    public String getBaseURL() {
+        return baseURL;
+    }
+
+    /**
+     * HTTP client holding the node's connection pool
+     * @return The HTTP client
+     */
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Whether the node may receive requests
+     * @return false while the node is ejected or failing its health checks
+     */
+    public boolean isAvailable() {
+        return !down && System.nanoTime() - ejectedUntil >= 0;
+    }
+
+    /**
+     * Number of requests currently in flight on the node
+     * @return The outstanding request count
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Marks the start of a request to the node
+     */
+    public void onRequestStart() {
+        outstanding.incrementAndGet();
+        requests.increment();
+    }
+
+    /**
+     * Marks the end of a request to the node that got an answer
+     */
+    public void onSuccess() {
+        outstanding.decrementAndGet();
+        consecutiveFailures.set(0);
+        ejections.set(0);
+    }
+
+    /**
+     * Marks the end of a request to the node that failed with a connection error or a 5xx
+     * answer, ejecting the node once the failure threshold is reached
+     */
+    public void onFailure() {
+        outstanding.decrementAndGet();
+        failures.increment();
+        if (consecutiveFailures.incrementAndGet() == policy.getFailureThreshold()) {
+            eject();
+        }
+    }
+
+    /**
+     * Marks the end of a request whose outcome says nothing about the node, e.g. one that
+     * was cancelled because another attempt won or the caller's deadline passed
+     */
+    public void onAbandoned() {
+        outstanding.decrementAndGet();
+    }
+
+    private void eject() {
+        int shift = Math.min(ejections.getAndIncrement(), 30);
+        long ejectionNanos = Math.min(policy.getEjectionTime().toNanos() << shift, policy.getMaxEjectionTime().toNanos());
+        ejectedUntil = System.nanoTime() + Math.max(0, ejectionNanos);
+        consecutiveFailures.set(0);
+        ejectionCount.increment();
+    }
+
+    /**
+     * Records the result of an active health check
+     *
+     * @param healthy Whether the node answered the health check
+     */
+    public void onHealthCheck(boolean healthy) {
+        if (healthy) {
+            if (down || !isAvailable()) {
+                consecutiveFailures.set(0);
+                ejectedUntil = System.nanoTime();
+            }
+            down = false;
+        } else {
+            if (!down) {
+                ejectionCount.increment();
+            }
+            down = true;
+        }
+    }
+
+    /**
+     * Number of requests sent to the node
+     * @return The request count
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Number of requests to the node that failed
+     * @return The failure count
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * Number of times the node was ejected or taken down by a health check
+     * @return The ejection count
+     */
+    public long getEjectionCount() {
+        return ejectionCount.sum();
+    }
+
+    /**
+     * Time left until an ejected node is reinstated
+     * @return The remaining ejection time in milliseconds, or 0 if the node is not ejected
+     */
+    public long getEjectedForMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(ejectedUntil - System.nanoTime()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    @Override
+    public String toString() {
+        return baseURL;
+    }
+}
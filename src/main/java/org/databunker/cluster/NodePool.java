@@ -0,0 +1,153 @@
+package org.databunker.cluster;
+
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Set of DatabunkerPro nodes that requests are balanced across.
+ * <p>
+ * Nodes that are ejected or failing their health checks are skipped. If every node is
+ * unavailable, requests are spread over all of them anyway, since failing fast on the
+ * client would turn a partial outage into a full one.
+ */
+public class NodePool implements AutoCloseable {
+    private final List<Node> nodes;
+    private final LoadBalancingPolicy policy;
+    private final ScheduledExecutorService healthChecker;
+
+    /**
+     * Creates a pool and, for more than one node, starts its active health checks
+     *
+     * @param nodes  The nodes
+     * @param policy Balancing, ejection and health check settings
+     */
+    public NodePool(List<Node> nodes, LoadBalancingPolicy policy) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("At least one node is required");
+        }
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        this.policy = policy;
+        if (nodes.size() > 1 && policy.getHealthCheckInterval() != null) {
+            this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "databunkerpro-health-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = policy.getHealthCheckInterval().toNanos();
+            healthChecker.scheduleWithFixedDelay(this::checkHealth, interval, interval, TimeUnit.NANOSECONDS);
+        } else {
+            this.healthChecker = null;
+        }
+    }
+
+    /**
+     * All nodes of the pool
+     * @return The nodes
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Picks the node for the next request
+     *
+     * @param exclude Node to avoid, e.g. the one the original of a hedged request went to (can be null)
+     * @return The node
+     */
+    public Node select(Node exclude) {
+        if (nodes.size() == 1) {
+            return nodes.get(0);
+        }
+        List<Node> candidates = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (node != exclude && node.isAvailable()) {
+                candidates.add(node);
+            }
+        }
+        if (candidates.isEmpty()) {
+            for (Node node : nodes) {
+                if (node != exclude) {
+                    candidates.add(node);
+                }
+            }
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (policy.getStrategy() == LoadBalancingPolicy.Strategy.LEAST_OUTSTANDING) {
+            // Start at a random node so that ties do not all go to the first one
+            int start = random.nextInt(candidates.size());
+            Node best = null;
+            for (int i = 0; i < candidates.size(); i++) {
+                Node node = candidates.get((start + i) % candidates.size());
+                if (best == null || node.getOutstanding() < best.getOutstanding()) {
+                    best = node;
+                }
+            }
+            return best;
+        }
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        Node a = candidates.get(first);
+        Node b = candidates.get(second);
+        return b.getOutstanding() < a.getOutstanding() ? b : a;
+    }
+
+    private void checkHealth() {
+        Timeout timeout = Timeout.ofMilliseconds(Math.max(1, policy.getHealthCheckTimeout().toMillis()));
+        for (Node node : nodes) {
+            HttpGet request = new HttpGet(node.getBaseURL() + policy.getHealthCheckPath());
+            request.setConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(timeout)
+                .setResponseTimeout(timeout)
+                .build());
+            boolean healthy;
+            try (CloseableHttpResponse response = node.getHttpClient().execute(request)) {
+                EntityUtils.consume(response.getEntity());
+                healthy = response.getCode() < 500;
+            } catch (IOException | RuntimeException e) {
+                healthy = false;
+            }
+            node.onHealthCheck(healthy);
+        }
+    }
+
+    /**
+     * Stops the health checks and closes the connection pools of all nodes
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        IOException failure = null;
+        for (Node node : nodes) {
+            try {
+                node.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package org.databunker.options;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.databunker.cluster.LoadBalancingPolicy;
+import org.databunker.resilience.Bulkhead;
+import org.databunker.resilience.HedgingPolicy;
+import org.databunker.resilience.IdempotencyPolicy;
+import org.databunker.resilience.RateLimiterRegistry;
+
+import java.time.Duration;
+
+/**
+ * Client-wide options for DatabunkerproApi
+ */
+public class ClientOptions {
+    private final RateLimiterRegistry rateLimiters;
+    private final Bulkhead bulkhead;
+    private final Duration connectTimeout;
+    private final Duration connectionRequestTimeout;
+    private final Duration responseTimeout;
+    private final Duration requestTimeout;
+    private final HedgingPolicy hedging;
+    private final IdempotencyPolicy idempotency;
+    private final LoadBalancingPolicy loadBalancing;
+    private final CloseableHttpClient httpClient;
+    private final boolean virtualThreads;
+
+    private ClientOptions(Builder builder) {
+        this.rateLimiters = builder.rateLimiters;
+        this.bulkhead = builder.bulkhead;
+        this.connectTimeout = builder.connectTimeout;
+        this.connectionRequestTimeout = builder.connectionRequestTimeout;
+        this.responseTimeout = builder.responseTimeout;
+        this.requestTimeout = builder.requestTimeout;
+        this.hedging = builder.hedging;
+        this.idempotency = builder.idempotency;
+        this.loadBalancing = builder.loadBalancing;
+        this.httpClient = builder.httpClient;
+        this.virtualThreads = builder.virtualThreads;
+    }
+
+    /**
+     * Client-side rate limiters applied before each request
+     * @return The rate limiter registry, or null if requests are not rate limited
+     */
+    public RateLimiterRegistry getRateLimiters() {
+        return rateLimiters;
+    }
+
+    /**
+     * Concurrency bulkhead separating interactive from batch requests.
+     * The connection pool is sized to the bulkhead's maximum concurrency.
+     * @return The bulkhead, or null if concurrency is not limited
+     */
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * Maximum time to establish a TCP/TLS connection
+     * @return The connect timeout (default 10 seconds)
+     */
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Maximum time to wait for a connection lease from the pool
+     * @return The connection request timeout (default 30 seconds)
+     */
+    public Duration getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    /**
+     * Maximum time to wait for response data once the request has been sent
+     * @return The response timeout (default 60 seconds)
+     */
+    public Duration getResponseTimeout() {
+        return responseTimeout;
+    }
+
+    /**
+     * Overall time budget of a single call, covering rate limiting, bulkhead admission,
+     * connection lease and the exchange itself
+     * @return The request timeout, or null if calls are only bounded by the individual timeouts
+     */
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Hedging policy for latency-critical reads
+     * @return The hedging policy, or null if requests are never hedged
+     */
+    public HedgingPolicy getHedging() {
+        return hedging;
+    }
+
+    /**
+     * Idempotency keys, retries and duplicate suppression for create calls
+     * @return The idempotency policy, or null if calls are sent once without a key
+     */
+    public IdempotencyPolicy getIdempotency() {
+        return idempotency;
+    }
+
+    /**
+     * Balancing, ejection and health check settings used when the client has several nodes
+     * @return The load balancing policy, or null for the defaults
+     */
+    public LoadBalancingPolicy getLoadBalancing() {
+        return loadBalancing;
+    }
+
+    /**
+     * Custom HTTP client, e.g. with a proxy or a canned transport for benchmarks. It is used
+     * for every node and closed together with the DatabunkerproApi; the connection and
+     * timeout settings of these options do not apply to it.
+     * @return The HTTP client, or null to create one from these options
+     */
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Whether the client runs its internal tasks, such as hedged attempts, on virtual threads.
+     * Requires Java 21 or later and is ignored on older runtimes. The blocking request path
+     * does not pin carrier threads, so DatabunkerproApi can be called from virtual threads
+     * either way.
+     * @return True if internal tasks use virtual threads (default false)
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Builder class for ClientOptions
+     */
+    public static class Builder {
+        private RateLimiterRegistry rateLimiters;
+        private Bulkhead bulkhead;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration connectionRequestTimeout = Duration.ofSeconds(30);
+        private Duration responseTimeout = Duration.ofSeconds(60);
+        private Duration requestTimeout;
+        private HedgingPolicy hedging;
+        private IdempotencyPolicy idempotency;
+        private LoadBalancingPolicy loadBalancing;
+        private CloseableHttpClient httpClient;
+        private boolean virtualThreads;
+
+        public Builder rateLimiters(RateLimiterRegistry rateLimiters) {
+            this.rateLimiters = rateLimiters;
+            return this;
+        }
+
+        public Builder bulkhead(Bulkhead bulkhead) {
+            this.bulkhead = bulkhead;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder connectionRequestTimeout(Duration connectionRequestTimeout) {
+            this.connectionRequestTimeout = connectionRequestTimeout;
+            return this;
+        }
+
+        public Builder responseTimeout(Duration responseTimeout) {
+            this.responseTimeout = responseTimeout;
+            return this;
+        }
+
+        public Builder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        public Builder hedging(HedgingPolicy hedging) {
+            this.hedging = hedging;
+            return this;
+        }
+
+        public Builder idempotency(IdempotencyPolicy idempotency) {
+            this.idempotency = idempotency;
+            return this;
+        }
+
+        public Builder loadBalancing(LoadBalancingPolicy loadBalancing) {
+            this.loadBalancing = loadBalancing;
+            return this;
+        }
+
+        public Builder httpClient(CloseableHttpClient httpClient) {
+            this.httpClient = httpClient;
+            return this;
+        }
+
+        public Builder virtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        public ClientOptions build() {
+            return new ClientOptions(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for ClientOptions
+     * @return A new builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+}
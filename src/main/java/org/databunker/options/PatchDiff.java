@@ -0,0 +1,192 @@
+package org.databunker.options;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Computes RFC 6902 JSON Patch operations that turn one profile into another.
+ * <p>
+ * Nested objects are compared field by field, so a changed field deep in a profile becomes a
+ * single {@code replace} at its JSON Pointer. Arrays are compared as a whole and replaced when
+ * they differ. Numbers are equal when their values are, whatever their Java type, so a profile
+ * read back from the server compares equal to the one that was written.
+ * <p>
+ * {@link #plan} also decides whether the patch or the full profile is the smaller request.
+ */
+public final class PatchDiff {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private PatchDiff() {
+    }
+
+    /**
+     * Computes the operations that turn {@code source} into {@code target}
+     *
+     * @param source The current profile
+     * @param target The desired profile
+     * @return The operations, empty if the profiles are equal
+     */
+    public static PatchOperation[] diff(Map<String, ?> source, Map<String, ?> target) {
+        List<PatchOperation> operations = new ArrayList<>();
+        diff("", source, target, operations);
+        return operations.toArray(new PatchOperation[0]);
+    }
+
+    private static void diff(String path, Map<?, ?> source, Map<?, ?> target, List<PatchOperation> operations) {
+        for (Map.Entry<?, ?> entry : source.entrySet()) {
+            String fieldPath = path + "/" + escape(String.valueOf(entry.getKey()));
+            if (!target.containsKey(entry.getKey())) {
+                operations.add(new PatchOperation("remove", fieldPath, null));
+                continue;
+            }
+            Object from = entry.getValue();
+            Object to = target.get(entry.getKey());
+            if (from instanceof Map && to instanceof Map) {
+                diff(fieldPath, (Map<?, ?>) from, (Map<?, ?>) to, operations);
+            } else if (!same(from, to)) {
+                operations.add(new PatchOperation("replace", fieldPath, to));
+            }
+        }
+        for (Map.Entry<?, ?> entry : target.entrySet()) {
+            if (!source.containsKey(entry.getKey())) {
+                operations.add(new PatchOperation("add", path + "/" + escape(String.valueOf(entry.getKey())), entry.getValue()));
+            }
+        }
+    }
+
+    private static boolean same(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            try {
+                return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString())) == 0;
+            } catch (NumberFormatException e) {
+                // NaN or infinity
+                return a.equals(b);
+            }
+        }
+        if (a instanceof Map && b instanceof Map) {
+            Map<?, ?> left = (Map<?, ?>) a;
+            Map<?, ?> right = (Map<?, ?>) b;
+            if (left.size() != right.size()) {
+                return false;
+            }
+            for (Map.Entry<?, ?> entry : left.entrySet()) {
+                if (!right.containsKey(entry.getKey()) || !same(entry.getValue(), right.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof List && b instanceof List) {
+            List<?> left = (List<?>) a;
+            List<?> right = (List<?>) b;
+            if (left.size() != right.size()) {
+                return false;
+            }
+            Iterator<?> l = left.iterator();
+            Iterator<?> r = right.iterator();
+            while (l.hasNext()) {
+                if (!same(l.next(), r.next())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return Objects.equals(a, b);
+    }
+
+    /**
+     * Escapes a field name for use in a JSON Pointer (RFC 6901)
+     */
+    static String escape(String field) {
+        if (field.indexOf('~') < 0 && field.indexOf('/') < 0) {
+            return field;
+        }
+        return field.replace("~", "~0").replace("/", "~1");
+    }
+
+    /**
+     * Decides how to send a profile change: as a patch, or as the full profile when that is not
+     * larger. A change that removes fields is always sent as a patch, as only a patch removes
+     * fields whatever the server's update semantics.
+     *
+     * @param source The current profile
+     * @param target The desired profile
+     * @return The decision
+     */
+    public static Plan plan(Map<String, ?> source, Map<String, ?> target) {
+        PatchOperation[] patch = diff(source, target);
+        if (patch.length == 0) {
+            return new Plan(patch, true, 0, 0);
+        }
+        try {
+            int patchSize = MAPPER.writeValueAsBytes(patch).length;
+            int profileSize = MAPPER.writeValueAsBytes(target).length;
+            boolean removes = false;
+            for (PatchOperation operation : patch) {
+                removes |= "remove".equals(operation.getOp());
+            }
+            return new Plan(patch, removes || patchSize < profileSize, patchSize, profileSize);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Profile cannot be serialized", e);
+        }
+    }
+
+    /**
+     * How to send a profile change
+     */
+    public static final class Plan {
+        private final PatchOperation[] patch;
+        private final boolean usePatch;
+        private final int patchSize;
+        private final int profileSize;
+
+        private Plan(PatchOperation[] patch, boolean usePatch, int patchSize, int profileSize) {
+            this.patch = patch;
+            this.usePatch = usePatch;
+            this.patchSize = patchSize;
+            this.profileSize = profileSize;
+        }
+
+        /**
+         * @return The patch operations, empty if nothing changed
+         */
+        public PatchOperation[] getPatch() {
+            return patch;
+        }
+
+        /**
+         * @return true if nothing changed and no request is needed
+         */
+        public boolean isEmpty() {
+            return patch.length == 0;
+        }
+
+        /**
+         * @return true to send the patch, false to send the full profile
+         */
+        public boolean isPatch() {
+            return usePatch;
+        }
+
+        /**
+         * @return Serialized size of the patch in bytes
+         */
+        public int getPatchSize() {
+            return patchSize;
+        }
+
+        /**
+         * @return Serialized size of the full profile in bytes
+         */
+        public int getProfileSize() {
+            return profileSize;
+        }
+    }
+}
@@ -0,0 +1,526 @@
+package org.databunker.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.databunker.DatabunkerproApi;
+import org.databunker.options.AgreementAcceptOptions;
+import org.databunker.options.BasicOptions;
+import org.databunker.options.OptionsConverter;
+import org.databunker.options.TokenOptions;
+import org.databunker.options.UserOptions;
+import org.databunker.resilience.IdempotencyPolicy;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Durable outbox for writes that must survive an outage of the vault.
+ * <p>
+ * The write methods mirror those of {@link DatabunkerproApi}. A write is sent right away; if it
+ * fails transiently, i.e. with an IOException or an HTTP 408, 429 or 5xx answer such as a server
+ * in maintenance sends, it is appended to an AES-GCM encrypted segment log in {@code directory}
+ * and the caller gets {@code {"status": "queued"}} instead. While queued writes exist, new writes
+ * are queued behind them so that the server sees them in order; for the same reason, writes are
+ * sent one at a time and not while the queue is being drained. A background drainer replays the
+ * queue in order and stops at the first transient failure; replayed writes are checkpointed so
+ * that a restart resumes after the last one. Every write carries its outbox ID as
+ * {@code request_metadata.idempotency_key}, so a replay after an ambiguous failure is recognised
+ * by the server. A write the server refuses for good during replay, other than as a duplicate
+ * of itself, is passed to the reject listener and dropped, as is a queued entry that cannot be
+ * read or sent.
+ *
+ * <pre>
+ * try (Outbox outbox = Outbox.builder(api, Paths.get("/var/lib/app/outbox")).key(outboxKey).build()) {
+ *     outbox.upsertSession(sessionuuid, sessiondata, null, null);
+ * }
+ * </pre>
+ */
+public class Outbox implements AutoCloseable {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final DatabunkerproApi api;
+    private final SegmentLog log;
+    private final int drainBatch;
+    private final BiConsumer<String, Map<String, Object>> rejectListener;
+    private final ScheduledExecutorService drainer;
+    private final ReentrantLock orderLock = new ReentrantLock();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private Outbox(Builder builder) throws IOException {
+        this.api = builder.api;
+        this.log = new SegmentLog(builder.directory, builder.key, builder.segmentSize, builder.fsync);
+        this.drainBatch = builder.drainBatch;
+        this.rejectListener = builder.rejectListener;
+        this.drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "databunkerpro-outbox-drainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = builder.drainInterval.toNanos();
+        drainer.scheduleWithFixedDelay(() -> {
+            try {
+                drain();
+            } catch (IOException | RuntimeException e) {
+                // Still unreachable; the next run tries again
+            }
+        }, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates a user, or queues the request if the server cannot be reached
+     *
+     * @param profile         User profile data
+     * @param options         User options (can be null)
+     * @param requestMetadata Optional request metadata
+     * @return The server's response, or {@code {"status": "queued"}}
+     * @throws IOException If the request cannot be written to the outbox
+     */
+    public Map<String, Object> createUser(Map<String, Object> profile, UserOptions options,
+                                          Map<String, Object> requestMetadata) throws IOException {
+        Map<String, Object> args = new HashMap<>();
+        args.put("profile", profile);
+        return submit("createUser", args, options != null ? OptionsConverter.toMap(options) : null, requestMetadata);
+    }
+
+    /**
+     * Upserts a session, or queues the request if the server cannot be reached
+     *
+     * @param sessionuuid     Session UUID
+     * @param sessiondata     Session data
+     * @param options         Session expiry (can be null)
+     * @param requestMetadata Optional request metadata
+     * @return The server's response, or {@code {"status": "queued"}}
+     * @throws IOException If the request cannot be written to the outbox
+     */
+    public Map<String, Object> upsertSession(String sessionuuid, Map<String, Object> sessiondata, BasicOptions options,
+                                             Map<String, Object> requestMetadata) throws IOException {
+        Map<String, Object> args = new HashMap<>();
+        args.put("sessionuuid", sessionuuid);
+        args.put("sessiondata", sessiondata);
+        return submit("upsertSession", args, options != null ? OptionsConverter.toMap(options) : null, requestMetadata);
+    }
+
+    /**
+     * Accepts an agreement, or queues the request if the server cannot be reached
+     *
+     * @param mode            User identification mode
+     * @param identity        User's identifier
+     * @param brief           Agreement brief identifier
+     * @param options         Options for agreement acceptance (can be null)
+     * @param requestMetadata Optional request metadata
+     * @return The server's response, or {@code {"status": "queued"}}
+     * @throws IOException If the request cannot be written to the outbox
+     */
+    public Map<String, Object> acceptAgreement(String mode, String identity, String brief, AgreementAcceptOptions options,
+                                               Map<String, Object> requestMetadata) throws IOException {
+        Map<String, Object> args = new HashMap<>();
+        args.put("mode", mode);
+        args.put("identity", identity);
+        args.put("brief", brief);
+        return submit("acceptAgreement", args, options != null ? OptionsConverter.toMap(options) : null, requestMetadata);
+    }
+
+    /**
+     * Creates a token, or queues the request if the server cannot be reached. Use
+     * {@code unique(true)} so that a replay after an ambiguous failure cannot create a second
+     * token for the same record.
+     *
+     * @param tokentype       Type of token to create
+     * @param record          The record to tokenize
+     * @param options         Token options (can be null)
+     * @param requestMetadata Optional request metadata
+     * @return The server's response, or {@code {"status": "queued"}}
+     * @throws IOException If the request cannot be written to the outbox
+     */
+    public Map<String, Object> createToken(String tokentype, String record, TokenOptions options,
+                                           Map<String, Object> requestMetadata) throws IOException {
+        Map<String, Object> args = new HashMap<>();
+        args.put("tokentype", tokentype);
+        args.put("record", record);
+        return submit("createToken", args, options != null ? OptionsConverter.toMap(options) : null, requestMetadata);
+    }
+
+    private Map<String, Object> submit(String operation, Map<String, Object> args, Map<String, Object> options,
+                                       Map<String, Object> requestMetadata) throws IOException {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("id", UUID.randomUUID().toString());
+        entry.put("op", operation);
+        entry.put("args", args);
+        if (options != null) {
+            entry.put("options", options);
+        }
+        if (requestMetadata != null) {
+            entry.put("meta", requestMetadata);
+        }
+        // Held across check, send and append, so that no write overtakes one queued before it
+        orderLock.lock();
+        try {
+            if (log.pendingCount() == 0) {
+                try {
+                    Map<String, Object> response = send(entry);
+                    if (!isTransient(response)) {
+                        sent.increment();
+                        return response;
+                    }
+                    // Unavailable or overloaded; fall through and queue it
+                } catch (IOException e) {
+                    // Transient failure; fall through and queue it
+                }
+            }
+            long seq = log.append(MAPPER.writeValueAsBytes(entry));
+            queued.increment();
+            Map<String, Object> result = new HashMap<>();
+            result.put("status", "queued");
+            result.put("outboxseq", seq);
+            result.put("outboxid", entry.get("id"));
+            return result;
+        } finally {
+            orderLock.unlock();
+        }
+    }
+
+    /**
+     * Replays queued writes in order until the queue is empty or a write fails transiently.
+     * The background drainer calls this periodically.
+     *
+     * @return Number of writes taken off the queue
+     * @throws IOException If a write could not be replayed; it stays queued
+     */
+    public int drain() throws IOException {
+        orderLock.lock();
+        try {
+            int drained = 0;
+            while (true) {
+                List<SegmentLog.Record> records = log.readPending(drainBatch);
+                if (records.isEmpty()) {
+                    return drained;
+                }
+                for (SegmentLog.Record record : records) {
+                    Map<String, Object> entry = null;
+                    Map<String, Object> response;
+                    try {
+                        entry = decode(record.payload);
+                        response = send(entry);
+                    } catch (RuntimeException e) {
+                        // A malformed entry would fail the same way on every run and block the queue
+                        response = new HashMap<>();
+                        response.put("status", "error");
+                        response.put("message", "Outbox entry cannot be replayed: " + e);
+                    }
+                    if (isTransient(response)) {
+                        throw new IOException("Replay deferred, HTTP " + DatabunkerproApi.httpStatus(response)
+                            + ": " + response.get("message"));
+                    }
+                    if ("ok".equals(response.get("status")) || isDuplicate(response)) {
+                        replayed.increment();
+                    } else {
+                        rejected.increment();
+                        if (rejectListener != null) {
+                            Object operation = entry != null ? entry.get("op") : null;
+                            rejectListener.accept(operation != null ? operation.toString() : null, response);
+                        }
+                    }
+                    log.commit(record.seq);
+                    drained++;
+                }
+            }
+        } finally {
+            orderLock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> decode(byte[] payload) {
+        try {
+            return MAPPER.readValue(payload, Map.class);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unreadable outbox entry: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Whether a response means the server could not take the write now, rather than refused it
+     */
+    private static boolean isTransient(Map<String, Object> response) {
+        if ("ok".equals(response.get("status"))) {
+            return false;
+        }
+        int status = DatabunkerproApi.httpStatus(response);
+        return status == 408 || status == 429 || status >= 500;
+    }
+
+    private static boolean isDuplicate(Map<String, Object> response) {
+        Object message = response.get("message");
+        return message != null && message.toString().toLowerCase(Locale.ROOT).contains("duplicate");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> send(Map<String, Object> entry) throws IOException {
+        Map<String, Object> args = (Map<String, Object>) entry.get("args");
+        Map<String, Object> options = (Map<String, Object>) entry.get("options");
+        Map<String, Object> meta = new HashMap<>();
+        if (entry.get("meta") != null) {
+            meta.putAll((Map<String, Object>) entry.get("meta"));
+        }
+        meta.putIfAbsent(IdempotencyPolicy.METADATA_FIELD, entry.get("id"));
+        String operation = (String) entry.get("op");
+        switch (operation) {
+            case "createUser":
+                return api.createUser((Map<String, Object>) args.get("profile"), userOptions(options), meta);
+            case "upsertSession":
+                return api.upsertSession((String) args.get("sessionuuid"), (Map<String, Object>) args.get("sessiondata"),
+                    basicOptions(options), meta);
+            case "acceptAgreement":
+                return api.acceptAgreement((String) args.get("mode"), (String) args.get("identity"),
+                    (String) args.get("brief"), agreementOptions(options), meta);
+            case "createToken":
+                return api.createToken((String) args.get("tokentype"), (String) args.get("record"),
+                    tokenOptions(options), meta);
+            default:
+                throw new IllegalArgumentException("Unknown outbox operation: " + operation);
+        }
+    }
+
+    private static UserOptions userOptions(Map<String, Object> options) {
+        if (options == null) {
+            return null;
+        }
+        UserOptions.Builder builder = UserOptions.builder()
+            .groupid(integer(options.get("groupid")))
+            .roleid(integer(options.get("roleid")))
+            .slidingtime((String) options.get("slidingtime"))
+            .finaltime((String) options.get("finaltime"));
+        Object groupname = options.get("groupname");
+        if (groupname instanceof Number) {
+            builder.groupname(((Number) groupname).intValue());
+        } else if (groupname != null) {
+            builder.groupname(groupname.toString());
+        }
+        Object rolename = options.get("rolename");
+        if (rolename instanceof Number) {
+            builder.rolename(((Number) rolename).intValue());
+        } else if (rolename != null) {
+            builder.rolename(rolename.toString());
+        }
+        return builder.build();
+    }
+
+    private static BasicOptions basicOptions(Map<String, Object> options) {
+        if (options == null) {
+            return null;
+        }
+        return BasicOptions.builder()
+            .finaltime((String) options.get("finaltime"))
+            .slidingtime((String) options.get("slidingtime"))
+            .build();
+    }
+
+    private static AgreementAcceptOptions agreementOptions(Map<String, Object> options) {
+        if (options == null) {
+            return null;
+        }
+        return AgreementAcceptOptions.builder()
+            .agreementmethod((String) options.get("agreementmethod"))
+            .referencecode((String) options.get("referencecode"))
+            .starttime((String) options.get("starttime"))
+            .finaltime((String) options.get("finaltime"))
+            .status((String) options.get("status"))
+            .lastmodifiedby((String) options.get("lastmodifiedby"))
+            .build();
+    }
+
+    private static TokenOptions tokenOptions(Map<String, Object> options) {
+        if (options == null) {
+            return null;
+        }
+        return TokenOptions.builder()
+            .unique((Boolean) options.get("unique"))
+            .slidingtime((String) options.get("slidingtime"))
+            .finaltime((String) options.get("finaltime"))
+            .build();
+    }
+
+    private static Integer integer(Object value) {
+        return value instanceof Number ? ((Number) value).intValue() : null;
+    }
+
+    /**
+     * @return Writes waiting in the outbox
+     */
+    public long getPendingCount() {
+        return log.pendingCount();
+    }
+
+    /**
+     * @return Writes sent directly
+     */
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    /**
+     * @return Writes appended to the outbox
+     */
+    public long getQueuedCount() {
+        return queued.sum();
+    }
+
+    /**
+     * @return Queued writes the server accepted on replay
+     */
+    public long getReplayedCount() {
+        return replayed.sum();
+    }
+
+    /**
+     * @return Queued writes the server refused on replay
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Stops the background drainer and closes the log. Queued writes stay on disk and are
+     * replayed by the next outbox opened on the same directory.
+     *
+     * @throws IOException If the log cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        drainer.shutdownNow();
+        orderLock.lock();
+        try {
+            log.close();
+        } finally {
+            orderLock.unlock();
+        }
+    }
+
+    /**
+     * Builder class for Outbox
+     */
+    public static class Builder {
+        private final DatabunkerproApi api;
+        private final Path directory;
+        private byte[] key;
+        private long segmentSize = 64L * 1024 * 1024;
+        private boolean fsync = true;
+        private Duration drainInterval = Duration.ofSeconds(1);
+        private int drainBatch = 100;
+        private BiConsumer<String, Map<String, Object>> rejectListener;
+
+        private Builder(DatabunkerproApi api, Path directory) {
+            this.api = api;
+            this.directory = directory;
+        }
+
+        /**
+         * AES key that encrypts the queued writes
+         *
+         * @param key 16, 24 or 32 bytes
+         * @return This builder
+         */
+        public Builder key(byte[] key) {
+            this.key = key != null ? key.clone() : null;
+            return this;
+        }
+
+        /**
+         * Size after which a new segment file is started
+         *
+         * @param segmentSize The size in bytes (default 64 MiB)
+         * @return This builder
+         */
+        public Builder segmentSize(long segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Whether every queued write is forced to disk before the call returns
+         *
+         * @param fsync True to force (default true)
+         * @return This builder
+         */
+        public Builder fsync(boolean fsync) {
+            this.fsync = fsync;
+            return this;
+        }
+
+        /**
+         * Pause between background drain runs
+         *
+         * @param drainInterval The pause (default 1 second)
+         * @return This builder
+         */
+        public Builder drainInterval(Duration drainInterval) {
+            this.drainInterval = drainInterval;
+            return this;
+        }
+
+        /**
+         * Writes read from disk at a time while draining
+         *
+         * @param drainBatch The write count (default 100)
+         * @return This builder
+         */
+        public Builder drainBatch(int drainBatch) {
+            this.drainBatch = drainBatch;
+            return this;
+        }
+
+        /**
+         * Receives queued writes the server refuses on replay, with the operation name and the
+         * server's response. Entries that cannot be read or sent are passed with an error
+         * response of their own, and with a null operation if it cannot be read either.
+         *
+         * @param rejectListener The listener (can be null)
+         * @return This builder
+         */
+        public Builder rejectListener(BiConsumer<String, Map<String, Object>> rejectListener) {
+            this.rejectListener = rejectListener;
+            return this;
+        }
+
+        /**
+         * Opens the outbox, recovering any writes queued by a previous instance
+         *
+         * @return The outbox
+         * @throws IOException If the directory cannot be read or holds data encrypted with another key
+         */
+        public Outbox build() throws IOException {
+            if (key == null || (key.length != 16 && key.length != 24 && key.length != 32)) {
+                throw new IllegalArgumentException("key must be 16, 24 or 32 bytes");
+            }
+            if (segmentSize <= 0 || drainBatch <= 0) {
+                throw new IllegalArgumentException("segmentSize and drainBatch must be positive");
+            }
+            return new Outbox(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for Outbox
+     *
+     * @param api       The client used to send the writes
+     * @param directory Directory for the segment files; one outbox per directory
+     * @return A new builder instance
+     */
+    public static Builder builder(DatabunkerproApi api, Path directory) {
+        return new Builder(api, directory);
+    }
+}
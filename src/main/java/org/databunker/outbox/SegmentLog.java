@@ -0,0 +1,322 @@
+package org.databunker.outbox;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only log of AES-GCM encrypted records, split into segment files.
+ * <p>
+ * A record is {@code length (4) | sequence (8) | IV (12) | ciphertext + tag}, with the sequence
+ * number as additional authenticated data so that records cannot be reordered or replayed from
+ * another position. Segments are named after the sequence of their first record. The sequence of
+ * the last consumed record is kept in a checkpoint file that is replaced atomically; segments that
+ * only hold consumed records are deleted. A torn record at the end of the last segment, left by a
+ * crash during an append, is cut off when the log is opened.
+ */
+class SegmentLog implements AutoCloseable {
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT = "outbox.checkpoint";
+    private static final int HEADER = 4 + 8 + 12;
+    private static final int TAG_BITS = 128;
+    private static final int MAX_RECORD = 64 * 1024 * 1024;
+
+    private final Path directory;
+    private final SecretKeySpec key;
+    private final long segmentSize;
+    private final boolean fsync;
+    private final SecureRandom random = new SecureRandom();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Segment> segments = new ArrayList<>();
+    private FileChannel active;
+    private long nextSeq;
+    private long checkpoint;
+
+    private static final class Segment {
+        final long firstSeq;
+        final Path path;
+        long lastSeq;
+
+        Segment(long firstSeq, Path path) {
+            this.firstSeq = firstSeq;
+            this.path = path;
+            this.lastSeq = firstSeq - 1;
+        }
+    }
+
+    /**
+     * A decrypted record
+     */
+    static final class Record {
+        final long seq;
+        final byte[] payload;
+        final int size;
+
+        Record(long seq, byte[] payload, int size) {
+            this.seq = seq;
+            this.payload = payload;
+            this.size = size;
+        }
+    }
+
+    SegmentLog(Path directory, byte[] key, long segmentSize, boolean fsync) throws IOException {
+        this.directory = directory;
+        this.key = new SecretKeySpec(key, "AES");
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+        Files.createDirectories(directory);
+        Path checkpointFile = directory.resolve(CHECKPOINT);
+        if (Files.exists(checkpointFile)) {
+            checkpoint = Long.parseLong(new String(Files.readAllBytes(checkpointFile), StandardCharsets.US_ASCII).trim());
+        }
+        List<Segment> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                found.add(new Segment(Long.parseLong(
+                    name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file));
+            }
+        }
+        found.sort((a, b) -> Long.compare(a.firstSeq, b.firstSeq));
+        nextSeq = checkpoint + 1;
+        for (int i = 0; i < found.size(); i++) {
+            Segment segment = found.get(i);
+            long valid = scan(segment);
+            if (valid < Files.size(segment.path)) {
+                if (i < found.size() - 1) {
+                    throw new IOException("Outbox segment " + segment.path + " is corrupt at offset " + valid);
+                }
+                try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.WRITE)) {
+                    channel.truncate(valid);
+                }
+            }
+            segments.add(segment);
+            nextSeq = Math.max(nextSeq, segment.lastSeq + 1);
+        }
+        deleteConsumedSegments();
+    }
+
+    /**
+     * Reads a segment and checks every record; returns the length of its valid prefix. Only an
+     * incomplete record counts as torn: a complete record that fails authentication means a wrong
+     * key or a tampered file, and is reported instead of being cut off.
+     */
+    private long scan(Segment segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            long position = 0;
+            long size = channel.size();
+            while (position < size) {
+                Record record = read(channel, position, size, true);
+                if (record == null) {
+                    return position;
+                }
+                if (record.seq != segment.lastSeq + 1) {
+                    throw new IOException("Outbox segment " + segment.path + " has record " + record.seq
+                        + " where " + (segment.lastSeq + 1) + " was expected");
+                }
+                segment.lastSeq = record.seq;
+                position += record.size;
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Appends a record
+     *
+     * @return The record's sequence number
+     */
+    long append(byte[] payload) throws IOException {
+        lock.lock();
+        try {
+            long seq = nextSeq;
+            byte[] iv = new byte[12];
+            random.nextBytes(iv);
+            byte[] ciphertext = crypt(Cipher.ENCRYPT_MODE, seq, iv, payload);
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER + ciphertext.length);
+            buffer.putInt(ciphertext.length).putLong(seq).put(iv).put(ciphertext).flip();
+            FileChannel channel = activeChannel(buffer.remaining());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+            segments.get(segments.size() - 1).lastSeq = seq;
+            nextSeq = seq + 1;
+            return seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private FileChannel activeChannel(int recordSize) throws IOException {
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        long currentSize = active != null ? active.size()
+            : last != null && Files.exists(last.path) ? Files.size(last.path) : 0;
+        if (last == null || currentSize > 0 && currentSize + recordSize > segmentSize) {
+            if (active != null) {
+                active.close();
+                active = null;
+            }
+            last = new Segment(nextSeq, directory.resolve(
+                String.format(Locale.ROOT, "%s%020d%s", SEGMENT_PREFIX, nextSeq, SEGMENT_SUFFIX)));
+            segments.add(last);
+        }
+        if (active == null) {
+            active = FileChannel.open(last.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return active;
+    }
+
+    /**
+     * Reads up to {@code max} records after the checkpoint
+     */
+    List<Record> readPending(int max) throws IOException {
+        List<Segment> snapshot = new ArrayList<>();
+        List<Long> lastSeqs = new ArrayList<>();
+        long from;
+        lock.lock();
+        try {
+            for (Segment segment : segments) {
+                snapshot.add(segment);
+                lastSeqs.add(segment.lastSeq);
+            }
+            from = checkpoint + 1;
+        } finally {
+            lock.unlock();
+        }
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < snapshot.size() && records.size() < max; i++) {
+            long lastSeq = lastSeqs.get(i);
+            if (lastSeq < from) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(snapshot.get(i).path, StandardOpenOption.READ)) {
+                long position = 0;
+                long size = channel.size();
+                while (position < size && records.size() < max) {
+                    // Consumed records are skipped without decrypting them
+                    Record record = read(channel, position, size, false);
+                    if (record == null || record.seq > lastSeq) {
+                        break;
+                    }
+                    if (record.seq >= from) {
+                        records.add(read(channel, position, size, true));
+                    }
+                    position += record.size;
+                }
+            }
+        }
+        return records;
+    }
+
+    private Record read(FileChannel channel, long position, long size, boolean decrypt) throws IOException {
+        if (size - position < HEADER) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        readFully(channel, header, position);
+        header.flip();
+        int length = header.getInt();
+        long seq = header.getLong();
+        byte[] iv = new byte[12];
+        header.get(iv);
+        if (length < TAG_BITS / 8 || length > MAX_RECORD || size - position - HEADER < length) {
+            return null;
+        }
+        if (!decrypt) {
+            return new Record(seq, null, HEADER + length);
+        }
+        ByteBuffer body = ByteBuffer.allocate(length);
+        readFully(channel, body, position + HEADER);
+        return new Record(seq, crypt(Cipher.DECRYPT_MODE, seq, iv, body.array()), HEADER + length);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of outbox segment");
+            }
+        }
+    }
+
+    private byte[] crypt(int mode, long seq, byte[] iv, byte[] input) throws IOException {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(mode, key, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(ByteBuffer.allocate(8).putLong(seq).array());
+            return cipher.doFinal(input);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Outbox record " + seq + " cannot be " +
+                (mode == Cipher.ENCRYPT_MODE ? "encrypted" : "decrypted; wrong key or tampered file"), e);
+        }
+    }
+
+    /**
+     * Marks all records up to and including {@code seq} as consumed
+     */
+    void commit(long seq) throws IOException {
+        lock.lock();
+        try {
+            if (seq <= checkpoint) {
+                return;
+            }
+            Path temp = directory.resolve(CHECKPOINT + ".tmp");
+            Files.write(temp, Long.toString(seq).getBytes(StandardCharsets.US_ASCII));
+            Files.move(temp, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            checkpoint = seq;
+            deleteConsumedSegments();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deleteConsumedSegments() throws IOException {
+        // The last segment stays, it is the one being appended to
+        while (segments.size() > 1 && segments.get(0).lastSeq <= checkpoint) {
+            Files.deleteIfExists(segments.remove(0).path);
+        }
+    }
+
+    /**
+     * @return Number of appended records that have not been consumed
+     */
+    long pendingCount() {
+        lock.lock();
+        try {
+            return nextSeq - 1 - checkpoint;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (active != null) {
+                active.close();
+                active = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
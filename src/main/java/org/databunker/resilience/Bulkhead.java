@@ -0,0 +1,203 @@
+package org.databunker.resilience;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency bulkhead with capacity reserved for interactive requests.
+ * <p>
+ * At most {@code maxConcurrent} requests are in flight at once. Batch requests may only use
+ * {@code maxConcurrent - reservedInteractive} of those slots, so interactive requests always
+ * find at least {@code reservedInteractive} slots that batch traffic cannot occupy.
+ */
+public class Bulkhead {
+    private final int maxConcurrent;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private int inFlight;
+    private int batchInFlight;
+
+    private final LongAdder interactiveRejected = new LongAdder();
+    private final LongAdder batchRejected = new LongAdder();
+
+    private Bulkhead(Builder builder) {
+        if (builder.maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1");
+        }
+        if (builder.reservedInteractive < 0 || builder.reservedInteractive >= builder.maxConcurrent) {
+            throw new IllegalArgumentException("reservedInteractive must be between 0 and maxConcurrent - 1");
+        }
+        this.maxConcurrent = builder.maxConcurrent;
+        this.maxBatch = builder.maxConcurrent - builder.reservedInteractive;
+        this.maxWaitNanos = builder.maxWaitNanos;
+    }
+
+    /**
+     * Enters the bulkhead, waiting up to the configured maximum wait for a free slot
+     *
+     * @param priority Priority class of the request
+     * @throws BulkheadFullException If no slot became free in time
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     */
+    public void acquire(Priority priority) throws IOException {
+        acquire(priority, null);
+    }
+
+    /**
+     * Enters the bulkhead, waiting for a free slot no longer than the request's deadline allows
+     *
+     * @param priority Priority class of the request
+     * @param deadline Deadline of the request (can be null)
+     * @throws BulkheadFullException     If no slot became free within the maximum wait
+     * @throws DeadlineExceededException If no slot became free before the deadline
+     * @throws InterruptedIOException    If the thread is interrupted while waiting
+     */
+    public void acquire(Priority priority, Deadline deadline) throws IOException {
+        long deadlineRemaining = deadline != null ? deadline.remainingNanos() : Long.MAX_VALUE;
+        boolean deadlineBound = deadlineRemaining < maxWaitNanos;
+        long remaining = Math.min(maxWaitNanos, deadlineRemaining);
+        lock.lock();
+        try {
+            while (!hasCapacity(priority)) {
+                if (remaining <= 0) {
+                    if (deadlineBound) {
+                        throw new DeadlineExceededException("Deadline exceeded while waiting for bulkhead capacity");
+                    }
+                    (priority == Priority.BATCH ? batchRejected : interactiveRejected).increment();
+                    throw new BulkheadFullException(priority);
+                }
+                remaining = released.awaitNanos(remaining);
+            }
+            inFlight++;
+            if (priority == Priority.BATCH) {
+                batchInFlight++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for bulkhead capacity");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Enters the bulkhead only if a slot is free right now, without counting a rejection.
+     * Used for optional extra work such as hedged requests.
+     *
+     * @param priority Priority class of the request
+     * @return true if a slot was taken
+     */
+    public boolean tryAcquire(Priority priority) {
+        lock.lock();
+        try {
+            if (!hasCapacity(priority)) {
+                return false;
+            }
+            inFlight++;
+            if (priority == Priority.BATCH) {
+                batchInFlight++;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Leaves the bulkhead, freeing the slot taken by {@link #acquire(Priority)}
+     *
+     * @param priority Priority class the slot was acquired with
+     */
+    public void release(Priority priority) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (priority == Priority.BATCH) {
+                batchInFlight--;
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean hasCapacity(Priority priority) {
+        if (inFlight >= maxConcurrent) {
+            return false;
+        }
+        return priority != Priority.BATCH || batchInFlight < maxBatch;
+    }
+
+    /**
+     * Total number of concurrent requests admitted
+     * @return The maximum concurrency
+     */
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Number of requests currently inside the bulkhead
+     * @return The in-flight count
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of requests of a priority class refused because the bulkhead stayed full
+     *
+     * @param priority Priority class
+     * @return The rejected count
+     */
+    public long getRejectedCount(Priority priority) {
+        return (priority == Priority.BATCH ? batchRejected : interactiveRejected).sum();
+    }
+
+    /**
+     * Builder class for Bulkhead
+     */
+    public static class Builder {
+        private int maxConcurrent = 25;
+        private int reservedInteractive = 5;
+        private long maxWaitNanos = TimeUnit.SECONDS.toNanos(30);
+
+        public Builder maxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+            return this;
+        }
+
+        public Builder reservedInteractive(int reservedInteractive) {
+            this.reservedInteractive = reservedInteractive;
+            return this;
+        }
+
+        public Builder maxWait(long maxWait, TimeUnit unit) {
+            this.maxWaitNanos = unit.toNanos(maxWait);
+            return this;
+        }
+
+        public Bulkhead build() {
+            return new Bulkhead(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for Bulkhead
+     * @return A new builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+}
@@ -0,0 +1,25 @@
+package org.databunker.resilience;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request could not enter the bulkhead within its maximum wait time
+ */
+public class BulkheadFullException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final Priority priority;
+
+    public BulkheadFullException(Priority priority) {
+        super("No capacity available for " + priority + " requests");
+        this.priority = priority;
+    }
+
+    /**
+     * Priority class of the refused request
+     * @return The priority class
+     */
+    public Priority getPriority() {
+        return priority;
+    }
+}
@@ -0,0 +1,93 @@
+package org.databunker.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Absolute point in time by which a call must complete.
+ * <p>
+ * A deadline is fixed when a logical call starts and then shared by everything the call does:
+ * waiting for a rate limit permit or bulkhead slot, leasing a connection, waiting for the
+ * response, and any further attempts. Each step only gets the budget that is left.
+ */
+public final class Deadline {
+    private static final ScheduledThreadPoolExecutor TIMER = createTimer();
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Creates a deadline the given time from now
+     *
+     * @param timeout Time budget
+     * @return The deadline
+     */
+    public static Deadline after(Duration timeout) {
+        return after(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates a deadline the given time from now
+     *
+     * @param timeout Time budget
+     * @param unit    Unit of the timeout
+     * @return The deadline
+     */
+    public static Deadline after(long timeout, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Time left until the deadline
+     * @return The remaining time in nanoseconds, negative once the deadline has passed
+     */
+    public long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    /**
+     * Whether the deadline has passed
+     * @return true if no time is left
+     */
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    /**
+     * Returns whichever of two deadlines comes first
+     *
+     * @param other Another deadline (can be null)
+     * @return The earlier deadline
+     */
+    public Deadline min(Deadline other) {
+        if (other == null || deadlineNanos - other.deadlineNanos <= 0) {
+            return this;
+        }
+        return other;
+    }
+
+    /**
+     * Runs an action when the deadline passes, e.g. to cancel an in-flight exchange
+     *
+     * @param action Action to run on expiry
+     * @return A handle to cancel the action once the guarded work has finished
+     */
+    public ScheduledFuture<?> onExpiry(Runnable action) {
+        return TIMER.schedule(action, Math.max(0, remainingNanos()), TimeUnit.NANOSECONDS);
+    }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "databunkerpro-deadline-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
@@ -0,0 +1,20 @@
+package org.databunker.resilience;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Thrown when a request runs out of its time budget. The underlying HTTP exchange is
+ * cancelled before this is thrown.
+ */
+public class DeadlineExceededException extends InterruptedIOException {
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+
+    public DeadlineExceededException(String message, Throwable cause) {
+        super(message);
+        initCause(cause);
+    }
+}
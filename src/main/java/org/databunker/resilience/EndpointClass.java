@@ -0,0 +1,50 @@
+package org.databunker.resilience;
+
+/**
+ * Coarse classification of DatabunkerPro API endpoints, used to key client-side limits
+ */
+public enum EndpointClass {
+    /** Single-record lookups and listings, e.g. UserGet, TokenGet, SessionGet */
+    READ,
+    /** Single-record mutations, e.g. UserCreate, TokenCreate, SessionUpsert */
+    WRITE,
+    /** Bulk listings and bulk mutations, e.g. BulkListAllUsers, UserCreateBulk */
+    BULK,
+    /** Tenant, role, policy and system administration */
+    ADMIN;
+
+    /**
+     * Classifies an API endpoint by its name
+     *
+     * @param endpoint The endpoint name as used in the /v2/ path (e.g. "UserCreate")
+     * @return The endpoint class
+     */
+    public static EndpointClass of(String endpoint) {
+        if (endpoint.startsWith("Bulk") || endpoint.endsWith("Bulk")) {
+            return BULK;
+        }
+        if (endpoint.startsWith("System") || endpoint.startsWith("Tenant")
+                || endpoint.startsWith("Role") || endpoint.startsWith("Policy")) {
+            return ADMIN;
+        }
+        if (isRead(endpoint)) {
+            return READ;
+        }
+        return WRITE;
+    }
+
+    /**
+     * Whether an endpoint can change data. This is independent of the class: bulk and admin
+     * endpoints such as BulkListAllUsers or TenantListTenants only read.
+     *
+     * @param endpoint The endpoint name as used in the /v2/ path (e.g. "UserCreate")
+     * @return true unless the endpoint is a lookup, listing or search
+     */
+    public static boolean isMutation(String endpoint) {
+        return !isRead(endpoint);
+    }
+
+    private static boolean isRead(String endpoint) {
+        return endpoint.contains("Get") || endpoint.contains("List") || endpoint.contains("Search");
+    }
+}
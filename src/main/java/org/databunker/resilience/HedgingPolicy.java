@@ -0,0 +1,266 @@
+package org.databunker.resilience;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in request hedging for latency-critical reads.
+ * <p>
+ * When a hedged request has not answered after a delay taken from the client's own latency
+ * histogram (by default its p95), an identical second request is sent and whichever answers
+ * first is used. A hedge budget caps the extra load: every request earns {@code budgetRatio}
+ * of a hedge, and a hedge is only sent when a whole one has been earned.
+ */
+public class HedgingPolicy {
+    /** Endpoints hedged by default: getUser, getToken, getSession and getUserAgreement */
+    public static final Set<String> DEFAULT_ENDPOINTS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("UserGet", "TokenGet", "SessionGet", "AgreementGet")));
+
+    private static final long BUDGET_SCALE = 1000;
+
+    private final Set<String> endpoints;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final long initialDelayNanos;
+    private final long minSamples;
+    private final long budgetPerRequest;
+    private final long maxBudget;
+    private final Duration window;
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final AtomicLong budget;
+
+    private final LongAdder hedgesSent = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    private HedgingPolicy(Builder builder) {
+        if (builder.percentile <= 0 || builder.percentile >= 1) {
+            throw new IllegalArgumentException("percentile must be between 0 and 1");
+        }
+        this.endpoints = Collections.unmodifiableSet(new HashSet<>(builder.endpoints));
+        this.percentile = builder.percentile;
+        this.minDelayNanos = builder.minDelay.toNanos();
+        this.maxDelayNanos = builder.maxDelay.toNanos();
+        this.initialDelayNanos = builder.initialDelay.toNanos();
+        this.minSamples = builder.minSamples;
+        this.budgetPerRequest = Math.round(builder.budgetRatio * BUDGET_SCALE);
+        this.maxBudget = builder.maxBurst * BUDGET_SCALE;
+        this.window = builder.window;
+        this.budget = new AtomicLong(maxBudget);
+    }
+
+    /**
+     * Whether requests to an endpoint are hedged
+     *
+     * @param endpoint API endpoint name
+     * @return true if the endpoint is hedged
+     */
+    public boolean isHedged(String endpoint) {
+        return endpoints.contains(endpoint);
+    }
+
+    /**
+     * Time to wait for the first attempt before sending a hedge
+     *
+     * @param endpoint API endpoint name
+     * @return The hedging delay in nanoseconds
+     */
+    public long delayNanos(String endpoint) {
+        LatencyHistogram histogram = histograms.get(endpoint);
+        if (histogram == null || histogram.count() < minSamples) {
+            return initialDelayNanos;
+        }
+        long delay = histogram.percentileNanos(percentile);
+        return Math.max(minDelayNanos, Math.min(maxDelayNanos, delay));
+    }
+
+    /**
+     * Records the latency of a completed request and earns hedge budget for it
+     *
+     * @param endpoint API endpoint name
+     * @param nanos    Latency in nanoseconds
+     */
+    public void recordLatency(String endpoint, long nanos) {
+        histograms.computeIfAbsent(endpoint, e -> new LatencyHistogram(window.toNanos(), TimeUnit.NANOSECONDS))
+                .record(nanos);
+    }
+
+    /**
+     * Earns hedge budget for a request that is about to be sent
+     */
+    public void onRequest() {
+        budget.accumulateAndGet(budgetPerRequest, (current, earned) -> Math.min(maxBudget, current + earned));
+    }
+
+    /**
+     * Spends one hedge from the budget
+     *
+     * @return true if a hedge may be sent
+     */
+    public boolean tryAcquireHedge() {
+        while (true) {
+            long current = budget.get();
+            if (current < BUDGET_SCALE) {
+                budgetExhausted.increment();
+                return false;
+            }
+            if (budget.compareAndSet(current, current - BUDGET_SCALE)) {
+                hedgesSent.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a hedge taken by {@link #tryAcquireHedge()} that was not sent
+     */
+    public void releaseHedge() {
+        budget.accumulateAndGet(BUDGET_SCALE, (current, refund) -> Math.min(maxBudget, current + refund));
+        hedgesSent.decrement();
+    }
+
+    /**
+     * Records that a hedge answered before the original request
+     */
+    public void onHedgeWon() {
+        hedgesWon.increment();
+    }
+
+    /**
+     * Latency histogram of an endpoint
+     *
+     * @param endpoint API endpoint name
+     * @return The histogram, or null if no request to the endpoint has completed yet
+     */
+    public LatencyHistogram getHistogram(String endpoint) {
+        return histograms.get(endpoint);
+    }
+
+    /**
+     * Number of hedges sent
+     * @return The hedge count
+     */
+    public long getHedgesSent() {
+        return hedgesSent.sum();
+    }
+
+    /**
+     * Number of hedges that answered before the original request
+     * @return The count of winning hedges
+     */
+    public long getHedgesWon() {
+        return hedgesWon.sum();
+    }
+
+    /**
+     * Number of hedges skipped because the budget was spent
+     * @return The count of skipped hedges
+     */
+    public long getBudgetExhausted() {
+        return budgetExhausted.sum();
+    }
+
+    /**
+     * Builder class for HedgingPolicy
+     */
+    public static class Builder {
+        private Set<String> endpoints = DEFAULT_ENDPOINTS;
+        private double percentile = 0.95;
+        private Duration minDelay = Duration.ofMillis(2);
+        private Duration maxDelay = Duration.ofSeconds(1);
+        private Duration initialDelay = Duration.ofMillis(50);
+        private long minSamples = 100;
+        private double budgetRatio = 0.05;
+        private int maxBurst = 10;
+        private Duration window = Duration.ofMinutes(1);
+
+        /**
+         * Endpoints to hedge, by API endpoint name (e.g. "UserGet")
+         *
+         * @param endpoints The endpoint names
+         * @return This builder
+         */
+        public Builder endpoints(Set<String> endpoints) {
+            this.endpoints = endpoints;
+            return this;
+        }
+
+        /**
+         * Latency percentile used as the hedging delay
+         *
+         * @param percentile The percentile as a fraction, e.g. 0.95
+         * @return This builder
+         */
+        public Builder percentile(double percentile) {
+            this.percentile = percentile;
+            return this;
+        }
+
+        public Builder minDelay(Duration minDelay) {
+            this.minDelay = minDelay;
+            return this;
+        }
+
+        public Builder maxDelay(Duration maxDelay) {
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * Delay used until an endpoint has enough latency samples
+         *
+         * @param initialDelay The delay
+         * @param minSamples   Samples required before the percentile is trusted
+         * @return This builder
+         */
+        public Builder initialDelay(Duration initialDelay, long minSamples) {
+            this.initialDelay = initialDelay;
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * Caps hedges to a fraction of requests
+         *
+         * @param budgetRatio Hedges earned per request, e.g. 0.05 for at most 5% extra load
+         * @param maxBurst    Largest number of hedges that can be saved up
+         * @return This builder
+         */
+        public Builder budget(double budgetRatio, int maxBurst) {
+            this.budgetRatio = budgetRatio;
+            this.maxBurst = maxBurst;
+            return this;
+        }
+
+        /**
+         * Length of the rolling window of the latency histograms
+         *
+         * @param window The window length
+         * @return This builder
+         */
+        public Builder window(Duration window) {
+            this.window = window;
+            return this;
+        }
+
+        public HedgingPolicy build() {
+            return new HedgingPolicy(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for HedgingPolicy
+     * @return A new builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+}
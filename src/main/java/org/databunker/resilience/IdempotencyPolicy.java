@@ -0,0 +1,313 @@
+package org.databunker.resilience;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Opt-in idempotency keys and retries for create operations.
+ * <p>
+ * Every call to a covered endpoint gets an idempotency key, sent in the {@code Idempotency-Key}
+ * header and as {@code request_metadata.idempotency_key}, so that the server and its audit log
+ * can recognise repeated submissions. A call that fails with an IOException is retried up to
+ * {@code maxAttempts} times with jittered exponential backoff, within the call's deadline, and
+ * every attempt carries the same key.
+ * <p>
+ * The policy also remembers recent calls by a fingerprint of tenant, endpoint and body for
+ * {@code dedupeWindow}. Repeating a call that failed reuses its key. Repeating a call that
+ * already succeeded returns the earlier response without sending anything, so a caller that
+ * retries after a timeout cannot create a duplicate.
+ */
+public class IdempotencyPolicy {
+    /** Endpoints covered by default: createUser, createUsersBulk, createToken, createTokensBulk and createFile */
+    public static final Set<String> DEFAULT_ENDPOINTS = Collections.unmodifiableSet(new HashSet<>(
+        Arrays.asList("UserCreate", "UserCreateBulk", "TokenCreate", "TokenCreateBulk", "FileCreate")));
+
+    /** Header that carries the idempotency key */
+    public static final String HEADER = "Idempotency-Key";
+
+    /** Field of request_metadata that carries the idempotency key */
+    public static final String METADATA_FIELD = "idempotency_key";
+
+    private final Set<String> endpoints;
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final long dedupeWindowNanos;
+    private final int maxEntries;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Call> calls = new LinkedHashMap<>();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder suppressed = new LongAdder();
+
+    private IdempotencyPolicy(Builder builder) {
+        if (builder.maxAttempts < 1 || builder.maxEntries < 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive and maxEntries not negative");
+        }
+        this.endpoints = Collections.unmodifiableSet(new HashSet<>(builder.endpoints));
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoffNanos = builder.initialBackoff.toNanos();
+        this.maxBackoffNanos = builder.maxBackoff.toNanos();
+        this.dedupeWindowNanos = builder.dedupeWindow.toNanos();
+        this.maxEntries = builder.maxEntries;
+    }
+
+    /**
+     * A logical call and its idempotency key
+     */
+    public static final class Call {
+        private final String fingerprint;
+        private final String key;
+        private final long createdAt;
+        private volatile Map<String, Object> response;
+
+        private Call(String fingerprint, String key, long createdAt) {
+            this.fingerprint = fingerprint;
+            this.key = key;
+            this.createdAt = createdAt;
+        }
+
+        /**
+         * @return The idempotency key sent with every attempt of the call
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return The response of an earlier successful submission, or null
+         */
+        public Map<String, Object> getCompletedResponse() {
+            return response;
+        }
+    }
+
+    /**
+     * Whether calls to an endpoint get idempotency keys and retries
+     *
+     * @param endpoint API endpoint name
+     * @return true if the endpoint is covered
+     */
+    public boolean isIdempotent(String endpoint) {
+        return endpoints.contains(endpoint);
+    }
+
+    /**
+     * Starts a logical call, or finds the recent call with the same fingerprint
+     *
+     * @param tenant   The tenant the call is made for
+     * @param endpoint API endpoint name
+     * @param body     The request body without the idempotency key
+     * @return The call with its key, and its response if it already succeeded
+     */
+    public Call begin(String tenant, String endpoint, String body) {
+        String fingerprint = fingerprint(tenant, endpoint, body);
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            evictExpired(now);
+            Call call = calls.get(fingerprint);
+            if (call != null) {
+                if (call.response != null) {
+                    suppressed.increment();
+                }
+                return call;
+            }
+            call = new Call(fingerprint, UUID.randomUUID().toString(), now);
+            if (maxEntries > 0) {
+                calls.put(fingerprint, call);
+                if (calls.size() > maxEntries) {
+                    Iterator<Call> oldest = calls.values().iterator();
+                    oldest.next();
+                    oldest.remove();
+                }
+            }
+            return call;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the response of a call that succeeded, so that repeating it returns that response
+     *
+     * @param call     The call
+     * @param response The server's response
+     */
+    public void complete(Call call, Map<String, Object> response) {
+        if ("ok".equals(response.get("status"))) {
+            call.response = response;
+        } else {
+            // A refused call may be corrected and sent again, so it is not remembered
+            lock.lock();
+            try {
+                calls.remove(call.fingerprint, call);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Call> iterator = calls.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().createdAt < dedupeWindowNanos) {
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+    private static String fingerprint(String tenant, String endpoint, String body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((tenant != null ? tenant : "").getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(endpoint.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            if (body != null) {
+                digest.update(body.getBytes(StandardCharsets.UTF_8));
+            }
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * @return Maximum number of attempts of a call, including the first
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Time to wait before a retry: a random value up to an exponentially growing cap
+     *
+     * @param attempt Number of attempts made so far, starting at 1
+     * @return The backoff in nanoseconds
+     */
+    public long backoffNanos(int attempt) {
+        long cap = initialBackoffNanos << Math.min(attempt - 1, 30);
+        if (cap <= 0 || cap > maxBackoffNanos) {
+            cap = maxBackoffNanos;
+        }
+        return cap > 0 ? ThreadLocalRandom.current().nextLong(cap + 1) : 0;
+    }
+
+    /**
+     * Counts a retry
+     */
+    public void onRetry() {
+        retries.increment();
+    }
+
+    /**
+     * @return Attempts repeated after a failure
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return Calls answered from the dedupe table instead of being sent again
+     */
+    public long getSuppressed() {
+        return suppressed.sum();
+    }
+
+    /**
+     * Builder class for IdempotencyPolicy
+     */
+    public static class Builder {
+        private Set<String> endpoints = DEFAULT_ENDPOINTS;
+        private int maxAttempts = 3;
+        private Duration initialBackoff = Duration.ofMillis(100);
+        private Duration maxBackoff = Duration.ofSeconds(2);
+        private Duration dedupeWindow = Duration.ofMinutes(5);
+        private int maxEntries = 10000;
+
+        /**
+         * Endpoints that get idempotency keys and retries
+         *
+         * @param endpoints Endpoint names (default {@link #DEFAULT_ENDPOINTS})
+         * @return This builder
+         */
+        public Builder endpoints(Set<String> endpoints) {
+            this.endpoints = endpoints;
+            return this;
+        }
+
+        /**
+         * Maximum number of attempts of a call, including the first
+         *
+         * @param maxAttempts The attempt count (default 3)
+         * @return This builder
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Backoff cap before the first retry and upper bound for later ones
+         *
+         * @param initialBackoff The first cap (default 100 ms)
+         * @param maxBackoff     The largest cap (default 2 seconds)
+         * @return This builder
+         */
+        public Builder backoff(Duration initialBackoff, Duration maxBackoff) {
+            this.initialBackoff = initialBackoff;
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        /**
+         * How long calls are remembered for key reuse and duplicate suppression
+         *
+         * @param dedupeWindow The window (default 5 minutes)
+         * @return This builder
+         */
+        public Builder dedupeWindow(Duration dedupeWindow) {
+            this.dedupeWindow = dedupeWindow;
+            return this;
+        }
+
+        /**
+         * Maximum number of remembered calls; the oldest are forgotten first
+         *
+         * @param maxEntries The call count (default 10000), or 0 to only attach keys and retry
+         * @return This builder
+         */
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        public IdempotencyPolicy build() {
+            return new IdempotencyPolicy(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for IdempotencyPolicy
+     *
+     * @return A new builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+}
@@ -0,0 +1,127 @@
+package org.databunker.resilience;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock-free latency histogram with log-linear buckets and a rolling window.
+ * <p>
+ * Values are recorded in microseconds into buckets that are at most 12.5% wide, which is
+ * precise enough to pick a hedging delay. Percentiles are computed over the current and the
+ * previous window, so the estimate follows shifts in server latency without going empty
+ * right after a rotation.
+ */
+public class LatencyHistogram {
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKETS = 8;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = LINEAR_BUCKETS + (MAX_EXPONENT - 3) * SUB_BUCKETS;
+    private static final long MAX_MICROS = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final long windowNanos;
+    private final ReentrantLock rotateLock = new ReentrantLock();
+    private volatile AtomicLongArray current = new AtomicLongArray(BUCKETS);
+    private volatile AtomicLongArray previous = new AtomicLongArray(BUCKETS);
+    private volatile long windowStart = System.nanoTime();
+
+    /**
+     * Creates a histogram that keeps roughly the last two windows of samples
+     *
+     * @param window Length of one window
+     * @param unit   Unit of the window
+     */
+    public LatencyHistogram(long window, TimeUnit unit) {
+        this.windowNanos = unit.toNanos(window);
+    }
+
+    /**
+     * Records a latency sample
+     *
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos) {
+        rotateIfNeeded();
+        long micros = Math.min(MAX_MICROS, Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+        current.incrementAndGet(index(micros));
+    }
+
+    /**
+     * Number of samples in the current and previous window
+     * @return The sample count
+     */
+    public long count() {
+        rotateIfNeeded();
+        AtomicLongArray cur = current;
+        AtomicLongArray prev = previous;
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += cur.get(i) + prev.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Estimates a latency percentile over the current and previous window
+     *
+     * @param percentile The percentile as a fraction, e.g. 0.95
+     * @return The upper bound of the bucket holding the percentile, in nanoseconds, or -1 if empty
+     */
+    public long percentileNanos(double percentile) {
+        rotateIfNeeded();
+        AtomicLongArray cur = current;
+        AtomicLongArray prev = previous;
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = cur.get(i) + prev.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return -1;
+        }
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return TimeUnit.MICROSECONDS.toNanos(upperBound(i));
+            }
+        }
+        return TimeUnit.MICROSECONDS.toNanos(MAX_MICROS);
+    }
+
+    private void rotateIfNeeded() {
+        long now = System.nanoTime();
+        if (now - windowStart < windowNanos || !rotateLock.tryLock()) {
+            return;
+        }
+        try {
+            if (now - windowStart >= windowNanos) {
+                previous = now - windowStart >= 2 * windowNanos ? new AtomicLongArray(BUCKETS) : current;
+                current = new AtomicLongArray(BUCKETS);
+                windowStart = now;
+            }
+        } finally {
+            rotateLock.unlock();
+        }
+    }
+
+    static int index(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) ((micros >>> (exponent - 3)) & (SUB_BUCKETS - 1));
+        return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+        int sub = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1L) << (exponent - 3)) - 1;
+    }
+}
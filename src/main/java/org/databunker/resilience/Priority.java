@@ -0,0 +1,21 @@
+package org.databunker.resilience;
+
+/**
+ * Request priority class, used to keep batch traffic from crowding out interactive calls
+ */
+public enum Priority {
+    /** Latency-sensitive calls on a user-facing path, e.g. getUser or getSession */
+    INTERACTIVE,
+    /** Throughput-oriented calls from background jobs, e.g. bulk listings and bulk creates */
+    BATCH;
+
+    /**
+     * Default priority of an API endpoint: bulk endpoints are batch, everything else is interactive
+     *
+     * @param endpoint The endpoint name as used in the /v2/ path (e.g. "BulkListAllUsers")
+     * @return The priority class
+     */
+    public static Priority of(String endpoint) {
+        return EndpointClass.of(endpoint) == EndpointClass.BULK ? BATCH : INTERACTIVE;
+    }
+}
@@ -0,0 +1,36 @@
+package org.databunker.resilience;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request is refused by a client-side rate limiter running in fail-fast mode
+ */
+public class RateLimitExceededException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String tenant;
+    private final EndpointClass endpointClass;
+
+    public RateLimitExceededException(String tenant, EndpointClass endpointClass) {
+        super("Client-side rate limit exceeded for " + endpointClass
+                + (tenant != null ? " requests of tenant " + tenant : " requests"));
+        this.tenant = tenant;
+        this.endpointClass = endpointClass;
+    }
+
+    /**
+     * Tenant whose limit was exceeded
+     * @return The tenant name, or null for the default tenant
+     */
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * Endpoint class whose limit was exceeded
+     * @return The endpoint class
+     */
+    public EndpointClass getEndpointClass() {
+        return endpointClass;
+    }
+}
@@ -0,0 +1,209 @@
+package org.databunker.resilience;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token-bucket rate limiter.
+ * <p>
+ * The bucket holds up to {@code burst} permits and refills at {@code permitsPerSecond}.
+ * Blocking and async callers reserve a permit up front, so the bucket may go into debt;
+ * each reservation then waits until its permit has been refilled. This keeps waiters in
+ * arrival order without a queue.
+ */
+public class RateLimiter {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double permitsPerSecond;
+    private final double burst;
+    private final ReentrantLock lock = new ReentrantLock();
+    private double storedPermits;
+    private long lastRefillNanos;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    /**
+     * Creates a new rate limiter with a full bucket
+     *
+     * @param permitsPerSecond Sustained refill rate
+     * @param burst            Bucket capacity, i.e. the largest burst admitted without waiting
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be at least 1");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.storedPermits = burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes a permit, blocking until one is available
+     *
+     * @return The time spent waiting, in nanoseconds
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public long acquire() throws InterruptedException {
+        long wait = reserve();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        return wait;
+    }
+
+    /**
+     * Takes a permit only if one is available right now
+     *
+     * @return true if a permit was taken
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Takes a permit if one becomes available within the given time, blocking for at most that long
+     *
+     * @param timeout Maximum time to wait
+     * @param unit    Unit of the timeout
+     * @return true if a permit was taken
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit) {
+        long maxWait = unit.toNanos(timeout);
+        long wait;
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            wait = nanosUntilPermit();
+            if (wait > maxWait) {
+                rejected.increment();
+                return false;
+            }
+            storedPermits -= 1;
+        } finally {
+            lock.unlock();
+        }
+        record(wait);
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                // The permit stays consumed; restore the flag for the caller
+                Thread.currentThread().interrupt();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reserves a permit without blocking the calling thread
+     *
+     * @return A future completed with the time waited, in nanoseconds, once the permit is available
+     */
+    public CompletableFuture<Long> acquireAsync() {
+        long wait = reserve();
+        if (wait <= 0) {
+            return CompletableFuture.completedFuture(0L);
+        }
+        return CompletableFuture.supplyAsync(() -> wait,
+                CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Returns a permit taken without waiting by {@link #tryAcquire()} that was not used
+     */
+    public void release() {
+        lock.lock();
+        try {
+            storedPermits = Math.min(burst, storedPermits + 1);
+        } finally {
+            lock.unlock();
+        }
+        acquired.decrement();
+    }
+
+    private long reserve() {
+        long wait;
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            wait = nanosUntilPermit();
+            storedPermits -= 1;
+        } finally {
+            lock.unlock();
+        }
+        record(wait);
+        return wait;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefillNanos;
+        if (elapsed > 0) {
+            storedPermits = Math.min(burst, storedPermits + elapsed * permitsPerSecond / NANOS_PER_SECOND);
+            lastRefillNanos = now;
+        }
+    }
+
+    private long nanosUntilPermit() {
+        if (storedPermits >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - storedPermits) * NANOS_PER_SECOND / permitsPerSecond);
+    }
+
+    private void record(long wait) {
+        acquired.increment();
+        if (wait > 0) {
+            throttled.increment();
+            waitNanos.add(wait);
+        }
+    }
+
+    /**
+     * Sustained refill rate
+     * @return The rate in permits per second
+     */
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * Number of permits handed out, including those that had to wait
+     * @return The acquired count
+     */
+    public long getAcquiredCount() {
+        return acquired.sum();
+    }
+
+    /**
+     * Number of permits that were handed out only after waiting
+     * @return The throttled count
+     */
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    /**
+     * Number of tryAcquire calls that gave up without a permit
+     * @return The rejected count
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Total time callers spent waiting for permits
+     * @return The throttle wait time in nanoseconds
+     */
+    public long getThrottleWaitNanos() {
+        return waitNanos.sum();
+    }
+}
@@ -0,0 +1,242 @@
+package org.databunker.resilience;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Set of token-bucket rate limiters keyed by tenant and endpoint class.
+ * <p>
+ * Limits are configured per endpoint class and apply to each tenant separately; a tenant
+ * can be given its own limits that replace the defaults. Endpoint classes without a
+ * configured limit are not throttled.
+ */
+public class RateLimiterRegistry {
+    private final Map<EndpointClass, Limit> defaults;
+    private final Map<String, Map<EndpointClass, Limit>> tenantLimits;
+    private final boolean failFast;
+    private final long maxWaitNanos;
+    private final ConcurrentHashMap<String, RateLimiter> limiters = new ConcurrentHashMap<>();
+
+    private RateLimiterRegistry(Builder builder) {
+        this.defaults = new EnumMap<>(builder.defaults);
+        this.tenantLimits = new HashMap<>();
+        builder.tenantLimits.forEach((tenant, limits) -> tenantLimits.put(tenant, new EnumMap<>(limits)));
+        this.failFast = builder.failFast;
+        this.maxWaitNanos = builder.maxWaitNanos;
+    }
+
+    /**
+     * Returns the limiter for a tenant and endpoint class
+     *
+     * @param tenant        Tenant name (null for the default tenant)
+     * @param endpointClass Endpoint class
+     * @return The limiter, or null if the endpoint class is not limited for this tenant
+     */
+    public RateLimiter get(String tenant, EndpointClass endpointClass) {
+        String tenantKey = tenant != null ? tenant : "";
+        Limit limit = null;
+        Map<EndpointClass, Limit> overrides = tenantLimits.get(tenantKey);
+        if (overrides != null) {
+            limit = overrides.get(endpointClass);
+        }
+        if (limit == null) {
+            limit = defaults.get(endpointClass);
+        }
+        if (limit == null) {
+            return null;
+        }
+        Limit resolved = limit;
+        return limiters.computeIfAbsent(tenantKey + "\u0000" + endpointClass,
+                k -> new RateLimiter(resolved.permitsPerSecond, resolved.burst));
+    }
+
+    /**
+     * Takes a permit for a request, blocking unless the registry runs in fail-fast mode
+     *
+     * @param tenant   Tenant name (null for the default tenant)
+     * @param endpoint API endpoint name
+     * @throws RateLimitExceededException If no permit could be obtained in time
+     * @throws InterruptedIOException     If the thread is interrupted while waiting
+     */
+    public void acquire(String tenant, String endpoint) throws IOException {
+        acquire(tenant, endpoint, null);
+    }
+
+    /**
+     * Takes a permit for a request, waiting no longer than the request's deadline allows
+     *
+     * @param tenant   Tenant name (null for the default tenant)
+     * @param endpoint API endpoint name
+     * @param deadline Deadline of the request (can be null)
+     * @throws RateLimitExceededException If no permit could be obtained within the fail-fast wait
+     * @throws DeadlineExceededException  If no permit could be obtained before the deadline
+     * @throws InterruptedIOException     If the thread is interrupted while waiting
+     */
+    public void acquire(String tenant, String endpoint, Deadline deadline) throws IOException {
+        EndpointClass endpointClass = EndpointClass.of(endpoint);
+        RateLimiter limiter = get(tenant, endpointClass);
+        if (limiter == null) {
+            return;
+        }
+        if (!failFast && deadline == null) {
+            try {
+                limiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a rate limit permit");
+            }
+            return;
+        }
+        long remaining = deadline != null ? deadline.remainingNanos() : Long.MAX_VALUE;
+        long maxWait = failFast ? Math.min(maxWaitNanos, remaining) : remaining;
+        if (!limiter.tryAcquire(Math.max(0, maxWait), TimeUnit.NANOSECONDS)) {
+            if (failFast && maxWaitNanos <= remaining) {
+                throw new RateLimitExceededException(tenant, endpointClass);
+            }
+            throw new DeadlineExceededException("Deadline exceeded while waiting for a rate limit permit");
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Interrupted while waiting for a rate limit permit");
+        }
+    }
+
+    /**
+     * Takes a permit for a request only if one is available right now
+     *
+     * @param tenant   Tenant name (null for the default tenant)
+     * @param endpoint API endpoint name
+     * @return true if a permit was taken or the endpoint is not limited
+     */
+    public boolean tryAcquire(String tenant, String endpoint) {
+        RateLimiter limiter = get(tenant, EndpointClass.of(endpoint));
+        return limiter == null || limiter.tryAcquire();
+    }
+
+    /**
+     * Returns a permit taken by {@link #tryAcquire(String, String)} for a request that was not sent
+     *
+     * @param tenant   Tenant name (null for the default tenant)
+     * @param endpoint API endpoint name
+     */
+    public void release(String tenant, String endpoint) {
+        RateLimiter limiter = get(tenant, EndpointClass.of(endpoint));
+        if (limiter != null) {
+            limiter.release();
+        }
+    }
+
+    /**
+     * Reserves a permit for a request without blocking
+     *
+     * @param tenant   Tenant name (null for the default tenant)
+     * @param endpoint API endpoint name
+     * @return A future completed once the permit is available
+     */
+    public CompletableFuture<Long> acquireAsync(String tenant, String endpoint) {
+        RateLimiter limiter = get(tenant, EndpointClass.of(endpoint));
+        return limiter == null ? CompletableFuture.completedFuture(0L) : limiter.acquireAsync();
+    }
+
+    /**
+     * Total time spent waiting for permits across all limiters
+     * @return The throttle wait time in nanoseconds
+     */
+    public long getThrottleWaitNanos() {
+        return limiters.values().stream().mapToLong(RateLimiter::getThrottleWaitNanos).sum();
+    }
+
+    /**
+     * Number of permits handed out only after waiting, across all limiters
+     * @return The throttled count
+     */
+    public long getThrottledCount() {
+        return limiters.values().stream().mapToLong(RateLimiter::getThrottledCount).sum();
+    }
+
+    /**
+     * Number of requests refused in fail-fast mode, across all limiters
+     * @return The rejected count
+     */
+    public long getRejectedCount() {
+        return limiters.values().stream().mapToLong(RateLimiter::getRejectedCount).sum();
+    }
+
+    private static final class Limit {
+        private final double permitsPerSecond;
+        private final int burst;
+
+        private Limit(double permitsPerSecond, int burst) {
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+        }
+    }
+
+    /**
+     * Builder class for RateLimiterRegistry
+     */
+    public static class Builder {
+        private final Map<EndpointClass, Limit> defaults = new EnumMap<>(EndpointClass.class);
+        private final Map<String, Map<EndpointClass, Limit>> tenantLimits = new HashMap<>();
+        private boolean failFast;
+        private long maxWaitNanos;
+
+        /**
+         * Limits an endpoint class for every tenant that has no override
+         *
+         * @param endpointClass    Endpoint class to limit
+         * @param permitsPerSecond Sustained request rate
+         * @param burst            Largest burst admitted without waiting
+         * @return This builder
+         */
+        public Builder limit(EndpointClass endpointClass, double permitsPerSecond, int burst) {
+            defaults.put(endpointClass, new Limit(permitsPerSecond, burst));
+            return this;
+        }
+
+        /**
+         * Limits an endpoint class for one tenant, replacing the default limit
+         *
+         * @param tenant           Tenant name
+         * @param endpointClass    Endpoint class to limit
+         * @param permitsPerSecond Sustained request rate
+         * @param burst            Largest burst admitted without waiting
+         * @return This builder
+         */
+        public Builder tenantLimit(String tenant, EndpointClass endpointClass, double permitsPerSecond, int burst) {
+            tenantLimits.computeIfAbsent(tenant, t -> new EnumMap<>(EndpointClass.class))
+                    .put(endpointClass, new Limit(permitsPerSecond, burst));
+            return this;
+        }
+
+        /**
+         * Refuses requests with a RateLimitExceededException instead of blocking
+         *
+         * @param maxWait Longest time a request may wait for a permit before it is refused
+         * @param unit    Unit of maxWait
+         * @return This builder
+         */
+        public Builder failFast(long maxWait, TimeUnit unit) {
+            this.failFast = true;
+            this.maxWaitNanos = unit.toNanos(maxWait);
+            return this;
+        }
+
+        public RateLimiterRegistry build() {
+            return new RateLimiterRegistry(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for RateLimiterRegistry
+     * @return A new builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+}
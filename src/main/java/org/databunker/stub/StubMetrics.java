@@ -0,0 +1,67 @@
+package org.databunker.stub;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counters of the stub server, rendered in the Prometheus text format
+ */
+class StubMetrics {
+    private static class EndpointMetrics {
+        final LongAdder ok = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder micros = new LongAdder();
+    }
+
+    private final Map<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder injectedErrors = new LongAdder();
+
+    void recordRequest(String endpoint, int status, long nanos) {
+        EndpointMetrics metrics = endpoints.computeIfAbsent(endpoint, e -> new EndpointMetrics());
+        (status < 300 ? metrics.ok : metrics.errors).increment();
+        metrics.micros.add(TimeUnit.NANOSECONDS.toMicros(nanos));
+        requests.increment();
+    }
+
+    void recordInjectedError() {
+        injectedErrors.increment();
+    }
+
+    long requestCount() {
+        return requests.sum();
+    }
+
+    String render(int users, int tokens) {
+        StringBuilder text = new StringBuilder();
+        text.append("# HELP stub_requests_total Requests handled by the stub.\n");
+        text.append("# TYPE stub_requests_total counter\n");
+        Map<String, EndpointMetrics> sorted = new TreeMap<>(endpoints);
+        for (Map.Entry<String, EndpointMetrics> entry : sorted.entrySet()) {
+            line(text, "stub_requests_total", entry.getKey(), "ok", entry.getValue().ok.sum());
+            line(text, "stub_requests_total", entry.getKey(), "error", entry.getValue().errors.sum());
+        }
+        text.append("# HELP stub_request_duration_seconds_sum Time spent handling requests.\n");
+        text.append("# TYPE stub_request_duration_seconds_sum counter\n");
+        for (Map.Entry<String, EndpointMetrics> entry : sorted.entrySet()) {
+            text.append("stub_request_duration_seconds_sum{endpoint=\"").append(entry.getKey()).append("\"} ")
+                .append(String.format(Locale.ROOT, "%.6f", entry.getValue().micros.sum() / 1e6)).append('\n');
+        }
+        text.append("# TYPE stub_injected_errors_total counter\n");
+        text.append("stub_injected_errors_total ").append(injectedErrors.sum()).append('\n');
+        text.append("# TYPE stub_users gauge\n");
+        text.append("stub_users ").append(users).append('\n');
+        text.append("# TYPE stub_tokens gauge\n");
+        text.append("stub_tokens ").append(tokens).append('\n');
+        return text.toString();
+    }
+
+    private static void line(StringBuilder text, String name, String endpoint, String status, long value) {
+        text.append(name).append("{endpoint=\"").append(endpoint).append("\",status=\"").append(status).append("\"} ")
+            .append(value).append('\n');
+    }
+}
@@ -0,0 +1,386 @@
+package org.databunker.stub;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embeddable DatabunkerPro stub for offline load and integration testing.
+ * <p>
+ * Serves the {@code /v2/*} endpoints used by DatabunkerproApi from in-memory state, with
+ * configurable latency and error injection, and exposes its own counters on {@code /metrics}
+ * in the Prometheus text format.
+ *
+ * <pre>
+ * try (StubServer stub = StubServer.builder().latency(Duration.ofMillis(2), Duration.ofMillis(10)).start();
+ *      DatabunkerproApi api = new DatabunkerproApi(stub.getBaseURL(), "token", "tenant")) {
+ *     api.createUser(profile, null, null);
+ * }
+ * </pre>
+ */
+public class StubServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final StubStore store = new StubStore();
+    private final StubMetrics metrics = new StubMetrics();
+    private final String token;
+    private volatile long minLatencyNanos;
+    private volatile long maxLatencyNanos;
+    private volatile double tailProbability;
+    private volatile long tailLatencyNanos;
+    private volatile double errorRate;
+    private volatile int errorStatus;
+
+    private StubServer(Builder builder) throws IOException {
+        this.token = builder.token;
+        setLatency(builder.minLatency, builder.maxLatency);
+        setTailLatency(builder.tailProbability, builder.tailLatency);
+        setErrorRate(builder.errorRate, builder.errorStatus);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = builder.threads > 0
+            ? Executors.newFixedThreadPool(builder.threads, runnable -> daemon(runnable, threadCount))
+            : Executors.newCachedThreadPool(runnable -> daemon(runnable, threadCount));
+        this.server = HttpServer.create(new InetSocketAddress(builder.host, builder.port), builder.backlog);
+        server.createContext("/v2/", this::handleApi);
+        server.createContext("/metrics", this::handleMetrics);
+        server.createContext("/status", exchange -> respond(exchange, 200, okBody()));
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    private static Thread daemon(Runnable runnable, AtomicInteger threadCount) {
+        Thread thread = new Thread(runnable, "databunkerpro-stub-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Base URL to pass to DatabunkerproApi
+     * @return The base URL, e.g. "http://127.0.0.1:43127"
+     */
+    public String getBaseURL() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort();
+    }
+
+    /**
+     * Port the server listens on
+     * @return The port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Changes the injected latency of every request
+     *
+     * @param min Shortest added latency
+     * @param max Longest added latency; each request waits a uniformly random time in between
+     */
+    public void setLatency(Duration min, Duration max) {
+        this.minLatencyNanos = min.toNanos();
+        this.maxLatencyNanos = Math.max(min.toNanos(), max.toNanos());
+    }
+
+    /**
+     * Changes the injected tail latency
+     *
+     * @param probability Fraction of requests that are slow, e.g. 0.01
+     * @param latency     Extra latency of a slow request
+     */
+    public void setTailLatency(double probability, Duration latency) {
+        this.tailProbability = probability;
+        this.tailLatencyNanos = latency.toNanos();
+    }
+
+    /**
+     * Changes the injected error rate
+     *
+     * @param rate       Fraction of requests that fail, e.g. 0.01
+     * @param statusCode HTTP status of a failed request, e.g. 503
+     */
+    public void setErrorRate(double rate, int statusCode) {
+        this.errorRate = rate;
+        this.errorStatus = statusCode;
+    }
+
+    /**
+     * Invalidates every unlock UUID issued so far, as if they had expired
+     */
+    public void revokeUnlocks() {
+        store.revokeUnlocks();
+    }
+
+    /**
+     * Number of /v2 requests handled, including failed ones
+     * @return The request count
+     */
+    public long getRequestCount() {
+        return metrics.requestCount();
+    }
+
+    private void handleApi(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String endpoint = exchange.getRequestURI().getPath().substring("/v2/".length());
+        int status = 200;
+        Map<String, Object> response;
+        try {
+            Map<String, Object> body = readBody(exchange);
+            injectLatency();
+            if (token != null && !token.equals(exchange.getRequestHeaders().getFirst("X-Bunker-Token"))) {
+                throw new StubStore.StubException(401, "access denied");
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                metrics.recordInjectedError();
+                throw new StubStore.StubException(errorStatus, "injected failure");
+            }
+            response = store.handle(endpoint, exchange.getRequestHeaders().getFirst("X-Bunker-Tenant"), body);
+        } catch (StubStore.StubException e) {
+            status = e.statusCode;
+            response = errorBody(e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            status = 400;
+            response = errorBody(e.getMessage() != null ? e.getMessage() : e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+            return;
+        }
+        respond(exchange, status, response);
+        metrics.recordRequest(endpoint, status, System.nanoTime() - start);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readAllBytes();
+            if (bytes.length == 0) {
+                return new HashMap<>();
+            }
+            Map<String, Object> body = objectMapper.readValue(bytes, Map.class);
+            body.remove("request_metadata");
+            return body;
+        }
+    }
+
+    private void injectLatency() throws InterruptedException {
+        long latency = minLatencyNanos;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (maxLatencyNanos > minLatencyNanos) {
+            latency += random.nextLong(maxLatencyNanos - minLatencyNanos);
+        }
+        if (tailProbability > 0 && random.nextDouble() < tailProbability) {
+            latency += tailLatencyNanos;
+        }
+        if (latency > 0) {
+            TimeUnit.NANOSECONDS.sleep(latency);
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        byte[] text = metrics.render(store.userCount(), store.tokenCount()).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+        exchange.sendResponseHeaders(200, text.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(text);
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, Map<String, Object> body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, Object> okBody() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", "ok");
+        return body;
+    }
+
+    private static Map<String, Object> errorBody(String message) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", "error");
+        body.put("message", message);
+        return body;
+    }
+
+    /**
+     * Stops the server and discards its state
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Turns on TCP_NODELAY for JDK HTTP servers, without which every small response waits for
+     * the client's delayed ACK (~40 ms). The setting is JVM-wide: it applies to every
+     * {@code com.sun.net.httpserver} server in the process, and only if none was created
+     * before. Load tests call it at startup; the stub never sets it by itself.
+     */
+    public static void enableTcpNoDelay() {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    /**
+     * Runs a stub server until the process is stopped.
+     * Usage: {@code StubServer [port] [minLatencyMillis] [maxLatencyMillis] [errorRate]}
+     *
+     * @param args Command line arguments
+     * @throws Exception If the server cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        enableTcpNoDelay();
+        Builder builder = builder().host("0.0.0.0").port(args.length > 0 ? Integer.parseInt(args[0]) : 3000);
+        if (args.length > 2) {
+            builder.latency(Duration.ofMillis(Long.parseLong(args[1])), Duration.ofMillis(Long.parseLong(args[2])));
+        }
+        if (args.length > 3) {
+            builder.errorRate(Double.parseDouble(args[3]), 503);
+        }
+        StubServer stub = builder.start();
+        System.out.println("DatabunkerPro stub listening on port " + stub.getPort());
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Builder class for StubServer
+     */
+    public static class Builder {
+        private String host = "127.0.0.1";
+        private int port;
+        private int backlog = 1024;
+        private int threads;
+        private String token;
+        private Duration minLatency = Duration.ZERO;
+        private Duration maxLatency = Duration.ZERO;
+        private double tailProbability;
+        private Duration tailLatency = Duration.ZERO;
+        private double errorRate;
+        private int errorStatus = 503;
+
+        public Builder host(String host) {
+            this.host = host;
+            return this;
+        }
+
+        /**
+         * Port to listen on
+         *
+         * @param port The port, or 0 for a free one
+         * @return This builder
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder backlog(int backlog) {
+            this.backlog = backlog;
+            return this;
+        }
+
+        /**
+         * Number of handler threads
+         *
+         * @param threads The thread count, or 0 for an unbounded pool
+         * @return This builder
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Requires every /v2 request to carry this X-Bunker-Token
+         *
+         * @param token The accepted token, or null to accept any
+         * @return This builder
+         */
+        public Builder token(String token) {
+            this.token = token;
+            return this;
+        }
+
+        /**
+         * Latency added to every request
+         *
+         * @param min Shortest added latency
+         * @param max Longest added latency; each request waits a uniformly random time in between
+         * @return This builder
+         */
+        public Builder latency(Duration min, Duration max) {
+            this.minLatency = min;
+            this.maxLatency = max;
+            return this;
+        }
+
+        /**
+         * Extra latency added to a fraction of requests, to produce a latency tail
+         *
+         * @param probability Fraction of requests that are slow, e.g. 0.01
+         * @param latency     Extra latency of a slow request
+         * @return This builder
+         */
+        public Builder tailLatency(double probability, Duration latency) {
+            this.tailProbability = probability;
+            this.tailLatency = latency;
+            return this;
+        }
+
+        /**
+         * Fraction of requests answered with an error
+         *
+         * @param rate       Fraction of requests that fail, e.g. 0.01
+         * @param statusCode HTTP status of a failed request, e.g. 503
+         * @return This builder
+         */
+        public Builder errorRate(double rate, int statusCode) {
+            this.errorRate = rate;
+            this.errorStatus = statusCode;
+            return this;
+        }
+
+        /**
+         * Starts the server
+         *
+         * @return The running server
+         * @throws IOException If the port cannot be bound
+         */
+        public StubServer start() throws IOException {
+            return new StubServer(this);
+        }
+    }
+
+    /**
+     * Creates a new builder for StubServer
+     * @return A new builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+}
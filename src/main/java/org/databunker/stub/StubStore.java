@@ -0,0 +1,965 @@
+package org.databunker.stub;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory state of the stub server and the handlers of the /v2 endpoints.
+ * <p>
+ * Users, tokens, sessions, agreements, legal bases, processing activities, policies, app data,
+ * groups and bulk listings keep real state per tenant. All other endpoints answer 404.
+ */
+class StubStore {
+    /**
+     * Error answered with a status code and {@code {"status":"error","message":...}}
+     */
+    static class StubException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int statusCode;
+
+        StubException(int statusCode, String message) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+    }
+
+    private interface Handler {
+        Map<String, Object> handle(Tenant tenant, Map<String, Object> body);
+    }
+
+    private static class User {
+        final String token;
+        volatile Map<String, Object> profile;
+        final Map<String, Map<String, Object>> appdata = new ConcurrentHashMap<>();
+        final Map<String, Map<String, Object>> agreements = new ConcurrentHashMap<>();
+        final Map<Integer, Boolean> groups = new ConcurrentHashMap<>();
+
+        User(String token, Map<String, Object> profile) {
+            this.token = token;
+            this.profile = profile;
+        }
+    }
+
+    private static class Tenant {
+        final int id;
+        final ReentrantLock lock = new ReentrantLock();
+        final Map<String, User> users = new ConcurrentHashMap<>();
+        final Map<String, Map<String, String>> index = new ConcurrentHashMap<>();
+        final Map<String, Map<String, Object>> tokens = new ConcurrentHashMap<>();
+        final Map<String, String> tokenBases = new ConcurrentHashMap<>();
+        final Map<String, String> uniqueTokens = new ConcurrentHashMap<>();
+        final Map<String, Map<String, Object>> sessions = new ConcurrentHashMap<>();
+        final Map<String, Integer> groupIds = new ConcurrentHashMap<>();
+        final AtomicInteger nextGroupId = new AtomicInteger(1);
+        final Map<String, Map<String, Object>> legalBases = new ConcurrentHashMap<>();
+        final Map<String, Map<String, Object>> activities = new ConcurrentHashMap<>();
+        final Map<String, Map<String, Object>> policies = new ConcurrentHashMap<>();
+        final AtomicInteger nextPolicyId = new AtomicInteger(1);
+        final Map<String, Long> unlocks = new ConcurrentHashMap<>();
+
+        Tenant(int id) {
+            this.id = id;
+        }
+
+        Map<String, String> index(String mode) {
+            return index.computeIfAbsent(mode, m -> new ConcurrentHashMap<>());
+        }
+    }
+
+    private static final String[] INDEXED_FIELDS = {"email", "phone", "login", "custom"};
+
+    private final Map<String, Tenant> tenants = new ConcurrentHashMap<>();
+    private final AtomicInteger nextTenantId = new AtomicInteger(1);
+    private final Map<String, Handler> handlers = new HashMap<>();
+
+    StubStore() {
+        handlers.put("UserCreate", this::createUser);
+        handlers.put("UserCreateBulk", this::createUsersBulk);
+        handlers.put("UserGet", this::getUser);
+        handlers.put("UserUpdate", this::updateUser);
+        handlers.put("UserPatch", this::patchUser);
+        handlers.put("UserDelete", this::deleteUser);
+        handlers.put("UserDeleteBulk", this::deleteUsersBulk);
+        handlers.put("TokenCreate", this::createToken);
+        handlers.put("TokenCreateBulk", this::createTokensBulk);
+        handlers.put("TokenGet", this::getToken);
+        handlers.put("TokenDelete", this::deleteToken);
+        handlers.put("BulkListTokens", this::bulkListTokens);
+        handlers.put("BulkDeleteTokens", this::bulkDeleteTokens);
+        handlers.put("SessionUpsert", this::upsertSession);
+        handlers.put("SessionGet", this::getSession);
+        handlers.put("SessionDelete", this::deleteSession);
+        handlers.put("AgreementAccept", this::acceptAgreement);
+        handlers.put("AgreementGet", this::getAgreement);
+        handlers.put("AgreementCancel", this::cancelAgreement);
+        handlers.put("AgreementListUserAgreements", this::listUserAgreements);
+        handlers.put("AgreementRevokeAll", this::revokeAllAgreements);
+        handlers.put("LegalBasisCreate", this::createLegalBasis);
+        handlers.put("LegalBasisDelete", this::deleteLegalBasis);
+        handlers.put("LegalBasisListAgreements", this::listLegalBases);
+        handlers.put("ProcessingActivityCreate", this::createActivity);
+        handlers.put("ProcessingActivityDelete", this::deleteActivity);
+        handlers.put("ProcessingActivityListActivities", this::listActivities);
+        handlers.put("PolicyCreate", this::createPolicy);
+        handlers.put("PolicyGet", this::getPolicy);
+        handlers.put("PolicyListAllPolicies", this::listPolicies);
+        handlers.put("AppdataCreate", this::putAppData);
+        handlers.put("AppdataUpdate", this::putAppData);
+        handlers.put("AppdataGet", this::getAppData);
+        handlers.put("AppdataDelete", this::deleteAppData);
+        handlers.put("GroupCreate", this::createGroup);
+        handlers.put("GroupAddUser", this::addUserToGroup);
+        handlers.put("GroupListAllGroups", this::listGroups);
+        handlers.put("TenantCreate", this::createTenant);
+        handlers.put("TenantListTenants", this::listTenants);
+        handlers.put("XTokenCreateForUser", this::createUserXToken);
+        handlers.put("XTokenCreateForRole", this::createRoleXToken);
+        handlers.put("BulkListUnlock", this::bulkListUnlock);
+        handlers.put("BulkListAllUsers", this::bulkListAllUsers);
+        handlers.put("BulkListUsers", this::bulkListUsers);
+        handlers.put("BulkListGroupUsers", this::bulkListGroupUsers);
+        handlers.put("SystemGetUserProfiles", this::getUserProfiles);
+        handlers.put("SystemDeleteUserProfiles", this::deleteUserProfiles);
+        handlers.put("SystemGetSystemStats", this::getSystemStats);
+    }
+
+    /**
+     * Handles a /v2 request
+     *
+     * @param endpoint API endpoint name
+     * @param tenant   Value of the X-Bunker-Tenant header (can be null)
+     * @param body     Parsed request body
+     * @return The response body
+     * @throws StubException With status 404 if the stub does not implement the endpoint
+     */
+    Map<String, Object> handle(String endpoint, String tenant, Map<String, Object> body) {
+        Handler handler = handlers.get(endpoint);
+        if (handler == null) {
+            // Answering "ok" would let tests pass for calls the stub does not model
+            throw new StubException(404, "endpoint not implemented by the stub: " + endpoint);
+        }
+        return handler.handle(tenant(tenant), body);
+    }
+
+    int userCount() {
+        int count = 0;
+        for (Tenant tenant : tenants.values()) {
+            count += tenant.users.size();
+        }
+        return count;
+    }
+
+    int tokenCount() {
+        int count = 0;
+        for (Tenant tenant : tenants.values()) {
+            count += tenant.tokens.size();
+        }
+        return count;
+    }
+
+    void revokeUnlocks() {
+        for (Tenant tenant : tenants.values()) {
+            tenant.unlocks.clear();
+        }
+    }
+
+    private Tenant tenant(String name) {
+        return tenants.computeIfAbsent(name != null ? name : "", n -> new Tenant(nextTenantId.getAndIncrement()));
+    }
+
+    // Users
+
+    private Map<String, Object> createUser(Tenant tenant, Map<String, Object> body) {
+        User user = insertUser(tenant, map(body.get("profile")));
+        Map<String, Object> result = ok();
+        result.put("token", user.token);
+        return result;
+    }
+
+    private Map<String, Object> createUsersBulk(Tenant tenant, Map<String, Object> body) {
+        List<Map<String, Object>> created = new ArrayList<>();
+        int errors = 0;
+        for (Object record : list(body.get("records"))) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            try {
+                row.put("token", insertUser(tenant, map(map(record).get("profile"))).token);
+                row.put("status", "ok");
+            } catch (StubException e) {
+                row.put("status", "error");
+                row.put("message", e.getMessage());
+                errors++;
+            }
+            created.add(row);
+        }
+        Map<String, Object> result = ok();
+        result.put("created", created);
+        result.put("num", created.size() - errors);
+        result.put("errors", errors);
+        return result;
+    }
+
+    private User insertUser(Tenant tenant, Map<String, Object> profile) {
+        if (profile == null || profile.isEmpty()) {
+            throw new StubException(400, "empty profile");
+        }
+        User user = new User(UUID.randomUUID().toString(), new HashMap<>(profile));
+        tenant.lock.lock();
+        try {
+            for (String field : INDEXED_FIELDS) {
+                Object value = profile.get(field);
+                if (value != null && tenant.index(field).containsKey(value.toString())) {
+                    throw new StubException(400, "duplicate " + field);
+                }
+            }
+            tenant.users.put(user.token, user);
+            index(tenant, user);
+        } finally {
+            tenant.lock.unlock();
+        }
+        return user;
+    }
+
+    private Map<String, Object> getUser(Tenant tenant, Map<String, Object> body) {
+        User user = findUser(tenant, body);
+        Map<String, Object> result = ok();
+        result.put("token", user.token);
+        result.put("profile", user.profile);
+        return result;
+    }
+
+    private Map<String, Object> updateUser(Tenant tenant, Map<String, Object> body) {
+        Map<String, Object> changes = map(body.get("profile"));
+        tenant.lock.lock();
+        try {
+            User user = findUser(tenant, body);
+            Map<String, Object> profile = new HashMap<>(user.profile);
+            profile.putAll(changes != null ? changes : new HashMap<>());
+            replaceProfile(tenant, user, profile);
+        } finally {
+            tenant.lock.unlock();
+        }
+        return ok();
+    }
+
+    private Map<String, Object> patchUser(Tenant tenant, Map<String, Object> body) {
+        tenant.lock.lock();
+        try {
+            User user = findUser(tenant, body);
+            Map<String, Object> profile = new HashMap<>(user.profile);
+            for (Object item : list(body.get("patch"))) {
+                Map<String, Object> operation = map(item);
+                String path = String.valueOf(operation.get("path"));
+                String[] fields = (path.startsWith("/") ? path.substring(1) : path).split("/", -1);
+                Map<String, Object> parent = profile;
+                for (int i = 0; i < fields.length - 1; i++) {
+                    // Copy nested objects on the way, the stored profile is not changed in place
+                    Map<String, Object> child = map(parent.get(unescape(fields[i])));
+                    if (child == null) {
+                        throw new StubException(400, "patch path not found: " + path);
+                    }
+                    child = new HashMap<>(child);
+                    parent.put(unescape(fields[i]), child);
+                    parent = child;
+                }
+                String field = unescape(fields[fields.length - 1]);
+                String op = String.valueOf(operation.get("op"));
+                if ("remove".equals(op)) {
+                    parent.remove(field);
+                } else if ("add".equals(op) || "replace".equals(op)) {
+                    parent.put(field, operation.get("value"));
+                } else {
+                    throw new StubException(400, "unsupported patch operation " + op);
+                }
+            }
+            replaceProfile(tenant, user, profile);
+        } finally {
+            tenant.lock.unlock();
+        }
+        return ok();
+    }
+
+    private static String unescape(String field) {
+        return field.replace("~1", "/").replace("~0", "~");
+    }
+
+    private Map<String, Object> deleteUser(Tenant tenant, Map<String, Object> body) {
+        removeUser(tenant, findUser(tenant, body));
+        return ok();
+    }
+
+    private Map<String, Object> deleteUsersBulk(Tenant tenant, Map<String, Object> body) {
+        List<Map<String, Object>> results = new ArrayList<>();
+        int deleted = 0;
+        for (Object item : list(body.get("users"))) {
+            Map<String, Object> ref = map(item);
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("mode", ref.get("mode"));
+            row.put("identity", ref.get("identity"));
+            User user = lookupUser(tenant, ref);
+            if (user != null) {
+                removeUser(tenant, user);
+                row.put("status", "ok");
+                deleted++;
+            } else {
+                row.put("status", "error");
+                row.put("message", "not found");
+            }
+            results.add(row);
+        }
+        Map<String, Object> result = ok();
+        result.put("results", results);
+        result.put("deleted", deleted);
+        return result;
+    }
+
+    private void replaceProfile(Tenant tenant, User user, Map<String, Object> profile) {
+        unindex(tenant, user);
+        user.profile = profile;
+        index(tenant, user);
+    }
+
+    private void removeUser(Tenant tenant, User user) {
+        tenant.lock.lock();
+        try {
+            tenant.users.remove(user.token);
+            unindex(tenant, user);
+        } finally {
+            tenant.lock.unlock();
+        }
+    }
+
+    private void index(Tenant tenant, User user) {
+        for (String field : INDEXED_FIELDS) {
+            Object value = user.profile.get(field);
+            if (value != null) {
+                tenant.index(field).put(value.toString(), user.token);
+            }
+        }
+    }
+
+    private void unindex(Tenant tenant, User user) {
+        for (String field : INDEXED_FIELDS) {
+            Object value = user.profile.get(field);
+            if (value != null) {
+                tenant.index(field).remove(value.toString(), user.token);
+            }
+        }
+    }
+
+    private User findUser(Tenant tenant, Map<String, Object> body) {
+        User user = lookupUser(tenant, body);
+        if (user == null) {
+            throw new StubException(404, "user not found");
+        }
+        return user;
+    }
+
+    private User lookupUser(Tenant tenant, Map<String, Object> ref) {
+        String mode = string(ref.get("mode"));
+        String identity = string(ref.get("identity"));
+        if (mode == null || identity == null) {
+            throw new StubException(400, "missing mode or identity");
+        }
+        String token = "token".equals(mode) ? identity : tenant.index(mode).get(identity);
+        return token != null ? tenant.users.get(token) : null;
+    }
+
+    // Tokens
+
+    private Map<String, Object> createToken(Tenant tenant, Map<String, Object> body) {
+        Map<String, Object> token = insertToken(tenant, string(body.get("tokentype")), string(body.get("record")),
+            Boolean.TRUE.equals(body.get("unique")));
+        Map<String, Object> result = ok();
+        result.put("tokenuuid", token.get("tokenuuid"));
+        result.put("tokenbase", token.get("tokenbase"));
+        return result;
+    }
+
+    private Map<String, Object> createTokensBulk(Tenant tenant, Map<String, Object> body) {
+        boolean unique = Boolean.TRUE.equals(body.get("unique"));
+        List<Map<String, Object>> created = new ArrayList<>();
+        int duplicates = 0;
+        int errors = 0;
+        int total = 0;
+        for (Object item : list(body.get("records"))) {
+            total++;
+            Map<String, Object> record = map(item);
+            String tokentype = string(record.get("tokentype"));
+            String value = string(record.get("record"));
+            boolean recordUnique = unique || Boolean.TRUE.equals(record.get("unique"));
+            try {
+                Map<String, Object> token = recordUnique ? uniqueToken(tenant, tokentype, value) : null;
+                if (token != null) {
+                    duplicates++;
+                } else {
+                    token = insertToken(tenant, tokentype, value, recordUnique);
+                }
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("tokenuuid", token.get("tokenuuid"));
+                row.put("tokenbase", token.get("tokenbase"));
+                created.add(row);
+            } catch (StubException e) {
+                errors++;
+            }
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("created", created.size() - duplicates);
+        summary.put("duplicates", duplicates);
+        summary.put("errors", errors);
+        summary.put("total", total);
+        Map<String, Object> result = ok();
+        result.put("created", created);
+        result.put("num", created.size());
+        result.put("summary", summary);
+        return result;
+    }
+
+    private Map<String, Object> insertToken(Tenant tenant, String tokentype, String record, boolean unique) {
+        if (tokentype == null || record == null) {
+            throw new StubException(400, "missing tokentype or record");
+        }
+        String uniqueKey = tokentype + "\u0000" + record;
+        tenant.lock.lock();
+        try {
+            Map<String, Object> existing = unique ? uniqueToken(tenant, tokentype, record) : null;
+            if (existing != null) {
+                return existing;
+            }
+            Map<String, Object> token = new LinkedHashMap<>();
+            String tokenuuid = UUID.randomUUID().toString();
+            String tokenbase = tokenBase(tenant, record);
+            token.put("tokenuuid", tokenuuid);
+            token.put("tokenbase", tokenbase);
+            token.put("tokentype", tokentype);
+            token.put("record", record);
+            tenant.tokens.put(tokenuuid, token);
+            tenant.tokenBases.put(tokenbase, tokenuuid);
+            if (unique) {
+                tenant.uniqueTokens.put(uniqueKey, tokenuuid);
+            }
+            return token;
+        } finally {
+            tenant.lock.unlock();
+        }
+    }
+
+    private static Map<String, Object> uniqueToken(Tenant tenant, String tokentype, String record) {
+        String tokenuuid = tenant.uniqueTokens.get(tokentype + "\u0000" + record);
+        return tokenuuid != null ? tenant.tokens.get(tokenuuid) : null;
+    }
+
+    /**
+     * Format-preserving token: digits are replaced by random digits, keeping the last four
+     */
+    private static String tokenBase(Tenant tenant, String record) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (true) {
+            StringBuilder base = new StringBuilder(record.length());
+            for (int i = 0; i < record.length(); i++) {
+                char c = record.charAt(i);
+                if (Character.isDigit(c) && i < record.length() - 4) {
+                    base.append((char) ('0' + random.nextInt(10)));
+                } else if (Character.isLetter(c)) {
+                    base.append((char) ('a' + random.nextInt(26)));
+                } else {
+                    base.append(c);
+                }
+            }
+            String candidate = base.toString();
+            if (!candidate.equals(record) && !tenant.tokenBases.containsKey(candidate)) {
+                return candidate;
+            }
+            if (record.length() <= 4) {
+                return UUID.randomUUID().toString();
+            }
+        }
+    }
+
+    private Map<String, Object> findToken(Tenant tenant, String ref) {
+        if (ref == null) {
+            return null;
+        }
+        Map<String, Object> token = tenant.tokens.get(ref);
+        if (token == null) {
+            String tokenuuid = tenant.tokenBases.get(ref);
+            token = tokenuuid != null ? tenant.tokens.get(tokenuuid) : null;
+        }
+        return token;
+    }
+
+    private Map<String, Object> getToken(Tenant tenant, Map<String, Object> body) {
+        Map<String, Object> token = findToken(tenant, string(body.get("token")));
+        if (token == null) {
+            throw new StubException(404, "token not found");
+        }
+        Map<String, Object> result = ok();
+        result.putAll(token);
+        return result;
+    }
+
+    private Map<String, Object> deleteToken(Tenant tenant, Map<String, Object> body) {
+        if (!removeToken(tenant, string(body.get("token")))) {
+            throw new StubException(404, "token not found");
+        }
+        return ok();
+    }
+
+    private boolean removeToken(Tenant tenant, String ref) {
+        tenant.lock.lock();
+        try {
+            Map<String, Object> token = findToken(tenant, ref);
+            if (token == null) {
+                return false;
+            }
+            tenant.tokens.remove(token.get("tokenuuid"));
+            tenant.tokenBases.remove(token.get("tokenbase"));
+            tenant.uniqueTokens.remove(token.get("tokentype") + "\u0000" + token.get("record"), token.get("tokenuuid"));
+            return true;
+        } finally {
+            tenant.lock.unlock();
+        }
+    }
+
+    private Map<String, Object> bulkListTokens(Tenant tenant, Map<String, Object> body) {
+        checkUnlock(tenant, body);
+        List<Object> rows = new ArrayList<>();
+        for (Object ref : list(body.get("tokens"))) {
+            Map<String, Object> token = findToken(tenant, string(ref));
+            if (token != null) {
+                rows.add(new LinkedHashMap<>(token));
+            }
+        }
+        return page(rows, rows.size());
+    }
+
+    private Map<String, Object> bulkDeleteTokens(Tenant tenant, Map<String, Object> body) {
+        checkUnlock(tenant, body);
+        int deleted = 0;
+        for (Object ref : list(body.get("tokens"))) {
+            if (removeToken(tenant, string(ref))) {
+                deleted++;
+            }
+        }
+        Map<String, Object> result = ok();
+        result.put("deleted", deleted);
+        return result;
+    }
+
+    // Sessions
+
+    private Map<String, Object> upsertSession(Tenant tenant, Map<String, Object> body) {
+        String sessionuuid = string(body.get("sessionuuid"));
+        if (sessionuuid == null) {
+            sessionuuid = UUID.randomUUID().toString();
+        }
+        Map<String, Object> sessiondata = map(body.get("sessiondata"));
+        tenant.sessions.put(sessionuuid, sessiondata != null ? sessiondata : new HashMap<>());
+        Map<String, Object> result = ok();
+        result.put("sessionuuid", sessionuuid);
+        return result;
+    }
+
+    private Map<String, Object> getSession(Tenant tenant, Map<String, Object> body) {
+        String sessionuuid = string(body.get("sessionuuid"));
+        Map<String, Object> sessiondata = sessionuuid != null ? tenant.sessions.get(sessionuuid) : null;
+        if (sessiondata == null) {
+            throw new StubException(404, "session not found");
+        }
+        Map<String, Object> result = ok();
+        result.put("sessionuuid", sessionuuid);
+        result.put("sessiondata", sessiondata);
+        return result;
+    }
+
+    private Map<String, Object> deleteSession(Tenant tenant, Map<String, Object> body) {
+        String sessionuuid = string(body.get("sessionuuid"));
+        if (sessionuuid != null) {
+            tenant.sessions.remove(sessionuuid);
+        }
+        return ok();
+    }
+
+    // Agreements
+
+    private Map<String, Object> acceptAgreement(Tenant tenant, Map<String, Object> body) {
+        User user = findUser(tenant, body);
+        String brief = requireString(body, "brief");
+        Map<String, Object> agreement = new LinkedHashMap<>(body);
+        agreement.remove("mode");
+        agreement.remove("identity");
+        agreement.put("status", "yes");
+        agreement.put("when", System.currentTimeMillis() / 1000);
+        user.agreements.put(brief, agreement);
+        return ok();
+    }
+
+    private Map<String, Object> getAgreement(Tenant tenant, Map<String, Object> body) {
+        User user = findUser(tenant, body);
+        Map<String, Object> agreement = user.agreements.get(requireString(body, "brief"));
+        if (agreement == null) {
+            throw new StubException(404, "agreement not found");
+        }
+        Map<String, Object> result = ok();
+        result.put("data", agreement);
+        return result;
+    }
+
+    private Map<String, Object> cancelAgreement(Tenant tenant, Map<String, Object> body) {
+        User user = findUser(tenant, body);
+        Map<String, Object> agreement = user.agreements.get(requireString(body, "brief"));
+        if (agreement != null) {
+            agreement.put("status", "no");
+        }
+        return ok();
+    }
+
+    private Map<String, Object> listUserAgreements(Tenant tenant, Map<String, Object> body) {
+        User user = findUser(tenant, body);
+        return page(new ArrayList<>(user.agreements.values()), user.agreements.size());
+    }
+
+    private Map<String, Object> revokeAllAgreements(Tenant tenant, Map<String, Object> body) {
+        String brief = requireString(body, "brief");
+        for (User user : tenant.users.values()) {
+            Map<String, Object> agreement = user.agreements.get(brief);
+            if (agreement != null) {
+                agreement.put("status", "no");
+            }
+        }
+        return ok();
+    }
+
+    // Legal bases
+
+    private Map<String, Object> createLegalBasis(Tenant tenant, Map<String, Object> body) {
+        Map<String, Object> legalBasis = new LinkedHashMap<>(body);
+        legalBasis.remove("request_metadata");
+        tenant.legalBases.put(requireString(body, "brief"), legalBasis);
+        return ok();
+    }
+
+    private Map<String, Object> deleteLegalBasis(Tenant tenant, Map<String, Object> body) {
+        tenant.legalBases.remove(requireString(body, "brief"));
+        return ok();
+    }
+
+    private Map<String, Object> listLegalBases(Tenant tenant, Map<String, Object> body) {
+        return page(new ArrayList<>(tenant.legalBases.values()), tenant.legalBases.size());
+    }
+
+    private Map<String, Object> createActivity(Tenant tenant, Map<String, Object> body) {
+        Map<String, Object> activity = new LinkedHashMap<>(body);
+        activity.remove("request_metadata");
+        tenant.activities.put(requireString(body, "activity"), activity);
+        return ok();
+    }
+
+    private Map<String, Object> deleteActivity(Tenant tenant, Map<String, Object> body) {
+        tenant.activities.remove(requireString(body, "activity"));
+        return ok();
+    }
+
+    private Map<String, Object> listActivities(Tenant tenant, Map<String, Object> body) {
+        return page(new ArrayList<>(tenant.activities.values()), tenant.activities.size());
+    }
+
+    // Policies
+
+    private Map<String, Object> createPolicy(Tenant tenant, Map<String, Object> body) {
+        String policyname = requireString(body, "policyname");
+        Map<String, Object> policy = tenant.policies.computeIfAbsent(policyname, name -> {
+            Map<String, Object> created = new LinkedHashMap<>();
+            created.put("policyid", tenant.nextPolicyId.getAndIncrement());
+            return created;
+        });
+        synchronized (policy) {
+            policy.putAll(body);
+            policy.remove("request_metadata");
+        }
+        Map<String, Object> result = ok();
+        result.put("policyid", policy.get("policyid"));
+        return result;
+    }
+
+    private Map<String, Object> getPolicy(Tenant tenant, Map<String, Object> body) {
+        for (Map<String, Object> policy : tenant.policies.values()) {
+            if (Objects.equals(policy.get("policyname"), body.get("policyname"))
+                || (body.get("policyid") instanceof Number && policy.get("policyid").equals(((Number) body.get("policyid")).intValue()))) {
+                Map<String, Object> result = ok();
+                result.put("policy", policy);
+                return result;
+            }
+        }
+        throw new StubException(404, "policy not found");
+    }
+
+    private Map<String, Object> listPolicies(Tenant tenant, Map<String, Object> body) {
+        return page(new ArrayList<>(tenant.policies.values()), tenant.policies.size());
+    }
+
+    // App data
+
+    private Map<String, Object> putAppData(Tenant tenant, Map<String, Object> body) {
+        User user = findUser(tenant, body);
+        Map<String, Object> appdata = map(body.get("appdata"));
+        user.appdata.put(requireString(body, "appname"), appdata != null ? appdata : new HashMap<>());
+        return ok();
+    }
+
+    private Map<String, Object> getAppData(Tenant tenant, Map<String, Object> body) {
+        User user = findUser(tenant, body);
+        Map<String, Object> appdata = user.appdata.get(requireString(body, "appname"));
+        if (appdata == null) {
+            throw new StubException(404, "app data not found");
+        }
+        Map<String, Object> result = ok();
+        result.put("data", appdata);
+        return result;
+    }
+
+    private Map<String, Object> deleteAppData(Tenant tenant, Map<String, Object> body) {
+        findUser(tenant, body).appdata.remove(requireString(body, "appname"));
+        return ok();
+    }
+
+    // Groups
+
+    private Map<String, Object> createGroup(Tenant tenant, Map<String, Object> body) {
+        String groupname = requireString(body, "groupname");
+        int groupid = tenant.groupIds.computeIfAbsent(groupname, name -> tenant.nextGroupId.getAndIncrement());
+        Map<String, Object> result = ok();
+        result.put("groupid", groupid);
+        return result;
+    }
+
+    private Map<String, Object> listGroups(Tenant tenant, Map<String, Object> body) {
+        List<Object> rows = new ArrayList<>();
+        for (Map.Entry<String, Integer> group : tenant.groupIds.entrySet()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("groupid", group.getValue());
+            row.put("groupname", group.getKey());
+            rows.add(row);
+        }
+        return page(rows, rows.size());
+    }
+
+    private Map<String, Object> addUserToGroup(Tenant tenant, Map<String, Object> body) {
+        findUser(tenant, body).groups.put(groupId(tenant, body), Boolean.TRUE);
+        return ok();
+    }
+
+    private int groupId(Tenant tenant, Map<String, Object> body) {
+        Object groupid = body.get("groupid");
+        if (groupid instanceof Number) {
+            return ((Number) groupid).intValue();
+        }
+        Integer id = tenant.groupIds.get(requireString(body, "groupname"));
+        if (id == null) {
+            throw new StubException(404, "group not found");
+        }
+        return id;
+    }
+
+    // Bulk listings
+
+    // Tenants
+
+    private Map<String, Object> createTenant(Tenant ignored, Map<String, Object> body) {
+        String name = requireString(body, "tenantname");
+        Map<String, Object> result = ok();
+        result.put("tenantid", tenant(name).id);
+        return result;
+    }
+
+    private Map<String, Object> listTenants(Tenant ignored, Map<String, Object> body) {
+        List<Map.Entry<String, Tenant>> sorted = new ArrayList<>();
+        for (Map.Entry<String, Tenant> entry : tenants.entrySet()) {
+            if (!entry.getKey().isEmpty()) {
+                sorted.add(entry);
+            }
+        }
+        sorted.sort((a, b) -> Integer.compare(a.getValue().id, b.getValue().id));
+        int offset = number(body.get("offset"), 0);
+        int limit = number(body.get("limit"), 10);
+        List<Object> rows = new ArrayList<>();
+        for (int i = offset; i < sorted.size() && rows.size() < limit; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("tenantid", sorted.get(i).getValue().id);
+            row.put("tenantname", sorted.get(i).getKey());
+            rows.add(row);
+        }
+        return page(rows, sorted.size());
+    }
+
+    private Map<String, Object> createUserXToken(Tenant tenant, Map<String, Object> body) {
+        findUser(tenant, body);
+        Map<String, Object> result = ok();
+        result.put("xtoken", UUID.randomUUID().toString());
+        return result;
+    }
+
+    private Map<String, Object> createRoleXToken(Tenant tenant, Map<String, Object> body) {
+        if (body.get("roleid") == null && body.get("rolename") == null) {
+            throw new StubException(400, "missing role");
+        }
+        Map<String, Object> result = ok();
+        result.put("xtoken", UUID.randomUUID().toString());
+        return result;
+    }
+
+    private Map<String, Object> bulkListUnlock(Tenant tenant, Map<String, Object> body) {
+        String unlockuuid = UUID.randomUUID().toString();
+        tenant.unlocks.put(unlockuuid, System.currentTimeMillis());
+        Map<String, Object> result = ok();
+        result.put("unlockuuid", unlockuuid);
+        return result;
+    }
+
+    private void checkUnlock(Tenant tenant, Map<String, Object> body) {
+        String unlockuuid = string(body.get("unlockuuid"));
+        if (unlockuuid == null || !tenant.unlocks.containsKey(unlockuuid)) {
+            throw new StubException(403, "bulk operations are locked");
+        }
+    }
+
+    private Map<String, Object> bulkListAllUsers(Tenant tenant, Map<String, Object> body) {
+        checkUnlock(tenant, body);
+        return userPage(tenant.users.values(), body);
+    }
+
+    private Map<String, Object> bulkListUsers(Tenant tenant, Map<String, Object> body) {
+        checkUnlock(tenant, body);
+        List<User> users = new ArrayList<>();
+        for (Object ref : list(body.get("users"))) {
+            User user = lookupUser(tenant, map(ref));
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return userPage(users, body);
+    }
+
+    private Map<String, Object> bulkListGroupUsers(Tenant tenant, Map<String, Object> body) {
+        checkUnlock(tenant, body);
+        int groupid = groupId(tenant, body);
+        List<User> users = new ArrayList<>();
+        for (User user : tenant.users.values()) {
+            if (user.groups.containsKey(groupid)) {
+                users.add(user);
+            }
+        }
+        return userPage(users, body);
+    }
+
+    private Map<String, Object> userPage(Collection<User> users, Map<String, Object> body) {
+        List<User> sorted = new ArrayList<>(users);
+        sorted.sort((a, b) -> a.token.compareTo(b.token));
+        int offset = number(body.get("offset"), 0);
+        int limit = number(body.get("limit"), 10);
+        List<Object> rows = new ArrayList<>();
+        for (int i = offset; i < sorted.size() && rows.size() < limit; i++) {
+            User user = sorted.get(i);
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("token", user.token);
+            row.put("profile", user.profile);
+            rows.add(row);
+        }
+        return page(rows, sorted.size());
+    }
+
+    // System
+
+    private Map<String, Object> getUserProfiles(Tenant ignored, Map<String, Object> body) {
+        List<Object> rows = new ArrayList<>();
+        for (Map.Entry<String, Tenant> entry : tenants.entrySet()) {
+            User user = lookupUser(entry.getValue(), body);
+            if (user != null) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("tenantname", entry.getKey());
+                row.put("token", user.token);
+                row.put("profile", user.profile);
+                rows.add(row);
+            }
+        }
+        return page(rows, rows.size());
+    }
+
+    private Map<String, Object> deleteUserProfiles(Tenant ignored, Map<String, Object> body) {
+        String tenantname = string(body.get("tenantname"));
+        int deleted = 0;
+        for (Map.Entry<String, Tenant> entry : tenants.entrySet()) {
+            if (tenantname != null && !tenantname.equals(entry.getKey())) {
+                continue;
+            }
+            User user = lookupUser(entry.getValue(), body);
+            if (user != null) {
+                removeUser(entry.getValue(), user);
+                deleted++;
+            }
+        }
+        Map<String, Object> result = ok();
+        result.put("deleted", deleted);
+        return result;
+    }
+
+    private Map<String, Object> getSystemStats(Tenant tenant, Map<String, Object> body) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("numusers", tenant.users.size());
+        stats.put("numtokens", tenant.tokens.size());
+        stats.put("numsessions", tenant.sessions.size());
+        Map<String, Object> result = ok();
+        result.put("stats", stats);
+        return result;
+    }
+
+    // Helpers
+
+    private static Map<String, Object> ok() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("status", "ok");
+        return result;
+    }
+
+    private static Map<String, Object> page(List<Object> rows, int total) {
+        Map<String, Object> result = ok();
+        result.put("total", total);
+        result.put("rows", rows);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> map(Object value) {
+        return value instanceof Map ? (Map<String, Object>) value : null;
+    }
+
+    private static List<?> list(Object value) {
+        return value instanceof List ? (List<?>) value : new ArrayList<>();
+    }
+
+    private static String string(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    private static String requireString(Map<String, Object> body, String field) {
+        String value = string(body.get(field));
+        if (value == null || value.isEmpty()) {
+            throw new StubException(400, "missing " + field);
+        }
+        return value;
+    }
+
+    private static int number(Object value, int defaultValue) {
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+}
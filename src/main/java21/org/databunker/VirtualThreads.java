@@ -0,0 +1,36 @@
+package org.databunker;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the client's internal threads, using virtual threads when requested.
+ * <p>
+ * Java 21 version of the class, packaged under META-INF/versions/21 of the multi-release jar.
+ */
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    /**
+     * Whether this runtime supports virtual threads
+     * @return Always true on Java 21 and later
+     */
+    static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Creates an executor that runs every task on its own thread
+     *
+     * @param name    Thread name
+     * @param virtual Whether to use virtual threads
+     * @return A new executor
+     */
+    static ExecutorService newThreadPerTaskExecutor(String name, boolean virtual) {
+        if (virtual) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name).factory());
+        }
+        return Executors.newCachedThreadPool(Thread.ofPlatform().name(name).daemon().factory());
+    }
+}
@@ -0,0 +1,85 @@
+package org.databunker;
+
+import com.sun.net.httpserver.HttpServer;
+import org.databunker.resilience.Deadline;
+import org.databunker.resilience.DeadlineExceededException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DatabunkerproApiDeadlineTest {
+    private HttpServer server;
+    private DatabunkerproApi api;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v2/", exchange -> {
+            try {
+                if (exchange.getRequestURI().getPath().endsWith("UserGet")) {
+                    Thread.sleep(2000);
+                }
+                byte[] body = "{\"status\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException | IOException e) {
+                exchange.close();
+            }
+        });
+        server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
+        server.start();
+        api = new DatabunkerproApi("http://127.0.0.1:" + server.getAddress().getPort(), "token", null);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        api.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testTimeoutCancelsSlowExchange() throws IOException {
+        long start = System.nanoTime();
+        try {
+            api.withTimeout(Duration.ofMillis(200)).getUser("email", "slow@example.com", null);
+            fail("the call should run out of budget");
+        } catch (DeadlineExceededException e) {
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("cancelled after " + elapsedMillis + " ms", elapsedMillis < 1500);
+        }
+        // The client stays usable after a cancelled exchange
+        Map<String, Object> result = api.withTimeout(Duration.ofSeconds(5)).getSession("session", null);
+        assertEquals("ok", result.get("status"));
+    }
+
+    @Test
+    public void testDeadlineIsSharedAcrossCalls() throws IOException {
+        Deadline deadline = Deadline.after(300, TimeUnit.MILLISECONDS);
+        DatabunkerproApi bounded = api.withDeadline(deadline);
+        assertEquals("ok", bounded.getSession("session", null).get("status"));
+        try {
+            bounded.getUser("email", "slow@example.com", null);
+            fail("the second call should only get the remaining budget");
+        } catch (DeadlineExceededException e) {
+            assertTrue(deadline.isExpired());
+        }
+        try {
+            bounded.getSession("session", null);
+            fail("no budget is left for further calls");
+        } catch (DeadlineExceededException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.databunker;
+
+import com.sun.net.httpserver.HttpServer;
+import org.databunker.options.ClientOptions;
+import org.databunker.resilience.EndpointClass;
+import org.databunker.resilience.HedgingPolicy;
+import org.databunker.resilience.LatencyHistogram;
+import org.databunker.resilience.RateLimiterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DatabunkerproApiHedgingTest {
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile boolean failHedge;
+    private volatile boolean stallEveryPrimary;
+
+    @Before
+    public void setUp() throws IOException {
+        // The second request of every test stalls; the first warms up the connection pool
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v2/", exchange -> {
+            try {
+                int request = requests.incrementAndGet();
+                if (stallEveryPrimary && request % 2 == 0) {
+                    Thread.sleep(300);
+                } else if (request == 2) {
+                    Thread.sleep(1500);
+                }
+                boolean fail = failHedge && request == 3;
+                byte[] body = (fail ? "{\"status\":\"error\",\"message\":\"maintenance\"}" : "{\"status\":\"ok\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(fail ? 500 : 200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException | IOException e) {
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private DatabunkerproApi client(HedgingPolicy hedging) {
+        return client(ClientOptions.builder().hedging(hedging));
+    }
+
+    private DatabunkerproApi client(ClientOptions.Builder options) {
+        return new DatabunkerproApi("http://127.0.0.1:" + server.getAddress().getPort(), "token", null, options.build());
+    }
+
+    @Test
+    public void testHedgeAbsorbsSlowResponse() throws IOException {
+        HedgingPolicy hedging = HedgingPolicy.builder()
+            .initialDelay(Duration.ofMillis(50), 100)
+            .budget(1.0, 1)
+            .build();
+        try (DatabunkerproApi api = client(hedging)) {
+            api.deleteSession("warmup", null);
+            long start = System.nanoTime();
+            Map<String, Object> result = api.getUser("email", "user@example.com", null);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertEquals("ok", result.get("status"));
+            assertTrue("hedge should answer well before the stalled request, took " + elapsedMillis + " ms",
+                elapsedMillis < 1000);
+            assertEquals(1, hedging.getHedgesSent());
+            assertEquals(1, hedging.getHedgesWon());
+            assertNull("the stalled primary is recorded once it answers", hedging.getHistogram("UserGet"));
+        }
+    }
+
+    @Test
+    public void testWinningHedgesDoNotShortenTheDelay() throws Exception {
+        // Every primary takes 300 ms and every hedge answers at once
+        stallEveryPrimary = true;
+        HedgingPolicy hedging = HedgingPolicy.builder()
+            .initialDelay(Duration.ofMillis(50), 3)
+            .budget(1.0, 10)
+            .build();
+        try (DatabunkerproApi api = client(hedging)) {
+            api.deleteSession("warmup", null);
+            for (int i = 0; i < 3; i++) {
+                assertEquals("ok", api.getUser("email", "user@example.com", null).get("status"));
+            }
+            assertEquals(3, hedging.getHedgesWon());
+            Thread.sleep(500);
+            assertEquals(3, hedging.getHistogram("UserGet").count());
+            long delayMillis = TimeUnit.NANOSECONDS.toMillis(hedging.delayNanos("UserGet"));
+            assertTrue("the delay follows the primaries' 300 ms, not the hedges, was " + delayMillis + " ms",
+                delayMillis >= 250);
+        }
+    }
+
+    @Test
+    public void testHedgeErrorDoesNotBeatSlowSuccess() throws IOException {
+        failHedge = true;
+        HedgingPolicy hedging = HedgingPolicy.builder()
+            .initialDelay(Duration.ofMillis(50), 100)
+            .budget(1.0, 1)
+            .build();
+        try (DatabunkerproApi api = client(hedging)) {
+            api.deleteSession("warmup", null);
+            assertEquals("ok", api.getUser("email", "user@example.com", null).get("status"));
+            assertEquals(1, hedging.getHedgesSent());
+            assertEquals(0, hedging.getHedgesWon());
+        }
+    }
+
+    @Test
+    public void testRefusedHedgeGivesBackBudget() throws IOException {
+        HedgingPolicy hedging = HedgingPolicy.builder()
+            .initialDelay(Duration.ofMillis(50), 100)
+            .budget(0.0, 1)
+            .build();
+        RateLimiterRegistry limiters = RateLimiterRegistry.builder()
+            .limit(EndpointClass.READ, 0.001, 1)
+            .build();
+        try (DatabunkerproApi api = client(ClientOptions.builder().hedging(hedging).rateLimiters(limiters))) {
+            api.deleteSession("warmup", null);
+            assertEquals("ok", api.getUser("email", "user@example.com", null).get("status"));
+            assertEquals(0, hedging.getHedgesSent());
+            assertEquals(2, requests.get());
+            assertTrue("the rate limiter refused the hedge, so its budget is still there", hedging.tryAcquireHedge());
+        }
+    }
+
+    @Test
+    public void testHedgeBudgetCapsExtraLoad() throws IOException {
+        HedgingPolicy hedging = HedgingPolicy.builder()
+            .initialDelay(Duration.ofMillis(50), 100)
+            .budget(0.0, 0)
+            .build();
+        try (DatabunkerproApi api = client(hedging)) {
+            api.deleteSession("warmup", null);
+            assertEquals("ok", api.getSession("session", null).get("status"));
+            assertEquals(0, hedging.getHedgesSent());
+            assertEquals(1, hedging.getBudgetExhausted());
+            assertEquals(2, requests.get());
+        }
+    }
+
+    @Test
+    public void testUnhedgedEndpointIsSentOnce() throws IOException {
+        HedgingPolicy hedging = HedgingPolicy.builder()
+            .initialDelay(Duration.ofMillis(50), 100)
+            .budget(1.0, 1)
+            .build();
+        try (DatabunkerproApi api = client(hedging)) {
+            api.deleteSession("warmup", null);
+            assertEquals("ok", api.deleteSession("session", null).get("status"));
+            assertEquals(0, hedging.getHedgesSent());
+            assertEquals(2, requests.get());
+        }
+    }
+
+    @Test
+    public void testHistogramPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram(1, TimeUnit.MINUTES);
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        long p95 = TimeUnit.NANOSECONDS.toMillis(histogram.percentileNanos(0.95));
+        assertTrue("p95 was " + p95 + " ms", p95 >= 95 && p95 <= 110);
+        assertEquals(100, histogram.count());
+    }
+}
@@ -0,0 +1,130 @@
+package org.databunker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.databunker.options.ClientOptions;
+import org.databunker.resilience.IdempotencyPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DatabunkerproApiIdempotencyTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<String> headerKeys = new CopyOnWriteArrayList<>();
+    private final List<Object> metadataKeys = new CopyOnWriteArrayList<>();
+    private final AtomicInteger dropsLeft = new AtomicInteger();
+    private HttpServer server;
+    private IdempotencyPolicy idempotency;
+    private DatabunkerproApi api;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v2/", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                Map<?, ?> request = objectMapper.readValue(in, Map.class);
+                Map<?, ?> metadata = (Map<?, ?>) request.get("request_metadata");
+                headerKeys.add(String.valueOf(exchange.getRequestHeaders().getFirst(IdempotencyPolicy.HEADER)));
+                metadataKeys.add(metadata != null ? metadata.get(IdempotencyPolicy.METADATA_FIELD) : null);
+                if (dropsLeft.getAndDecrement() > 0) {
+                    // The request arrived but the answer is lost
+                    exchange.close();
+                    return;
+                }
+                Map<?, ?> profile = (Map<?, ?>) request.get("profile");
+                String response = profile != null && "taken@example.com".equals(profile.get("email"))
+                    ? "{\"status\":\"error\",\"message\":\"duplicate email\"}"
+                    : "{\"status\":\"ok\",\"token\":\"token-" + headerKeys.size() + "\"}";
+                byte[] body = response.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (IOException e) {
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        idempotency = IdempotencyPolicy.builder()
+            .backoff(Duration.ofMillis(10), Duration.ofMillis(50))
+            .build();
+        api = new DatabunkerproApi("http://127.0.0.1:" + server.getAddress().getPort(), "token", null,
+            ClientOptions.builder().idempotency(idempotency).build());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        api.close();
+        server.stop(0);
+    }
+
+    private static Map<String, Object> profile(String email) {
+        Map<String, Object> profile = new HashMap<>();
+        profile.put("email", email);
+        return profile;
+    }
+
+    @Test
+    public void testRetryReusesKeyAndRepeatIsSuppressed() throws IOException {
+        dropsLeft.set(1);
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("source", "signup");
+        Map<String, Object> created = api.createUser(profile("new@example.com"), null, metadata);
+        assertEquals("ok", created.get("status"));
+        assertEquals(2, headerKeys.size());
+        assertNotEquals("null", headerKeys.get(0));
+        assertEquals(headerKeys.get(0), headerKeys.get(1));
+        assertEquals(headerKeys.get(0), metadataKeys.get(0));
+        assertEquals(headerKeys.get(0), metadataKeys.get(1));
+        assertFalse("the caller's metadata is not modified", metadata.containsKey(IdempotencyPolicy.METADATA_FIELD));
+        assertEquals(1, idempotency.getRetries());
+
+        // Repeating the completed call does not send it again
+        Map<String, Object> repeated = api.createUser(profile("new@example.com"), null, metadata);
+        assertEquals(created, repeated);
+        assertEquals(2, headerKeys.size());
+        assertEquals(1, idempotency.getSuppressed());
+
+        // Other endpoints are sent without a key
+        api.getSession("session", null);
+        assertEquals("null", headerKeys.get(2));
+    }
+
+    @Test
+    public void testRejectedAndExhaustedCallsAreNotRemembered() throws IOException {
+        api.createUser(profile("taken@example.com"), null, null);
+        api.createUser(profile("taken@example.com"), null, null);
+        assertEquals("a refused call is sent again", 2, headerKeys.size());
+        assertNotEquals(headerKeys.get(0), headerKeys.get(1));
+
+        dropsLeft.set(3);
+        try {
+            api.createUser(profile("lost@example.com"), null, null);
+            fail("all attempts were dropped");
+        } catch (IOException expected) {
+            // Three attempts with one key
+        }
+        assertEquals(5, headerKeys.size());
+        assertEquals(headerKeys.get(2), headerKeys.get(4));
+
+        // A manual retry of the failed call keeps its key
+        api.createUser(profile("lost@example.com"), null, null);
+        assertEquals(headerKeys.get(2), headerKeys.get(5));
+    }
+}
@@ -0,0 +1,176 @@
+package org.databunker;
+
+import com.sun.net.httpserver.HttpServer;
+import org.databunker.cluster.LoadBalancingPolicy;
+import org.databunker.cluster.Node;
+import org.databunker.options.ClientOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DatabunkerproApiLoadBalancingTest {
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final List<AtomicInteger> hits = new ArrayList<>();
+    private final AtomicBoolean firstNodeFailing = new AtomicBoolean();
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            AtomicInteger counter = new AtomicInteger();
+            boolean first = i == 0;
+            HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/", exchange -> {
+                boolean failing = first && firstNodeFailing.get();
+                if (exchange.getRequestURI().getPath().startsWith("/v2/")) {
+                    counter.incrementAndGet();
+                }
+                byte[] body = (failing ? "{\"status\":\"error\",\"message\":\"unavailable\"}" : "{\"status\":\"ok\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(failing ? 503 : 200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.start();
+            servers.add(server);
+            hits.add(counter);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (HttpServer server : servers) {
+            server.stop(0);
+        }
+    }
+
+    private List<String> urls() {
+        List<String> urls = new ArrayList<>();
+        for (HttpServer server : servers) {
+            urls.add("http://127.0.0.1:" + server.getAddress().getPort());
+        }
+        return urls;
+    }
+
+    private DatabunkerproApi client(LoadBalancingPolicy policy) {
+        return new DatabunkerproApi(urls(), "token", null, ClientOptions.builder().loadBalancing(policy).build());
+    }
+
+    @Test
+    public void testRequestsAreSpreadAcrossNodes() throws IOException {
+        LoadBalancingPolicy policy = LoadBalancingPolicy.builder()
+            .healthCheck("/status", null, Duration.ofSeconds(1))
+            .build();
+        try (DatabunkerproApi api = client(policy)) {
+            for (int i = 0; i < 60; i++) {
+                assertEquals("ok", api.getSession("session", null).get("status"));
+            }
+            for (AtomicInteger counter : hits) {
+                assertTrue("every node should get traffic, got " + hits, counter.get() > 5);
+            }
+            assertEquals(3, api.getNodes().size());
+            for (Node node : api.getNodes()) {
+                assertEquals(0, node.getOutstanding());
+            }
+        }
+    }
+
+    @Test
+    public void testFailingNodeIsEjected() throws IOException {
+        firstNodeFailing.set(true);
+        LoadBalancingPolicy policy = LoadBalancingPolicy.builder()
+            .strategy(LoadBalancingPolicy.Strategy.LEAST_OUTSTANDING)
+            .ejection(2, Duration.ofMinutes(1), Duration.ofMinutes(5))
+            .healthCheck("/status", null, Duration.ofSeconds(1))
+            .build();
+        try (DatabunkerproApi api = client(policy)) {
+            for (int i = 0; i < 60; i++) {
+                api.getSession("session", null);
+            }
+            Node failing = api.getNodes().get(0);
+            assertEquals(2, failing.getRequestCount());
+            assertEquals(2, failing.getFailureCount());
+            assertFalse(failing.isAvailable());
+            assertEquals(1, failing.getEjectionCount());
+            assertEquals(58, hits.get(1).get() + hits.get(2).get());
+        }
+    }
+
+    @Test
+    public void testHealthCheckReinstatesRecoveredNode() throws Exception {
+        firstNodeFailing.set(true);
+        LoadBalancingPolicy policy = LoadBalancingPolicy.builder()
+            .ejection(1, Duration.ofMinutes(1), Duration.ofMinutes(5))
+            .healthCheck("/status", Duration.ofMillis(50), Duration.ofSeconds(1))
+            .build();
+        try (DatabunkerproApi api = client(policy)) {
+            Node first = api.getNodes().get(0);
+            long waitUntil = System.currentTimeMillis() + 5000;
+            while (first.isAvailable() && System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(10);
+            }
+            assertFalse("health check should take the node down", first.isAvailable());
+
+            firstNodeFailing.set(false);
+            while (!first.isAvailable() && System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(10);
+            }
+            assertTrue("health check should reinstate the node", first.isAvailable());
+            for (int i = 0; i < 60; i++) {
+                assertEquals("ok", api.getSession("session", null).get("status"));
+            }
+            assertTrue(hits.get(0).get() > 5);
+        }
+    }
+
+    @Test
+    public void testUnreachableNodeIsEjected() throws IOException {
+        servers.get(0).stop(0);
+        LoadBalancingPolicy policy = LoadBalancingPolicy.builder()
+            .ejection(1, Duration.ofMinutes(1), Duration.ofMinutes(5))
+            .healthCheck("/status", null, Duration.ofSeconds(1))
+            .build();
+        try (DatabunkerproApi api = client(policy)) {
+            int failures = 0;
+            for (int i = 0; i < 30; i++) {
+                try {
+                    api.getSession("session", null);
+                } catch (IOException e) {
+                    failures++;
+                }
+            }
+            assertEquals(1, failures);
+            assertFalse(api.getNodes().get(0).isAvailable());
+        }
+    }
+
+    @Test
+    public void testSingleNodeIsAlwaysUsed() throws IOException {
+        firstNodeFailing.set(true);
+        LoadBalancingPolicy policy = LoadBalancingPolicy.builder()
+            .ejection(1, Duration.ofMinutes(1), Duration.ofMinutes(5))
+            .build();
+        try (DatabunkerproApi api = new DatabunkerproApi(Arrays.asList(urls().get(0)), "token", null,
+                ClientOptions.builder().loadBalancing(policy).build())) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals("error", api.getSession("session", null).get("status"));
+            }
+            assertEquals(3, api.getNodes().get(0).getRequestCount());
+        }
+    }
+}
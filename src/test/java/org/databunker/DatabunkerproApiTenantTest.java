@@ -0,0 +1,55 @@
+package org.databunker;
+
+import org.databunker.resilience.Priority;
+import org.databunker.stub.StubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DatabunkerproApiTenantTest {
+    private StubServer stub;
+    private DatabunkerproApi api;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.builder().token("admin").start();
+        api = new DatabunkerproApi(stub.getBaseURL(), "admin", null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        api.close();
+        stub.close();
+    }
+
+    @Test
+    public void testTenantViewsAreIsolated() throws Exception {
+        DatabunkerproApi acme = api.forTenant("acme");
+        DatabunkerproApi globex = api.forTenant("globex", "admin");
+        Map<String, Object> profile = new HashMap<>();
+        profile.put("email", "user@example.com");
+        assertEquals("ok", acme.createUser(profile, null, null).get("status"));
+
+        assertEquals("ok", acme.getUser("email", "user@example.com", null).get("status"));
+        assertEquals("error", globex.getUser("email", "user@example.com", null).get("status"));
+        assertEquals("acme", acme.getTenantName());
+        assertNull(api.getTenantName());
+        assertNotSame("unlock UUIDs are per tenant", acme.getUnlockProvider(), globex.getUnlockProvider());
+        assertSame(acme.getUnlockProvider(), acme.withPriority(Priority.BATCH).getUnlockProvider());
+    }
+
+    @Test
+    public void testTenantTokenIsSentPerRequest() throws Exception {
+        DatabunkerproApi denied = api.forTenant("acme", "wrong");
+        assertEquals("error", denied.getSystemStats(null).get("status"));
+
+        denied.close();
+        assertEquals("closing a view keeps the shared pool open",
+            "ok", api.forTenant("acme").getSystemStats(null).get("status"));
+    }
+}
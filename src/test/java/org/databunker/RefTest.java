@@ -0,0 +1,44 @@
+package org.databunker;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RefTest {
+
+    @Test
+    public void testClassification() {
+        assertEquals(12, Ref.parseId("12"));
+        assertEquals(7, Ref.parseId("007"));
+        assertEquals(Integer.MAX_VALUE, Ref.parseId("2147483647"));
+        assertEquals("too large for an ID", -1, Ref.parseId("2147483648"));
+        assertEquals(-1, Ref.parseId("99999999999999999999999"));
+        assertEquals(-1, Ref.parseId(""));
+        assertEquals(-1, Ref.parseId("-1"));
+        assertEquals(-1, Ref.parseId("12a"));
+        assertEquals("only ASCII digits", -1, Ref.parseId("١٢"));
+
+        assertTrue(Ref.of("42").isId());
+        assertEquals(42, Ref.of("42").getId());
+        assertEquals("admins", Ref.of("admins").getName());
+        assertFalse(Ref.ofName("42").isId());
+        assertEquals(Ref.ofId(42), Ref.of("42"));
+    }
+
+    @Test
+    public void testPut() {
+        Map<String, Object> data = new HashMap<>();
+        Ref.put(data, "groupid", "groupname", "12");
+        Ref.put(data, "roleid", "rolename", "reader");
+        Ref.put(data, "policyid", "policyname", (Object) 7L);
+        Ref.ofName("3").putInto(data, "tenantid", "tenantname");
+        assertEquals(12, data.get("groupid"));
+        assertEquals("reader", data.get("rolename"));
+        assertEquals(7L, data.get("policyid"));
+        assertEquals("3", data.get("tenantname"));
+        assertEquals(4, data.size());
+    }
+}
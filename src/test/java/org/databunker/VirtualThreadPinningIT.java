@@ -0,0 +1,93 @@
+package org.databunker;
+
+import org.databunker.options.ClientOptions;
+import org.databunker.resilience.Bulkhead;
+import org.databunker.resilience.HedgingPolicy;
+import org.databunker.stub.StubServer;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Calls the client from thousands of virtual threads and fails if any of them pins its
+ * carrier thread. Runs from the multi-release jar under the java21 profile
+ * ({@code mvn verify} on JDK 21), with -Djdk.tracePinnedThreads=full.
+ */
+public class VirtualThreadPinningIT {
+    private static final int TASKS = 2000;
+
+    private static StubServer stub;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        Assume.assumeTrue("Virtual threads need the Java 21 classes of the multi-release jar",
+            VirtualThreads.isSupported());
+        stub = StubServer.builder().latency(Duration.ofMillis(1), Duration.ofMillis(5)).start();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (stub != null) {
+            stub.close();
+        }
+    }
+
+    @Test
+    public void testNoPinningUnderVirtualThreadLoad() throws Exception {
+        Assume.assumeTrue("Run with -Djdk.tracePinnedThreads=full", System.getProperty("jdk.tracePinnedThreads") != null);
+        ClientOptions options = ClientOptions.builder()
+            .bulkhead(Bulkhead.builder().maxConcurrent(64).reservedInteractive(0).maxWait(30, TimeUnit.SECONDS).build())
+            .hedging(HedgingPolicy.builder().initialDelay(Duration.ofMillis(3), 50).build())
+            .requestTimeout(Duration.ofSeconds(30))
+            .virtualThreads(true)
+            .build();
+
+        PrintStream out = System.out;
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(trace, true, StandardCharsets.UTF_8.name()));
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("pinning-test", true);
+        try (DatabunkerproApi api = new DatabunkerproApi(stub.getBaseURL(), "token", "pinning", options)) {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < TASKS; i++) {
+                int n = i;
+                results.add(executor.submit(() -> {
+                    String email = "vt" + n + "@example.com";
+                    Map<String, Object> profile = new HashMap<>();
+                    profile.put("email", email);
+                    boolean created = "ok".equals(api.createUser(profile, null, null).get("status"));
+                    boolean read = "ok".equals(api.getUser("email", email, null).get("status"));
+                    return created && read;
+                }));
+            }
+            int ok = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(60, TimeUnit.SECONDS)) {
+                    ok++;
+                }
+            }
+            assertEquals(TASKS, ok);
+        } finally {
+            executor.shutdownNow();
+            System.setOut(out);
+        }
+
+        String pinned = trace.toString(StandardCharsets.UTF_8.name());
+        assertTrue("Virtual threads pinned their carrier:\n" + pinned, pinned.isEmpty());
+    }
+}
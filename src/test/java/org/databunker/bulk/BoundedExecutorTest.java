@@ -0,0 +1,28 @@
+package org.databunker.bulk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class BoundedExecutorTest {
+
+    @Test
+    public void testRuntimeExceptionInTaskIsReported() throws Exception {
+        try (BoundedExecutor executor = new BoundedExecutor("test", 2)) {
+            executor.submit(() -> {
+            });
+            executor.submit(() -> {
+                throw new ClassCastException("unexpected response");
+            });
+            try {
+                executor.awaitAll();
+                fail("a batch that threw must not count as done");
+            } catch (IOException e) {
+                assertTrue(e.getCause() instanceof ClassCastException);
+                assertTrue(executor.hasFailed());
+            }
+        }
+    }
+}
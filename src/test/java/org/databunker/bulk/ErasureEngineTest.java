@@ -0,0 +1,200 @@
+package org.databunker.bulk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.databunker.DatabunkerproApi;
+import org.databunker.stub.StubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ErasureEngineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubServer stub;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.builder().start();
+    }
+
+    @After
+    public void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    public void testBulkErasureWritesVerifiableLedger() throws Exception {
+        Path ledger = folder.getRoot().toPath().resolve("ledger.ndjson");
+        try (DatabunkerproApi api = new DatabunkerproApi(stub.getBaseURL(), "token", "erasure")) {
+            List<ErasureEngine.Subject> subjects = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                createUser(api, "user" + i + "@example.com");
+                subjects.add(ErasureEngine.Subject.of("email", "user" + i + "@example.com"));
+            }
+            for (int i = 0; i < 3; i++) {
+                subjects.add(ErasureEngine.Subject.of("email", "missing" + i + "@example.com"));
+            }
+
+            ErasureEngine.Result result = ErasureEngine.builder(api)
+                .batchSize(10)
+                .concurrency(3)
+                .ledger(ledger)
+                .build()
+                .erase(subjects.iterator());
+
+            assertEquals(30, result.getErased());
+            assertEquals(3, result.getNotFound());
+            assertEquals(0, result.getFailed());
+            assertEquals("error", api.getUser("email", "user5@example.com", null).get("status"));
+        }
+
+        assertEquals(33, ErasureLedger.verify(ledger));
+        List<String> lines = Files.readAllLines(ledger, StandardCharsets.UTF_8);
+        String subject = ErasureLedger.subjectHash("email", "missing1@example.com", null);
+        String entry = lines.stream().filter(line -> line.contains(subject)).findFirst().orElse("");
+        assertTrue(entry.contains("\"status\":\"not_found\""));
+        assertFalse("identities are not stored in clear text", String.join("\n", lines).contains("@example.com"));
+
+        lines.set(4, lines.get(4).replace("\"erased\"", "\"failed\""));
+        Files.write(ledger, lines, StandardCharsets.UTF_8);
+        try {
+            ErasureLedger.verify(ledger);
+            fail("an edited entry must break the chain");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("entry 5"));
+        }
+    }
+
+    @Test
+    public void testCrossTenantErasureExtendsLedger() throws Exception {
+        Path ledger = folder.getRoot().toPath().resolve("ledger.ndjson");
+        byte[] key = "ledger-key".getBytes(StandardCharsets.UTF_8);
+        try (DatabunkerproApi tenantA = new DatabunkerproApi(stub.getBaseURL(), "token", "a");
+             DatabunkerproApi tenantB = new DatabunkerproApi(stub.getBaseURL(), "token", "b")) {
+            createUser(tenantA, "shared@example.com");
+            createUser(tenantB, "shared@example.com");
+            createUser(tenantB, "only-b@example.com");
+
+            ErasureEngine engine = ErasureEngine.builder(tenantA)
+                .crossTenant(true)
+                .ledger(ledger)
+                .ledgerKey(key)
+                .build();
+            ErasureEngine.Result first = engine.erase(List.of(ErasureEngine.Subject.of("email", "shared@example.com")).iterator());
+            ErasureEngine.Result second = engine.erase(List.of(
+                ErasureEngine.Subject.of("email", "only-b@example.com"),
+                ErasureEngine.Subject.of("email", "shared@example.com")).iterator());
+
+            assertEquals(1, first.getErased());
+            assertEquals(1, second.getErased());
+            assertEquals(1, second.getNotFound());
+            assertEquals("error", tenantB.getUser("email", "shared@example.com", null).get("status"));
+            assertEquals("error", tenantB.getUser("email", "only-b@example.com", null).get("status"));
+        }
+
+        assertEquals(3, ErasureLedger.verify(ledger));
+        Map<String, Object> entry = readEntry(ledger, 0);
+        assertEquals(ErasureLedger.subjectHash("email", "shared@example.com", "ledger-key".getBytes(StandardCharsets.UTF_8)),
+            entry.get("subject"));
+        assertEquals(2, entry.get("deleted"));
+    }
+
+    @Test
+    public void testLedgerRecoversFromTornWriteAndAnchorsHead() throws Exception {
+        Path ledger = folder.getRoot().toPath().resolve("ledger.ndjson");
+        try (DatabunkerproApi api = new DatabunkerproApi(stub.getBaseURL(), "token", "erasure")) {
+            List<ErasureEngine.Subject> subjects = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                createUser(api, "user" + i + "@example.com");
+                subjects.add(ErasureEngine.Subject.of("email", "user" + i + "@example.com"));
+            }
+            ErasureEngine engine = ErasureEngine.builder(api).batchSize(2).ledger(ledger).build();
+            ErasureEngine.Result first = engine.erase(subjects.subList(0, 3).iterator());
+            assertEquals(3, ErasureLedger.verify(ledger, first.getLedgerHead()));
+
+            // A crash in the middle of a write leaves a line without its newline
+            Files.write(ledger, "{\"seq\":4,\"time\":".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            try {
+                ErasureLedger.verify(ledger);
+                fail("a torn entry must be reported");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("incomplete"));
+            }
+            ErasureEngine.Result second = engine.erase(subjects.subList(3, 5).iterator());
+            assertEquals(2, second.getErased());
+            assertEquals(5, ErasureLedger.verify(ledger, second.getLedgerHead()));
+            assertEquals(5, ErasureLedger.verify(ledger, first.getLedgerHead()));
+
+            // Dropping entries from the end keeps a valid chain, but loses the anchored head
+            List<String> lines = Files.readAllLines(ledger, StandardCharsets.UTF_8);
+            Files.write(ledger, lines.subList(0, 4), StandardCharsets.UTF_8);
+            assertEquals(4, ErasureLedger.verify(ledger));
+            try {
+                ErasureLedger.verify(ledger, second.getLedgerHead());
+                fail("removed tail entries must be reported");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("anchored"));
+            }
+        }
+    }
+
+    @Test
+    public void testBulkResponseWithoutResultsIsNotRecordedAsErased() throws Exception {
+        Path ledger = folder.getRoot().toPath().resolve("ledger.ndjson");
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v2/", exchange -> {
+            byte[] bytes = "{\"status\":\"ok\",\"deleted\":1}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        try (DatabunkerproApi api = new DatabunkerproApi("http://127.0.0.1:" + server.getAddress().getPort(), "token", null)) {
+            ErasureEngine.Result result = ErasureEngine.builder(api)
+                .ledger(ledger)
+                .build()
+                .erase(List.of(
+                    ErasureEngine.Subject.of("email", "a@example.com"),
+                    ErasureEngine.Subject.of("email", "b@example.com")).iterator());
+
+            assertEquals(0, result.getErased());
+            assertEquals(2, result.getUnconfirmed());
+        } finally {
+            server.stop(0);
+        }
+        assertEquals(2, ErasureLedger.verify(ledger));
+        assertEquals("unconfirmed", readEntry(ledger, 0).get("status"));
+        assertEquals("unconfirmed", readEntry(ledger, 1).get("status"));
+    }
+
+    private static void createUser(DatabunkerproApi api, String email) throws IOException {
+        Map<String, Object> profile = new HashMap<>();
+        profile.put("email", email);
+        assertEquals("ok", api.createUser(profile, null, null).get("status"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readEntry(Path ledger, int index) throws IOException {
+        return new ObjectMapper().readValue(Files.readAllLines(ledger, StandardCharsets.UTF_8).get(index), Map.class);
+    }
+}
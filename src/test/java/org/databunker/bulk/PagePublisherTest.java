@@ -0,0 +1,181 @@
+package org.databunker.bulk;
+
+import org.databunker.DatabunkerproApi;
+import org.databunker.stub.StubServer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PagePublisherTest {
+
+    private static class Listing implements PagePublisher.PageFetcher {
+        final int total;
+        final boolean reportTotal;
+        final List<Integer> offsets = new ArrayList<>();
+
+        Listing(int total, boolean reportTotal) {
+            this.total = total;
+            this.reportTotal = reportTotal;
+        }
+
+        @Override
+        public Map<String, Object> fetch(int offset, int limit) {
+            offsets.add(offset);
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (int i = offset; i < Math.min(total, offset + limit); i++) {
+                rows.add(Collections.singletonMap("id", i));
+            }
+            Map<String, Object> page = new HashMap<>();
+            page.put("status", "ok");
+            page.put("rows", rows);
+            if (reportTotal) {
+                page.put("total", total);
+            }
+            return page;
+        }
+    }
+
+    private static class Recorder implements Flow.Subscriber<Map<String, Object>> {
+        final List<Map<String, Object>> rows = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done = new CountDownLatch(1);
+        Flow.Subscription subscription;
+        volatile boolean completed;
+        volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Map<String, Object> row) {
+            rows.add(row);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            done.countDown();
+        }
+    }
+
+    @Test
+    public void testPagesAreFetchedOnDemand() {
+        Listing listing = new Listing(25, false);
+        Recorder recorder = new Recorder();
+        new PagePublisher(listing, 10, Runnable::run).subscribe(recorder);
+        assertTrue("nothing is fetched before the first request", listing.offsets.isEmpty());
+
+        recorder.subscription.request(1);
+        assertEquals(1, recorder.rows.size());
+        assertEquals(1, listing.offsets.size());
+
+        recorder.subscription.request(9);
+        assertEquals(10, recorder.rows.size());
+        assertEquals("the buffered page serves the demand", 1, listing.offsets.size());
+
+        recorder.subscription.request(1);
+        assertEquals(11, recorder.rows.size());
+        assertEquals(2, listing.offsets.size());
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertTrue(recorder.completed);
+        assertEquals(25, recorder.rows.size());
+        assertEquals(24, recorder.rows.get(24).get("id"));
+        assertEquals(List.of(0, 10, 20), listing.offsets);
+    }
+
+    @Test
+    public void testTotalAvoidsFetchingAnEmptyPage() {
+        Listing listing = new Listing(20, true);
+        Recorder recorder = new Recorder();
+        new PagePublisher(listing, 10, Runnable::run).subscribe(recorder);
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertTrue(recorder.completed);
+        assertEquals(20, recorder.rows.size());
+        assertEquals(List.of(0, 10), listing.offsets);
+    }
+
+    @Test
+    public void testErrorResponseFailsTheStream() {
+        Recorder recorder = new Recorder();
+        new PagePublisher((offset, limit) -> {
+            Map<String, Object> page = new HashMap<>();
+            page.put("status", "error");
+            page.put("message", "bulk operations are locked");
+            return page;
+        }, 10, Runnable::run).subscribe(recorder);
+        recorder.subscription.request(1);
+        assertTrue(recorder.error instanceof IOException);
+        assertTrue(recorder.error.getMessage().contains("bulk operations are locked"));
+    }
+
+    @Test
+    public void testCancelStopsFetching() {
+        Listing listing = new Listing(100, false);
+        Recorder recorder = new Recorder() {
+            @Override
+            public void onNext(Map<String, Object> row) {
+                super.onNext(row);
+                if (rows.size() == 5) {
+                    subscription.cancel();
+                }
+            }
+        };
+        new PagePublisher(listing, 10, Runnable::run).subscribe(recorder);
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertEquals(5, recorder.rows.size());
+        assertEquals(1, listing.offsets.size());
+        assertFalse(recorder.completed);
+    }
+
+    @Test
+    public void testNonPositiveRequestIsAnError() {
+        Recorder recorder = new Recorder();
+        new PagePublisher(new Listing(5, false), 10, Runnable::run).subscribe(recorder);
+        recorder.subscription.request(0);
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void testStreamsAllUsersFromStub() throws Exception {
+        try (StubServer stub = StubServer.builder().start();
+             DatabunkerproApi api = new DatabunkerproApi(stub.getBaseURL(), "token", "publisher")) {
+            for (int i = 0; i < 23; i++) {
+                Map<String, Object> profile = new HashMap<>();
+                profile.put("email", "user" + i + "@example.com");
+                assertEquals("ok", api.createUser(profile, null, null).get("status"));
+            }
+            String unlockuuid = (String) api.bulkListUnlock(null).get("unlockuuid");
+
+            Recorder recorder = new Recorder();
+            api.bulkListAllUsersPublisher(unlockuuid, 5, null).subscribe(recorder);
+            recorder.subscription.request(Long.MAX_VALUE);
+            assertTrue(recorder.done.await(10, TimeUnit.SECONDS));
+            assertNull(recorder.error);
+            assertEquals(23, recorder.rows.size());
+
+            Recorder locked = new Recorder();
+            api.bulkListAllUsersPublisher("not-unlocked", 5, null).subscribe(locked);
+            locked.subscription.request(1);
+            assertTrue(locked.done.await(10, TimeUnit.SECONDS));
+            assertTrue(locked.error instanceof IOException);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.databunker.bulk;
+
+import org.databunker.DatabunkerproApi;
+import org.databunker.options.TenantOptions;
+import org.databunker.resilience.DeadlineExceededException;
+import org.databunker.stub.StubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class TenantFanOutTest {
+
+    private StubServer stub;
+    private DatabunkerproApi api;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.builder().start();
+        api = new DatabunkerproApi(stub.getBaseURL(), "admin", null);
+        for (int i = 0; i < 25; i++) {
+            String tenant = "tenant" + i;
+            assertEquals("ok", api.createTenant(TenantOptions.builder().tenantname(tenant).build(), null).get("status"));
+            if (i % 10 == 3) {
+                Map<String, Object> profile = new HashMap<>();
+                profile.put("email", "user@example.com");
+                assertEquals("ok", api.forTenant(tenant).createUser(profile, null, null).get("status"));
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        api.close();
+        stub.close();
+    }
+
+    @Test
+    public void testFindsUserAcrossAllTenants() throws Exception {
+        TenantFanOut fanOut = TenantFanOut.builder(api).pageSize(10).concurrency(8).build();
+        assertEquals(25, fanOut.listTenantNames().size());
+
+        TenantFanOut.Result<Map<String, Object>> result =
+            fanOut.run(tenant -> tenant.getUser("email", "user@example.com", null));
+
+        assertEquals(25, result.getResults().size());
+        assertTrue(result.getFailures().isEmpty());
+        StringBuilder found = new StringBuilder();
+        result.getResults().forEach((tenant, user) -> {
+            if ("ok".equals(user.get("status"))) {
+                found.append(tenant).append(' ');
+            }
+        });
+        assertEquals("tenant3 tenant13 tenant23 ", found.toString());
+    }
+
+    @Test
+    public void testSlowTenantsTimeOutIndividually() throws Exception {
+        stub.setTailLatency(1.0, Duration.ofMillis(500));
+        TenantFanOut fanOut = TenantFanOut.builder(api)
+            .concurrency(4)
+            .tenantTimeout(Duration.ofMillis(100))
+            .build();
+
+        TenantFanOut.Result<Map<String, Object>> result = fanOut.run(List.of("tenant1", "tenant2"),
+            tenant -> tenant.getSystemStats(null));
+
+        assertTrue(result.getResults().isEmpty());
+        assertEquals(2, result.getFailures().size());
+        assertTrue(result.getFailures().get("tenant1") instanceof DeadlineExceededException);
+        assertTrue("timed out after " + result.getElapsedMillis() + " ms", result.getElapsedMillis() < 450);
+    }
+
+    @Test
+    public void testOperationBlockedOutsideTheClientTimesOut() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        TenantFanOut fanOut = TenantFanOut.builder(api)
+            .concurrency(1)
+            .tenantTimeout(Duration.ofMillis(100))
+            .build();
+
+        TenantFanOut.Result<String> result = fanOut.run(List.of("tenant1", "tenant2", "tenant3"), tenant -> {
+            if ("tenant2".equals(tenant.getTenantName())) {
+                // Ignores interrupts, so only the fan-out's own timeout can end the wait
+                while (true) {
+                    try {
+                        never.await();
+                    } catch (InterruptedException e) {
+                        // Keep blocking
+                    }
+                }
+            }
+            return tenant.getTenantName();
+        });
+
+        assertEquals(List.of("tenant1", "tenant3"), List.copyOf(result.getResults().keySet()));
+        assertTrue(result.getFailures().get("tenant2") instanceof DeadlineExceededException);
+        assertTrue("timed out after " + result.getElapsedMillis() + " ms", result.getElapsedMillis() < 1000);
+    }
+}
@@ -0,0 +1,198 @@
+package org.databunker.bulk;
+
+import com.sun.net.httpserver.HttpServer;
+import org.databunker.DatabunkerproApi;
+import org.databunker.stub.StubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TokenDeleteBatcherTest {
+
+    private StubServer stub;
+    private DatabunkerproApi api;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.builder().start();
+        api = new DatabunkerproApi(stub.getBaseURL(), "token", "tokens");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        api.close();
+        stub.close();
+    }
+
+    @Test
+    public void testDeletesInSizeBoundedBatches() throws Exception {
+        List<String> tokens = createTokens(25);
+        tokens.add("00000000-0000-0000-0000-000000000000");
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        TokenDeleteBatcher batcher = TokenDeleteBatcher.builder(api)
+            .maxBatchSize(10)
+            .maxDelay(Duration.ofSeconds(30))
+            .build();
+        try (batcher) {
+            for (String token : tokens) {
+                results.add(batcher.delete(token));
+            }
+        }
+        for (CompletableFuture<Void> result : results) {
+            result.get(1, TimeUnit.SECONDS);
+        }
+        assertEquals(3, batcher.getBatchCount());
+        assertEquals(26, batcher.getDeletedCount());
+        assertEquals("error", api.getToken(tokens.get(3), null).get("status"));
+        assertTrue("the unlock UUID is reused",
+            metrics().contains("stub_requests_total{endpoint=\"BulkListUnlock\",status=\"ok\"} 1\n"));
+    }
+
+    @Test
+    public void testPartialBatchIsFlushedAfterDelay() throws Exception {
+        List<String> tokens = createTokens(3);
+        try (TokenDeleteBatcher batcher = TokenDeleteBatcher.builder(api)
+            .maxBatchSize(100)
+            .maxDelay(Duration.ofMillis(50))
+            .build()) {
+            List<CompletableFuture<Void>> results = new ArrayList<>();
+            for (String token : tokens) {
+                results.add(batcher.delete(token));
+            }
+            for (CompletableFuture<Void> result : results) {
+                result.get(5, TimeUnit.SECONDS);
+            }
+            assertEquals(1, batcher.getBatchCount());
+        }
+        assertEquals("error", api.getToken(tokens.get(0), null).get("status"));
+    }
+
+    @Test
+    public void testFailedBatchFailsEveryToken() throws Exception {
+        List<String> tokens = createTokens(2);
+        stub.setErrorRate(1.0, 500);
+        TokenDeleteBatcher batcher = TokenDeleteBatcher.builder(api).build();
+        CompletableFuture<Void> first = batcher.delete(tokens.get(0));
+        CompletableFuture<Void> second = batcher.delete(tokens.get(1));
+        batcher.close();
+        for (CompletableFuture<Void> result : List.of(first, second)) {
+            try {
+                result.get(1, TimeUnit.SECONDS);
+                fail("the deletion failed");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+        assertEquals(2, batcher.getFailedCount());
+    }
+
+    @Test
+    public void testServerErrorOnLookupIsNotReportedAsDeleted() throws Exception {
+        // BulkDeleteTokens reports nothing deleted, and the lookup of the token fails
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v2/", exchange -> {
+            String endpoint = exchange.getRequestURI().getPath().substring("/v2/".length());
+            int status = 200;
+            String body = "{\"status\":\"ok\",\"unlockuuid\":\"unlock\",\"deleted\":0}";
+            if (endpoint.equals("TokenGet")) {
+                status = 500;
+                body = "{\"status\":\"error\",\"message\":\"database unavailable\"}";
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        try (DatabunkerproApi failing = new DatabunkerproApi("http://127.0.0.1:" + server.getAddress().getPort(), "token", null)) {
+            TokenDeleteBatcher batcher = TokenDeleteBatcher.builder(failing).build();
+            CompletableFuture<Void> result = batcher.delete("11111111-1111-1111-1111-111111111111");
+            batcher.close();
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("the token may still exist");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause().getMessage().contains("database unavailable"));
+            }
+            assertEquals(0, batcher.getDeletedCount());
+            assertEquals(1, batcher.getFailedCount());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testUnexpectedResponseFailsTheBatch() throws Exception {
+        // A non-string unlock UUID makes the batch throw a ClassCastException
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v2/", exchange -> {
+            byte[] bytes = "{\"status\":\"ok\",\"unlockuuid\":42}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        try (DatabunkerproApi failing = new DatabunkerproApi("http://127.0.0.1:" + server.getAddress().getPort(), "token", null)) {
+            TokenDeleteBatcher batcher = TokenDeleteBatcher.builder(failing).build();
+            CompletableFuture<Void> first = batcher.delete("11111111-1111-1111-1111-111111111111");
+            CompletableFuture<Void> second = batcher.delete("22222222-2222-2222-2222-222222222222");
+            batcher.close();
+            for (CompletableFuture<Void> result : List.of(first, second)) {
+                try {
+                    result.get(5, TimeUnit.SECONDS);
+                    fail("the deletion failed");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IOException);
+                }
+            }
+            assertEquals(2, batcher.getFailedCount());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testDeleteAfterCloseFails() throws Exception {
+        TokenDeleteBatcher batcher = TokenDeleteBatcher.builder(api).build();
+        batcher.close();
+        CompletableFuture<Void> result = batcher.delete(createTokens(1).get(0));
+        try {
+            result.get(1, TimeUnit.SECONDS);
+            fail("a closed batcher sends nothing");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains("closed"));
+        }
+    }
+
+    private List<String> createTokens(int count) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String card = String.format("4111111111%06d", i);
+            tokens.add((String) api.createToken("creditcard", card, null).get("tokenuuid"));
+        }
+        return tokens;
+    }
+
+    private String metrics() throws IOException {
+        try (InputStream in = new URL(stub.getBaseURL() + "/metrics").openStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.databunker.bulk;
+
+import org.databunker.DatabunkerproApi;
+import org.databunker.stub.StubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TokenLoaderTest {
+
+    private StubServer stub;
+    private DatabunkerproApi api;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.builder().start();
+        api = new DatabunkerproApi(stub.getBaseURL(), "token", "tokens");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        api.close();
+        stub.close();
+    }
+
+    @Test
+    public void testLoadsInOneWindowShareOneRequest() throws Exception {
+        List<String> tokens = createTokens(5);
+        String missing = "00000000-0000-0000-0000-000000000000";
+        TokenLoader loader = TokenLoader.builder(api).window(Duration.ofSeconds(30)).build();
+        List<CompletableFuture<Map<String, Object>>> results = new ArrayList<>();
+        for (String token : tokens) {
+            results.add(loader.load(token));
+        }
+        CompletableFuture<Map<String, Object>> absent = loader.load(missing);
+        loader.dispatch();
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Map<String, Object> record = results.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals(tokens.get(i), record.get("tokenuuid"));
+            assertEquals(String.format("4111111111%06d", i), record.get("record"));
+        }
+        assertNull(absent.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loader.getBatchCount());
+    }
+
+    @Test
+    public void testRepeatedLoadsAreDeduplicatedAndCached() throws Exception {
+        List<String> tokens = createTokens(3);
+        TokenLoader loader = TokenLoader.builder(api).maxBatchSize(2).window(Duration.ofMillis(20)).build();
+        CompletableFuture<Map<String, Object>> first = loader.load(tokens.get(0));
+        assertSame(first, loader.load(tokens.get(0)));
+        Map<String, Map<String, Object>> records = loader.loadMany(tokens).get(5, TimeUnit.SECONDS);
+        assertEquals(3, records.size());
+        assertSame(first.get(), records.get(tokens.get(0)));
+        loader.load(tokens.get(2)).get(5, TimeUnit.SECONDS);
+
+        assertEquals("full batch plus one sent when the window closed", 2, loader.getBatchCount());
+        assertEquals(6, loader.getLoadCount());
+        assertEquals(3, loader.getCacheHitCount());
+
+        loader.clear();
+        loader.load(tokens.get(1)).get(5, TimeUnit.SECONDS);
+        assertEquals(3, loader.getBatchCount());
+    }
+
+    @Test
+    public void testFailedBatchIsNotCached() throws Exception {
+        List<String> tokens = createTokens(1);
+        TokenLoader loader = TokenLoader.builder(api).window(Duration.ofMillis(1)).build();
+        stub.setErrorRate(1.0, 500);
+        try {
+            loader.load(tokens.get(0)).get(5, TimeUnit.SECONDS);
+            fail("the load failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        stub.setErrorRate(0.0, 500);
+        assertNotNull(loader.load(tokens.get(0)).get(5, TimeUnit.SECONDS));
+    }
+
+    private List<String> createTokens(int count) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String card = String.format("4111111111%06d", i);
+            tokens.add((String) api.createToken("creditcard", card, null).get("tokenuuid"));
+        }
+        return tokens;
+    }
+}
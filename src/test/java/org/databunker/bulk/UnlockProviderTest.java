@@ -0,0 +1,95 @@
+package org.databunker.bulk;
+
+import org.databunker.DatabunkerproApi;
+import org.databunker.stub.StubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class UnlockProviderTest {
+
+    private StubServer stub;
+    private DatabunkerproApi api;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.builder().start();
+        api = new DatabunkerproApi(stub.getBaseURL(), "token", "unlock");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        api.close();
+        stub.close();
+    }
+
+    @Test
+    public void testConcurrentCallersShareOneUnlock() throws Exception {
+        UnlockProvider unlock = api.getUnlockProvider();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<String>> tasks = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                tasks.add(unlock::get);
+            }
+            String first = null;
+            for (Future<String> uuid : executor.invokeAll(tasks)) {
+                if (first == null) {
+                    first = uuid.get();
+                }
+                assertEquals(first, uuid.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, unlock.getFetchCount());
+        assertSame("views share the provider", unlock, api.withTimeout(Duration.ofSeconds(5)).getUnlockProvider());
+    }
+
+    @Test
+    public void testRejectedUnlockIsReplacedAndRequestRepeated() throws Exception {
+        UnlockProvider unlock = UnlockProvider.builder(api).build();
+        String before = unlock.get();
+        stub.revokeUnlocks();
+
+        Map<String, Object> page = unlock.execute(uuid -> api.bulkListAllUsers(uuid, 0, 10, null));
+
+        assertEquals("ok", page.get("status"));
+        assertEquals(1, unlock.getRejectionCount());
+        assertEquals(2, unlock.getFetchCount());
+        assertNotEquals(before, unlock.get());
+    }
+
+    @Test
+    public void testRefreshesAheadOfExpiry() throws Exception {
+        UnlockProvider unlock = UnlockProvider.builder(api)
+            .refreshAfter(Duration.ZERO)
+            .expireAfter(Duration.ofMinutes(5))
+            .build();
+        String first = unlock.get();
+        assertEquals("past refreshAfter the current UUID is still handed out", first, unlock.get());
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (unlock.getFetchCount() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(unlock.getFetchCount() >= 2);
+
+        UnlockProvider expiring = UnlockProvider.builder(api)
+            .refreshAfter(Duration.ZERO)
+            .expireAfter(Duration.ZERO)
+            .build();
+        String old = expiring.get();
+        assertNotEquals("past expireAfter callers wait for a new UUID", old, expiring.get());
+    }
+}
@@ -0,0 +1,169 @@
+package org.databunker.bulk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.databunker.DatabunkerproApi;
+import org.databunker.stub.StubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class UserImportPipelineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubServer stub;
+    private DatabunkerproApi api;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.builder().start();
+        api = new DatabunkerproApi(stub.getBaseURL(), "token", "import");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        api.close();
+        stub.close();
+    }
+
+    @Test
+    public void testCsvImportRejectsDuplicates() throws Exception {
+        StringBuilder csv = new StringBuilder("email,name,phone\n");
+        for (int i = 0; i < 250; i++) {
+            csv.append("user").append(i).append("@example.com,\"Doe, Jane \"\"").append(i).append("\"\"\",\n");
+        }
+        csv.append("user7@example.com,Duplicate,\n");
+        csv.append("\n");
+        csv.append("multi@example.com,\"Line one\nline two\",\n");
+        csv.append("broken@example.com,Too,Many,Columns\n");
+        Path input = folder.newFile("users.csv").toPath();
+        Files.write(input, csv.toString().getBytes(StandardCharsets.UTF_8));
+        Path rejects = folder.getRoot().toPath().resolve("rejects.ndjson");
+
+        UserImportPipeline.Result result = UserImportPipeline.builder(api)
+            .batchSize(100)
+            .concurrency(3)
+            .rejectFile(rejects)
+            .build()
+            .importCsv(input);
+
+        assertEquals(253, result.getRead());
+        assertEquals(251, result.getImported());
+        assertEquals(2, result.getRejected());
+        assertEquals(3, result.getBatches());
+
+        Map<String, Object> user = api.getUser("email", "user42@example.com", null);
+        assertEquals("Doe, Jane \"42\"", ((Map<?, ?>) user.get("profile")).get("name"));
+        assertEquals("Line one\nline two",
+            ((Map<?, ?>) api.getUser("email", "multi@example.com", null).get("profile")).get("name"));
+
+        List<Map<String, Object>> lines = readRejects(rejects);
+        assertEquals(2, lines.size());
+        Map<Integer, String> errors = new HashMap<>();
+        for (Map<String, Object> line : lines) {
+            errors.put((Integer) line.get("line"), (String) line.get("error"));
+        }
+        // Batches run concurrently, so either copy of user7 can be the one that is rejected
+        String duplicate = errors.containsKey(252) ? errors.get(252) : errors.get(9);
+        assertTrue(duplicate.contains("duplicate"));
+        assertTrue(errors.get(256).contains("columns"));
+    }
+
+    @Test
+    public void testRejectFileCanBeRetried() throws Exception {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            ndjson.append("{\"email\":\"retry").append(i).append("@example.com\"}\n");
+        }
+        ndjson.append("{not json\n");
+        Path input = folder.newFile("users.ndjson").toPath();
+        Files.write(input, ndjson.toString().getBytes(StandardCharsets.UTF_8));
+        Path rejects = folder.getRoot().toPath().resolve("rejects.ndjson");
+
+        stub.setErrorRate(1.0, 500);
+        UserImportPipeline.Result failed = UserImportPipeline.builder(api)
+            .batchSize(10)
+            .rejectFile(rejects)
+            .build()
+            .importNdjson(input);
+        assertEquals(0, failed.getImported());
+        assertEquals(41, failed.getRejected());
+
+        stub.setErrorRate(0, 500);
+        Path retryRejects = folder.getRoot().toPath().resolve("retry-rejects.ndjson");
+        UserImportPipeline.Result retried = UserImportPipeline.builder(api)
+            .batchSize(10)
+            .rejectFile(retryRejects)
+            .build()
+            .importNdjson(rejects);
+        assertEquals(40, retried.getImported());
+        assertEquals("only the unparseable line is left", 1, retried.getRejected());
+        assertNotNull(api.getUser("email", "retry39@example.com", null).get("token"));
+    }
+
+    @Test
+    public void testNonObjectLinesAreRejected() throws Exception {
+        String ndjson = "null\n"
+            + "[1, 2]\n"
+            + "42\n"
+            + "{\"email\":\"fields@example.com\",\"line\":5,\"error\":\"none\"}\n"
+            + "{\"line\":7,\"error\":\"earlier failure\",\"raw\":\"null\"}\n";
+        Path input = folder.newFile("mixed.ndjson").toPath();
+        Files.write(input, ndjson.getBytes(StandardCharsets.UTF_8));
+        Path rejects = folder.getRoot().toPath().resolve("rejects.ndjson");
+
+        UserImportPipeline.Result result = UserImportPipeline.builder(api)
+            .rejectFile(rejects)
+            .build()
+            .importNdjson(input);
+        assertEquals("a profile with line and error fields is a profile", 1, result.getImported());
+        assertEquals(4, result.getRejected());
+        assertEquals("none", ((Map<?, ?>) api.getUser("email", "fields@example.com", null).get("profile")).get("error"));
+        for (Map<String, Object> line : readRejects(rejects)) {
+            assertEquals("not a JSON object", line.get("error"));
+        }
+    }
+
+    @Test
+    public void testBatchesAreLimitedBySize() throws Exception {
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Map<String, Object> profile = new HashMap<>();
+            profile.put("email", "big" + i + "@example.com");
+            profile.put("notes", new String(new char[1000]).replace('\0', 'x'));
+            records.add(profile);
+        }
+        stub.setLatency(Duration.ofMillis(5), Duration.ofMillis(5));
+        UserImportPipeline.Result result = UserImportPipeline.builder(api)
+            .batchSize(1000)
+            .maxBatchBytes(5000)
+            .build()
+            .importRecords(records.iterator());
+        assertEquals(20, result.getImported());
+        assertEquals(5, result.getBatches());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> readRejects(Path file) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        List<Map<String, Object>> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lines.add(mapper.readValue(line, Map.class));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,100 @@
+package org.databunker.cache;
+
+import org.databunker.DatabunkerproApi;
+import org.databunker.stub.StubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ConsentCacheTest {
+
+    private StubServer stub;
+    private DatabunkerproApi api;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.builder().start();
+        api = new DatabunkerproApi(stub.getBaseURL(), "token", "consents");
+        Map<String, Object> profile = new HashMap<>();
+        profile.put("email", "user@example.com");
+        assertEquals("ok", api.createUser(profile, null, null).get("status"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        api.close();
+        stub.close();
+    }
+
+    @Test
+    public void testChangesThroughTheClientInvalidate() throws IOException {
+        try (ConsentCache consents = ConsentCache.builder(api).ttl(Duration.ofMinutes(5)).negativeTtl(Duration.ofMinutes(5)).build()) {
+            assertFalse(consents.isGranted("email", "user@example.com", "marketing"));
+            long requests = stub.getRequestCount();
+            assertFalse("the miss is cached", consents.isGranted("email", "user@example.com", "marketing"));
+            assertEquals(requests, stub.getRequestCount());
+
+            api.acceptAgreement("email", "user@example.com", "marketing", null);
+            assertTrue(consents.isGranted("email", "user@example.com", "marketing"));
+            assertTrue(consents.isGranted("email", "user@example.com", "marketing"));
+
+            api.cancelAgreement("email", "user@example.com", "marketing", null);
+            assertFalse(consents.isGranted("email", "user@example.com", "marketing"));
+
+            api.acceptAgreement("email", "user@example.com", "marketing", null);
+            assertTrue(consents.isGranted("email", "user@example.com", "marketing"));
+            api.revokeAllAgreements("marketing", null);
+            assertFalse(consents.isGranted("email", "user@example.com", "marketing"));
+
+            assertEquals(2, consents.getHitCount());
+            assertEquals(5, consents.getMissCount());
+            assertEquals(4, consents.getInvalidationCount());
+        }
+    }
+
+    @Test
+    public void testChangeThatTimedOutInvalidates() throws Exception {
+        try (ConsentCache consents = ConsentCache.builder(api).ttl(Duration.ofMinutes(5)).negativeTtl(Duration.ofMinutes(5)).build()) {
+            assertFalse(consents.isGranted("email", "user@example.com", "marketing"));
+
+            // The server applies the change after the client has given up on it
+            stub.setLatency(Duration.ofMillis(300), Duration.ofMillis(300));
+            try {
+                api.withTimeout(Duration.ofMillis(100)).acceptAgreement("email", "user@example.com", "marketing", null);
+                fail("the request must time out");
+            } catch (IOException e) {
+                // expected
+            }
+            stub.setLatency(Duration.ZERO, Duration.ZERO);
+            Thread.sleep(400);
+
+            assertEquals(1, consents.getInvalidationCount());
+            assertTrue(consents.isGranted("email", "user@example.com", "marketing"));
+        }
+    }
+
+    @Test
+    public void testPrefetchLoadsAllAgreements() throws IOException {
+        api.acceptAgreement("email", "user@example.com", "marketing", null);
+        api.acceptAgreement("email", "user@example.com", "analytics", null);
+        ConsentCache consents = ConsentCache.builder(api).build();
+        assertEquals(2, consents.prefetch("email", "user@example.com"));
+        long requests = stub.getRequestCount();
+        assertTrue(consents.isGranted("email", "user@example.com", "marketing"));
+        assertTrue(consents.isGranted("email", "user@example.com", "analytics"));
+        assertEquals(requests, stub.getRequestCount());
+
+        // A closed cache no longer listens to the client
+        consents.close();
+        api.cancelAgreement("email", "user@example.com", "marketing", null);
+        assertTrue(consents.isGranted("email", "user@example.com", "marketing"));
+        assertEquals(0, consents.getInvalidationCount());
+    }
+}
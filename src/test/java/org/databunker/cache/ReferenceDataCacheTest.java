@@ -0,0 +1,80 @@
+package org.databunker.cache;
+
+import org.databunker.DatabunkerproApi;
+import org.databunker.options.GroupOptions;
+import org.databunker.options.LegalBasisOptions;
+import org.databunker.stub.StubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class ReferenceDataCacheTest {
+
+    private StubServer stub;
+    private DatabunkerproApi api;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.builder().start();
+        api = new DatabunkerproApi(stub.getBaseURL(), "token", "reference");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        api.close();
+        stub.close();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    public void testLoadsAtStartupAndServesFromSnapshots() throws Exception {
+        api.createGroup(GroupOptions.builder().groupname("admins").build(), null);
+        api.createGroup(GroupOptions.builder().groupname("support").build(), null);
+        try (ReferenceDataCache reference = ReferenceDataCache.builder(api).refreshInterval(Duration.ofHours(1)).build()) {
+            assertEquals(ReferenceDataCache.Type.values().length, reference.getLoadCount());
+            assertEquals(2, reference.list(ReferenceDataCache.Type.GROUP).size());
+            Map<String, Object> support = reference.get(ReferenceDataCache.Type.GROUP, "support");
+            assertNotNull(support);
+            assertSame(support, reference.get(ReferenceDataCache.Type.GROUP, support.get("groupid").toString()));
+            assertNull(reference.get(ReferenceDataCache.Type.GROUP, "missing"));
+
+            long requests = stub.getRequestCount();
+            for (int i = 0; i < 1000; i++) {
+                reference.get(ReferenceDataCache.Type.GROUP, "admins");
+            }
+            assertEquals(requests, stub.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testChangesThroughTheClientTriggerRefresh() throws Exception {
+        try (ReferenceDataCache reference = ReferenceDataCache.builder(api)
+                .types(EnumSet.of(ReferenceDataCache.Type.LEGAL_BASIS, ReferenceDataCache.Type.GROUP))
+                .refreshInterval(Duration.ofHours(1))
+                .build()) {
+            assertTrue(reference.list(ReferenceDataCache.Type.LEGAL_BASIS).isEmpty());
+
+            api.createLegalBasis(LegalBasisOptions.builder().brief("marketing").basistype("consent").build(), null);
+            await(() -> reference.get(ReferenceDataCache.Type.LEGAL_BASIS, "marketing") != null);
+            assertTrue("groups are not reloaded", reference.list(ReferenceDataCache.Type.GROUP).isEmpty());
+            assertEquals(3, reference.getLoadCount());
+
+            api.deleteLegalBasis("marketing", null);
+            await(() -> reference.get(ReferenceDataCache.Type.LEGAL_BASIS, "marketing") == null);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.databunker.cache;
+
+import org.databunker.DatabunkerproApi;
+import org.databunker.options.BasicOptions;
+import org.databunker.stub.StubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SessionStoreTest {
+
+    private StubServer stub;
+    private DatabunkerproApi api;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.builder().start();
+        api = new DatabunkerproApi(stub.getBaseURL(), "token", "sessions");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        api.close();
+        stub.close();
+    }
+
+    private static Map<String, Object> data(int clicks) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("clicks", clicks);
+        return data;
+    }
+
+    @Test
+    public void testUpdatesAreCoalescedIntoOneWrite() throws IOException {
+        try (SessionStore sessions = SessionStore.builder(api).flushInterval(Duration.ofHours(1)).build()) {
+            long before = stub.getRequestCount();
+            for (int i = 1; i <= 50; i++) {
+                sessions.put("session-1", data(i));
+                assertEquals(i, sessions.get("session-1").get("clicks"));
+            }
+            assertEquals("nothing is sent before the flush", before, stub.getRequestCount());
+            assertEquals(1, sessions.getDirtyCount());
+
+            assertEquals(1, sessions.flush());
+            assertEquals(1, sessions.getWriteCount());
+            assertEquals(49, sessions.getCoalescedCount());
+            assertEquals(0, sessions.getDirtyCount());
+            assertEquals(0, sessions.flush());
+
+            Map<?, ?> stored = (Map<?, ?>) api.getSession("session-1", null).get("sessiondata");
+            assertEquals(50, stored.get("clicks"));
+        }
+    }
+
+    @Test
+    public void testDeleteDiscardsPendingWrite() throws IOException {
+        try (SessionStore sessions = SessionStore.builder(api).flushInterval(Duration.ofHours(1)).build()) {
+            sessions.put("session-2", data(1));
+            sessions.flush();
+            sessions.put("session-2", data(2));
+            assertEquals("ok", sessions.delete("session-2").get("status"));
+            assertEquals(0, sessions.flush());
+            assertNotEquals("ok", api.getSession("session-2", null).get("status"));
+            assertNull(sessions.get("session-2"));
+        }
+    }
+
+    @Test
+    public void testSessionsReadFromServerAreRevalidated() throws Exception {
+        assertEquals("ok", api.upsertSession("session-4", data(3), null, null).get("status"));
+        try (SessionStore sessions = SessionStore.builder(api)
+                .flushInterval(Duration.ofHours(1))
+                .cacheTtl(Duration.ofMillis(200))
+                .build()) {
+            assertEquals(3, sessions.get("session-4").get("clicks"));
+            assertEquals(3, sessions.get("session-4").get("clicks"));
+            assertEquals(1, sessions.getHitCount());
+
+            // The session expires on the server; the cached copy is not served past cacheTtl
+            api.deleteSession("session-4", null);
+            Thread.sleep(250);
+            assertNull(sessions.get("session-4"));
+            assertEquals(2, sessions.getMissCount());
+        }
+    }
+
+    @Test
+    public void testReadsSlideTheSessionOnTheServer() throws IOException {
+        try (SessionStore sessions = SessionStore.builder(api)
+                .sessionOptions(BasicOptions.builder().slidingtime("1h").build())
+                .flushInterval(Duration.ofHours(1))
+                .build()) {
+            sessions.put("session-5", data(1));
+            assertEquals(1, sessions.flush());
+            assertEquals("nothing was read", 0, sessions.flush());
+
+            sessions.get("session-5");
+            sessions.get("session-5");
+            assertEquals("the reads are passed on with one upsert", 1, sessions.flush());
+            assertEquals(0, sessions.flush());
+        }
+    }
+
+    @Test
+    public void testSessionsExpireAndBackgroundFlushRuns() throws Exception {
+        SessionStore sessions = SessionStore.builder(api)
+            .sessionOptions(BasicOptions.builder().slidingtime("1s").build())
+            .flushInterval(Duration.ofMillis(100))
+            .build();
+        try {
+            sessions.put("session-3", data(7));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (sessions.getWriteCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(1, sessions.getWriteCount());
+
+            Thread.sleep(1100);
+            long misses = sessions.getMissCount();
+            assertEquals("an idle session is read again", 7, sessions.get("session-3").get("clicks"));
+            assertEquals(misses + 1, sessions.getMissCount());
+        } finally {
+            sessions.close();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.databunker.cache;
+
+import org.databunker.DatabunkerproApi;
+import org.databunker.options.BasicOptions;
+import org.databunker.stub.StubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class XTokenProviderTest {
+
+    private StubServer stub;
+    private DatabunkerproApi api;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.builder().latency(Duration.ofMillis(20), Duration.ofMillis(20)).start();
+        api = new DatabunkerproApi(stub.getBaseURL(), "token", "xtokens");
+        Map<String, Object> profile = new HashMap<>();
+        profile.put("email", "user@example.com");
+        assertEquals("ok", api.createUser(profile, null, null).get("status"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        api.close();
+        stub.close();
+    }
+
+    @Test
+    public void testConcurrentLookupsShareOneRequest() throws Exception {
+        XTokenProvider xtokens = XTokenProvider.builder(api).build();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<String>> tasks = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                tasks.add(() -> xtokens.getUserToken("email", "user@example.com"));
+            }
+            String first = null;
+            for (Future<String> xtoken : executor.invokeAll(tasks)) {
+                if (first == null) {
+                    first = xtoken.get();
+                }
+                assertEquals(first, xtoken.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, xtokens.getMissCount());
+        assertEquals(15, xtokens.getHitCount());
+
+        String role = xtokens.getRoleToken("support");
+        assertNotEquals(role, xtokens.getUserToken("email", "user@example.com"));
+        assertEquals(role, xtokens.getRoleToken("support"));
+        assertEquals(2, xtokens.size());
+    }
+
+    @Test
+    public void testRefreshesAheadOfExpiry() throws Exception {
+        XTokenProvider xtokens = XTokenProvider.builder(api)
+            .tokenOptions(BasicOptions.builder().finaltime("1h").slidingtime("10m").build())
+            .refreshAhead(0)
+            .build();
+        String first = xtokens.getRoleToken("1");
+        assertEquals("the current token is returned while the refresh runs", first, xtokens.getRoleToken("1"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (xtokens.getRefreshCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, xtokens.getRefreshCount());
+        assertNotEquals(first, xtokens.getRoleToken("1"));
+        assertEquals(1, xtokens.getMissCount());
+    }
+
+    @Test
+    public void testFailuresAreNotCached() throws Exception {
+        XTokenProvider xtokens = XTokenProvider.builder(api).build();
+        try {
+            xtokens.getUserToken("email", "missing@example.com");
+            fail("the user does not exist");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("not found"));
+        }
+        assertEquals(0, xtokens.size());
+        xtokens.getUserToken("email", "user@example.com");
+        xtokens.invalidateUser("email", "user@example.com");
+        xtokens.getUserToken("email", "user@example.com");
+        assertEquals(3, xtokens.getMissCount());
+    }
+
+    @Test
+    public void testParsesTimePeriods() {
+        assertEquals(TimeUnit.SECONDS.toNanos(30), XTokenProvider.parseTime("30s"));
+        assertEquals(TimeUnit.MINUTES.toNanos(15), XTokenProvider.parseTime("15m"));
+        assertEquals(TimeUnit.DAYS.toNanos(14), XTokenProvider.parseTime("2w"));
+        assertEquals(Long.MAX_VALUE, XTokenProvider.parseTime(null));
+        try {
+            XTokenProvider.parseTime("soon");
+            fail("not a period");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("soon"));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.databunker.options;
+
+import org.databunker.DatabunkerproApi;
+import org.databunker.stub.StubServer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PatchDiffTest {
+
+    private static Map<String, Object> profile() {
+        Map<String, Object> address = new LinkedHashMap<>();
+        address.put("city", "Berlin");
+        address.put("zip", "10115");
+        Map<String, Object> profile = new LinkedHashMap<>();
+        profile.put("email", "user@example.com");
+        profile.put("name", "Jane");
+        profile.put("age", 41);
+        profile.put("tags", Arrays.asList("a", "b"));
+        profile.put("address", address);
+        profile.put("a/b~c", "escaped");
+        for (int i = 0; i < 50; i++) {
+            profile.put("field" + i, "value of field " + i);
+        }
+        return profile;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testMinimalOperations() {
+        Map<String, Object> source = profile();
+        Map<String, Object> target = profile();
+        assertEquals(0, PatchDiff.diff(source, target).length);
+
+        target.put("age", 42L);
+        ((Map<String, Object>) target.get("address")).put("city", "Munich");
+        target.remove("name");
+        target.put("phone", "+491234");
+        target.put("a/b~c", "changed");
+        source.put("age", 42);
+
+        PatchOperation[] patch = PatchDiff.diff(source, target);
+        Map<String, PatchOperation> byPath = new HashMap<>();
+        for (PatchOperation operation : patch) {
+            byPath.put(operation.getPath(), operation);
+        }
+        assertEquals("numbers compare by value: " + byPath.keySet(), 4, patch.length);
+        assertEquals("remove", byPath.get("/name").getOp());
+        assertEquals("replace", byPath.get("/address/city").getOp());
+        assertEquals("Munich", byPath.get("/address/city").getValue());
+        assertEquals("add", byPath.get("/phone").getOp());
+        assertEquals("replace", byPath.get("/a~1b~0c").getOp());
+    }
+
+    @Test
+    public void testSizeHeuristic() {
+        Map<String, Object> source = profile();
+        Map<String, Object> target = profile();
+        target.put("name", "John");
+        PatchDiff.Plan plan = PatchDiff.plan(source, target);
+        assertTrue(plan.isPatch());
+        assertTrue(plan.getPatchSize() < plan.getProfileSize());
+
+        Map<String, Object> small = new HashMap<>();
+        small.put("name", "Jane");
+        Map<String, Object> replaced = new HashMap<>();
+        replaced.put("name", "John");
+        assertFalse("a full profile smaller than the patch is sent as is", PatchDiff.plan(small, replaced).isPatch());
+        Map<String, Object> empty = new HashMap<>();
+        assertTrue("removals are always patched", PatchDiff.plan(small, empty).isPatch());
+        assertTrue(PatchDiff.plan(small, small).isEmpty());
+    }
+
+    @Test
+    public void testUpdateUserDiff() throws Exception {
+        try (StubServer stub = StubServer.builder().start();
+             DatabunkerproApi api = new DatabunkerproApi(stub.getBaseURL(), "token", "patches")) {
+            Map<String, Object> current = profile();
+            assertEquals("ok", api.createUser(current, null, null).get("status"));
+
+            Map<String, Object> updated = profile();
+            Map<String, Object> address = new LinkedHashMap<>();
+            address.put("city", "Munich");
+            address.put("zip", "10115");
+            updated.put("address", address);
+            updated.remove("field7");
+            assertEquals("ok", api.updateUserDiff("email", "user@example.com", current, updated, null).get("status"));
+
+            Map<?, ?> stored = (Map<?, ?>) api.getUser("email", "user@example.com", null).get("profile");
+            assertEquals("Munich", ((Map<?, ?>) stored.get("address")).get("city"));
+            assertEquals("10115", ((Map<?, ?>) stored.get("address")).get("zip"));
+            assertFalse(stored.containsKey("field7"));
+            assertEquals("Jane", stored.get("name"));
+
+            long requests = stub.getRequestCount();
+            assertEquals("ok", api.updateUserDiff("email", "user@example.com", updated, updated, null).get("status"));
+            assertEquals("nothing to send", requests, stub.getRequestCount());
+        }
+    }
+}
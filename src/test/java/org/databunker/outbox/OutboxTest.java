@@ -0,0 +1,265 @@
+package org.databunker.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.databunker.DatabunkerproApi;
+import org.databunker.options.TokenOptions;
+import org.databunker.stub.StubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class OutboxTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] key = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private StubServer stub;
+    private DatabunkerproApi api;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.builder().start();
+        port = URI.create(stub.getBaseURL()).getPort();
+        api = new DatabunkerproApi(stub.getBaseURL(), "token", "outbox");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        api.close();
+        stub.close();
+    }
+
+    @Test
+    public void testWritesDuringOutageAreReplayedInOrder() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (Outbox outbox = Outbox.builder(api, directory)
+            .key(key)
+            .segmentSize(256)
+            .drainInterval(Duration.ofMillis(50))
+            .build()) {
+            assertEquals("ok", outbox.createUser(profile("before@example.com"), null, null).get("status"));
+
+            stub.close();
+            assertEquals("queued", outbox.createUser(profile("during@example.com"), null, null).get("status"));
+            Map<String, Object> session = new HashMap<>();
+            session.put("step", 1);
+            assertEquals("queued", outbox.upsertSession("7a1c7b5e-6f0e-4f43-9b51-3d1c8f0e2a11", session, null, null).get("status"));
+            session.put("step", 2);
+            assertEquals("queued", outbox.upsertSession("7a1c7b5e-6f0e-4f43-9b51-3d1c8f0e2a11", session, null, null).get("status"));
+            assertEquals(3, outbox.getPendingCount());
+            assertEquals(3, segmentCount(directory));
+            assertFalse("queued data is encrypted", segmentText(directory).contains("during@example.com"));
+
+            stub = StubServer.builder().port(port).start();
+            awaitDrained(outbox);
+
+            assertEquals(3, outbox.getReplayedCount());
+            assertEquals("replayed segments are deleted", 1, segmentCount(directory));
+            assertEquals("ok", api.getUser("email", "during@example.com", null).get("status"));
+            Map<?, ?> stored = (Map<?, ?>) api.getSession("7a1c7b5e-6f0e-4f43-9b51-3d1c8f0e2a11", null).get("sessiondata");
+            assertEquals("the later upsert wins", 2, ((Number) stored.get("step")).intValue());
+        }
+    }
+
+    @Test
+    public void testQueuedWritesSurviveRestart() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        stub.close();
+        try (Outbox outbox = Outbox.builder(api, directory).key(key).drainInterval(Duration.ofHours(1)).build()) {
+            outbox.createToken("creditcard", "4111111111111111", TokenOptions.builder().unique(true).build(), null);
+            outbox.createUser(profile("restart@example.com"), null, null);
+        }
+        // A crash during an append leaves a torn record behind
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "*.seg")) {
+            for (Path segment : segments) {
+                Files.write(segment, new byte[]{0, 0, 1}, StandardOpenOption.APPEND);
+            }
+        }
+        try {
+            Outbox.builder(api, directory).key(new byte[32]).build();
+            fail("the log was written with another key");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("wrong key"));
+        }
+
+        stub = StubServer.builder().port(port).start();
+        try (Outbox outbox = Outbox.builder(api, directory).key(key).drainInterval(Duration.ofHours(1)).build()) {
+            assertEquals(2, outbox.getPendingCount());
+            assertEquals(2, outbox.drain());
+            assertEquals(0, outbox.getPendingCount());
+            assertEquals("ok", outbox.createUser(profile("after@example.com"), null, null).get("status"));
+        }
+        assertEquals("ok", api.getUser("email", "restart@example.com", null).get("status"));
+        try (Outbox outbox = Outbox.builder(api, directory).key(key).build()) {
+            assertEquals("replayed writes are checkpointed", 0, outbox.getPendingCount());
+        }
+    }
+
+    @Test
+    public void testErrorAnswersDuringMaintenanceAreQueued() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (Outbox outbox = Outbox.builder(api, directory).key(key).drainInterval(Duration.ofHours(1)).build()) {
+            // The server is up but answers every request with an error status
+            stub.setErrorRate(1.0, 500);
+            assertEquals("queued", outbox.createUser(profile("maintenance@example.com"), null, null).get("status"));
+            assertEquals("queued", outbox.createUser(profile("maintenance2@example.com"), null, null).get("status"));
+            try {
+                outbox.drain();
+                fail("the replay must wait for the server");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("HTTP 500"));
+            }
+            assertEquals(2, outbox.getPendingCount());
+            assertEquals(0, outbox.getRejectedCount());
+
+            stub.setErrorRate(0, 500);
+            assertEquals(2, outbox.drain());
+            assertEquals(2, outbox.getReplayedCount());
+
+            // A definitive refusal is not retried
+            assertEquals("error", outbox.createUser(profile("maintenance@example.com"), null, null).get("status"));
+            assertEquals(0, outbox.getPendingCount());
+        }
+        assertEquals("ok", api.getUser("email", "maintenance2@example.com", null).get("status"));
+    }
+
+    @Test
+    public void testConcurrentWriteDoesNotOvertakeOneBeingQueued() throws Exception {
+        // The first upsert fails slowly; the second is submitted while the first is still in flight
+        AtomicInteger upserts = new AtomicInteger();
+        AtomicInteger storedStep = new AtomicInteger();
+        CountDownLatch firstArrived = new CountDownLatch(1);
+        ObjectMapper mapper = new ObjectMapper();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v2/", exchange -> {
+            Map<?, ?> body = mapper.readValue(exchange.getRequestBody(), Map.class);
+            int status = 200;
+            if (upserts.incrementAndGet() == 1) {
+                firstArrived.countDown();
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                status = 500;
+            } else {
+                storedStep.set(((Number) ((Map<?, ?>) body.get("sessiondata")).get("step")).intValue());
+            }
+            byte[] bytes = (status == 200 ? "{\"status\":\"ok\"}" : "{\"status\":\"error\",\"message\":\"busy\"}")
+                .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        try (DatabunkerproApi flaky = new DatabunkerproApi("http://127.0.0.1:" + server.getAddress().getPort(), "token", null);
+             Outbox outbox = Outbox.builder(flaky, folder.getRoot().toPath()).key(key).drainInterval(Duration.ofHours(1)).build()) {
+            String sessionuuid = "7a1c7b5e-6f0e-4f43-9b51-3d1c8f0e2a11";
+            CompletableFuture<Map<String, Object>> first = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return outbox.upsertSession(sessionuuid, Map.of("step", 1), null, null);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            assertTrue(firstArrived.await(5, TimeUnit.SECONDS));
+            Map<String, Object> second = outbox.upsertSession(sessionuuid, Map.of("step", 2), null, null);
+
+            assertEquals("queued", first.get(5, TimeUnit.SECONDS).get("status"));
+            assertEquals("queued behind the first write", "queued", second.get("status"));
+            assertEquals(2, outbox.drain());
+            assertEquals("the later write wins", 2, storedStep.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testUnreadableEntriesAreRejectedNotRetried() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (SegmentLog log = new SegmentLog(directory, key, 1024 * 1024, false)) {
+            log.append("not json".getBytes(StandardCharsets.UTF_8));
+            log.append("{\"id\":\"a\",\"op\":\"dropUser\",\"args\":{}}".getBytes(StandardCharsets.UTF_8));
+            log.append("{\"id\":\"b\",\"op\":\"createUser\",\"args\":\"mistyped\"}".getBytes(StandardCharsets.UTF_8));
+            log.append("{\"id\":\"c\",\"op\":\"createUser\",\"args\":{\"profile\":{\"email\":\"good@example.com\"}}}"
+                .getBytes(StandardCharsets.UTF_8));
+        }
+        List<String> rejectedOperations = new ArrayList<>();
+        try (Outbox outbox = Outbox.builder(api, directory)
+            .key(key)
+            .drainInterval(Duration.ofHours(1))
+            .rejectListener((operation, response) -> rejectedOperations.add(operation))
+            .build()) {
+            assertEquals(4, outbox.drain());
+            assertEquals(0, outbox.getPendingCount());
+            assertEquals(3, outbox.getRejectedCount());
+            assertEquals(1, outbox.getReplayedCount());
+        }
+        assertEquals(Arrays.asList(null, "dropUser", "createUser"), rejectedOperations);
+        assertEquals("ok", api.getUser("email", "good@example.com", null).get("status"));
+    }
+
+    private static Map<String, Object> profile(String email) {
+        Map<String, Object> profile = new HashMap<>();
+        profile.put("email", email);
+        return profile;
+    }
+
+    private static void awaitDrained(Outbox outbox) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (outbox.getPendingCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, outbox.getPendingCount());
+    }
+
+    private static int segmentCount(Path directory) throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "*.seg")) {
+            for (Path ignored : segments) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String segmentText(Path directory) throws IOException {
+        StringBuilder text = new StringBuilder();
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "*.seg")) {
+            for (Path segment : segments) {
+                text.append(new String(Files.readAllBytes(segment), StandardCharsets.ISO_8859_1));
+            }
+        }
+        return text.toString();
+    }
+}
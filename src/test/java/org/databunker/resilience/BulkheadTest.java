@@ -0,0 +1,64 @@
+package org.databunker.resilience;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BulkheadTest {
+
+    @Test
+    public void testInteractiveCapacityIsReserved() throws Exception {
+        Bulkhead bulkhead = Bulkhead.builder()
+            .maxConcurrent(3)
+            .reservedInteractive(1)
+            .maxWait(0, TimeUnit.MILLISECONDS)
+            .build();
+
+        bulkhead.acquire(Priority.BATCH);
+        bulkhead.acquire(Priority.BATCH);
+        try {
+            bulkhead.acquire(Priority.BATCH);
+            fail("batch traffic must not take the reserved slot");
+        } catch (BulkheadFullException e) {
+            assertEquals(Priority.BATCH, e.getPriority());
+        }
+        bulkhead.acquire(Priority.INTERACTIVE);
+        assertEquals(3, bulkhead.getInFlight());
+        try {
+            bulkhead.acquire(Priority.INTERACTIVE);
+            fail("bulkhead is full");
+        } catch (BulkheadFullException e) {
+            assertEquals(Priority.INTERACTIVE, e.getPriority());
+        }
+        assertEquals(1, bulkhead.getRejectedCount(Priority.BATCH));
+        assertEquals(1, bulkhead.getRejectedCount(Priority.INTERACTIVE));
+    }
+
+    @Test
+    public void testWaiterIsAdmittedOnRelease() throws Exception {
+        Bulkhead bulkhead = Bulkhead.builder()
+            .maxConcurrent(2)
+            .reservedInteractive(1)
+            .maxWait(5, TimeUnit.SECONDS)
+            .build();
+        bulkhead.acquire(Priority.BATCH);
+
+        CountDownLatch admitted = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                bulkhead.acquire(Priority.BATCH);
+                admitted.countDown();
+            } catch (Exception e) {
+                // leave the latch open so the assertion below fails
+            }
+        });
+        waiter.start();
+        assertFalse(admitted.await(100, TimeUnit.MILLISECONDS));
+        bulkhead.release(Priority.BATCH);
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        waiter.join();
+    }
+}
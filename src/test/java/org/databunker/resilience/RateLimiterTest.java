@@ -0,0 +1,94 @@
+package org.databunker.resilience;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+
+    @Test
+    public void testBurstThenThrottle() throws Exception {
+        RateLimiter limiter = new RateLimiter(20, 2);
+        assertEquals(0, limiter.acquire());
+        assertEquals(0, limiter.acquire());
+        long waited = limiter.acquire();
+        assertTrue("third permit should wait for a refill, waited " + waited, waited > 0);
+        assertEquals(3, limiter.getAcquiredCount());
+        assertEquals(1, limiter.getThrottledCount());
+        assertEquals(waited, limiter.getThrottleWaitNanos());
+    }
+
+    @Test
+    public void testTryAcquire() {
+        RateLimiter limiter = new RateLimiter(0.1, 1);
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire(10, TimeUnit.MILLISECONDS));
+        assertEquals(2, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void testAcquireAsync() throws Exception {
+        RateLimiter limiter = new RateLimiter(50, 1);
+        assertEquals(Long.valueOf(0), limiter.acquireAsync().get());
+        CompletableFuture<Long> pending = limiter.acquireAsync();
+        assertTrue(pending.get(1, TimeUnit.SECONDS) > 0);
+    }
+
+    @Test
+    public void testRegistryKeysByTenantAndClass() throws Exception {
+        RateLimiterRegistry registry = RateLimiterRegistry.builder()
+            .limit(EndpointClass.WRITE, 0.1, 1)
+            .tenantLimit("batch", EndpointClass.WRITE, 0.1, 3)
+            .failFast(0, TimeUnit.MILLISECONDS)
+            .build();
+
+        assertNull(registry.get("acme", EndpointClass.READ));
+        assertSame(registry.get("acme", EndpointClass.WRITE), registry.get("acme", EndpointClass.WRITE));
+
+        registry.acquire("acme", "UserCreate");
+        registry.acquire("other", "UserCreate");
+        registry.acquire("acme", "UserGet");
+        try {
+            registry.acquire("acme", "TokenCreate");
+            fail("second write of the same tenant should be refused");
+        } catch (RateLimitExceededException e) {
+            assertEquals("acme", e.getTenant());
+            assertEquals(EndpointClass.WRITE, e.getEndpointClass());
+        }
+
+        assertTrue(registry.tryAcquire("batch", "UserCreate"));
+        assertTrue(registry.tryAcquire("batch", "UserCreate"));
+        assertTrue(registry.tryAcquire("batch", "UserCreate"));
+        assertFalse(registry.tryAcquire("batch", "UserCreate"));
+        assertEquals(2, registry.getRejectedCount());
+    }
+
+    @Test
+    public void testEndpointClassification() {
+        assertEquals(EndpointClass.READ, EndpointClass.of("UserGet"));
+        assertEquals(EndpointClass.READ, EndpointClass.of("SessionListUserSessions"));
+        assertEquals(EndpointClass.WRITE, EndpointClass.of("UserCreate"));
+        assertEquals(EndpointClass.BULK, EndpointClass.of("UserCreateBulk"));
+        assertEquals(EndpointClass.BULK, EndpointClass.of("BulkListAllUsers"));
+        assertEquals(EndpointClass.ADMIN, EndpointClass.of("TenantListTenants"));
+    }
+
+    @Test
+    public void testMutationClassificationIgnoresEndpointClass() {
+        assertTrue(EndpointClass.isMutation("UserCreate"));
+        assertTrue(EndpointClass.isMutation("UserCreateBulk"));
+        assertTrue(EndpointClass.isMutation("TenantDeleteTenant"));
+        assertTrue(EndpointClass.isMutation("SystemGenerateWrappingKey"));
+        assertFalse(EndpointClass.isMutation("UserGet"));
+        assertFalse(EndpointClass.isMutation("TenantListTenants"));
+        assertFalse(EndpointClass.isMutation("PolicyGet"));
+        assertFalse(EndpointClass.isMutation("SystemGetSystemStats"));
+        assertFalse(EndpointClass.isMutation("BulkListAllUsers"));
+        assertFalse(EndpointClass.isMutation("BulkListTokens"));
+        assertFalse(EndpointClass.isMutation("BulkListUnlock"));
+    }
+}
@@ -0,0 +1,162 @@
+package org.databunker.stub;
+
+import org.databunker.DatabunkerproApi;
+import org.databunker.options.TokenOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StubServerTest {
+    private StubServer stub;
+    private DatabunkerproApi api;
+
+    @Before
+    public void setUp() throws IOException {
+        stub = StubServer.builder().token("stub-token").start();
+        api = new DatabunkerproApi(stub.getBaseURL(), "stub-token", "acme");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        api.close();
+        stub.close();
+    }
+
+    private static Map<String, Object> profile(String email) {
+        Map<String, Object> profile = new HashMap<>();
+        profile.put("email", email);
+        profile.put("name", "Test User");
+        return profile;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testUserLifecycle() throws IOException {
+        Map<String, Object> created = api.createUser(profile("user@example.com"), null, null);
+        assertEquals("ok", created.get("status"));
+        String token = (String) created.get("token");
+
+        Map<String, Object> user = api.getUser("email", "user@example.com", null);
+        assertEquals(token, user.get("token"));
+        assertEquals("Test User", ((Map<String, Object>) user.get("profile")).get("name"));
+
+        Map<String, Object> update = new HashMap<>();
+        update.put("name", "Renamed User");
+        assertEquals("ok", api.updateUser("token", token, update, null).get("status"));
+        assertEquals("Renamed User", ((Map<String, Object>) api.getUser("token", token, null).get("profile")).get("name"));
+
+        assertEquals("error", api.createUser(profile("user@example.com"), null, null).get("status"));
+        assertEquals("ok", api.deleteUser("email", "user@example.com", null).get("status"));
+        Map<String, Object> missing = api.getUser("email", "user@example.com", null);
+        assertEquals("error", missing.get("status"));
+        assertNotNull(missing.get("message"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTokensAndBulkListing() throws IOException {
+        Map<String, Object> token = api.createToken("creditcard", "4111111111111111",
+            TokenOptions.builder().unique(true).build(), null);
+        String tokenbase = (String) token.get("tokenbase");
+        assertEquals(16, tokenbase.length());
+        assertTrue(tokenbase.endsWith("1111"));
+        assertEquals("4111111111111111", api.getToken(tokenbase, null).get("record"));
+        assertEquals(token.get("tokenuuid"), api.createToken("creditcard", "4111111111111111",
+            TokenOptions.builder().unique(true).build(), null).get("tokenuuid"));
+
+        String unlockuuid = (String) api.bulkListUnlock(null).get("unlockuuid");
+        Map<String, Object> rows = api.bulkListTokens(unlockuuid, new String[]{tokenbase}, null);
+        assertEquals(1, rows.get("total"));
+        assertEquals("ok", api.bulkDeleteTokens(unlockuuid, new String[]{tokenbase}, null).get("status"));
+        assertEquals(0, ((List<?>) api.bulkListTokens(unlockuuid, new String[]{tokenbase}, null).get("rows")).size());
+        assertEquals("error", api.bulkListTokens("wrong", new String[]{tokenbase}, null).get("status"));
+
+        for (int i = 0; i < 25; i++) {
+            api.createUser(profile("user" + i + "@example.com"), null, null);
+        }
+        Map<String, Object> page = api.bulkListAllUsers(unlockuuid, 20, 10, null);
+        assertEquals(25, page.get("total"));
+        assertEquals(5, ((List<Map<String, Object>>) page.get("rows")).size());
+    }
+
+    @Test
+    public void testTenantsAreIsolated() throws IOException {
+        api.createUser(profile("user@example.com"), null, null);
+        try (DatabunkerproApi other = new DatabunkerproApi(stub.getBaseURL(), "stub-token", "other")) {
+            assertEquals("error", other.getUser("email", "user@example.com", null).get("status"));
+        }
+    }
+
+    @Test
+    public void testAuthentication() throws IOException {
+        try (DatabunkerproApi anonymous = new DatabunkerproApi(stub.getBaseURL(), "wrong", "acme")) {
+            assertEquals("access denied", anonymous.getSession("session", null).get("message"));
+        }
+    }
+
+    @Test
+    public void testUnknownEndpointIsAnError() throws IOException {
+        Map<String, Object> result = api.getSharedRecord("record-uuid", null);
+        assertEquals("error", result.get("status"));
+        assertTrue(String.valueOf(result.get("message")).contains("not implemented"));
+    }
+
+    @Test
+    public void testErrorAndLatencyInjection() throws IOException {
+        stub.setErrorRate(1.0, 503);
+        assertEquals("injected failure", api.getSession("session", null).get("message"));
+
+        stub.setErrorRate(0, 503);
+        stub.setLatency(Duration.ofMillis(100), Duration.ofMillis(100));
+        long start = System.nanoTime();
+        api.upsertSession("session", new HashMap<>(), null);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+    }
+
+    @Test
+    public void testMetrics() throws IOException {
+        api.createUser(profile("user@example.com"), null, null);
+        api.getUser("email", "nobody@example.com", null);
+        Map<String, Object> metrics = api.getSystemMetrics(null);
+        assertEquals(1.0, metrics.get("stub_requests_total{endpoint=\"UserCreate\",status=\"ok\"}"));
+        assertEquals(1.0, metrics.get("stub_requests_total{endpoint=\"UserGet\",status=\"error\"}"));
+        assertEquals(1.0, metrics.get("stub_users"));
+    }
+
+    @Test
+    public void testConcurrentClients() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            Future<?>[] futures = new Future<?>[16];
+            for (int t = 0; t < futures.length; t++) {
+                int thread = t;
+                futures[t] = executor.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        String email = "user" + thread + "-" + i + "@example.com";
+                        assertEquals("ok", api.createUser(profile(email), null, null).get("status"));
+                        assertEquals("ok", api.getUser("email", email, null).get("status"));
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1600, stub.getRequestCount());
+    }
+}